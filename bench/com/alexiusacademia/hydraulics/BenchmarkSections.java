@@ -0,0 +1,35 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * Synthetic cross sections shared by the benchmarks.
+ */
+final class BenchmarkSections {
+
+  /* **********************************
+   * Constants
+   ***********************************/
+  static final double BANK_ELEVATION = 10;
+  static final double LOWEST_ELEVATION = 2;
+  static final double WATER_ELEVATION = 6;
+
+  private BenchmarkSections() {
+  }
+
+  /**
+   * Creates a rough, 100 m wide valley with the given number of points. Both banks are at the same
+   * elevation, and the ripples of the bed add local extrema so the stage index has one breakpoint per point.
+   * @param points Number of points, at least three
+   * @return SectionGeometry
+   */
+  static SectionGeometry valley(int points) {
+    double[] stations = new double[points];
+    double[] elevations = new double[points];
+    for (int i = 0; i < points; i++) {
+      double x = 100.0 * i / (points - 1);
+      double ripple = (i == 0 || i == points - 1) ? 0 : 0.05 * Math.sin(37.0 * i);
+      stations[i] = x;
+      elevations[i] = BANK_ELEVATION - (BANK_ELEVATION - LOWEST_ELEVATION) * Math.sin(Math.PI * x / 100) + ripple;
+    }
+    return new SectionGeometry(stations, elevations);
+  }
+}
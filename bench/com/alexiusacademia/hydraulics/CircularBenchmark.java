@@ -0,0 +1,64 @@
+package com.alexiusacademia.hydraulics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Every unknown of a pipe flowing partially full, through the stateless solver and through the channel class.
+ * All unknowns describe the same pipe, its discharge computed from the depth.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CircularBenchmark {
+
+  private static final double BED_SLOPE = 0.001;
+  private static final double DIAMETER = 1.2;
+  private static final double WATER_DEPTH = 0.7;
+  private static final double MANNING_ROUGHNESS = 0.013;
+
+  @Param({"DISCHARGE", "BED_SLOPE", "DIAMETER", "WATER_DEPTH"})
+  public CircularOpenChannel.Unknown unknown;
+
+  private CircularSolver solver;
+  private CircularSpec spec;
+  private CircularOpenChannel channel;
+
+  @Setup
+  public void setUp() {
+    solver = new CircularSolver();
+    double discharge = solver.solve(new CircularSpec(CircularOpenChannel.Unknown.DISCHARGE, 0, BED_SLOPE,
+            DIAMETER, WATER_DEPTH, MANNING_ROUGHNESS)).getDischarge();
+    spec = new CircularSpec(unknown, discharge, BED_SLOPE, DIAMETER, WATER_DEPTH, MANNING_ROUGHNESS);
+    channel = new CircularOpenChannel(unknown);
+    channel.setDischarge(discharge);
+    channel.setBedSlope(BED_SLOPE);
+    channel.setDiameter(DIAMETER);
+    channel.setWaterDepth(WATER_DEPTH);
+    channel.setManningRoughness(MANNING_ROUGHNESS);
+  }
+
+  @Benchmark
+  public ChannelResult solve() {
+    return solver.solve(spec);
+  }
+
+  @Benchmark
+  public boolean analyze() {
+    return channel.analyze();
+  }
+}
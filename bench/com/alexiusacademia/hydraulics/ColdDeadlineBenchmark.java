@@ -0,0 +1,62 @@
+package com.alexiusacademia.hydraulics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * First analysis of a fresh JVM under a short deadline, including the deferred critical flow. Every fork
+ * runs one analysis with none of the library loaded, so the score is the cold start a request pays against
+ * its deadline. The run fails if the deadline stops the analysis.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(5)
+public class ColdDeadlineBenchmark {
+
+  private static final long DEADLINE_MILLIS = 200;
+
+  @Benchmark
+  public double trapezoidal() {
+    CancellationToken token = CancellationToken.withTimeout(DEADLINE_MILLIS, TimeUnit.MILLISECONDS);
+    TrapezoidalOpenChannel channel = new TrapezoidalOpenChannel(TrapezoidalOpenChannel.Unknown.WATER_DEPTH);
+    channel.setDischarge(3);
+    channel.setBedSlope(0.001);
+    channel.setBaseWidth(2);
+    channel.setSideSlope(1.5);
+    channel.setManningRoughness(0.015);
+    channel.setCancellationToken(token);
+    return check(channel.analyze(), channel);
+  }
+
+  @Benchmark
+  public double irregular() {
+    CancellationToken token = CancellationToken.withTimeout(DEADLINE_MILLIS, TimeUnit.MILLISECONDS);
+    IrregularSectionChannel channel = new IrregularSectionChannel(IrregularSectionChannel.Unknown.WATER_ELEVATION,
+            BenchmarkSections.valley(1000));
+    channel.setDischarge(50);
+    channel.setBedSlope(0.001);
+    channel.setManningRoughness(0.035);
+    channel.setCancellationToken(token);
+    return check(channel.analyze(), channel);
+  }
+
+  /**
+   * Fails the run unless the analysis and its critical flow were solved within the deadline.
+   */
+  private static double check(boolean successful, OpenChannel channel) {
+    double criticalDepth = channel.getCriticalDepth();
+    if (!successful || !channel.isCalculationSuccessful() || Double.isNaN(criticalDepth)) {
+      throw new IllegalStateException("Cold analysis missed its deadline: " + channel.getErrMessage());
+    }
+    return criticalDepth;
+  }
+}
@@ -0,0 +1,66 @@
+package com.alexiusacademia.hydraulics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Critical depth of the prismatic shapes, without the normal flow solution.
+ * See {@code IrregularSectionBenchmark} for the critical stage of irregular sections.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CriticalFlowBenchmark {
+
+  private static final double DISCHARGE = 3.5;
+  private static final double DIAMETER = 1.2;
+
+  private TrapezoidalSection rectangle;
+  private TrapezoidalSection trapezoid;
+  private CircularSolver circular;
+
+  @Setup
+  public void setUp() {
+    RootFinder finder = new RootFinder(RootFinder.DEFAULT_TOLERANCE, RootFinder.DEFAULT_MAX_ITERATIONS);
+    rectangle = section(finder, 0);
+    trapezoid = section(finder, 1.5);
+    circular = new CircularSolver();
+  }
+
+  private static TrapezoidalSection section(RootFinder finder, double sideSlope) {
+    TrapezoidalSection section = new TrapezoidalSection(finder);
+    section.discharge = DISCHARGE;
+    section.baseWidth = 2;
+    section.waterDepth = 1.2;
+    section.sideSlope = sideSlope;
+    return section;
+  }
+
+  @Benchmark
+  public double rectangular() throws ConvergenceException {
+    return rectangle.criticalDepth();
+  }
+
+  @Benchmark
+  public double trapezoidal() throws ConvergenceException {
+    return trapezoid.criticalDepth();
+  }
+
+  @Benchmark
+  public double circular() {
+    return circular.criticalDepth(DISCHARGE, DIAMETER);
+  }
+}
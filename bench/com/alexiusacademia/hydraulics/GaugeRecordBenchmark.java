@@ -0,0 +1,92 @@
+package com.alexiusacademia.hydraulics;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Gauge records converted to discharge, velocity and Froude number, in records per second.
+ * The record is a random walk of 15 minute stages held in memory, and the output is discarded,
+ * so the score excludes the disk.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GaugeRecordBenchmark {
+
+  private static final int RECORDS = 1 << 20;
+
+  @Param({"1", "4"})
+  public int threads;
+
+  private GaugeRecordProcessor processor;
+  private ForkJoinPool pool;
+  private byte[] record;
+  private WritableByteChannel discard;
+
+  @Setup
+  public void setUp() {
+    processor = new GaugeRecordProcessor(BenchmarkSections.valley(200), 0.0005, 0.035);
+    pool = new ForkJoinPool(threads);
+    StringBuilder text = new StringBuilder("time,stage\n");
+    Random random = new Random(1);
+    double stage = BenchmarkSections.WATER_ELEVATION;
+    for (int i = 0; i < RECORDS; i++) {
+      stage += 0.01 * random.nextGaussian();
+      stage = Math.max(BenchmarkSections.LOWEST_ELEVATION, Math.min(stage, BenchmarkSections.BANK_ELEVATION));
+      text.append(900L * i).append(',').append(Math.round(stage * 1000) / 1000.0).append('\n');
+    }
+    record = text.toString().getBytes(StandardCharsets.US_ASCII);
+    discard = new WritableByteChannel() {
+      @Override
+      public int write(ByteBuffer src) {
+        int n = src.remaining();
+        src.position(src.limit());
+        return n;
+      }
+
+      @Override
+      public boolean isOpen() {
+        return true;
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  @TearDown
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public long process() throws IOException {
+    return processor.process(Channels.newChannel(new ByteArrayInputStream(record)), discard, pool);
+  }
+}
@@ -0,0 +1,68 @@
+package com.alexiusacademia.hydraulics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Every unknown of an irregular section of 10, 1k and 100k points, through the stateless solver and
+ * through the channel class. The stage index is built during setup, see {@code IrregularSectionBenchmark}
+ * for its cost.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IrregularBenchmark {
+
+  private static final double BED_SLOPE = 0.001;
+  private static final double MANNING_ROUGHNESS = 0.035;
+
+  @Param({"10", "1000", "100000"})
+  public int points;
+
+  @Param({"DISCHARGE", "BED_SLOPE", "WATER_ELEVATION"})
+  public IrregularSectionChannel.Unknown unknown;
+
+  private IrregularSolver solver;
+  private IrregularSpec spec;
+  private IrregularSectionChannel channel;
+
+  @Setup
+  public void setUp() {
+    SectionGeometry geometry = BenchmarkSections.valley(points);
+    geometry.getStageIndex();
+    solver = new IrregularSolver();
+    double discharge = solver.solve(new IrregularSpec(IrregularSectionChannel.Unknown.DISCHARGE, geometry, 0,
+            BED_SLOPE, BenchmarkSections.WATER_ELEVATION, MANNING_ROUGHNESS)).getDischarge();
+    spec = new IrregularSpec(unknown, geometry, discharge, BED_SLOPE, BenchmarkSections.WATER_ELEVATION,
+            MANNING_ROUGHNESS);
+    channel = new IrregularSectionChannel(unknown, geometry);
+    channel.setDischarge(discharge);
+    channel.setBedSlope(BED_SLOPE);
+    channel.setManningRoughness(MANNING_ROUGHNESS);
+    channel.setWaterElevation((float) BenchmarkSections.WATER_ELEVATION);
+  }
+
+  @Benchmark
+  public ChannelResult solve() {
+    return solver.solve(spec);
+  }
+
+  @Benchmark
+  public boolean analyze() {
+    return channel.analyze();
+  }
+}
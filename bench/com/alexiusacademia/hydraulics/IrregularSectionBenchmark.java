@@ -0,0 +1,79 @@
+package com.alexiusacademia.hydraulics;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Geometry of an irregular section of 10, 1k and 100k points: building the stage index,
+ * stage lookups, the critical stage and clipping at the waterline.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IrregularSectionBenchmark {
+
+  private static final double BED_SLOPE = 0.001;
+  private static final double MANNING_ROUGHNESS = 0.035;
+
+  @Param({"10", "1000", "100000"})
+  public int points;
+
+  private double[] stations;
+  private double[] elevations;
+  private StageIndex index;
+  private RootFinder finder;
+  private IrregularSectionChannel channel;
+  private double discharge;
+
+  @Setup
+  public void setUp() {
+    SectionGeometry geometry = BenchmarkSections.valley(points);
+    stations = geometry.copyStations();
+    elevations = geometry.copyElevations();
+    index = geometry.getStageIndex();
+    finder = new RootFinder();
+    discharge = index.conveyance(BenchmarkSections.WATER_ELEVATION, MANNING_ROUGHNESS) * Math.sqrt(BED_SLOPE);
+    channel = new IrregularSectionChannel(IrregularSectionChannel.Unknown.DISCHARGE, geometry);
+    channel.setBedSlope(BED_SLOPE);
+    channel.setManningRoughness(MANNING_ROUGHNESS);
+    channel.setWaterElevation((float) BenchmarkSections.WATER_ELEVATION);
+    channel.analyze();
+  }
+
+  @Benchmark
+  public StageIndex stageIndex() {
+    return new StageIndex(stations, elevations);
+  }
+
+  @Benchmark
+  public double conveyance() {
+    return index.conveyance(BenchmarkSections.WATER_ELEVATION, MANNING_ROUGHNESS);
+  }
+
+  @Benchmark
+  public double criticalStage() throws ConvergenceException {
+    return IrregularSolver.criticalStage(index, discharge, BenchmarkSections.BANK_ELEVATION, finder);
+  }
+
+  @Benchmark
+  public List<Point> clipAtWaterline() {
+    // The clipped profile is cached until the next analysis
+    channel.analyze();
+    return channel.getNewPoints();
+  }
+}
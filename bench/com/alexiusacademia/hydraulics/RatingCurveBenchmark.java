@@ -0,0 +1,72 @@
+package com.alexiusacademia.hydraulics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rating curve lookups in both directions, against a fresh solve of the same query.
+ * Queries cycle through a fixed set of values spread over the range of the curve.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RatingCurveBenchmark {
+
+  private static final int QUERIES = 1024;
+
+  @Param({"1e-6", "1e-9"})
+  public double tolerance;
+
+  private RatingCurve curve;
+  private TrapezoidalSolver solver;
+  private double[] depths;
+  private double[] discharges;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    TrapezoidalOpenChannel channel = new TrapezoidalOpenChannel(TrapezoidalOpenChannel.Unknown.DISCHARGE,
+            0.001, 2, 1.2, 1.5, 0.015);
+    curve = RatingCurve.of(channel, 5, tolerance);
+    solver = new TrapezoidalSolver();
+    depths = new double[QUERIES];
+    discharges = new double[QUERIES];
+    for (int i = 0; i < QUERIES; i++) {
+      depths[i] = curve.getMaxDepth() * (i + 0.5) / QUERIES;
+      discharges[i] = curve.getMaxDischarge() * (i + 0.5) / QUERIES;
+    }
+  }
+
+  @Benchmark
+  public double discharge() {
+    next = (next + 1) & (QUERIES - 1);
+    return curve.discharge(depths[next]);
+  }
+
+  @Benchmark
+  public double depth() {
+    next = (next + 1) & (QUERIES - 1);
+    return curve.depth(discharges[next]);
+  }
+
+  @Benchmark
+  public ChannelResult solveDepth() {
+    next = (next + 1) & (QUERIES - 1);
+    return solver.solve(new TrapezoidalSpec(TrapezoidalOpenChannel.Unknown.WATER_DEPTH, discharges[next],
+            0.001, 2, 0, 1.5, 0.015));
+  }
+}
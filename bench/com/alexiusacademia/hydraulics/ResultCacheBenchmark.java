@@ -0,0 +1,61 @@
+package com.alexiusacademia.hydraulics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Water depth of a trapezoidal channel answered from a warm result cache, against solving it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResultCacheBenchmark {
+
+  private TrapezoidalSolver solver;
+  private TrapezoidalSpec spec;
+  private ResultCache cache;
+  private TrapezoidalOpenChannel channel;
+
+  @Setup
+  public void setUp() {
+    solver = new TrapezoidalSolver();
+    spec = new TrapezoidalSpec(TrapezoidalOpenChannel.Unknown.WATER_DEPTH, 3, 0.001, 2, 0, 1.5, 0.015);
+    cache = new ResultCache();
+    cache.solve(solver, spec);
+    channel = new TrapezoidalOpenChannel(TrapezoidalOpenChannel.Unknown.WATER_DEPTH);
+    channel.setDischarge(3);
+    channel.setBedSlope(0.001);
+    channel.setBaseWidth(2);
+    channel.setSideSlope(1.5);
+    channel.setManningRoughness(0.015);
+    channel.setResultCache(cache);
+  }
+
+  @Benchmark
+  public ChannelResult solve() {
+    return solver.solve(spec);
+  }
+
+  @Benchmark
+  public ChannelResult cached() {
+    return cache.solve(solver, spec);
+  }
+
+  @Benchmark
+  public boolean analyze() {
+    return channel.analyze();
+  }
+}
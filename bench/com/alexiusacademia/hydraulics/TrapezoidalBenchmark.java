@@ -0,0 +1,63 @@
+package com.alexiusacademia.hydraulics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Every unknown of a trapezoidal channel, through the stateless solver and through the channel class.
+ * All unknowns describe the same channel, its discharge computed from the depth.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TrapezoidalBenchmark {
+
+  private static final double BED_SLOPE = 0.001;
+  private static final double BASE_WIDTH = 2;
+  private static final double WATER_DEPTH = 1.2;
+  private static final double SIDE_SLOPE = 1.5;
+  private static final double MANNING_ROUGHNESS = 0.015;
+
+  @Param({"DISCHARGE", "BED_SLOPE", "WATER_DEPTH", "BASE_WIDTH"})
+  public TrapezoidalOpenChannel.Unknown unknown;
+
+  private TrapezoidalSolver solver;
+  private TrapezoidalSpec spec;
+  private TrapezoidalOpenChannel channel;
+
+  @Setup
+  public void setUp() {
+    solver = new TrapezoidalSolver();
+    double discharge = solver.solve(new TrapezoidalSpec(TrapezoidalOpenChannel.Unknown.DISCHARGE, 0, BED_SLOPE,
+            BASE_WIDTH, WATER_DEPTH, SIDE_SLOPE, MANNING_ROUGHNESS)).getDischarge();
+    spec = new TrapezoidalSpec(unknown, discharge, BED_SLOPE, BASE_WIDTH, WATER_DEPTH, SIDE_SLOPE,
+            MANNING_ROUGHNESS);
+    channel = new TrapezoidalOpenChannel(unknown, BED_SLOPE, BASE_WIDTH, WATER_DEPTH, SIDE_SLOPE,
+            MANNING_ROUGHNESS);
+    channel.setDischarge(discharge);
+  }
+
+  @Benchmark
+  public ChannelResult solve() {
+    return solver.solve(spec);
+  }
+
+  @Benchmark
+  public boolean analyze() {
+    return channel.analyze();
+  }
+}
@@ -0,0 +1,67 @@
+package com.alexiusacademia.hydraulics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Flood wave routed through a 1000 station reach by the implicit Preissmann scheme, one time step per operation,
+ * so the score multiplied by the station count is node steps per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UnsteadyFlowBenchmark {
+
+  private static final int STATIONS = 1000;
+  private static final double SPACING = 100;
+  private static final double BED_SLOPE = 0.0005;
+  private static final double MANNING_ROUGHNESS = 0.025;
+  private static final double BASE_FLOW = 20;
+  private static final double TIME_STEP = 60;
+
+  @Param({"TRAPEZOIDAL", "IRREGULAR"})
+  public String shape;
+
+  private UnsteadyFlow flow;
+
+  @Setup
+  public void setUp() {
+    CrossSection section;
+    if (shape.equals("IRREGULAR")) {
+      section = CrossSection.irregular(BenchmarkSections.valley(1000));
+    } else {
+      section = CrossSection.trapezoidal(10, 1.5);
+    }
+    List<ProfileStation> stations = new ArrayList<>();
+    for (int i = 0; i < STATIONS; i++) {
+      stations.add(new ProfileStation(i * SPACING, -BED_SLOPE * i * SPACING, section, MANNING_ROUGHNESS));
+    }
+    flow = new UnsteadyFlow(stations);
+    double normalDepth = section.normalDepth(BASE_FLOW, BED_SLOPE, MANNING_ROUGHNESS);
+    flow.initializeSteady(BASE_FLOW, stations.get(STATIONS - 1).getInvertElevation() + normalDepth);
+    // Daily wave between the base flow and twice of it
+    flow.setUpstreamDischarge(t -> BASE_FLOW * (1.5 - 0.5 * Math.cos(2 * Math.PI * t / 86400)));
+    flow.setDownstreamNormalDepth(BED_SLOPE);
+  }
+
+  @Benchmark
+  public boolean step() {
+    return flow.step(TIME_STEP);
+  }
+}
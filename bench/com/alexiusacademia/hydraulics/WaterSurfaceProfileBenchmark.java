@@ -0,0 +1,67 @@
+package com.alexiusacademia.hydraulics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Backwater profile of a 1000 station reach by the standard step method, for trapezoidal and irregular stations.
+ * Each operation computes the whole reach, so the score is reaches per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WaterSurfaceProfileBenchmark {
+
+  private static final int STATIONS = 1000;
+  private static final double SPACING = 20;
+  private static final double BED_SLOPE = 0.0005;
+  private static final double MANNING_ROUGHNESS = 0.03;
+  private static final double DISCHARGE = 50;
+
+  @Param({"TRAPEZOIDAL", "IRREGULAR"})
+  public String shape;
+
+  private List<ProfileStation> stations;
+  private WaterSurfaceProfile profile;
+  private double controlElevation;
+
+  @Setup
+  public void setUp() {
+    CrossSection section;
+    if (shape.equals("IRREGULAR")) {
+      section = CrossSection.irregular(BenchmarkSections.valley(1000));
+    } else {
+      section = CrossSection.trapezoidal(10, 1.5);
+    }
+    stations = new ArrayList<>();
+    for (int i = 0; i < STATIONS; i++) {
+      stations.add(new ProfileStation(-i * SPACING, BED_SLOPE * i * SPACING, section, MANNING_ROUGHNESS));
+    }
+    profile = new WaterSurfaceProfile(DISCHARGE);
+    // Backwater, twice the normal depth at the control
+    controlElevation = 2 * section.normalDepth(DISCHARGE, BED_SLOPE, MANNING_ROUGHNESS);
+  }
+
+  @Benchmark
+  public boolean standardStep(final Blackhole blackhole) {
+    return profile.standardStep(stations, controlElevation, WaterSurfaceProfile.Direction.UPSTREAM,
+        point -> blackhole.consume(point.getWaterElevation()));
+  }
+}
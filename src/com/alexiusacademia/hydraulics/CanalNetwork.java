@@ -0,0 +1,459 @@
+package com.alexiusacademia.hydraulics;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Steady flow in a tree of canals: a main canal from the headworks, its laterals and sub-laterals.
+ *
+ * Every node except the headworks is reached by exactly one reach, so a node and the reach ending at
+ * it share one number. Nodes are numbered as they are added, after their upstream node, which makes
+ * the discharge of every reach, the demand of its turnout plus the discharges of the reaches it feeds,
+ * a single backward pass over the numbers. Once the discharges are known the normal and critical depths
+ * of the reaches are independent, and they are solved in blocks on a fork/join pool.
+ *
+ * Changing a turnout demand only changes the discharges on the path from the turnout to the headworks.
+ * Those reaches are marked, and the next {@code solve} recomputes only them.
+ *
+ * All properties are kept in primitive columns indexed by node. An instance is not safe for
+ * concurrent modification. Values are in metric units.
+ */
+public final class CanalNetwork {
+
+  /* **********************************
+   * Constants
+   ***********************************/
+  public static final int HEADWORKS = 0;
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  // Bounds of the number of reaches solved by a leaf task
+  private static final int MIN_LEAF_SIZE = 64;
+  private static final int MAX_LEAF_SIZE = 4096;
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private int size = 1;
+
+  // Tree, as the upstream node and the first child and next sibling of every node
+  private int[] parent;
+  private int[] firstChild;
+  private int[] nextSibling;
+
+  // Reach ending at each node
+  private CrossSection[] section;
+  private double[] bedSlope;
+  private double[] manningRoughness;
+
+  // Turnout demand at each node
+  private double[] demand;
+
+  // Results of the reach ending at each node
+  private double[] discharge;
+  private double[] normalDepth;
+  private double[] criticalDepth;
+  private double[] averageVelocity;
+  private double[] froudeNumber;
+  private String[] errMessage;
+
+  // Reaches to be solved again
+  private boolean[] dirty;
+  private int[] pending;
+  private int pendingCount;
+  private boolean rebuild = true;
+
+  private double tolerance = RootFinder.DEFAULT_TOLERANCE;
+  private int maxIterations = RootFinder.DEFAULT_MAX_ITERATIONS;
+  private CancellationToken cancellationToken;
+
+  // Number of reaches solved by the last solve, and of reaches that failed
+  private int solvedCount;
+  private int failedCount;
+
+  /**
+   * Creates a {@code CanalNetwork} with only the headworks.
+   */
+  public CanalNetwork() {
+    this.parent = new int[INITIAL_CAPACITY];
+    this.firstChild = new int[INITIAL_CAPACITY];
+    this.nextSibling = new int[INITIAL_CAPACITY];
+    this.section = new CrossSection[INITIAL_CAPACITY];
+    this.bedSlope = new double[INITIAL_CAPACITY];
+    this.manningRoughness = new double[INITIAL_CAPACITY];
+    this.demand = new double[INITIAL_CAPACITY];
+    this.discharge = new double[INITIAL_CAPACITY];
+    this.normalDepth = new double[INITIAL_CAPACITY];
+    this.criticalDepth = new double[INITIAL_CAPACITY];
+    this.averageVelocity = new double[INITIAL_CAPACITY];
+    this.froudeNumber = new double[INITIAL_CAPACITY];
+    this.errMessage = new String[INITIAL_CAPACITY];
+    this.dirty = new boolean[INITIAL_CAPACITY];
+    this.pending = new int[INITIAL_CAPACITY];
+    this.parent[HEADWORKS] = -1;
+    this.firstChild[HEADWORKS] = -1;
+    this.nextSibling[HEADWORKS] = -1;
+  }
+
+  /* **********************************
+   * Setters
+   ***********************************/
+
+  public void setTolerance(double tolerance) {
+    this.tolerance = tolerance;
+    this.rebuild = true;
+  }
+
+  public void setMaxIterations(int maxIterations) {
+    this.maxIterations = maxIterations;
+    this.rebuild = true;
+  }
+
+  /**
+   * Sets the token that stops the solves once it is cancelled or past its deadline. The reaches left
+   * unsolved fail with the reason and are solved again by the next solve.
+   * @param token Cancellation token, or null to run every solve to completion
+   */
+  public void setCancellationToken(CancellationToken token) {
+    this.cancellationToken = token;
+  }
+
+  /**
+   * Sets the turnout demand at a node, marking the reaches from the node to the headworks for the next solve.
+   * @param node The node
+   * @param demand Discharge taken out at the node, zero for none
+   */
+  public void setDemand(int node, double demand) {
+    checkNode(node);
+    if (demand < 0) {
+      throw new IllegalArgumentException("The demand must not be negative.");
+    }
+    if (this.demand[node] == demand) {
+      return;
+    }
+    this.demand[node] = demand;
+
+    // Only the discharges on the path to the headworks change
+    for (int k = node; k >= 0; k = this.parent[k]) {
+      double total = this.demand[k];
+      for (int child = this.firstChild[k]; child >= 0; child = this.nextSibling[child]) {
+        total += this.discharge[child];
+      }
+      this.discharge[k] = total;
+      mark(k);
+    }
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  /**
+   * Returns the number of nodes, the headworks included.
+   * @return Integer Number of nodes
+   */
+  public int getNodeCount() {
+    return size;
+  }
+
+  /**
+   * Returns the upstream node of a node.
+   * @param node The node
+   * @return Integer Upstream node, -1 for the headworks
+   */
+  public int getParent(int node) {
+    checkNode(node);
+    return parent[node];
+  }
+
+  public double getDemand(int node) {
+    checkNode(node);
+    return demand[node];
+  }
+
+  /**
+   * Returns the discharge of the reach ending at a node, or the total diversion at the headworks.
+   * @param node The node
+   * @return Double Discharge
+   */
+  public double getDischarge(int node) {
+    checkNode(node);
+    return discharge[node];
+  }
+
+  public double getNormalDepth(int node) {
+    checkReach(node);
+    return normalDepth[node];
+  }
+
+  public double getCriticalDepth(int node) {
+    checkReach(node);
+    return criticalDepth[node];
+  }
+
+  public double getAverageVelocity(int node) {
+    checkReach(node);
+    return averageVelocity[node];
+  }
+
+  public double getFroudeNumber(int node) {
+    checkReach(node);
+    return froudeNumber[node];
+  }
+
+  public OpenChannel.FlowType getFlowType(int node) {
+    checkReach(node);
+    return Hydraulics.flowType(froudeNumber[node]);
+  }
+
+  /**
+   * Checks if the reach ending at a node was solved.
+   * @param node The node
+   * @return Boolean True if the depths of the reach are valid
+   */
+  public boolean isCalculationSuccessful(int node) {
+    checkReach(node);
+    return errMessage[node] == null;
+  }
+
+  /**
+   * Gets the error of the reach ending at a node.
+   * @param node The node
+   * @return String Error message, null if the reach was solved
+   */
+  public String getErrMessage(int node) {
+    checkReach(node);
+    return errMessage[node];
+  }
+
+  /**
+   * Returns the number of reaches solved by the last {@code solve}.
+   * @return Integer Number of reaches
+   */
+  public int getSolvedCount() {
+    return solvedCount;
+  }
+
+  /* **********************************
+   * Methods
+   ***********************************/
+
+  /**
+   * Adds a reach below a node.
+   * @param upstreamNode Node feeding the reach
+   * @param section Cross section of the reach
+   * @param bedSlope Bed slope of the reach
+   * @param manningRoughness Manning's roughness coefficient
+   * @return Integer The new node at the downstream end of the reach
+   */
+  public int addReach(int upstreamNode, CrossSection section, double bedSlope, double manningRoughness) {
+    checkNode(upstreamNode);
+    if (section == null) {
+      throw new IllegalArgumentException("The reach must have a section.");
+    }
+    if (bedSlope <= 0) {
+      throw new IllegalArgumentException("Bed slope must be greater than zero.");
+    }
+    if (manningRoughness <= 0) {
+      throw new IllegalArgumentException("Manning's roughness must be greater than zero.");
+    }
+    if (this.size == this.parent.length) {
+      grow();
+    }
+    int node = this.size++;
+    this.parent[node] = upstreamNode;
+    this.firstChild[node] = -1;
+    this.nextSibling[node] = this.firstChild[upstreamNode];
+    this.firstChild[upstreamNode] = node;
+    this.section[node] = section;
+    this.bedSlope[node] = bedSlope;
+    this.manningRoughness[node] = manningRoughness;
+    this.rebuild = true;
+    return node;
+  }
+
+  /**
+   * Solves the reaches on the common fork/join pool.
+   * @return Boolean True if every reach is solved
+   */
+  public boolean solve() {
+    return solve(ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Solves the reaches whose discharge changed since the last solve, or every reach after the
+   * network or the solver settings changed.
+   * @param pool Pool running the tasks
+   * @return Boolean True if every reach is solved
+   */
+  public boolean solve(ForkJoinPool pool) {
+    if (this.rebuild) {
+      // Children are numbered after their parents
+      for (int k = this.size - 1; k >= 0; k--) {
+        this.discharge[k] = this.demand[k];
+      }
+      for (int k = this.size - 1; k > HEADWORKS; k--) {
+        this.discharge[this.parent[k]] += this.discharge[k];
+      }
+      Arrays.fill(this.dirty, 0, this.size, false);
+      this.pendingCount = 0;
+      for (int k = HEADWORKS + 1; k < this.size; k++) {
+        mark(k);
+      }
+      this.rebuild = false;
+    }
+
+    int count = this.pendingCount;
+    for (int i = 0; i < count; i++) {
+      if (this.errMessage[this.pending[i]] != null) {
+        this.failedCount--;
+      }
+    }
+
+    RootFinder finder = new RootFinder(this.tolerance, this.maxIterations, this.cancellationToken);
+    int leafSize = Math.max(MIN_LEAF_SIZE, Math.min(MAX_LEAF_SIZE, count / (8 * pool.getParallelism())));
+    if (count <= leafSize) {
+      solveBlock(finder, 0, count);
+    } else {
+      pool.invoke(new SolveTask(finder, 0, count, leafSize));
+    }
+    String interruption = finder.interruption();
+    int kept = 0;
+    for (int i = 0; i < count; i++) {
+      int k = this.pending[i];
+      if (this.errMessage[k] != null) {
+        this.failedCount++;
+        if (interruption != null) {
+          // May have been cut short, kept for the next solve
+          this.pending[kept++] = k;
+          continue;
+        }
+      }
+      this.dirty[k] = false;
+    }
+    this.pendingCount = kept;
+    this.solvedCount = count;
+    return this.failedCount == 0;
+  }
+
+  /**
+   * Queues a reach for the next solve. The headworks has no reach.
+   */
+  private void mark(int node) {
+    if (node != HEADWORKS && !this.dirty[node]) {
+      this.dirty[node] = true;
+      this.pending[this.pendingCount++] = node;
+    }
+  }
+
+  /**
+   * Solves the pending reaches in the given range.
+   */
+  private void solveBlock(RootFinder finder, int from, int to) {
+    for (int i = from; i < to; i++) {
+      solveReach(finder, this.pending[i]);
+    }
+  }
+
+  /**
+   * Solves the normal and critical depths of the reach ending at a node.
+   */
+  private void solveReach(RootFinder finder, int k) {
+    CrossSection s = this.section[k];
+    double q = this.discharge[k];
+    if (q == 0) {
+      this.normalDepth[k] = 0;
+      this.criticalDepth[k] = 0;
+      this.averageVelocity[k] = 0;
+      this.froudeNumber[k] = 0;
+      this.errMessage[k] = null;
+      return;
+    }
+
+    try {
+      double yn = s.normalDepth(q, this.bedSlope[k], this.manningRoughness[k], finder);
+      double area = s.area(yn);
+      double velocity = q / area;
+      this.normalDepth[k] = yn;
+      this.averageVelocity[k] = velocity;
+      this.froudeNumber[k] = velocity / Math.sqrt(Hydraulics.GRAVITY_METRIC * area / s.topWidth(yn));
+      this.errMessage[k] = null;
+    } catch (ConvergenceException e) {
+      this.normalDepth[k] = Double.NaN;
+      this.averageVelocity[k] = Double.NaN;
+      this.froudeNumber[k] = Double.NaN;
+      this.errMessage[k] = "Discharge exceeds the capacity of the reach.";
+    }
+
+    try {
+      this.criticalDepth[k] = s.criticalDepth(q, finder);
+    } catch (ConvergenceException e) {
+      this.criticalDepth[k] = Double.NaN;
+    }
+
+    String interruption = finder.interruption();
+    if (interruption != null) {
+      this.errMessage[k] = interruption;
+    }
+  }
+
+  private void grow() {
+    int capacity = 2 * this.parent.length;
+    this.parent = Arrays.copyOf(this.parent, capacity);
+    this.firstChild = Arrays.copyOf(this.firstChild, capacity);
+    this.nextSibling = Arrays.copyOf(this.nextSibling, capacity);
+    this.section = Arrays.copyOf(this.section, capacity);
+    this.bedSlope = Arrays.copyOf(this.bedSlope, capacity);
+    this.manningRoughness = Arrays.copyOf(this.manningRoughness, capacity);
+    this.demand = Arrays.copyOf(this.demand, capacity);
+    this.discharge = Arrays.copyOf(this.discharge, capacity);
+    this.normalDepth = Arrays.copyOf(this.normalDepth, capacity);
+    this.criticalDepth = Arrays.copyOf(this.criticalDepth, capacity);
+    this.averageVelocity = Arrays.copyOf(this.averageVelocity, capacity);
+    this.froudeNumber = Arrays.copyOf(this.froudeNumber, capacity);
+    this.errMessage = Arrays.copyOf(this.errMessage, capacity);
+    this.dirty = Arrays.copyOf(this.dirty, capacity);
+    this.pending = Arrays.copyOf(this.pending, capacity);
+  }
+
+  private void checkNode(int node) {
+    if (node < 0 || node >= this.size) {
+      throw new IllegalArgumentException("No node " + node + " in the network.");
+    }
+  }
+
+  private void checkReach(int node) {
+    if (node <= HEADWORKS || node >= this.size) {
+      throw new IllegalArgumentException("No reach ends at node " + node + ".");
+    }
+  }
+
+  /**
+   * Splits a range of pending reaches until it is small enough to solve in one block.
+   */
+  @SuppressWarnings("serial")
+  private final class SolveTask extends RecursiveAction {
+    private final RootFinder finder;
+    private final int from;
+    private final int to;
+    private final int leafSize;
+
+    SolveTask(RootFinder finder, int from, int to, int leafSize) {
+      this.finder = finder;
+      this.from = from;
+      this.to = to;
+      this.leafSize = leafSize;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= leafSize) {
+        solveBlock(finder, from, to);
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      invokeAll(new SolveTask(finder, from, middle, leafSize), new SolveTask(finder, middle, to, leafSize));
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package com.alexiusacademia.hydraulics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cancellation and optional deadline of solves, checked by the root finder at every iteration.
+ *
+ * A token is given to a solver, a channel, a profile or a network, and any thread may cancel it. Once
+ * the token is cancelled or its deadline has passed, every solve using it fails with an error message
+ * within a few iterations, so the latency of a request is bounded by its deadline instead of by the worst
+ * case of the iteration caps. Results of such solves are never stored in a {@code ResultCache}.
+ */
+public final class CancellationToken {
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  // Deadline in System.nanoTime, meaningful only if hasDeadline
+  private final long deadline;
+  private final boolean hasDeadline;
+
+  private volatile boolean cancelled;
+
+  /**
+   * Creates a {@code CancellationToken} without a deadline.
+   */
+  public CancellationToken() {
+    this.deadline = 0;
+    this.hasDeadline = false;
+  }
+
+  private CancellationToken(long deadline) {
+    this.deadline = deadline;
+    this.hasDeadline = true;
+  }
+
+  /**
+   * Creates a {@code CancellationToken} expiring after the given time from now.
+   * @param timeout Time allowed to the solves
+   * @param unit Unit of the timeout
+   * @return CancellationToken
+   */
+  public static CancellationToken withTimeout(long timeout, TimeUnit unit) {
+    if (timeout < 0) {
+      throw new IllegalArgumentException("Timeout must not be negative.");
+    }
+    return new CancellationToken(System.nanoTime() + unit.toNanos(timeout));
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  /**
+   * Check if the token is cancelled or past its deadline.
+   * @return Boolean True if the solves using the token must stop
+   */
+  public boolean isCancelled() {
+    return reason() != null;
+  }
+
+  /**
+   * Time left before the deadline.
+   * @param unit Unit of the result
+   * @return Remaining time, never negative, {@code Long.MAX_VALUE} if there is no deadline
+   */
+  public long getRemaining(TimeUnit unit) {
+    if (!this.hasDeadline) {
+      return Long.MAX_VALUE;
+    }
+    return unit.convert(Math.max(this.deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+  }
+
+  /* **********************************
+   * Methods
+   ***********************************/
+
+  /**
+   * Cancels every solve using the token.
+   */
+  public void cancel() {
+    this.cancelled = true;
+  }
+
+  /**
+   * Reason for stopping a solve.
+   * @return Error message, null if the solve may go on
+   */
+  String reason() {
+    return reason(true);
+  }
+
+  /**
+   * Reason for stopping a solve, reading the clock only if asked to, since it costs more than an iteration.
+   * @param checkDeadline True to check the deadline as well as the cancellation
+   * @return Error message, null if the solve may go on
+   */
+  String reason(boolean checkDeadline) {
+    if (this.cancelled) {
+      return "Solve cancelled.";
+    }
+    if (checkDeadline && this.hasDeadline && System.nanoTime() - this.deadline >= 0) {
+      return "Solve deadline exceeded.";
+    }
+    return null;
+  }
+}
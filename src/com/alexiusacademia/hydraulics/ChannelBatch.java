@@ -0,0 +1,120 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * Column storage of many channel scenarios for the batch solvers.
+ *
+ * Every property is a primitive column indexed by scenario. Input columns are filled by the caller,
+ * the column of the unknown is overwritten with the solution, and the output columns are written
+ * by the solver. All columns are allocated once by the constructor and can be reused for any
+ * number of batches. Values are in metric units.
+ */
+public final class ChannelBatch {
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private final int size;
+
+  // Inputs, or the solution for the column of the unknown
+  private final double[] discharge;
+  private final double[] bedSlope;
+  private final double[] manningRoughness;
+  private final double[] baseWidth;
+  private final double[] waterDepth;
+  private final double[] sideSlope;
+
+  // Outputs
+  private final double[] wettedArea;
+  private final double[] wettedPerimeter;
+  private final double[] hydraulicRadius;
+  private final double[] averageVelocity;
+  private final double[] froudeNumber;
+  private final double[] criticalDepth;
+  private final boolean[] successful;
+
+  /**
+   * Creates a {@code ChannelBatch} with room for the given number of scenarios.
+   * @param size Number of scenarios
+   */
+  public ChannelBatch(int size) {
+    this.size = size;
+    this.discharge = new double[size];
+    this.bedSlope = new double[size];
+    this.manningRoughness = new double[size];
+    this.baseWidth = new double[size];
+    this.waterDepth = new double[size];
+    this.sideSlope = new double[size];
+    this.wettedArea = new double[size];
+    this.wettedPerimeter = new double[size];
+    this.hydraulicRadius = new double[size];
+    this.averageVelocity = new double[size];
+    this.froudeNumber = new double[size];
+    this.criticalDepth = new double[size];
+    this.successful = new boolean[size];
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  public int getSize() {
+    return size;
+  }
+
+  public double[] getDischarge() {
+    return discharge;
+  }
+
+  public double[] getBedSlope() {
+    return bedSlope;
+  }
+
+  public double[] getManningRoughness() {
+    return manningRoughness;
+  }
+
+  public double[] getBaseWidth() {
+    return baseWidth;
+  }
+
+  public double[] getWaterDepth() {
+    return waterDepth;
+  }
+
+  public double[] getSideSlope() {
+    return sideSlope;
+  }
+
+  public double[] getWettedArea() {
+    return wettedArea;
+  }
+
+  public double[] getWettedPerimeter() {
+    return wettedPerimeter;
+  }
+
+  public double[] getHydraulicRadius() {
+    return hydraulicRadius;
+  }
+
+  public double[] getAverageVelocity() {
+    return averageVelocity;
+  }
+
+  public double[] getFroudeNumber() {
+    return froudeNumber;
+  }
+
+  public double[] getCriticalDepth() {
+    return criticalDepth;
+  }
+
+  /**
+   * Returns the column telling whether each scenario was solved.
+   * Outputs of failed scenarios are {@code NaN}.
+   * @return Column of flags
+   */
+  public boolean[] getSuccessful() {
+    return successful;
+  }
+}
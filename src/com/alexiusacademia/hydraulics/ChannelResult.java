@@ -0,0 +1,178 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * Immutable result of a channel solve.
+ *
+ * Holds the inputs together with the solved unknown, the hydraulic elements and the critical flow
+ * properties. Values are in metric units. Properties that do not apply to the shape are zero,
+ * or {@code NaN} for elevations. The critical depth, critical slope and critical water elevation
+ * are {@code NaN} if the solve skipped the critical flow, see {@link #isCriticalFlowSolved()}.
+ */
+public final class ChannelResult {
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private final double discharge;
+  private final double bedSlope;
+  private final double manningRoughness;
+  private final double waterDepth;
+  private final double baseWidth;
+  private final double sideSlope;
+  private final double diameter;
+  private final double waterElevation;
+
+  private final double wettedArea;
+  private final double wettedPerimeter;
+  private final double hydraulicRadius;
+  private final double averageVelocity;
+  private final double topWidth;
+
+  private final double hydraulicDepth;
+  private final double dischargeIntensity;
+  private final double froudeNumber;
+  private final OpenChannel.FlowType flowType;
+  private final double criticalDepth;
+  private final double criticalSlope;
+  private final double criticalWaterElevation;
+  private final boolean criticalFlowSolved;
+  private final double percentFull;
+
+  private final boolean calculationSuccessful;
+  private final String errMessage;
+
+  /**
+   * Freezes the working values of a solve.
+   * @param state Working values
+   */
+  ChannelResult(ChannelState state) {
+    this.discharge = state.discharge;
+    this.bedSlope = state.bedSlope;
+    this.manningRoughness = state.manningRoughness;
+    this.waterDepth = state.waterDepth;
+    this.baseWidth = state.baseWidth;
+    this.sideSlope = state.sideSlope;
+    this.diameter = state.diameter;
+    this.waterElevation = state.waterElevation;
+    this.wettedArea = state.wettedArea;
+    this.wettedPerimeter = state.wettedPerimeter;
+    this.hydraulicRadius = state.hydraulicRadius;
+    this.averageVelocity = state.averageVelocity;
+    this.topWidth = state.topWidth;
+    this.hydraulicDepth = state.hydraulicDepth;
+    this.dischargeIntensity = state.dischargeIntensity;
+    this.froudeNumber = state.froudeNumber;
+    this.flowType = state.flowType;
+    this.criticalDepth = state.criticalDepth;
+    this.criticalSlope = state.criticalSlope;
+    this.criticalWaterElevation = state.criticalWaterElevation;
+    this.criticalFlowSolved = state.criticalFlowSolved;
+    this.percentFull = state.percentFull;
+    this.calculationSuccessful = state.successful;
+    this.errMessage = state.errMessage;
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  public double getDischarge() {
+    return discharge;
+  }
+
+  public double getBedSlope() {
+    return bedSlope;
+  }
+
+  public double getManningRoughness() {
+    return manningRoughness;
+  }
+
+  public double getWaterDepth() {
+    return waterDepth;
+  }
+
+  public double getBaseWidth() {
+    return baseWidth;
+  }
+
+  public double getSideSlope() {
+    return sideSlope;
+  }
+
+  public double getDiameter() {
+    return diameter;
+  }
+
+  public double getWaterElevation() {
+    return waterElevation;
+  }
+
+  public double getWettedArea() {
+    return wettedArea;
+  }
+
+  public double getWettedPerimeter() {
+    return wettedPerimeter;
+  }
+
+  public double getHydraulicRadius() {
+    return hydraulicRadius;
+  }
+
+  public double getAverageVelocity() {
+    return averageVelocity;
+  }
+
+  public double getTopWidth() {
+    return topWidth;
+  }
+
+  public double getHydraulicDepth() {
+    return hydraulicDepth;
+  }
+
+  public double getDischargeIntensity() {
+    return dischargeIntensity;
+  }
+
+  public double getFroudeNumber() {
+    return froudeNumber;
+  }
+
+  public OpenChannel.FlowType getFlowType() {
+    return flowType;
+  }
+
+  public double getCriticalDepth() {
+    return criticalDepth;
+  }
+
+  public double getCriticalSlope() {
+    return criticalSlope;
+  }
+
+  public double getCriticalWaterElevation() {
+    return criticalWaterElevation;
+  }
+
+  /**
+   * Check if the critical flow was solved, false for a solve that skipped it.
+   * @return Boolean True if the critical properties are solved
+   */
+  public boolean isCriticalFlowSolved() {
+    return criticalFlowSolved;
+  }
+
+  public double getPercentFull() {
+    return percentFull;
+  }
+
+  public boolean isCalculationSuccessful() {
+    return calculationSuccessful;
+  }
+
+  public String getErrMessage() {
+    return errMessage;
+  }
+}
@@ -0,0 +1,86 @@
+package com.alexiusacademia.hydraulics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a solve of the stateless solvers, and so of every {@code analyze()} of the
+ * channel classes that is not answered by a {@code ResultCache}.
+ *
+ * The event is disabled by default, as a batch commits millions of them, and is enabled by name in the
+ * recording settings, e.g. {@code com.alexiusacademia.hydraulics.ChannelSolve#enabled=true} with a
+ * threshold to keep only the slow solves. The class is loaded through {@link FlightRecorderEvents} once a
+ * recording has started, and while disabled its instances are dropped before the solve. The values are
+ * those of the result: the inputs, and the solved unknown on success.
+ */
+@Name("com.alexiusacademia.hydraulics.ChannelSolve")
+@Label("Channel Solve")
+@Category({"IrrigFlo", "Solver"})
+@Description("Solve of a channel for one unknown")
+@StackTrace(false)
+@Enabled(false)
+final class ChannelSolveEvent extends jdk.jfr.Event {
+
+  @Label("Shape")
+  String shape;
+
+  @Label("Unknown")
+  String unknown;
+
+  @Label("Iterations")
+  @Description("Iterations of every root finder solve, critical flow included")
+  int iterations;
+
+  @Label("Successful")
+  boolean successful;
+
+  @Label("Error Message")
+  String errMessage;
+
+  @Label("Discharge")
+  double discharge;
+
+  @Label("Bed Slope")
+  double bedSlope;
+
+  @Label("Manning Roughness")
+  double manningRoughness;
+
+  @Label("Water Depth")
+  double waterDepth;
+
+  @Label("Base Width")
+  double baseWidth;
+
+  @Label("Side Slope")
+  double sideSlope;
+
+  @Label("Diameter")
+  double diameter;
+
+  @Label("Water Elevation")
+  double waterElevation;
+
+  /**
+   * Copies the values of a result into the event.
+   */
+  void set(SolverMetrics.Shape shape, Enum<?> unknown, long iterations, ChannelResult result) {
+    this.shape = shape.name();
+    this.unknown = unknown.name();
+    this.iterations = (int) Math.min(iterations, Integer.MAX_VALUE);
+    this.successful = result.isCalculationSuccessful();
+    this.errMessage = result.getErrMessage();
+    this.discharge = result.getDischarge();
+    this.bedSlope = result.getBedSlope();
+    this.manningRoughness = result.getManningRoughness();
+    this.waterDepth = result.getWaterDepth();
+    this.baseWidth = result.getBaseWidth();
+    this.sideSlope = result.getSideSlope();
+    this.diameter = result.getDiameter();
+    this.waterElevation = result.getWaterElevation();
+  }
+}
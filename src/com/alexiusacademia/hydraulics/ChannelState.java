@@ -0,0 +1,100 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * Working values of a single solve, filled by a solver and frozen into a {@code ChannelResult}.
+ * Each solve creates its own instance, so solvers keep no state between calls.
+ */
+final class ChannelState {
+  double discharge;
+  double bedSlope;
+  double manningRoughness;
+  double waterDepth;
+  double baseWidth;
+  double sideSlope;
+  double diameter;
+  double waterElevation = Double.NaN;
+
+  double wettedArea;
+  double wettedPerimeter;
+  double hydraulicRadius;
+  double averageVelocity;
+  double topWidth;
+
+  double hydraulicDepth;
+  double dischargeIntensity;
+  double froudeNumber;
+  OpenChannel.FlowType flowType;
+  double criticalDepth;
+  double criticalSlope;
+  double criticalWaterElevation = Double.NaN;
+  boolean criticalFlowSolved;
+  double percentFull;
+
+  boolean successful;
+  String errMessage;
+
+  ChannelState() {
+
+  }
+
+  /**
+   * Thaws the values of a result, to complete it with its critical flow.
+   * @param result Result of a solve
+   */
+  ChannelState(ChannelResult result) {
+    this.discharge = result.getDischarge();
+    this.bedSlope = result.getBedSlope();
+    this.manningRoughness = result.getManningRoughness();
+    this.waterDepth = result.getWaterDepth();
+    this.baseWidth = result.getBaseWidth();
+    this.sideSlope = result.getSideSlope();
+    this.diameter = result.getDiameter();
+    this.waterElevation = result.getWaterElevation();
+    this.wettedArea = result.getWettedArea();
+    this.wettedPerimeter = result.getWettedPerimeter();
+    this.hydraulicRadius = result.getHydraulicRadius();
+    this.averageVelocity = result.getAverageVelocity();
+    this.topWidth = result.getTopWidth();
+    this.hydraulicDepth = result.getHydraulicDepth();
+    this.dischargeIntensity = result.getDischargeIntensity();
+    this.froudeNumber = result.getFroudeNumber();
+    this.flowType = result.getFlowType();
+    this.criticalDepth = result.getCriticalDepth();
+    this.criticalSlope = result.getCriticalSlope();
+    this.criticalWaterElevation = result.getCriticalWaterElevation();
+    this.criticalFlowSolved = result.isCriticalFlowSolved();
+    this.percentFull = result.getPercentFull();
+    this.successful = result.isCalculationSuccessful();
+    this.errMessage = result.getErrMessage();
+  }
+
+  /**
+   * Leaves the critical flow unsolved, its properties reading as {@code NaN}.
+   */
+  void skipCriticalFlow() {
+    this.criticalDepth = Double.NaN;
+    this.criticalSlope = Double.NaN;
+    this.criticalWaterElevation = Double.NaN;
+    this.criticalFlowSolved = false;
+  }
+
+  /**
+   * Marks the solve as failed.
+   * @param message A description of the error
+   * @return ChannelResult of the failure
+   */
+  ChannelResult fail(String message) {
+    this.successful = false;
+    this.errMessage = message;
+    return new ChannelResult(this);
+  }
+
+  /**
+   * Marks the solve as successful.
+   * @return ChannelResult of the solution
+   */
+  ChannelResult succeed() {
+    this.successful = true;
+    return new ChannelResult(this);
+  }
+}
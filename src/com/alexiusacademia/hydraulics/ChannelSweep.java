@@ -0,0 +1,362 @@
+package com.alexiusacademia.hydraulics;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Parallel parameter sweep over a {@code SweepGrid} for any channel shape and unknown.
+ *
+ * The index range of the grid is split recursively on a fork/join pool. Each leaf task solves a
+ * contiguous block of grid points with one channel instance of its own, so the threads share
+ * nothing but the sink. Scenarios that are solved and pass the filter are streamed to the sink.
+ * @param <C> Channel type
+ */
+public final class ChannelSweep<C extends OpenChannel> {
+
+  /* **********************************
+   * Constants
+   ***********************************/
+  // Bounds of the number of grid points solved by a leaf task
+  private static final long MIN_LEAF_SIZE = 256;
+  private static final long MAX_LEAF_SIZE = 65536;
+
+  /**
+   * Creates the channels of a shape and applies the swept parameters.
+   */
+  private abstract static class Shape<C extends OpenChannel> {
+    private final SweepGrid.Parameter unknown;
+
+    Shape(SweepGrid.Parameter unknown) {
+      this.unknown = unknown;
+    }
+
+    abstract C create();
+
+    /**
+     * Applies a parameter to the channel.
+     * @return Boolean False if the shape has no such parameter
+     */
+    abstract boolean set(C channel, SweepGrid.Parameter parameter, double value);
+  }
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private final Shape<C> shape;
+  private SweepGrid grid = new SweepGrid();
+  private Predicate<? super C> filter;
+  private double tolerance = RootFinder.DEFAULT_TOLERANCE;
+  private int maxIterations = RootFinder.DEFAULT_MAX_ITERATIONS;
+
+  private ChannelSweep(Shape<C> shape) {
+    this.shape = shape;
+  }
+
+  /* **********************************
+   * Factories
+   ***********************************/
+
+  /**
+   * Creates a sweep of rectangular channels.
+   * @param unknown The unknown from the enum Unknown
+   * @return ChannelSweep
+   */
+  public static ChannelSweep<RectangularOpenChannel> rectangular(final RectangularOpenChannel.Unknown unknown) {
+    return new ChannelSweep<>(new Shape<RectangularOpenChannel>(SweepGrid.Parameter.valueOf(unknown.name())) {
+      @Override
+      RectangularOpenChannel create() {
+        return new RectangularOpenChannel(unknown);
+      }
+
+      @Override
+      boolean set(RectangularOpenChannel channel, SweepGrid.Parameter parameter, double value) {
+        switch (parameter) {
+          case BASE_WIDTH:
+            channel.setBaseWidth(value);
+            return true;
+          default:
+            return setCommon(channel, parameter, value);
+        }
+      }
+    });
+  }
+
+  /**
+   * Creates a sweep of trapezoidal channels.
+   * @param unknown The unknown from the enum Unknown
+   * @return ChannelSweep
+   */
+  public static ChannelSweep<TrapezoidalOpenChannel> trapezoidal(final TrapezoidalOpenChannel.Unknown unknown) {
+    return new ChannelSweep<>(new Shape<TrapezoidalOpenChannel>(SweepGrid.Parameter.valueOf(unknown.name())) {
+      @Override
+      TrapezoidalOpenChannel create() {
+        return new TrapezoidalOpenChannel(unknown);
+      }
+
+      @Override
+      boolean set(TrapezoidalOpenChannel channel, SweepGrid.Parameter parameter, double value) {
+        switch (parameter) {
+          case BASE_WIDTH:
+            channel.setBaseWidth(value);
+            return true;
+          case SIDE_SLOPE:
+            channel.setSideSlope(value);
+            return true;
+          default:
+            return setCommon(channel, parameter, value);
+        }
+      }
+    });
+  }
+
+  /**
+   * Creates a sweep of circular channels.
+   * @param unknown The unknown from the enum Unknown
+   * @return ChannelSweep
+   */
+  public static ChannelSweep<CircularOpenChannel> circular(final CircularOpenChannel.Unknown unknown) {
+    return new ChannelSweep<>(new Shape<CircularOpenChannel>(SweepGrid.Parameter.valueOf(unknown.name())) {
+      @Override
+      CircularOpenChannel create() {
+        return new CircularOpenChannel(unknown);
+      }
+
+      @Override
+      boolean set(CircularOpenChannel channel, SweepGrid.Parameter parameter, double value) {
+        switch (parameter) {
+          case DIAMETER:
+            channel.setDiameter(value);
+            return true;
+          default:
+            return setCommon(channel, parameter, value);
+        }
+      }
+    });
+  }
+
+  /**
+   * Creates a sweep of an irregular section.
+   * @param unknown The unknown from the enum Unknown
+   * @param geometry Section geometry, shared by all the channels of the sweep
+   * @return ChannelSweep
+   */
+  public static ChannelSweep<IrregularSectionChannel> irregular(final IrregularSectionChannel.Unknown unknown,
+                                                               final SectionGeometry geometry) {
+    return new ChannelSweep<>(new Shape<IrregularSectionChannel>(SweepGrid.Parameter.valueOf(unknown.name())) {
+      @Override
+      IrregularSectionChannel create() {
+        return new IrregularSectionChannel(unknown, geometry);
+      }
+
+      @Override
+      boolean set(IrregularSectionChannel channel, SweepGrid.Parameter parameter, double value) {
+        switch (parameter) {
+          case WATER_ELEVATION:
+            channel.setWaterElevation((float) value);
+            return true;
+          case WATER_DEPTH:
+            return false;
+          default:
+            return setCommon(channel, parameter, value);
+        }
+      }
+    });
+  }
+
+  /**
+   * Applies the parameters common to every shape.
+   */
+  private static boolean setCommon(OpenChannel channel, SweepGrid.Parameter parameter, double value) {
+    switch (parameter) {
+      case DISCHARGE:
+        channel.setDischarge(value);
+        return true;
+      case BED_SLOPE:
+        channel.setBedSlope(value);
+        return true;
+      case MANNING_ROUGHNESS:
+        channel.setManningRoughness(value);
+        return true;
+      case WATER_DEPTH:
+        channel.setWaterDepth(value);
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Filter keeping the scenarios with an average velocity within the given limits.
+   * @param min Minimum velocity
+   * @param max Maximum velocity
+   * @return Predicate
+   */
+  public static Predicate<OpenChannel> velocityBetween(final double min, final double max) {
+    return channel -> channel.getAverageVelocity() >= min && channel.getAverageVelocity() <= max;
+  }
+
+  /* **********************************
+   * Setters
+   ***********************************/
+
+  public void setGrid(SweepGrid grid) {
+    this.grid = grid;
+  }
+
+  /**
+   * Sets the filter of the solved scenarios. Only scenarios accepted by the filter reach the sink.
+   * @param filter Predicate on the analyzed channel, null to keep every solved scenario
+   */
+  public void setFilter(Predicate<? super C> filter) {
+    this.filter = filter;
+  }
+
+  public void setTolerance(double tolerance) {
+    this.tolerance = tolerance;
+  }
+
+  public void setMaxIterations(int maxIterations) {
+    this.maxIterations = maxIterations;
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  public SweepGrid getGrid() {
+    return grid;
+  }
+
+  /* **********************************
+   * Methods
+   ***********************************/
+
+  /**
+   * Runs the sweep on the common fork/join pool.
+   * @param sink Receiver of the solved scenarios
+   * @return Long Number of scenarios passed to the sink
+   */
+  public long run(SweepSink<? super C> sink) {
+    return run(sink, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Runs the sweep on the given fork/join pool.
+   * @param sink Receiver of the solved scenarios
+   * @param pool Pool running the tasks
+   * @return Long Number of scenarios passed to the sink
+   */
+  public long run(SweepSink<? super C> sink, ForkJoinPool pool) {
+    Layout layout = new Layout(this.grid);
+
+    // Every swept parameter must apply to the shape, and the unknown is solved, not swept
+    C probe = this.shape.create();
+    for (SweepGrid.Parameter parameter : layout.parameters) {
+      if (parameter == this.shape.unknown) {
+        throw new IllegalArgumentException("The unknown " + parameter + " cannot be swept.");
+      }
+      if (!this.shape.set(probe, parameter, 0)) {
+        throw new IllegalArgumentException("The parameter " + parameter + " does not apply to this shape.");
+      }
+    }
+
+    long size = this.grid.size();
+    long leafSize = Math.max(MIN_LEAF_SIZE, Math.min(MAX_LEAF_SIZE, size / (8L * pool.getParallelism())));
+    LongAdder accepted = new LongAdder();
+    pool.invoke(new SweepTask(layout, sink, accepted, 0, size, leafSize));
+    return accepted.sum();
+  }
+
+  /**
+   * Solves a contiguous block of grid points with a single channel.
+   */
+  private void solveBlock(Layout layout, SweepSink<? super C> sink, LongAdder accepted, long from, long to) {
+    C channel = this.shape.create();
+    channel.setTolerance(this.tolerance);
+    channel.setMaxIterations(this.maxIterations);
+
+    int axes = layout.parameters.length;
+    int[] position = new int[axes];
+    layout.decode(from, position);
+
+    for (long index = from; index < to; index++) {
+      for (int k = 0; k < axes; k++) {
+        this.shape.set(channel, layout.parameters[k], layout.values[k][position[k]]);
+      }
+
+      if (channel.analyze() && (this.filter == null || this.filter.test(channel))) {
+        sink.accept(index, channel);
+        accepted.increment();
+      }
+
+      // Advance the odometer, the last parameter varying fastest
+      for (int k = axes - 1; k >= 0; k--) {
+        if (++position[k] < layout.values[k].length) {
+          break;
+        }
+        position[k] = 0;
+      }
+    }
+  }
+
+  /**
+   * Snapshot of the grid used while the sweep runs.
+   */
+  private static final class Layout {
+    private final SweepGrid.Parameter[] parameters;
+    private final double[][] values;
+
+    Layout(SweepGrid grid) {
+      this.parameters = grid.getParameters();
+      this.values = new double[parameters.length][];
+      for (int k = 0; k < parameters.length; k++) {
+        this.values[k] = grid.getValues(parameters[k]);
+      }
+    }
+
+    /**
+     * Decodes a grid index into the position along every parameter.
+     */
+    void decode(long index, int[] position) {
+      for (int k = parameters.length - 1; k >= 0; k--) {
+        position[k] = (int) (index % values[k].length);
+        index /= values[k].length;
+      }
+    }
+  }
+
+  /**
+   * Fork/join task splitting the index range in halves down to the leaf size.
+   */
+  @SuppressWarnings("serial")
+  private final class SweepTask extends RecursiveAction {
+    private final Layout layout;
+    private final SweepSink<? super C> sink;
+    private final LongAdder accepted;
+    private final long from;
+    private final long to;
+    private final long leafSize;
+
+    SweepTask(Layout layout, SweepSink<? super C> sink, LongAdder accepted, long from, long to, long leafSize) {
+      this.layout = layout;
+      this.sink = sink;
+      this.accepted = accepted;
+      this.from = from;
+      this.to = to;
+      this.leafSize = leafSize;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= leafSize) {
+        solveBlock(layout, sink, accepted, from, to);
+        return;
+      }
+      long middle = from + (to - from) / 2;
+      invokeAll(new SweepTask(layout, sink, accepted, from, middle, leafSize),
+              new SweepTask(layout, sink, accepted, middle, to, leafSize));
+    }
+  }
+}
@@ -0,0 +1,187 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * Dimensionless hydraulic elements of a pipe flowing partially full.
+ *
+ * The table is tabulated once against the depth ratio y/D on a uniform grid and shared by every
+ * {@code CircularOpenChannel}. Its columns are the factors, derived from A/D^2, R/D and T/D, used to
+ * invert the common equations without trigonometry:
+ * <ul>
+ *   <li>section factor (A/D^2)(R/D)^(2/3), for the water depth at a given discharge</li>
+ *   <li>diameter factor (A/D^2)(R/D)^(2/3) / (y/D)^(8/3), for the diameter at a given depth</li>
+ *   <li>critical factor (A/D^2)^3 / (T/D), for the critical depth</li>
+ * </ul>
+ * Lookups invert the cubic (Catmull-Rom) interpolation of a column, and return a starting value that
+ * the channel polishes with the exact equations.
+ */
+final class CircularSectionTable {
+
+  /* **********************************
+   * Constants
+   ***********************************/
+  // Number of intervals of the depth ratio grid
+  static final int INTERVALS = 2048;
+
+  // Spacing of the depth ratio grid
+  static final double STEP = 1.0 / INTERVALS;
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private final double[] sectionFactor;
+  private final double[] diameterFactor;
+  private final double[] criticalFactor;
+
+  /**
+   * Lazily built instance, created on first access by the class loader.
+   */
+  private static final class Holder {
+    static final CircularSectionTable INSTANCE = new CircularSectionTable();
+  }
+
+  /**
+   * Returns the shared table, building it on first use.
+   * @return CircularSectionTable
+   */
+  static CircularSectionTable getInstance() {
+    return Holder.INSTANCE;
+  }
+
+  /**
+   * Tabulates the elements of a pipe with unit diameter.
+   */
+  private CircularSectionTable() {
+    int n = INTERVALS + 1;
+    sectionFactor = new double[n];
+    diameterFactor = new double[n];
+    criticalFactor = new double[n];
+
+    for (int i = 0; i < n; i++) {
+      double r = i * STEP;
+      double theta = 2 * Math.acos(1 - 2 * r);
+
+      double area = (theta - Math.sin(theta)) / 8;
+      double perimeter = theta / 2;
+      double topWidth = 2 * Math.sqrt(r * (1 - r));
+      double hydraulicRadius = (i == 0) ? 0 : area / perimeter;
+      sectionFactor[i] = area * Math.pow(hydraulicRadius, (2.0 / 3.0));
+      diameterFactor[i] = (i == 0) ? Double.POSITIVE_INFINITY : sectionFactor[i] / Math.pow(r, (8.0 / 3.0));
+      criticalFactor[i] = (i == INTERVALS) ? Double.POSITIVE_INFINITY : Math.pow(area, 3) / topWidth;
+    }
+    criticalFactor[0] = 0;
+  }
+
+  /* **********************************
+   * Lookups
+   ***********************************/
+
+  /**
+   * Depth ratio having the given section factor, on the rising limb up to {@code maxRatio}.
+   * @param factor Section factor, Q n / (sqrt(S) D^(8/3))
+   * @param maxRatio Largest depth ratio searched
+   * @return Double Approximate depth ratio
+   */
+  double depthRatioForSectionFactor(double factor, double maxRatio) {
+    return invert(sectionFactor, factor, 0, (int) Math.floor(maxRatio * INTERVALS));
+  }
+
+  /**
+   * Depth ratio having the given diameter factor. The factor decreases as the depth ratio increases.
+   * @param factor Diameter factor, Q n / (sqrt(S) y^(8/3))
+   * @return Double Approximate depth ratio
+   */
+  double depthRatioForDiameterFactor(double factor) {
+    return invert(diameterFactor, factor, 1, INTERVALS);
+  }
+
+  /**
+   * Depth ratio having the given critical factor.
+   * @param factor Critical factor, Q^2 / (g D^5)
+   * @return Double Approximate depth ratio
+   */
+  double depthRatioForCriticalFactor(double factor) {
+    return invert(criticalFactor, factor, 0, INTERVALS - 1);
+  }
+
+  /**
+   * Finds the depth ratio where a monotone column reaches the target value.
+   * The interval is located by bisection, then the cubic segment is inverted by Newton's method.
+   * @param column Tabulated values, monotone between the given indices
+   * @param target Target value
+   * @param first First index searched
+   * @param last Last index searched
+   * @return Double Depth ratio, clamped to the searched range
+   */
+  private static double invert(double[] column, double target, int first, int last) {
+    boolean increasing = column[last] > column[first];
+    int lo = first, hi = last;
+
+    if (increasing ? target <= column[lo] : target >= column[lo]) {
+      return lo * STEP;
+    }
+    if (increasing ? target >= column[hi] : target <= column[hi]) {
+      return hi * STEP;
+    }
+
+    while (hi - lo > 1) {
+      int mid = (lo + hi) >>> 1;
+      if ((column[mid] < target) == increasing) {
+        lo = mid;
+      } else {
+        hi = mid;
+      }
+    }
+
+    double y0 = column[lo];
+    double y1 = column[hi];
+    double t = (target - y0) / (y1 - y0);
+
+    // Refine on the cubic segment where the neighbouring values are finite
+    double m0 = tangent(column, lo);
+    double m1 = tangent(column, hi);
+    if (!Double.isInfinite(m0) && !Double.isNaN(m0) && !Double.isInfinite(m1) && !Double.isNaN(m1)) {
+      for (int k = 0; k < 3; k++) {
+        double slope = hermiteSlope(y0, y1, m0, m1, t);
+        if (slope == 0) {
+          break;
+        }
+        double next = t - (hermite(y0, y1, m0, m1, t) - target) / slope;
+        if (next < 0 || next > 1) {
+          break;
+        }
+        t = next;
+      }
+    }
+    return (lo + t) * STEP;
+  }
+
+  /**
+   * Tangent of a column at a grid point, per grid interval.
+   */
+  private static double tangent(double[] column, int i) {
+    if (i == 0) {
+      return column[1] - column[0];
+    }
+    if (i == INTERVALS) {
+      return column[INTERVALS] - column[INTERVALS - 1];
+    }
+    return 0.5 * (column[i + 1] - column[i - 1]);
+  }
+
+  /**
+   * Cubic Hermite polynomial on a unit interval.
+   */
+  private static double hermite(double y0, double y1, double m0, double m1, double t) {
+    double t2 = t * t;
+    double t3 = t2 * t;
+    return (2 * t3 - 3 * t2 + 1) * y0 + (t3 - 2 * t2 + t) * m0 + (-2 * t3 + 3 * t2) * y1 + (t3 - t2) * m1;
+  }
+
+  /**
+   * First derivative of the cubic Hermite polynomial on a unit interval.
+   */
+  private static double hermiteSlope(double y0, double y1, double m0, double m1, double t) {
+    double t2 = t * t;
+    return (6 * t2 - 6 * t) * y0 + (3 * t2 - 4 * t + 1) * m0 + (-6 * t2 + 6 * t) * y1 + (3 * t2 - 2 * t) * m1;
+  }
+}
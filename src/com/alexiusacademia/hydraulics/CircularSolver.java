@@ -0,0 +1,465 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * Stateless solver of pipes flowing partially full.
+ *
+ * Every call works on its own copy of the inputs and returns an immutable result, so a single
+ * instance can be shared by any number of threads without locking. Initial depths come from the
+ * shared partial flow table and are polished with the exact equations.
+ */
+public final class CircularSolver {
+
+  /* **********************************
+   * Constants
+   ***********************************/
+  // Ratio of depth to diameter where the discharge of a partially full pipe is maximum
+  static final double MAX_DISCHARGE_DEPTH_RATIO = 0.9382;
+
+  // Section factor (A/D^2)(R/D)^(2/3) at that ratio, the largest discharge of a pipe in the same units
+  private static final double MAX_SECTION_FACTOR = Math.pow(sectionArea(MAX_DISCHARGE_DEPTH_RATIO, 1), (5.0 / 3.0))
+          / Math.pow(sectionPerimeter(MAX_DISCHARGE_DEPTH_RATIO, 1), (2.0 / 3.0));
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private final RootFinder finder;
+
+  /**
+   * Creates a {@code CircularSolver} with the default tolerance and iteration cap.
+   */
+  public CircularSolver() {
+    this(RootFinder.DEFAULT_TOLERANCE, RootFinder.DEFAULT_MAX_ITERATIONS);
+  }
+
+  /**
+   * Creates a {@code CircularSolver} with the given tolerance and iteration cap.
+   * @param tolerance Relative tolerance of the iterative solutions
+   * @param maxIterations Iteration cap of a single iterative solution
+   */
+  public CircularSolver(double tolerance, int maxIterations) {
+    this(tolerance, maxIterations, null);
+  }
+
+  /**
+   * Creates a {@code CircularSolver} whose solves stop once the given token is cancelled or expired.
+   * @param tolerance Relative tolerance of the iterative solutions
+   * @param maxIterations Iteration cap of a single iterative solution
+   * @param token Cancellation token of the solves, null for none
+   */
+  public CircularSolver(double tolerance, int maxIterations, CancellationToken token) {
+    this.finder = new RootFinder(tolerance, maxIterations, token);
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  public double getTolerance() {
+    return this.finder.getTolerance();
+  }
+
+  public int getMaxIterations() {
+    return this.finder.getMaxIterations();
+  }
+
+  public CancellationToken getCancellationToken() {
+    return this.finder.getCancellationToken();
+  }
+
+  /* **********************************
+   * Methods
+   ***********************************/
+
+  /**
+   * Solves for the unknown of the pipe and its critical flow properties.
+   * @param spec Inputs of the pipe
+   * @return ChannelResult, unsuccessful with an error message if the inputs are invalid or the solution fails
+   */
+  public ChannelResult solve(CircularSpec spec) {
+    return solve(spec, true);
+  }
+
+  /**
+   * Solves for the unknown of the pipe, and for its critical flow properties only if asked to. The Froude
+   * number and flow type are always solved.
+   * @param spec Inputs of the pipe
+   * @param criticalFlow False to skip the critical depth and critical slope, which are left {@code NaN}
+   * @return ChannelResult, unsuccessful with an error message if the inputs are invalid or the solution fails
+   */
+  public ChannelResult solve(CircularSpec spec, boolean criticalFlow) {
+    Object event = SolverMetrics.beginSolve();
+    long start = SolverMetrics.start(event);
+    ChannelResult result = compute(spec, criticalFlow);
+    SolverMetrics.stop(start, event, SolverMetrics.Shape.CIRCULAR, spec.getUnknown(), result);
+    return result;
+  }
+
+  /**
+   * Solves the channel without measuring it.
+   */
+  private ChannelResult compute(CircularSpec spec, boolean criticalFlow) {
+    ChannelState state = new ChannelState();
+    state.discharge = spec.getDischarge();
+    state.bedSlope = spec.getBedSlope();
+    state.manningRoughness = spec.getManningRoughness();
+    state.diameter = spec.getDiameter();
+    state.waterDepth = spec.getWaterDepth();
+
+    try {
+      validate(spec);
+    } catch (InvalidValueException | DimensionException e) {
+      return state.fail(e.getMessage());
+    }
+
+    try {
+      switch (spec.getUnknown()) {
+        case DISCHARGE:
+          solveForDischarge(state);
+          break;
+        case DIAMETER:
+          solveForDiameter(state);
+          break;
+        case BED_SLOPE:
+          solveForBedSlope(state);
+          break;
+        case WATER_DEPTH:
+          solveForWaterDepth(state);
+          break;
+      }
+    } catch (ConvergenceException e) {
+      return state.fail(e.getMessage());
+    }
+
+    solveForFlowType(state);
+    if (criticalFlow) {
+      solveForCriticalFlow(state);
+    } else {
+      state.skipCriticalFlow();
+    }
+    state.percentFull = state.waterDepth / state.diameter * 100;
+
+    // A critical depth cut short by the token reads as NaN, the whole solve is failed instead
+    String interruption = this.finder.interruption();
+    if (interruption != null) {
+      return state.fail(interruption);
+    }
+    return state.succeed();
+  }
+
+  /**
+   * Solve for the unknown water depth
+   */
+  private void solveForWaterDepth(final ChannelState state) throws ConvergenceException {
+    final double d = state.diameter;
+
+    RootFinder.Equation f = new RootFinder.Equation() {
+      @Override
+      public double value(double h) {
+        return manningDischarge(state, sectionArea(h, d), sectionPerimeter(h, d)) - state.discharge;
+      }
+
+      @Override
+      public double derivative(double h) {
+        double area = sectionArea(h, d);
+        double perimeter = sectionPerimeter(h, d);
+        double topWidth = sectionTopWidth(h, d);
+        double q = manningDischarge(state, area, perimeter);
+        return q * (5 * topWidth / (3 * area) - 4 * d / (3 * perimeter * topWidth));
+      }
+    };
+
+    // Depth ratio from the partial flow table, valid up to the depth of maximum discharge
+    CircularSectionTable table = CircularSectionTable.getInstance();
+    double factor = state.discharge * state.manningRoughness / (Math.sqrt(state.bedSlope) * Math.pow(d, (8.0 / 3.0)));
+    if (factor > MAX_SECTION_FACTOR) {
+      throw new ConvergenceException("Discharge exceeds the maximum capacity of the pipe.");
+    }
+    double ratio = table.depthRatioForSectionFactor(factor, MAX_DISCHARGE_DEPTH_RATIO);
+
+    state.waterDepth = polish(f, ratio * d, CircularSectionTable.STEP * d, 0, MAX_DISCHARGE_DEPTH_RATIO * d);
+    hydraulicElements(state);
+  }
+
+  /**
+   * Solve for the unknown bed slope, in closed form as the wetted section does not change with the slope
+   */
+  private static void solveForBedSlope(ChannelState state) throws ConvergenceException {
+    double area = sectionArea(state.waterDepth, state.diameter);
+    double perimeter = sectionPerimeter(state.waterDepth, state.diameter);
+    double slope = Hydraulics.manningSlope(state.discharge, area, perimeter, state.manningRoughness);
+    if (!(slope < Double.POSITIVE_INFINITY)) {
+      throw new ConvergenceException("Unable to bracket the solution.");
+    }
+    state.bedSlope = slope;
+    hydraulicElements(state);
+  }
+
+  /**
+   * Solve for the unknown diameter
+   */
+  private void solveForDiameter(final ChannelState state) throws ConvergenceException {
+    final double h = state.waterDepth;
+
+    RootFinder.Equation f = new RootFinder.Equation() {
+      @Override
+      public double value(double d) {
+        return manningDischarge(state, sectionArea(h, d), sectionPerimeter(h, d)) - state.discharge;
+      }
+
+      @Override
+      public double derivative(double d) {
+        double area = sectionArea(h, d);
+        double perimeter = sectionPerimeter(h, d);
+        double topWidth = sectionTopWidth(h, d);
+        double q = manningDischarge(state, area, perimeter);
+        // dA/dD = (2A - hT) / D and dP/dD = P / D - 2h / T
+        return q * (5 * (2 * area - h * topWidth) / (3 * area * d) - 2 * (perimeter / d - 2 * h / topWidth) / (3 * perimeter));
+      }
+    };
+
+    // Depth ratio from the partial flow table, the smallest pipe is the one flowing full
+    CircularSectionTable table = CircularSectionTable.getInstance();
+    double factor = state.discharge * state.manningRoughness / (Math.sqrt(state.bedSlope) * Math.pow(h, (8.0 / 3.0)));
+    double ratio = table.depthRatioForDiameterFactor(factor);
+    if (ratio >= 1) {
+      throw new ConvergenceException("Discharge is less than the full flow capacity at the given water depth.");
+    }
+
+    double lower = h / Math.min(1, ratio + CircularSectionTable.STEP);
+    double upper = h / Math.max(ratio - CircularSectionTable.STEP, ratio / 2);
+    try {
+      state.diameter = finder.newton(f, lower, upper, h / ratio);
+    } catch (ConvergenceException e) {
+      upper = finder.expandUpper(f, h, 2 * h);
+      state.diameter = finder.newton(f, h, upper, h / ratio);
+    }
+    hydraulicElements(state);
+  }
+
+  /**
+   * Solve for discharge
+   */
+  private static void solveForDischarge(ChannelState state) {
+    hydraulicElements(state);
+    state.discharge = state.averageVelocity * state.wettedArea;
+  }
+
+  /**
+   * Computes the wetted area, wetted perimeter, hydraulic radius, top width and average velocity of the section.
+   */
+  private static void hydraulicElements(ChannelState state) {
+    double h = state.waterDepth;
+    double d = state.diameter;
+    state.wettedArea = sectionArea(h, d);
+    state.wettedPerimeter = sectionPerimeter(h, d);
+    state.hydraulicRadius = state.wettedArea / state.wettedPerimeter;
+    state.topWidth = sectionTopWidth(h, d);
+    state.averageVelocity = Hydraulics.manningVelocity(state.hydraulicRadius, state.bedSlope, state.manningRoughness);
+  }
+
+  /**
+   * Completes a result solved without its critical flow, measured under {@link SolverMetrics.CriticalFlow}.
+   * @param result Successful result of {@link #solve(CircularSpec, boolean)}
+   * @return ChannelResult with the critical flow properties, unsuccessful if the token stopped it
+   */
+  ChannelResult criticalFlow(ChannelResult result) {
+    Object event = SolverMetrics.beginSolve();
+    long start = SolverMetrics.start(event);
+    ChannelResult critical = computeCriticalFlow(result);
+    SolverMetrics.stop(start, event, SolverMetrics.Shape.CIRCULAR, SolverMetrics.CriticalFlow.CRITICAL_FLOW,
+            critical);
+    return critical;
+  }
+
+  /**
+   * Completes a result solved without its critical flow, without measuring it.
+   */
+  private ChannelResult computeCriticalFlow(ChannelResult result) {
+    ChannelState state = new ChannelState(result);
+    solveForCriticalFlow(state);
+
+    // A critical depth cut short by the token reads as NaN, the critical flow is failed instead
+    String interruption = this.finder.interruption();
+    if (interruption != null) {
+      return state.fail(interruption);
+    }
+    return state.succeed();
+  }
+
+  /**
+   * Solve for the hydraulic depth, froude number and flow type
+   */
+  private static void solveForFlowType(ChannelState state) {
+    state.hydraulicDepth = state.wettedArea / state.topWidth;
+    state.froudeNumber = state.averageVelocity / Math.sqrt(Hydraulics.GRAVITY_METRIC * state.hydraulicDepth);
+
+    // Select the flow type
+    state.flowType = Hydraulics.flowType(state.froudeNumber);
+  }
+
+  /**
+   * Solve for critical flow properties (critical depth and critical slope)
+   */
+  private void solveForCriticalFlow(ChannelState state) {
+    final double d = state.diameter;
+
+    // Critical depth
+    double yc = criticalDepth(state.discharge, d);
+
+    // Critical area, perimeter, hydraulic radius
+    double Ac, Pc, Rc;
+
+    state.criticalDepth = yc;
+
+    Ac = sectionArea(yc, d);
+    Pc = sectionPerimeter(yc, d);
+    Rc = Ac / Pc;
+    state.criticalSlope = Math.pow((state.discharge / (Ac * Math.pow(Rc, (2.0/3.0))) * state.manningRoughness), 2);
+    state.criticalFlowSolved = true;
+  }
+
+  /**
+   * Solves the critical flow condition, A^3 / T = Q^2 / g, with A^3 / T growing without bound at the crown.
+   * @param discharge Discharge
+   * @param d Pipe diameter
+   * @return Double Critical depth, {@code NaN} if it cannot be solved
+   */
+  double criticalDepth(double discharge, final double d) {
+    // Q^2 / g
+    final double Q2g = Math.pow(discharge, 2) / Hydraulics.GRAVITY_METRIC;
+
+    RootFinder.Equation f = new RootFinder.Equation() {
+      @Override
+      public double value(double y) {
+        double A = sectionArea(y, d);
+        if (A <= 0) {
+          return -Q2g;
+        }
+        return Math.pow(A, 3) / sectionTopWidth(y, d) - Q2g;
+      }
+
+      @Override
+      public double derivative(double y) {
+        double A = sectionArea(y, d);
+        double T = sectionTopWidth(y, d);
+        // dT/dy = 2 (d - 2y) / T
+        return 3 * A * A - Math.pow(A, 3) * 2 * (d - 2 * y) / Math.pow(T, 3);
+      }
+    };
+
+    // Depth ratio from the partial flow table
+    double ratio = CircularSectionTable.getInstance().depthRatioForCriticalFactor(Q2g / Math.pow(d, 5));
+
+    try {
+      return polish(f, ratio * d, CircularSectionTable.STEP * d, 0, d * (1 - 1.0e-9));
+    } catch (ConvergenceException e) {
+      return Double.NaN;
+    }
+  }
+
+  /**
+   * Polishes a depth taken from the partial flow table with the exact equation.
+   * A bracket of one table interval around the depth is tried first, then the full range.
+   * @param f The exact equation
+   * @param guess Depth from the table
+   * @param halfWidth Half width of the local bracket
+   * @param lower Lower limit of the full range
+   * @param upper Upper limit of the full range
+   * @return Double The polished depth
+   * @throws ConvergenceException If the exact equation cannot be solved
+   */
+  private double polish(RootFinder.Equation f, double guess, double halfWidth, double lower, double upper)
+          throws ConvergenceException {
+    try {
+      return finder.newton(f, Math.max(lower, guess - halfWidth), Math.min(upper, guess + halfWidth), guess);
+    } catch (ConvergenceException e) {
+      return finder.newton(f, lower, upper, guess);
+    }
+  }
+
+  /**
+   * Manning's discharge at the slope and roughness of the solve.
+   */
+  private static double manningDischarge(ChannelState state, double area, double perimeter) {
+    return Hydraulics.manningDischarge(area, perimeter, state.bedSlope, state.manningRoughness);
+  }
+
+  /**
+   * Angle subtended at the pipe center by the wetted arc, in radians.
+   * @param y Depth of water
+   * @param d Pipe diameter
+   * @return Double Central angle
+   */
+  static double centralAngle(double y, double d) {
+    return 2 * Math.acos(1 - 2 * y / d);
+  }
+
+  /**
+   * Wetted area of a pipe flowing partially full.
+   * @param y Depth of water
+   * @param d Pipe diameter
+   * @return Double Wetted area
+   */
+  static double sectionArea(double y, double d) {
+    double theta = centralAngle(y, d);
+    return Math.pow(d, 2) * (theta - Math.sin(theta)) / 8;
+  }
+
+  /**
+   * Wetted perimeter of a pipe flowing partially full.
+   * @param y Depth of water
+   * @param d Pipe diameter
+   * @return Double Wetted perimeter
+   */
+  static double sectionPerimeter(double y, double d) {
+    return d * centralAngle(y, d) / 2;
+  }
+
+  /**
+   * Top width of the water surface.
+   * @param y Depth of water
+   * @param d Pipe diameter
+   * @return Double Top width of the water
+   */
+  static double sectionTopWidth(double y, double d) {
+    return 2 * Math.sqrt(y * (d - y));
+  }
+
+  /**
+   * Check for invalid inputs
+   * @param spec Inputs of the channel
+   * @throws InvalidValueException If a flow property is invalid
+   * @throws DimensionException If a dimension of the pipe is invalid
+   */
+  private static void validate(CircularSpec spec) throws InvalidValueException, DimensionException {
+    CircularOpenChannel.Unknown unknown = spec.getUnknown();
+    if (spec.getManningRoughness() <= 0) {
+      throw new InvalidValueException("Manning's roughness must be greater than zero.");
+    }
+    if (unknown != CircularOpenChannel.Unknown.DISCHARGE) {
+      if (spec.getDischarge() <= 0) {
+        throw new InvalidValueException("Discharge must be greater than zero.");
+      }
+    }
+    if (unknown != CircularOpenChannel.Unknown.BED_SLOPE) {
+      if (spec.getBedSlope() <= 0) {
+        throw new InvalidValueException("Bed slope must not be flat or less than zero.");
+      }
+    }
+    if (unknown != CircularOpenChannel.Unknown.WATER_DEPTH) {
+      if (spec.getWaterDepth() == 0) {
+        throw new DimensionException("Water depth must be greater than zero.");
+      } else if (spec.getWaterDepth() < 0) {
+        throw new DimensionException("Invalid depth of water.");
+      }
+    }
+    if (unknown != CircularOpenChannel.Unknown.DIAMETER) {
+      if (spec.getDiameter() <= 0) {
+        throw new DimensionException("Diameter must be greater than zero.");
+      }
+      if (spec.getWaterDepth() >= spec.getDiameter()) {
+        throw new DimensionException("Water depth must be less than the pipe diameter.");
+      }
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * Immutable inputs of a pipe flowing partially full, solved by a {@code CircularSolver}.
+ * The input matching the unknown is ignored. Values are in metric units.
+ */
+public final class CircularSpec {
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private final CircularOpenChannel.Unknown unknown;
+  private final double discharge;
+  private final double bedSlope;
+  private final double diameter;
+  private final double waterDepth;
+  private final double manningRoughness;
+
+  /**
+   * Creates a {@code CircularSpec} with the given inputs.
+   * @param unknown The unknown from the enum Unknown
+   * @param discharge The flow rate.
+   * @param bedSlope The pipe slope.
+   * @param diameter The pipe internal diameter.
+   * @param waterDepth The depth of the water.
+   * @param manningRoughness The Manning's roughness coefficient.
+   */
+  public CircularSpec(CircularOpenChannel.Unknown unknown, double discharge, double bedSlope,
+                      double diameter, double waterDepth, double manningRoughness) {
+    this.unknown = unknown;
+    this.discharge = discharge;
+    this.bedSlope = bedSlope;
+    this.diameter = diameter;
+    this.waterDepth = waterDepth;
+    this.manningRoughness = manningRoughness;
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  public CircularOpenChannel.Unknown getUnknown() {
+    return unknown;
+  }
+
+  public double getDischarge() {
+    return discharge;
+  }
+
+  public double getBedSlope() {
+    return bedSlope;
+  }
+
+  public double getDiameter() {
+    return diameter;
+  }
+
+  public double getWaterDepth() {
+    return waterDepth;
+  }
+
+  public double getManningRoughness() {
+    return manningRoughness;
+  }
+}
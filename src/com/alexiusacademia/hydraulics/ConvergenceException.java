@@ -0,0 +1,21 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * A custom exception for iterative solutions that fail to converge.
+ */
+class ConvergenceException extends Exception {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Construct a {@code ConvergenceException} with no parameter.
+   */
+  public ConvergenceException() {}
+
+  /**
+   * Construct a {@code ConvergenceException} with a message parameter.
+   * @param message A string description of the exception.
+   */
+  public ConvergenceException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,395 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * Geometry of a channel cross section as a function of the depth above its lowest point.
+ *
+ * Prismatic shapes evaluate their closed forms, and irregular sections read the stage index of
+ * their {@code SectionGeometry}, so a section is built once and evaluated at any number of depths
+ * without allocating. Instances are immutable and can be shared by any number of stations and threads.
+ * Values are in metric units.
+ */
+public abstract class CrossSection {
+
+  CrossSection() {
+  }
+
+  /* **********************************
+   * Factories
+   ***********************************/
+
+  /**
+   * Creates a rectangular section.
+   * @param baseWidth Base width
+   * @return CrossSection
+   */
+  public static CrossSection rectangular(double baseWidth) {
+    return trapezoidal(baseWidth, 0);
+  }
+
+  /**
+   * Creates a trapezoidal section. A base width of zero gives a triangle.
+   * @param baseWidth Base width
+   * @param sideSlope Horizontal run of the sides for a unit rise
+   * @return CrossSection
+   */
+  public static CrossSection trapezoidal(double baseWidth, double sideSlope) {
+    if (baseWidth < 0 || sideSlope < 0 || (baseWidth == 0 && sideSlope == 0)) {
+      throw new IllegalArgumentException("The section must have a positive width.");
+    }
+    return new Trapezoid(baseWidth, sideSlope);
+  }
+
+  /**
+   * Creates a circular section, flowing partially full.
+   * @param diameter Pipe internal diameter
+   * @return CrossSection
+   */
+  public static CrossSection circular(double diameter) {
+    if (diameter <= 0) {
+      throw new IllegalArgumentException("The diameter must be positive.");
+    }
+    return new Circle(diameter);
+  }
+
+  /**
+   * Creates an irregular section, valid up to its lower bank.
+   * @param geometry Section geometry
+   * @return CrossSection
+   */
+  public static CrossSection irregular(SectionGeometry geometry) {
+    if (geometry.getPointCount() < 3) {
+      throw new IllegalArgumentException("The section must have at least 3 points.");
+    }
+    if (geometry.getLowestBankElevation() <= geometry.getLowestElevation()) {
+      throw new IllegalArgumentException("The banks must be above the lowest point of the section.");
+    }
+    return new Irregular(geometry);
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  /**
+   * Returns the highest depth the section can carry, the crown of a pipe or the lower bank
+   * of an irregular section.
+   * @return Double Maximum depth, infinite for open prismatic sections
+   */
+  public abstract double getMaxDepth();
+
+  /* **********************************
+   * Methods
+   ***********************************/
+
+  /**
+   * Wetted area at the given depth.
+   * @param depth Depth of water
+   * @return Double Wetted area
+   */
+  public abstract double area(double depth);
+
+  /**
+   * Wetted perimeter at the given depth.
+   * @param depth Depth of water
+   * @return Double Wetted perimeter
+   */
+  public abstract double perimeter(double depth);
+
+  /**
+   * Top width of the water surface at the given depth.
+   * @param depth Depth of water
+   * @return Double Top width
+   */
+  public abstract double topWidth(double depth);
+
+  /**
+   * Rate of change of the wetted perimeter with the depth.
+   * @param depth Depth of water
+   * @return Double dP/dy
+   */
+  abstract double perimeterRate(double depth);
+
+  /**
+   * Conveyance K = A R^(2/3) / n at the given depth, so that Q = K sqrt(S).
+   * @param depth Depth of water
+   * @param manningRoughness Manning's roughness coefficient
+   * @return Double Conveyance, zero for a dry section
+   */
+  public double conveyance(double depth, double manningRoughness) {
+    double a = area(depth);
+    if (a <= 0) {
+      return 0;
+    }
+    return a * Math.pow(a / perimeter(depth), (2.0 / 3.0)) / manningRoughness;
+  }
+
+  /**
+   * Critical depth of the given discharge, A^3 / T = Q^2 / g.
+   * @param discharge Discharge
+   * @return Double Lowest critical depth, {@code NaN} if it is above the maximum depth
+   */
+  public double criticalDepth(double discharge) {
+    try {
+      return criticalDepth(discharge, new RootFinder());
+    } catch (ConvergenceException e) {
+      return Double.NaN;
+    }
+  }
+
+  /**
+   * Normal depth of the given discharge, where Manning's discharge equals it.
+   * @param discharge Discharge
+   * @param bedSlope Bed slope
+   * @param manningRoughness Manning's roughness coefficient
+   * @return Double Normal depth, {@code NaN} if the section cannot carry the discharge
+   */
+  public double normalDepth(double discharge, double bedSlope, double manningRoughness) {
+    try {
+      return normalDepth(discharge, bedSlope, manningRoughness, new RootFinder());
+    } catch (ConvergenceException e) {
+      return Double.NaN;
+    }
+  }
+
+  /**
+   * Critical depth of the given discharge.
+   * @param discharge Discharge
+   * @param finder Root finder of the solve
+   * @return Double Lowest critical depth
+   * @throws ConvergenceException If the critical depth is above the maximum depth
+   */
+  double criticalDepth(double discharge, RootFinder finder) throws ConvergenceException {
+    final double Q2g = Math.pow(discharge, 2) / Hydraulics.GRAVITY_METRIC;
+    RootFinder.Equation f = new RootFinder.Equation() {
+      @Override
+      public double value(double y) {
+        return criticalFactor(y) - Q2g;
+      }
+    };
+    double upper = getMaxDepth();
+    if (Double.isInfinite(upper)) {
+      upper = finder.expandUpper(f, 0, 1.0);
+    }
+    return finder.brent(f, 0, upper);
+  }
+
+  /**
+   * Normal depth of the given discharge.
+   * @param discharge Discharge
+   * @param bedSlope Bed slope
+   * @param manningRoughness Manning's roughness coefficient
+   * @param finder Root finder of the solve
+   * @return Double Normal depth
+   * @throws ConvergenceException If the section cannot carry the discharge
+   */
+  double normalDepth(final double discharge, double bedSlope, final double manningRoughness, RootFinder finder)
+          throws ConvergenceException {
+    final double sqrtS = Math.sqrt(bedSlope);
+    RootFinder.Equation f = new RootFinder.Equation() {
+      @Override
+      public double value(double y) {
+        return conveyance(y, manningRoughness) * sqrtS - discharge;
+      }
+    };
+    double upper = getMaxConveyanceDepth();
+    if (Double.isInfinite(upper)) {
+      upper = finder.expandUpper(f, 0, 1.0);
+    }
+    return finder.brent(f, 0, upper);
+  }
+
+  /**
+   * Critical flow factor A^3 / T at the given depth.
+   * @param depth Depth of water
+   * @return Double A^3 / T, the largest double for a closed section without top width
+   */
+  double criticalFactor(double depth) {
+    double a = area(depth);
+    double t = topWidth(depth);
+    if (t > 0) {
+      return Math.pow(a, 3) / t;
+    }
+    return (a > 0) ? Double.MAX_VALUE : 0;
+  }
+
+  /**
+   * Depth of the largest conveyance, the upper limit of a normal depth.
+   * @return Double Depth of the largest conveyance
+   */
+  double getMaxConveyanceDepth() {
+    return getMaxDepth();
+  }
+
+  /**
+   * Trapezoid, rectangle or triangle.
+   */
+  private static final class Trapezoid extends CrossSection {
+    private final double baseWidth;
+    private final double sideSlope;
+
+    // Wetted length of the two sides per unit depth
+    private final double sideLength;
+
+    Trapezoid(double baseWidth, double sideSlope) {
+      this.baseWidth = baseWidth;
+      this.sideSlope = sideSlope;
+      this.sideLength = 2 * Math.sqrt(1 + Math.pow(sideSlope, 2));
+    }
+
+    @Override
+    public double getMaxDepth() {
+      return Double.POSITIVE_INFINITY;
+    }
+
+    @Override
+    public double area(double depth) {
+      return (depth > 0) ? (baseWidth + sideSlope * depth) * depth : 0;
+    }
+
+    @Override
+    public double perimeter(double depth) {
+      return (depth > 0) ? baseWidth + sideLength * depth : 0;
+    }
+
+    @Override
+    public double topWidth(double depth) {
+      return (depth > 0) ? baseWidth + 2 * sideSlope * depth : 0;
+    }
+
+    @Override
+    double perimeterRate(double depth) {
+      return (depth > 0) ? sideLength : 0;
+    }
+
+    /**
+     * Closed form for a rectangle or a triangle.
+     */
+    @Override
+    double criticalDepth(double discharge, RootFinder finder) throws ConvergenceException {
+      if (sideSlope == 0) {
+        return Hydraulics.rectangularCriticalDepth(discharge, baseWidth);
+      }
+      if (baseWidth == 0) {
+        return Hydraulics.triangularCriticalDepth(discharge, sideSlope);
+      }
+      return super.criticalDepth(discharge, finder);
+    }
+
+    /**
+     * Closed form for a triangle.
+     */
+    @Override
+    double normalDepth(double discharge, double bedSlope, double manningRoughness, RootFinder finder)
+            throws ConvergenceException {
+      if (baseWidth == 0) {
+        return Hydraulics.triangularNormalDepth(discharge, sideSlope, bedSlope, manningRoughness);
+      }
+      return super.normalDepth(discharge, bedSlope, manningRoughness, finder);
+    }
+  }
+
+  /**
+   * Pipe flowing partially full.
+   */
+  private static final class Circle extends CrossSection {
+    private final double diameter;
+
+    Circle(double diameter) {
+      this.diameter = diameter;
+    }
+
+    @Override
+    public double getMaxDepth() {
+      return diameter;
+    }
+
+    @Override
+    public double area(double depth) {
+      return CircularSolver.sectionArea(clamp(depth), diameter);
+    }
+
+    @Override
+    public double perimeter(double depth) {
+      return CircularSolver.sectionPerimeter(clamp(depth), diameter);
+    }
+
+    @Override
+    public double topWidth(double depth) {
+      return CircularSolver.sectionTopWidth(clamp(depth), diameter);
+    }
+
+    @Override
+    double perimeterRate(double depth) {
+      // dP/dy = d / sqrt(y (d - y)), twice the diameter over the top width
+      double t = topWidth(depth);
+      return (t > 0) ? 2 * diameter / t : 0;
+    }
+
+    @Override
+    double getMaxConveyanceDepth() {
+      return CircularSolver.MAX_DISCHARGE_DEPTH_RATIO * diameter;
+    }
+
+    private double clamp(double depth) {
+      return Math.max(0, Math.min(depth, diameter));
+    }
+  }
+
+  /**
+   * Irregular section read from its stage index.
+   */
+  private static final class Irregular extends CrossSection {
+    private final StageIndex index;
+    private final double lowestElevation;
+    private final double maxDepth;
+
+    Irregular(SectionGeometry geometry) {
+      this.index = geometry.getStageIndex();
+      this.lowestElevation = geometry.getLowestElevation();
+      this.maxDepth = geometry.getLowestBankElevation() - this.lowestElevation;
+    }
+
+    @Override
+    public double getMaxDepth() {
+      return maxDepth;
+    }
+
+    @Override
+    public double area(double depth) {
+      return index.area(lowestElevation + depth);
+    }
+
+    @Override
+    public double perimeter(double depth) {
+      return index.perimeter(lowestElevation + depth);
+    }
+
+    @Override
+    public double topWidth(double depth) {
+      return index.topWidth(lowestElevation + depth);
+    }
+
+    @Override
+    double perimeterRate(double depth) {
+      return index.perimeterRate(lowestElevation + depth);
+    }
+
+    @Override
+    public double conveyance(double depth, double manningRoughness) {
+      return index.conveyance(lowestElevation + depth, manningRoughness);
+    }
+
+    @Override
+    double criticalFactor(double depth) {
+      return index.criticalFactor(lowestElevation + depth);
+    }
+
+    /**
+     * Brackets the lowest critical depth between two breakpoints of the index.
+     */
+    @Override
+    double criticalDepth(double discharge, RootFinder finder) throws ConvergenceException {
+      return IrregularSolver.criticalStage(index, discharge, lowestElevation + maxDepth, finder) - lowestElevation;
+    }
+  }
+}
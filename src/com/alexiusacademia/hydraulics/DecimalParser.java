@@ -0,0 +1,118 @@
+package com.alexiusacademia.hydraulics;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parser of the decimal numbers of the CSV files, read straight from their bytes.
+ */
+final class DecimalParser {
+
+  /* **********************************
+   * Constants
+   ***********************************/
+  // Powers of ten that are exact doubles, for the fast path of the parser
+  private static final double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  // Significant digits that are always exact in a double
+  private static final int MAX_EXACT_DIGITS = 15;
+
+  private DecimalParser() {
+  }
+
+  /* **********************************
+   * Methods
+   ***********************************/
+
+  /**
+   * Parses the decimal number of a range of bytes, ignoring spaces and tabs around it. Up to 15 significant
+   * digits with a decimal exponent within 22 are converted exactly from the digits, and longer numbers fall
+   * back to {@code Double.parseDouble}.
+   * @param bytes Bytes holding the number
+   * @param from Index of the first byte of the range
+   * @param to Index past the last byte of the range
+   * @return Double The number, {@code NaN} if the range is not a number
+   */
+  static double parse(byte[] bytes, int from, int to) {
+    while (from < to && isSpace(bytes[from])) {
+      from++;
+    }
+    while (to > from && isSpace(bytes[to - 1])) {
+      to--;
+    }
+    int pos = from;
+    boolean negative = false;
+    if (pos < to && (bytes[pos] == '-' || bytes[pos] == '+')) {
+      negative = bytes[pos] == '-';
+      pos++;
+    }
+
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean any = false;
+    boolean point = false;
+    for (; pos < to; pos++) {
+      byte b = bytes[pos];
+      if (b >= '0' && b <= '9') {
+        any = true;
+        if (digits > 0 || b != '0') {
+          // Digits beyond the exact range only send the number to the slow path
+          if (digits < MAX_EXACT_DIGITS) {
+            mantissa = 10 * mantissa + (b - '0');
+          }
+          digits++;
+        }
+        if (point) {
+          exponent--;
+        }
+      } else if (b == '.' && !point) {
+        point = true;
+      } else {
+        break;
+      }
+    }
+    if (!any) {
+      return Double.NaN;
+    }
+    if (pos < to && (bytes[pos] == 'e' || bytes[pos] == 'E')) {
+      pos++;
+      boolean negativeExponent = false;
+      if (pos < to && (bytes[pos] == '-' || bytes[pos] == '+')) {
+        negativeExponent = bytes[pos] == '-';
+        pos++;
+      }
+      int e = 0;
+      boolean exponentDigits = false;
+      for (; pos < to && bytes[pos] >= '0' && bytes[pos] <= '9'; pos++) {
+        e = Math.min(10 * e + (bytes[pos] - '0'), 100000);
+        exponentDigits = true;
+      }
+      if (!exponentDigits) {
+        return Double.NaN;
+      }
+      exponent += negativeExponent ? -e : e;
+    }
+    if (pos != to) {
+      return Double.NaN;
+    }
+
+    double value;
+    if (mantissa == 0) {
+      value = 0;
+    } else if (digits <= MAX_EXACT_DIGITS && exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+      value = mantissa * POWERS_OF_TEN[exponent];
+    } else if (digits <= MAX_EXACT_DIGITS && exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+      value = mantissa / POWERS_OF_TEN[-exponent];
+    } else {
+      return Double.parseDouble(new String(bytes, from, to - from, StandardCharsets.US_ASCII));
+    }
+    return negative ? -value : value;
+  }
+
+  private static boolean isSpace(byte b) {
+    return b == ' ' || b == '\t';
+  }
+}
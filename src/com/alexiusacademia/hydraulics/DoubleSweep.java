@@ -0,0 +1,159 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * Block tridiagonal solver of the two equations per box of a one dimensional implicit scheme.
+ *
+ * Each box j links the two unknowns (u, v) of station j to those of station j + 1 through two equations
+ * a u + b v + c u' + d v' = r. The forward sweep carries a single relation p u + q v = s from the upstream
+ * boundary to the downstream boundary, eliminating the unknowns of a station with 2 by 2 determinants,
+ * and the return sweep recovers the stations from the better conditioned of the two box equations.
+ * The cost is linear in the number of stations, and the coefficient arrays are allocated once.
+ */
+final class DoubleSweep {
+
+  /* **********************************
+   * Constants
+   ***********************************/
+  // Range of the carried relation outside which it is rescaled
+  private static final double MIN_MAGNITUDE = 1e-100;
+  private static final double MAX_MAGNITUDE = 1e100;
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private final int size;
+
+  // Equations of each box
+  private final double[] a1, b1, c1, d1, r1;
+  private final double[] a2, b2, c2, d2, r2;
+
+  // Relation carried by the forward sweep at each station
+  private final double[] p, q, s;
+
+  /**
+   * Creates a {@code DoubleSweep} for the given number of stations.
+   * @param size Number of stations, one more than the number of boxes
+   */
+  DoubleSweep(int size) {
+    this.size = size;
+    int boxes = size - 1;
+    this.a1 = new double[boxes];
+    this.b1 = new double[boxes];
+    this.c1 = new double[boxes];
+    this.d1 = new double[boxes];
+    this.r1 = new double[boxes];
+    this.a2 = new double[boxes];
+    this.b2 = new double[boxes];
+    this.c2 = new double[boxes];
+    this.d2 = new double[boxes];
+    this.r2 = new double[boxes];
+    this.p = new double[size];
+    this.q = new double[size];
+    this.s = new double[size];
+  }
+
+  /* **********************************
+   * Methods
+   ***********************************/
+
+  /**
+   * Sets the first equation of a box.
+   */
+  void setFirst(int j, double a, double b, double c, double d, double r) {
+    a1[j] = a;
+    b1[j] = b;
+    c1[j] = c;
+    d1[j] = d;
+    r1[j] = r;
+  }
+
+  /**
+   * Sets the second equation of a box.
+   */
+  void setSecond(int j, double a, double b, double c, double d, double r) {
+    a2[j] = a;
+    b2[j] = b;
+    c2[j] = c;
+    d2[j] = d;
+    r2[j] = r;
+  }
+
+  /**
+   * Sets the boundary condition p u + q v = s at the first station.
+   */
+  void setUpstream(double pu, double qv, double rhs) {
+    p[0] = pu;
+    q[0] = qv;
+    s[0] = rhs;
+  }
+
+  /**
+   * Solves the system with the boundary condition p u + q v = s at the last station.
+   * @param pu Coefficient of u
+   * @param qv Coefficient of v
+   * @param rhs Right hand side
+   * @param u Receives the first unknown of every station
+   * @param v Receives the second unknown of every station
+   * @throws ConvergenceException If the system is singular
+   */
+  void solve(double pu, double qv, double rhs, double[] u, double[] v) throws ConvergenceException {
+    // Forward sweep, det(e2, e3) R + det(e3, R) E1 + det(R, E1) E2 has no term in the station's unknowns
+    for (int j = 0; j < size - 1; j++) {
+      double pj = p[j], qj = q[j];
+      double mu = a1[j] * b2[j] - a2[j] * b1[j];
+      double l1 = a2[j] * qj - pj * b2[j];
+      double l2 = pj * b1[j] - a1[j] * qj;
+      double np = l1 * c1[j] + l2 * c2[j];
+      double nq = l1 * d1[j] + l2 * d2[j];
+      double ns = mu * s[j] + l1 * r1[j] + l2 * r2[j];
+      double magnitude = Math.abs(np) + Math.abs(nq);
+      if (!(magnitude > MIN_MAGNITUDE && magnitude < MAX_MAGNITUDE)) {
+        // Rescale only when the relation drifts far from unity, which keeps the sweep free of divisions
+        if (!(magnitude > 0) || Double.isInfinite(magnitude)) {
+          throw new ConvergenceException("Singular matrix.");
+        }
+        double scale = 1 / magnitude;
+        np *= scale;
+        nq *= scale;
+        ns *= scale;
+      }
+      p[j + 1] = np;
+      q[j + 1] = nq;
+      s[j + 1] = ns;
+    }
+
+    // Last station
+    int last = size - 1;
+    double det = p[last] * qv - q[last] * pu;
+    if (det == 0 || Double.isNaN(det)) {
+      throw new ConvergenceException("Singular matrix.");
+    }
+    u[last] = (s[last] * qv - q[last] * rhs) / det;
+    v[last] = (p[last] * rhs - pu * s[last]) / det;
+
+    // Return sweep with the relation of the station and the better of the two box equations
+    for (int j = last - 1; j >= 0; j--) {
+      double pj = p[j], qj = q[j];
+      double det1 = pj * b1[j] - qj * a1[j];
+      double det2 = pj * b2[j] - qj * a2[j];
+      double a, b, t;
+      if (Math.abs(det1) >= Math.abs(det2)) {
+        det = det1;
+        a = a1[j];
+        b = b1[j];
+        t = r1[j] - c1[j] * u[j + 1] - d1[j] * v[j + 1];
+      } else {
+        det = det2;
+        a = a2[j];
+        b = b2[j];
+        t = r2[j] - c2[j] * u[j + 1] - d2[j] * v[j + 1];
+      }
+      if (det == 0) {
+        throw new ConvergenceException("Singular matrix.");
+      }
+      double inverse = 1 / det;
+      u[j] = (s[j] * b - qj * t) * inverse;
+      v[j] = (pj * t - a * s[j]) * inverse;
+    }
+  }
+}
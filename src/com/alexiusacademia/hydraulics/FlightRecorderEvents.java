@@ -0,0 +1,58 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * Flight recorder events of the solvers, the only class of the solve path that refers to {@code jdk.jfr}.
+ *
+ * It is loaded by {@link SolverMetrics} through reflection once a recording has started, so a JVM that
+ * never records does not load the flight recorder, and the library builds and runs without it.
+ */
+final class FlightRecorderEvents implements SolverMetrics.Recorder {
+
+  @Override
+  public Object beginSolve() {
+    ChannelSolveEvent event = new ChannelSolveEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  @Override
+  public void endSolve(Object event, SolverMetrics.Shape shape, Enum<?> unknown, long iterations,
+                       ChannelResult result) {
+    ChannelSolveEvent solve = (ChannelSolveEvent) event;
+    solve.end();
+    if (solve.shouldCommit()) {
+      solve.set(shape, unknown, iterations, result);
+      solve.commit();
+    }
+  }
+
+  @Override
+  public Object beginRootFind() {
+    RootFindEvent event = new RootFindEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  @Override
+  public void endRootFind(Object event, String method, double lower, double upper, double root, int iterations,
+                          String errMessage) {
+    RootFindEvent find = (RootFindEvent) event;
+    find.end();
+    if (find.shouldCommit()) {
+      find.method = method;
+      find.lower = lower;
+      find.upper = upper;
+      find.root = root;
+      find.iterations = iterations;
+      find.converged = errMessage == null;
+      find.errMessage = errMessage;
+      find.commit();
+    }
+  }
+}
@@ -0,0 +1,507 @@
+package com.alexiusacademia.hydraulics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Streaming conversion of gauge stage records into discharge, velocity and Froude number at a surveyed section.
+ *
+ * Every row of the input is a CSV record holding the stage in one of its fields, {@code time,stage} by default.
+ * The row is written back unchanged with the discharge, the average velocity and the Froude number appended as
+ * three more fields. A first row whose stage is not a number is the header, and blank lines and lines starting
+ * with {@code #} are copied unchanged.
+ * <pre>
+ * time,stage
+ * 2001-01-01T00:00,101.016
+ * </pre>
+ * becomes
+ * <pre>
+ * time,stage,discharge,velocity,froude
+ * 2001-01-01T00:00,101.016,6.027437,0.497669,0.190539
+ * </pre>
+ *
+ * The input is read in chunks of 1 MiB, and a bounded ring of chunks is converted in parallel on a fork/join
+ * pool and written in the order of the input, so the memory does not grow with the length of the record. Each
+ * chunk evaluates its stages on the stage index of the section, built once per geometry, through a cursor that
+ * walks from the previous stage, and parses and formats the numbers in its own byte arrays, so a record
+ * allocates nothing. The flows are those of Manning's equation at the bed slope of the section, its normal flow
+ * rating. A stage below the lowest point is dry, and a stage above the lowest bank or a stage that is not a
+ * number gives {@code NaN} fields. Values are in metric units.
+ *
+ * An instance runs one conversion at a time, and keeps its chunks for the next one, so converting any number
+ * of files allocates only for the first.
+ */
+public final class GaugeRecordProcessor {
+
+  /* **********************************
+   * Constants
+   ***********************************/
+  // Bytes of input read into a chunk
+  private static final int CHUNK_SIZE = 1 << 20;
+
+  // Longest line
+  private static final int MAX_LINE_LENGTH = 1 << 16;
+
+  // Longest text of the three appended fields, each with a sign, 19 digits, a point and 9 decimals
+  private static final int MAX_APPENDED_LENGTH = 3 * 31 + 2;
+
+  private static final int MAX_DECIMALS = 9;
+
+  // Factor of the fixed point of the formatted fields for each number of decimals
+  private static final long[] SCALES = {
+      1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L
+  };
+
+  private static final byte[] HEADER = ",discharge,velocity,froude".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] NAN = "NaN".getBytes(StandardCharsets.US_ASCII);
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private final StageIndex index;
+  private final double maxStage;
+
+  // sqrt(S) / n, so that Q = A R^(2/3) times this factor
+  private final double dischargeFactor;
+
+  private int stageColumn = 1;
+  private int decimals = 6;
+
+  // Chunks of the last conversion, reused while the parallelism of the pool is the same
+  private Chunk[] ring;
+
+  // Counts of the last conversion
+  private long recordCount;
+  private long rejectedCount;
+
+  /**
+   * Creates a {@code GaugeRecordProcessor} rating the given section.
+   * @param geometry Geometry of the gauge section
+   * @param bedSlope Bed slope of the reach
+   * @param manningRoughness Manning's roughness coefficient
+   */
+  public GaugeRecordProcessor(SectionGeometry geometry, double bedSlope, double manningRoughness) {
+    if (geometry == null || geometry.getPointCount() < 3) {
+      throw new IllegalArgumentException("The section must have at least 3 points.");
+    }
+    if (geometry.getLowestBankElevation() <= geometry.getLowestElevation()) {
+      throw new IllegalArgumentException("The banks must be above the lowest point of the section.");
+    }
+    if (!(bedSlope > 0)) {
+      throw new IllegalArgumentException("Bed slope must be greater than zero.");
+    }
+    if (!(manningRoughness > 0)) {
+      throw new IllegalArgumentException("Manning's roughness must be greater than zero.");
+    }
+    this.index = geometry.getStageIndex();
+    this.maxStage = geometry.getLowestBankElevation();
+    this.dischargeFactor = Math.sqrt(bedSlope) / manningRoughness;
+  }
+
+  /**
+   * Creates a {@code GaugeRecordProcessor} rating the section of a channel.
+   * @param channel Channel with its points, bed slope and roughness set
+   * @return GaugeRecordProcessor
+   */
+  public static GaugeRecordProcessor of(IrregularSectionChannel channel) {
+    return new GaugeRecordProcessor(channel.getGeometry(), channel.getBedSlope(), channel.getManningRoughness());
+  }
+
+  /* **********************************
+   * Getters and setters
+   ***********************************/
+
+  public int getStageColumn() {
+    return stageColumn;
+  }
+
+  /**
+   * Sets the field of the records holding the stage.
+   * @param stageColumn Index of the field, from zero
+   */
+  public void setStageColumn(int stageColumn) {
+    if (stageColumn < 0) {
+      throw new IllegalArgumentException("The stage column must not be negative.");
+    }
+    this.stageColumn = stageColumn;
+  }
+
+  public int getDecimals() {
+    return decimals;
+  }
+
+  /**
+   * Sets the number of decimals of the appended fields. Values too large to be written with them,
+   * beyond 10^(18 - decimals), are written as {@code NaN}.
+   * @param decimals Number of decimals, from 0 to 9
+   */
+  public void setDecimals(int decimals) {
+    if (decimals < 0 || decimals > MAX_DECIMALS) {
+      throw new IllegalArgumentException("The decimals must be from 0 to " + MAX_DECIMALS + ".");
+    }
+    this.decimals = decimals;
+  }
+
+  /**
+   * Returns the number of records of the last conversion, without the header, blank and comment lines.
+   * @return Long Number of records
+   */
+  public long getRecordCount() {
+    return recordCount;
+  }
+
+  /**
+   * Returns the number of records of the last conversion written with {@code NaN} fields.
+   * @return Long Number of records whose stage is missing or above the lowest bank
+   */
+  public long getRejectedCount() {
+    return rejectedCount;
+  }
+
+  /* **********************************
+   * Methods
+   ***********************************/
+
+  /**
+   * Converts a file of stage records on the common fork/join pool.
+   * @param input Path of the stage records
+   * @param output Path of the converted records, replaced if it exists
+   * @return Long Number of records
+   * @throws IOException If a file cannot be read or written, or a line is too long
+   */
+  public long process(Path input, Path output) throws IOException {
+    return process(input, output, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Converts a file of stage records on the given fork/join pool.
+   * @param input Path of the stage records
+   * @param output Path of the converted records, replaced if it exists
+   * @param pool Pool converting the chunks
+   * @return Long Number of records
+   * @throws IOException If a file cannot be read or written, or a line is too long
+   */
+  public long process(Path input, Path output, ForkJoinPool pool) throws IOException {
+    try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+         FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+             StandardOpenOption.TRUNCATE_EXISTING)) {
+      return process(in, out, pool);
+    }
+  }
+
+  /**
+   * Converts a stream of stage records on the given fork/join pool. The channels are left open.
+   * @param in Channel of the stage records
+   * @param out Channel of the converted records
+   * @param pool Pool converting the chunks
+   * @return Long Number of records
+   * @throws IOException If a channel cannot be read or written, or a line is too long
+   */
+  public long process(ReadableByteChannel in, WritableByteChannel out, ForkJoinPool pool) throws IOException {
+    this.recordCount = 0;
+    this.rejectedCount = 0;
+
+    // One chunk filled, one written and one per thread converted
+    int slots = pool.getParallelism() + 2;
+    if (this.ring == null || this.ring.length != slots) {
+      this.ring = new Chunk[slots];
+    }
+    Chunk[] ring = this.ring;
+    Chunk previous = null;
+    long sequence = 0;
+    boolean end = false;
+
+    while (!end) {
+      int slot = (int) (sequence % slots);
+      Chunk chunk = ring[slot];
+      if (chunk == null) {
+        chunk = new Chunk();
+        ring[slot] = chunk;
+      }
+      if (sequence < slots) {
+        chunk.reset(this.stageColumn, this.decimals);
+      } else {
+        finish(chunk, out);
+      }
+      end = chunk.fill(in, previous, sequence == 0);
+      chunk.reinitialize();
+      pool.execute(chunk);
+      chunk.pending = true;
+      previous = chunk;
+      sequence++;
+    }
+
+    // Write the chunks still converting, in the order of the input
+    for (long k = Math.max(0, sequence - slots); k < sequence; k++) {
+      finish(ring[(int) (k % slots)], out);
+    }
+    return this.recordCount;
+  }
+
+  /**
+   * Waits for a chunk and writes its records.
+   */
+  private void finish(Chunk chunk, WritableByteChannel out) throws IOException {
+    if (!chunk.pending) {
+      return;
+    }
+    chunk.join();
+    chunk.pending = false;
+    this.recordCount += chunk.records;
+    this.rejectedCount += chunk.rejected;
+    ByteBuffer buffer = chunk.outputBuffer;
+    buffer.clear();
+    buffer.limit(chunk.outputLength);
+    while (buffer.hasRemaining()) {
+      out.write(buffer);
+    }
+  }
+
+  private static boolean isSpace(byte b) {
+    return b == ' ' || b == '\t';
+  }
+
+  /**
+   * Bytes of the input converted by one task, with the records written to its own output array.
+   * The arrays and the cursor are reused by every chunk of the slot of the ring.
+   */
+  @SuppressWarnings("serial")
+  private final class Chunk extends RecursiveAction {
+    private final byte[] input = new byte[CHUNK_SIZE];
+    private final ByteBuffer inputBuffer = ByteBuffer.wrap(input);
+    private byte[] output = new byte[2 * CHUNK_SIZE];
+    private ByteBuffer outputBuffer = ByteBuffer.wrap(output);
+    private final StageIndex.Cursor cursor = index.cursor();
+    private int stageColumn;
+    private int decimals;
+    private long scale;
+    private double maxValue;
+
+    private int length;            // Bytes of whole lines
+    private int filled;            // Bytes read, the part past the length is carried to the next chunk
+    private boolean first;         // True for the first chunk, which may start with the header
+    private boolean pending;
+    private int outputLength;
+    private long records;
+    private long rejected;
+
+    /**
+     * Prepares the chunk for a new conversion, waiting for it if a failed conversion left it running.
+     */
+    void reset(int stageColumn, int decimals) {
+      if (this.pending) {
+        quietlyJoin();
+        this.pending = false;
+      }
+      this.stageColumn = stageColumn;
+      this.decimals = decimals;
+      this.scale = SCALES[decimals];
+      this.maxValue = 1e18 / SCALES[decimals];
+    }
+
+    /**
+     * Reads the next chunk of input after the line carried over from the previous chunk.
+     * @return Boolean True at the end of the input
+     */
+    boolean fill(ReadableByteChannel in, Chunk previous, boolean first) throws IOException {
+      this.first = first;
+      int carried = 0;
+      if (previous != null) {
+        carried = previous.filled - previous.length;
+        System.arraycopy(previous.input, previous.length, input, 0, carried);
+      }
+      ByteBuffer buffer = this.inputBuffer;
+      buffer.clear();
+      buffer.position(carried);
+      boolean end = false;
+      while (buffer.hasRemaining()) {
+        if (in.read(buffer) < 0) {
+          end = true;
+          break;
+        }
+      }
+      this.filled = buffer.position();
+      if (end) {
+        this.length = this.filled;
+        return true;
+      }
+      int last = this.filled - 1;
+      while (last >= 0 && input[last] != '\n') {
+        last--;
+      }
+      this.length = last + 1;
+      if (this.filled - this.length > MAX_LINE_LENGTH) {
+        throw new IOException("Line longer than " + MAX_LINE_LENGTH + " bytes.");
+      }
+      return false;
+    }
+
+    @Override
+    protected void compute() {
+      this.outputLength = 0;
+      this.records = 0;
+      this.rejected = 0;
+      boolean header = this.first;
+      int start = 0;
+      while (start < this.length) {
+        int end = start;
+        while (end < this.length && input[end] != '\n') {
+          end++;
+        }
+        int next = end + 1;
+        boolean crlf = end > start && input[end - 1] == '\r';
+        if (crlf) {
+          end--;
+        }
+        ensureCapacity(end - start + MAX_APPENDED_LENGTH);
+
+        int pos = start;
+        while (pos < end && isSpace(input[pos])) {
+          pos++;
+        }
+        if (pos == end || input[pos] == '#') {
+          // Blank and comment lines are copied unchanged
+          copy(start, end, crlf);
+        } else {
+          double stage = stage(start, end);
+          if (header && Double.isNaN(stage)) {
+            copy(start, end);
+            System.arraycopy(HEADER, 0, output, outputLength, HEADER.length);
+            outputLength += HEADER.length;
+            endOfLine(crlf);
+          } else {
+            copy(start, end);
+            convert(stage);
+            endOfLine(crlf);
+          }
+          header = false;
+        }
+        start = next;
+      }
+    }
+
+    /**
+     * Parses the stage field of a line.
+     * @return Double Stage, {@code NaN} if the field is missing or not a number
+     */
+    private double stage(int start, int end) {
+      int field = 0;
+      int from = start;
+      for (int i = start; i < end; i++) {
+        if (input[i] == ',') {
+          if (field == stageColumn) {
+            return DecimalParser.parse(input, from, i);
+          }
+          field++;
+          from = i + 1;
+        }
+      }
+      return (field == stageColumn) ? DecimalParser.parse(input, from, end) : Double.NaN;
+    }
+
+    /**
+     * Appends the discharge, velocity and Froude number at the stage.
+     */
+    private void convert(double stage) {
+      records++;
+      if (!(stage <= maxStage)) {
+        rejected++;
+        number(Double.NaN);
+        number(Double.NaN);
+        number(Double.NaN);
+        return;
+      }
+      cursor.moveTo(stage);
+      double area = cursor.getArea();
+      if (area <= 0) {
+        number(0);
+        number(0);
+        number(0);
+        return;
+      }
+      double discharge = area * Math.pow(area / cursor.getPerimeter(), (2.0 / 3.0)) * dischargeFactor;
+      double velocity = discharge / area;
+      number(discharge);
+      number(velocity);
+      number(velocity / Math.sqrt(Hydraulics.GRAVITY_METRIC * area / cursor.getTopWidth()));
+    }
+
+    /**
+     * Appends a delimiter and a number with the decimals of the chunk.
+     */
+    private void number(double value) {
+      byte[] out = this.output;
+      int pos = this.outputLength;
+      out[pos++] = ',';
+      if (!(Math.abs(value) < maxValue)) {
+        System.arraycopy(NAN, 0, out, pos, NAN.length);
+        this.outputLength = pos + NAN.length;
+        return;
+      }
+      long scaled = Math.round(Math.abs(value) * scale);
+      if (value < 0 && scaled != 0) {
+        out[pos++] = '-';
+      }
+      long integer = scaled / scale;
+      long fraction = scaled - integer * scale;
+
+      // Digits of the integer part, written backwards after counting them
+      int digits = 1;
+      for (long v = integer; v >= 10; v /= 10) {
+        digits++;
+      }
+      for (int i = pos + digits - 1; i >= pos; i--) {
+        out[i] = (byte) ('0' + integer % 10);
+        integer /= 10;
+      }
+      pos += digits;
+      if (decimals > 0) {
+        out[pos] = '.';
+        for (int i = pos + decimals; i > pos; i--) {
+          out[i] = (byte) ('0' + fraction % 10);
+          fraction /= 10;
+        }
+        pos += decimals + 1;
+      }
+      this.outputLength = pos;
+    }
+
+    private void copy(int start, int end) {
+      System.arraycopy(input, start, output, outputLength, end - start);
+      outputLength += end - start;
+    }
+
+    private void copy(int start, int end, boolean crlf) {
+      copy(start, end);
+      endOfLine(crlf);
+    }
+
+    private void endOfLine(boolean crlf) {
+      if (crlf) {
+        output[outputLength++] = '\r';
+      }
+      output[outputLength++] = '\n';
+    }
+
+    /**
+     * Grows the output array to hold the given number of bytes more. The array is kept for the next
+     * chunks, so it only grows while the lines are shorter than any seen before.
+     */
+    private void ensureCapacity(int bytes) {
+      if (outputLength + bytes + 2 > output.length) {
+        byte[] grown = new byte[Math.max(2 * output.length, outputLength + bytes + 2)];
+        System.arraycopy(output, 0, grown, 0, outputLength);
+        output = grown;
+        outputBuffer = ByteBuffer.wrap(grown);
+      }
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * Constants and equations shared by the channel solvers.
+ */
+final class Hydraulics {
+
+  /* **********************************
+   * Constants
+   ***********************************/
+  static final double GRAVITY_METRIC = 9.81;
+
+  private Hydraulics() {
+  }
+
+  /* **********************************
+   * Methods
+   ***********************************/
+
+  /**
+   * Discharge by Manning's equation.
+   * @param area Wetted area
+   * @param perimeter Wetted perimeter
+   * @param slope Bed slope
+   * @param manningRoughness Manning's roughness coefficient
+   * @return Double Discharge, zero for a dry section
+   */
+  static double manningDischarge(double area, double perimeter, double slope, double manningRoughness) {
+    if (area <= 0) {
+      return 0;
+    }
+    return (1 / manningRoughness) * Math.sqrt(slope) * area * Math.pow(area / perimeter, (2.0 / 3.0));
+  }
+
+  /**
+   * Average velocity by Manning's equation.
+   * @param hydraulicRadius Hydraulic radius
+   * @param slope Bed slope
+   * @param manningRoughness Manning's roughness coefficient
+   * @return Double Average velocity
+   */
+  static double manningVelocity(double hydraulicRadius, double slope, double manningRoughness) {
+    return (1 / manningRoughness) * Math.sqrt(slope) * Math.pow(hydraulicRadius, (2.0 / 3.0));
+  }
+
+  /**
+   * Bed slope carrying the discharge by Manning's equation, S = (Q n / (A R^(2/3)))^2.
+   * @param discharge Discharge
+   * @param area Wetted area
+   * @param perimeter Wetted perimeter
+   * @param manningRoughness Manning's roughness coefficient
+   * @return Double Bed slope, {@code NaN} or infinite for a dry section
+   */
+  static double manningSlope(double discharge, double area, double perimeter, double manningRoughness) {
+    return Math.pow(discharge * manningRoughness / (area * Math.pow(area / perimeter, (2.0 / 3.0))), 2);
+  }
+
+  /**
+   * Critical depth of a rectangle, (q^2 / g)^(1/3).
+   * @param discharge Discharge
+   * @param baseWidth Base width
+   * @return Double Critical depth
+   */
+  static double rectangularCriticalDepth(double discharge, double baseWidth) {
+    double q = discharge / baseWidth;
+    return Math.pow(q * q / GRAVITY_METRIC, (1.0 / 3.0));
+  }
+
+  /**
+   * Critical depth of a triangle, (2 Q^2 / (g z^2))^(1/5).
+   * @param discharge Discharge
+   * @param sideSlope Horizontal run of the sides for a unit rise
+   * @return Double Critical depth
+   */
+  static double triangularCriticalDepth(double discharge, double sideSlope) {
+    return Math.pow(2 * discharge * discharge / (GRAVITY_METRIC * sideSlope * sideSlope), (1.0 / 5.0));
+  }
+
+  /**
+   * Normal depth of a triangle, where Q n / sqrt(S) = z^(5/3) y^(8/3) / (2 sqrt(1 + z^2))^(2/3).
+   * @param discharge Discharge
+   * @param sideSlope Horizontal run of the sides for a unit rise
+   * @param slope Bed slope
+   * @param manningRoughness Manning's roughness coefficient
+   * @return Double Normal depth
+   */
+  static double triangularNormalDepth(double discharge, double sideSlope, double slope, double manningRoughness) {
+    double sideLength = 2 * Math.sqrt(sideSlope * sideSlope + 1);
+    double factor = discharge * manningRoughness / Math.sqrt(slope);
+    return Math.pow(factor * Math.pow(sideLength, (2.0 / 3.0)) / Math.pow(sideSlope, (5.0 / 3.0)), (3.0 / 8.0));
+  }
+
+  /**
+   * Starting depth of Newton for the normal depth of a trapezoid. The depth y0 of a wide channel (R = y) is
+   * corrected once by the fixed point y = y0 (1 + k y / b)^(2/5) / (1 + z y / b), where k y is the wetted
+   * length of the sides, which lands closer to the root than y0.
+   * @param wideDepth Depth y0 of the wide channel, (Q n / (b sqrt(S)))^(3/5)
+   * @param baseWidth Base width
+   * @param sideSlope Horizontal run of the sides for a unit rise
+   * @return Double Starting depth
+   */
+  static double wideChannelDepth(double wideDepth, double baseWidth, double sideSlope) {
+    double sideLength = 2 * Math.sqrt(sideSlope * sideSlope + 1);
+    return wideDepth * Math.pow(1 + sideLength * wideDepth / baseWidth, 0.4) / (1 + sideSlope * wideDepth / baseWidth);
+  }
+
+  /**
+   * Ratio of the conveyance Q n / sqrt(S) required by the given inputs to that of a solved result.
+   * @param seed Successful result of a previous solve
+   * @param discharge Discharge
+   * @param slope Bed slope
+   * @param manningRoughness Manning's roughness coefficient
+   * @return Double Ratio of the conveyances
+   */
+  static double conveyanceRatio(ChannelResult seed, double discharge, double slope, double manningRoughness) {
+    return discharge * manningRoughness / (seed.getDischarge() * seed.getManningRoughness()) *
+            Math.sqrt(seed.getBedSlope() / slope);
+  }
+
+  /**
+   * Depth carrying a conveyance scaled from that of a solved depth, to first order in the logarithms.
+   * The conveyance grows locally as y^m, with m = y (5 T / (3 A) - 2 P' / (3 P)).
+   * @param depth Solved depth
+   * @param area Wetted area at the solved depth
+   * @param perimeter Wetted perimeter at the solved depth
+   * @param topWidth Top width at the solved depth
+   * @param perimeterRate Rate of change of the wetted perimeter at the solved depth
+   * @param conveyanceRatio Ratio of the new conveyance to the solved one
+   * @return Double Estimate of the new depth, the solved depth if the conveyance does not grow there
+   */
+  static double scaledDepth(double depth, double area, double perimeter, double topWidth, double perimeterRate,
+                            double conveyanceRatio) {
+    double exponent = depth * (5 * topWidth / (3 * area) - 2 * perimeterRate / (3 * perimeter));
+    if (!(exponent > 0)) {
+      return depth;
+    }
+    return depth * Math.pow(conveyanceRatio, 1 / exponent);
+  }
+
+  /**
+   * Flow type from the Froude number.
+   * @param froudeNumber Froude number
+   * @return FlowType
+   */
+  static OpenChannel.FlowType flowType(double froudeNumber) {
+    if (froudeNumber == 1) {
+      return OpenChannel.FlowType.CRITICAL;
+    } else if (froudeNumber < 1) {
+      return OpenChannel.FlowType.SUBCRITICAL;
+    } else {
+      return OpenChannel.FlowType.SUPERCRITICAL;
+    }
+  }
+}
@@ -15,16 +15,25 @@ public class IrregularSectionChannel extends OpenChannel {
 
   public enum Unknown {                 // Unknown class
     DISCHARGE,
-    BED_SLOPE
+    BED_SLOPE,
+    WATER_ELEVATION
   }
 
 
   private Unknown unknown;              // Unknown
-  private List<Point> points;           // List of points for the channel profile
+  private SectionGeometry geometry;     // Primitive geometry of the profile, copied from the points
   private List<Point> newPoints;
   private float maxWaterElevation;
   private float waterElevation;
-  private double calculatedDischarge;
+  private double criticalWaterElevation;
+
+  // Stage index cursor and waterline intersections of the last analysis, kept so that a small change of
+  // the water elevation walks only the breakpoints and vertices it crosses
+  private transient StageIndex.Cursor waterline;
+  private transient Waterline clip;
+
+  // Geometry of the last analysis, whose critical flow is solved on first access
+  private transient SectionGeometry criticalFlowGeometry;
 
   /* **********************************
    * Setters
@@ -34,8 +43,22 @@ public class IrregularSectionChannel extends OpenChannel {
     this.unknown = unknown;
   }
 
+  /**
+   * Sets the channel profile. The points are copied, so call this again after modifying them.
+   * @param points List of points from the left bank to the right bank
+   */
   public void setPoints(List<Point> points) {
-    this.points = points;
+    this.geometry = (points == null || points.isEmpty()) ? null : SectionGeometry.fromPoints(points);
+    this.clip = null;
+  }
+
+  /**
+   * Sets the channel profile from a primitive geometry.
+   * @param geometry Section geometry from the left bank to the right bank
+   */
+  public void setGeometry(SectionGeometry geometry) {
+    this.geometry = geometry;
+    this.clip = null;
   }
 
   public void setWaterElevation(float waterElevation) {
@@ -46,14 +69,44 @@ public class IrregularSectionChannel extends OpenChannel {
    * Getters
    ***********************************/
 
+  /**
+   * Returns the channel profile as a new list, so changing it does not change the channel.
+   * @return List of points from the left bank to the right bank
+   */
   public List<Point> getPoints() {
-    return points;
+    return (this.geometry == null) ? null : this.geometry.toPoints();
+  }
+
+  /**
+   * Returns the primitive geometry of the profile.
+   * @return SectionGeometry
+   */
+  public SectionGeometry getGeometry() {
+    return geometry;
   }
 
+  /**
+   * Returns the profile clipped at the waterline, computed on first request after an analysis.
+   * @return List of points of the wetted polygon, null unless the last analysis is successful
+   */
   public List<Point> getNewPoints() {
+    if (!this.isCalculationSuccessful) {
+      return null;
+    }
+    if (this.newPoints == null && getGeometry() != null) {
+      this.newPoints = clipAtWaterline();
+    }
     return newPoints;
   }
 
+  /**
+   * Returns the stage index of the profile, building it on first use.
+   * @return StageIndex
+   */
+  public StageIndex getStageIndex() {
+    return getGeometry().getStageIndex();
+  }
+
   public float getMaxWaterElevation() {
     return maxWaterElevation;
   }
@@ -62,6 +115,15 @@ public class IrregularSectionChannel extends OpenChannel {
     return waterElevation;
   }
 
+  /**
+   * Returns the water surface elevation at critical flow, {@code NaN} if it is above the lowest bank.
+   * @return Critical stage
+   */
+  public double getCriticalWaterElevation() {
+    solvePendingCriticalFlow();
+    return criticalWaterElevation;
+  }
+
   public Unknown getUnknown() {
     return unknown;
   }
@@ -89,9 +151,20 @@ public class IrregularSectionChannel extends OpenChannel {
    * @param pts List of Points
    */
   public IrregularSectionChannel(Unknown unknown, List<Point> pts) {
-    this.unknown = Unknown.DISCHARGE;
+    this.unknown = unknown;
     this.unit = Unit.METRIC;
-    this.points = pts;
+    this.setPoints(pts);
+  }
+
+  /**
+   * Creates an {@code IrregularSectionChannel} with given unknown and section geometry
+   * @param unknown Unknown
+   * @param geometry Section geometry
+   */
+  public IrregularSectionChannel(Unknown unknown, SectionGeometry geometry) {
+    this.unknown = unknown;
+    this.unit = Unit.METRIC;
+    this.setGeometry(geometry);
   }
 
   /* **********************************
@@ -99,309 +172,156 @@ public class IrregularSectionChannel extends OpenChannel {
    ***********************************/
 
   public boolean analyze() {
-    if (isValidInputs()) {
-      switch (this.unknown) {
-        case DISCHARGE:
-          solveForDischarge();
-          break;
-        case BED_SLOPE:
-          solveForBedSlope();
-          break;
-          default:
-            try {
-              throw new InvalidValueException("Invalid unknown.");
-            } catch (InvalidValueException e) {
-              this.isCalculationSuccessful = false;
-              this.errMessage = e.getMessage();
-            }
-      }
-      solveForCriticalFlow();
-      return isCalculationSuccessful;
-    }
-    return false;
-  }
-
-  /**
-   * Solve for the unknown bed slope
-   */
-  private void solveForBedSlope() {
-    // Number of waterline intersections
-    int leftIntersections = 0, rightIntersections = 0;
-
-    // Remove points above the waterline intersection at the banks
-    List<Point> newPoints = new ArrayList<>();
-
-    float x1, x2, x3, y1, y2;
-
-    for (int i = 0; i < this.points.size(); i++) {
-      // float x = this.points.get(i).getX();
-      float y = this.points.get(i).getY();
-
-      // Look for the intersection at the left side of the channel
-      if (leftIntersections == 0) {
-        if (y <= this.waterElevation && i > 0) {
-          leftIntersections++;
-          // Solve for the intersection point using interpolation
-          x1 = this.points.get(i - 1).getX();
-          y1 = this.points.get(i - 1).getY();
-          x2 = this.points.get(i).getX();
-          y2 = this.points.get(i).getY();
-          x3 = (this.waterElevation - y1) * (x2 - x1) / (y2 - y1) + x1;
-          newPoints.add(new Point(x3, this.waterElevation));
-        }
-      }
-
-      // Look for the intersection at the right side of the channel
-      if (rightIntersections == 0) {
-        if (y >= this.waterElevation && i > 0) {
-          rightIntersections++;
-          x1 = this.points.get(i - 1).getX();
-          y1 = this.points.get(i - 1).getY();
-          x2 = this.points.get(i).getX();
-          y2 = this.points.get(i).getY();
-          x3 = (this.waterElevation - y1) * (x2 - x1) / (y2 - y1) + x1;
-          newPoints.add(new Point(x3, this.waterElevation));
-        }
-      }
-
-      if (leftIntersections == 1) {
-        if (rightIntersections == 0) {
-          newPoints.add(this.points.get(i));
-        }
+    this.newPoints = null;
+    SectionGeometry section = getGeometry();
+    StageIndex.Cursor cursor = null;
+    if (section != null && section.getPointCount() >= 3) {
+      // The lower of the 2 banks
+      this.maxWaterElevation = (float) section.getLowestBankElevation();
+      if (this.waterline == null || this.waterline.getIndex() != section.getStageIndex()) {
+        this.waterline = section.getStageIndex().cursor();
       }
+      cursor = this.waterline;
     }
-    this.newPoints = newPoints;
-    double trialSlope = 0;
-    calculatedDischarge = 0;
-
-    while (calculatedDischarge < this.discharge) {
-      trialSlope += SLOPE_TRIAL_INCREMENT;
-      this.wettedArea = polygonArea(newPoints);
-      this.wettedPerimeter = polygonPerimeter(newPoints);
-      this.hydraulicRadius = this.wettedArea / this.wettedPerimeter;
-      this.averageVelocity = (1 / this.manningRoughness) * Math.sqrt(trialSlope) *
-              Math.pow(this.hydraulicRadius, (2.0/3.0));
-      calculatedDischarge = this.averageVelocity * this.wettedArea;
+    IrregularSolver solver = new IrregularSolver(this.tolerance, this.maxIterations, this.cancellationToken);
+    ResultCache cache = resultCache();
+    // The critical flow is solved on first access, unless the cache holds it already
+    apply((cache == null) ? solver.solve(spec(), cursor, warmStartResult(), false) : cache.solve(solver, spec()));
+    if (this.isCalculationSuccessful) {
+      this.criticalFlowGeometry = section;
     }
-
-    this.bedSlope = trialSlope;
-    this.isCalculationSuccessful = true;
+    return this.isCalculationSuccessful;
   }
 
   /**
-   * Solve for the unknown discharge
+   * Captures the current inputs of the channel.
+   * @return IrregularSpec in metric units
    */
-  private void solveForDischarge() {
-    // Number of waterline intersections
-    int leftIntersections = 0, rightIntersections = 0;
-
-    // Remove points above the waterline intersection at the banks
-    List<Point> newPoints = new ArrayList<>();
-
-    float x1, x2, x3, y1, y2;
-
-    for (int i = 0; i < this.points.size(); i++) {
-      // float x = this.points.get(i).getX();
-      float y = this.points.get(i).getY();
-
-      // Look for the intersection at the left side of the channel
-      if (leftIntersections == 0) {
-        if (y <= this.waterElevation && i > 0) {
-          leftIntersections++;
-          // Solve for the intersection point using interpolation
-          x1 = this.points.get(i - 1).getX();
-          y1 = this.points.get(i - 1).getY();
-          x2 = this.points.get(i).getX();
-          y2 = this.points.get(i).getY();
-          x3 = (this.waterElevation - y1) * (x2 - x1) / (y2 - y1) + x1;
-          newPoints.add(new Point(x3, this.waterElevation));
-        }
-      }
-
-      // Look for the intersection at the right side of the channel
-      if (rightIntersections == 0) {
-        if (y >= this.waterElevation && i > 0) {
-          rightIntersections++;
-          x1 = this.points.get(i - 1).getX();
-          y1 = this.points.get(i - 1).getY();
-          x2 = this.points.get(i).getX();
-          y2 = this.points.get(i).getY();
-          x3 = (this.waterElevation - y1) * (x2 - x1) / (y2 - y1) + x1;
-          newPoints.add(new Point(x3, this.waterElevation));
-        }
-      }
-
-      if (leftIntersections == 1) {
-        if (rightIntersections == 0) {
-          newPoints.add(this.points.get(i));
-        }
-      }
-    }
-
-    this.newPoints = newPoints;
-
-    // Hydraulic elements
-    this.wettedArea = polygonArea(newPoints);
-    this.wettedPerimeter = polygonPerimeter(newPoints);
-    this.hydraulicRadius = this.wettedArea / this.wettedPerimeter;
-    this.averageVelocity = (1 / this.manningRoughness) * Math.sqrt(this.bedSlope) *
-            Math.pow(this.hydraulicRadius, (2.0/3.0));
-    this.discharge = this.averageVelocity * this.wettedArea;
-
-    this.isCalculationSuccessful = true;
+  IrregularSpec spec() {
+    return new IrregularSpec(this.unknown, getGeometry(), this.discharge, this.bedSlope, this.waterElevation,
+            this.manningRoughness);
   }
 
   /**
-   * Implementation of the shoelace formula in computing area of a polygon with
-   * given vertices.
-   * @param points The vertices covered by the cross sectional area.
-   * @return Double Polygon area
+   * Copies the result of the solver, including the solved water elevation and the critical stage.
+   * @param result Result of the solver
    */
-  private double polygonArea(List<Point> points) {
-    // Number of vertices of the polygon
-    int n = points.size();
-
-    // Initialize area
-    double area = 0;
-    int j;
-
-    for (int i = 0; i < n; i++) {
-      j = (i + 1) % n;
-      area += points.get(i).getX() * points.get(j).getY();
-      area -= points.get(j).getX() * points.get(i).getY();
+  @Override
+  protected void apply(ChannelResult result) {
+    super.apply(result);
+    if (result.isCalculationSuccessful()) {
+      this.waterElevation = (float) result.getWaterElevation();
+      this.criticalWaterElevation = result.getCriticalWaterElevation();
     }
+  }
 
-    area = Math.abs(area) / 2;
+  @Override
+  protected ChannelResult solveCriticalFlow(ChannelResult result) {
+    return new IrregularSolver(this.tolerance, this.maxIterations, this.cancellationToken)
+        .criticalFlow(this.criticalFlowGeometry, result);
+  }
 
-    return area;
+  @Override
+  protected void applyCriticalFlow(ChannelResult result) {
+    super.applyCriticalFlow(result);
+    this.criticalWaterElevation = result.getCriticalWaterElevation();
   }
 
   /**
-   * Get the total distance covered by multiple points
-   * @param points The vertices covered by the cross sectional area.
-   * @return Double Polygon perimeter
+   * Clips the profile at the waterline, from the left intersection to the right intersection.
+   * The intersections are walked from those of the previous clip of the same geometry.
+   * @return List of points of the wetted polygon
    */
-  private double polygonPerimeter(List<Point> points) {
-    // Initialize perimeter
-    double perimeter = 0;
-
-    // Number of vertices of the polygon
-    int n = points.size();
+  private List<Point> clipAtWaterline() {
+    SectionGeometry section = getGeometry();
+    if (this.clip == null || this.clip.geometry != section) {
+      this.clip = new Waterline(section);
+    }
+    this.clip.moveTo(this.waterElevation);
+    int left = this.clip.left;
+    int right = this.clip.right;
+    int n = section.getPointCount();
 
-    Point p1, p2;
+    // Remove points above the waterline intersection at the banks
+    List<Point> newPoints = new ArrayList<>();
 
-    for (int i = 0; i < (n-1); i++) {
-      p1 = points.get(i);
-      p2 = points.get(i + 1);
-      perimeter += distanceBetweenTwoPoints(p1, p2);
+    // Points in the order of the scan from the left bank, the right intersection can precede the left one
+    if (right < left) {
+      newPoints.add(intersection(section, right));
     }
-
-    return perimeter;
+    if (left < n) {
+      newPoints.add(intersection(section, left));
+      if (right >= left) {
+        for (int i = left; i < Math.min(right, n); i++) {
+          newPoints.add(new Point((float) section.getStation(i), (float) section.getElevation(i)));
+        }
+        if (right < n) {
+          newPoints.add(intersection(section, right));
+        }
+      }
+    }
+    return newPoints;
   }
 
   /**
-   * Calculate the distance between two given points.
-   * @param p1 First point
-   * @param p2 Second point
-   * @return Double The distance between the 2 points
+   * Solves for the intersection of the waterline with the segment ending at the given point using interpolation.
    */
-  private double distanceBetweenTwoPoints(Point p1, Point p2) {
-    float x1, y1, x2, y2;
-    x1 = p1.getX();
-    y1 = p1.getY();
-    x2 = p2.getX();
-    y2 = p2.getY();
-    return Math.sqrt(Math.pow((y2 - y1), 2) + Math.pow((x2 - x1), 2));
+  private Point intersection(SectionGeometry section, int i) {
+    double x1 = section.getStation(i - 1);
+    double y1 = section.getElevation(i - 1);
+    double x2 = section.getStation(i);
+    double y2 = section.getElevation(i);
+    double x3 = (this.waterElevation - y1) * (x2 - x1) / (y2 - y1) + x1;
+    return new Point((float) x3, this.waterElevation);
   }
 
   /**
-   * Get the lowest point elevation from the list of poits.
-   * @return Double Lowest point
+   * Waterline intersections of a profile. The left intersection ends the first segment reaching down to the
+   * waterline and the right intersection the first segment reaching up to it, scanning from the left bank.
+   * Both are found on running extremes of the elevations, which are monotonic, so a new water elevation moves
+   * each intersection by walking from its previous position.
    */
-  private float calculateLowestPoint() {
-    List<Float> elevations = new ArrayList<>();
-    float lowest = this.points.get(0).getY();
-
-    for (Point p : this.points) {
-      elevations.add(p.getY());
-    }
-
-    for (float el : elevations) {
-      if (lowest > el) {
-        lowest = el;
+  private static final class Waterline {
+    private final SectionGeometry geometry;
+
+    // Lowest and highest elevations from the second point to each point
+    private final double[] lowest;
+    private final double[] highest;
+
+    // First point at or below and at or above the waterline, the point count if none
+    private int left;
+    private int right;
+
+    Waterline(SectionGeometry geometry) {
+      int n = geometry.getPointCount();
+      this.geometry = geometry;
+      this.lowest = new double[n];
+      this.highest = new double[n];
+      for (int i = 1; i < n; i++) {
+        double y = geometry.getElevation(i);
+        lowest[i] = (i > 1) ? Math.min(lowest[i - 1], y) : y;
+        highest[i] = (i > 1) ? Math.max(highest[i - 1], y) : y;
       }
+      this.left = n;
+      this.right = n;
     }
-    return lowest;
-  }
-
-  /**
-   * Check for invalid inputs
-   * @return Boolean True if all inputs are valid.
-   */
-  private boolean isValidInputs() {
-    // First, solve for the lowest bank
-    int numberOfPoints = this.points.size();
-    // Elevation of left and right bank
-    float leftBankElevation = this.points.get(0).getY();
-    float rightBankElevation = this.points.get(numberOfPoints - 1).getY();
-
-    // Get the lower of the 2 banks
-    if (leftBankElevation > rightBankElevation) {
-      this.maxWaterElevation = rightBankElevation;
-    } else {
-      this.maxWaterElevation = leftBankElevation;
-    }
-
-    try {
-      if (this.waterElevation > this.maxWaterElevation) {
-        throw new InvalidValueException("Water elevation is above the lowest bank. Overflow!");
-      }
-
-      if (this.waterElevation < calculateLowestPoint()) {
-        throw new DimensionException("Water surface was set below the lowest ground.");
-      }
 
-      if (this.points.size() < 3) {
-        throw new DimensionException("Invalid number of points. Minimum is three (3) points.");
+    void moveTo(double waterElevation) {
+      int n = lowest.length;
+      // Running minimum is non-increasing, the left intersection moves left as the water rises
+      while (left > 1 && lowest[left - 1] <= waterElevation) {
+        left--;
       }
-
-      if (this.manningRoughness <= 0) {
-        throw new InvalidValueException("Manning's roughness must be greater than zero.");
+      while (left < n && lowest[left] > waterElevation) {
+        left++;
       }
-
-      if (this.unknown != Unknown.DISCHARGE) {
-        if (this.discharge <= 0) {
-          throw new InvalidValueException("Discharge must be greater than zero.");
-        }
+      // Running maximum is non-decreasing, the right intersection moves right as the water rises
+      while (right > 1 && highest[right - 1] >= waterElevation) {
+        right--;
       }
-
-      if (this.unknown != Unknown.BED_SLOPE) {
-        if (this.bedSlope <= 0) {
-          throw new InvalidValueException("Bed slope must not be flat or less than zero.");
-        }
+      while (right < n && highest[right] < waterElevation) {
+        right++;
       }
-
-    } catch (Exception e) {
-      this.isCalculationSuccessful = false;
-      this.errMessage = e.getMessage();
-      return false;
     }
-    return true;
-  }
-
-  /**
-   * Solve for critical flow properties (e.g. critical depth, froude number, flow type ...)
-   */
-  private void solveForCriticalFlow() {
-    // Top width
-    double T;
-
-    T = distanceBetweenTwoPoints(this.newPoints.get(0), this.newPoints.get(this.newPoints.size() - 1));
-
-    this.hydraulicDepth = this.wettedArea / T;
-    this.froudeNumber = this.averageVelocity / Math.sqrt(this.GRAVITY_METRIC * this.hydraulicDepth);
-
-    // Select the flow type
-    this.flowType();
   }
 }
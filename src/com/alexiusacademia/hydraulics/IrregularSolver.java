@@ -0,0 +1,407 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * Stateless solver of irregular section channels.
+ *
+ * Every call works on its own copy of the inputs and returns an immutable result, so a single
+ * instance can be shared by any number of threads without locking. The hydraulic elements are read
+ * from the stage index of the geometry, which is built once and shared, through a cursor that walks
+ * from the previous stage of the solve.
+ */
+public final class IrregularSolver {
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private final RootFinder finder;
+
+  /**
+   * Creates an {@code IrregularSolver} with the default tolerance and iteration cap.
+   */
+  public IrregularSolver() {
+    this(RootFinder.DEFAULT_TOLERANCE, RootFinder.DEFAULT_MAX_ITERATIONS);
+  }
+
+  /**
+   * Creates an {@code IrregularSolver} with the given tolerance and iteration cap.
+   * @param tolerance Relative tolerance of the iterative solutions
+   * @param maxIterations Iteration cap of a single iterative solution
+   */
+  public IrregularSolver(double tolerance, int maxIterations) {
+    this(tolerance, maxIterations, null);
+  }
+
+  /**
+   * Creates a {@code IrregularSolver} whose solves stop once the given token is cancelled or expired.
+   * @param tolerance Relative tolerance of the iterative solutions
+   * @param maxIterations Iteration cap of a single iterative solution
+   * @param token Cancellation token of the solves, null for none
+   */
+  public IrregularSolver(double tolerance, int maxIterations, CancellationToken token) {
+    this.finder = new RootFinder(tolerance, maxIterations, token);
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  public double getTolerance() {
+    return this.finder.getTolerance();
+  }
+
+  public int getMaxIterations() {
+    return this.finder.getMaxIterations();
+  }
+
+  public CancellationToken getCancellationToken() {
+    return this.finder.getCancellationToken();
+  }
+
+  /* **********************************
+   * Methods
+   ***********************************/
+
+  /**
+   * Solves for the unknown of the channel and its critical flow properties.
+   * @param spec Inputs of the channel
+   * @return ChannelResult, unsuccessful with an error message if the inputs are invalid or the solution fails
+   */
+  public ChannelResult solve(IrregularSpec spec) {
+    return solve(spec, null, null, true);
+  }
+
+  /**
+   * Solves for the unknown of the channel, and for its critical flow properties only if asked to. The Froude
+   * number and flow type are always solved.
+   * @param spec Inputs of the channel
+   * @param criticalFlow False to skip the critical depth, slope and water elevation, which are left {@code NaN}
+   * @return ChannelResult, unsuccessful with an error message if the inputs are invalid or the solution fails
+   */
+  public ChannelResult solve(IrregularSpec spec, boolean criticalFlow) {
+    return solve(spec, null, null, criticalFlow);
+  }
+
+  /**
+   * Solves for the unknown of the channel, seeding the water elevation with the result of a previous solve
+   * of the same section. Along a series of slowly varying discharges each solve then takes a few evaluations.
+   * @param spec Inputs of the channel
+   * @param seed Previous result of the same geometry, null or unsuccessful to solve cold
+   * @param criticalFlow False to skip the critical depth, slope and water elevation, which are left {@code NaN}
+   * @return ChannelResult, unsuccessful with an error message if the inputs are invalid or the solution fails
+   */
+  public ChannelResult solve(IrregularSpec spec, ChannelResult seed, boolean criticalFlow) {
+    return solve(spec, null, seed, criticalFlow);
+  }
+
+  /**
+   * Solves for the unknown of the channel, reading the stage index through the given cursor. A channel
+   * keeps its cursor between analyses, so a small change of stage walks only the breakpoints crossed.
+   * @param spec Inputs of the channel
+   * @param cursor Cursor on the stage index of the geometry, a new cursor is used if {@code null} or on another index
+   * @param seed Previous result of the same geometry, null to solve cold
+   * @param criticalFlow False to skip the critical flow properties
+   * @return ChannelResult
+   */
+  ChannelResult solve(IrregularSpec spec, StageIndex.Cursor cursor, ChannelResult seed, boolean criticalFlow) {
+    Object event = SolverMetrics.beginSolve();
+    long start = SolverMetrics.start(event);
+    ChannelResult result = compute(spec, cursor, seed, criticalFlow);
+    SolverMetrics.stop(start, event, SolverMetrics.Shape.IRREGULAR, spec.getUnknown(), result);
+    return result;
+  }
+
+  /**
+   * Solves the channel without measuring it.
+   */
+  private ChannelResult compute(IrregularSpec spec, StageIndex.Cursor cursor, ChannelResult seed,
+                                boolean criticalFlow) {
+    ChannelState state = new ChannelState();
+    state.discharge = spec.getDischarge();
+    state.bedSlope = spec.getBedSlope();
+    state.manningRoughness = spec.getManningRoughness();
+    state.waterElevation = spec.getWaterElevation();
+
+    try {
+      validate(spec);
+    } catch (InvalidValueException | DimensionException e) {
+      return state.fail(e.getMessage());
+    }
+
+    SectionGeometry geometry = spec.getGeometry();
+    StageIndex index = geometry.getStageIndex();
+    double maxWaterElevation = geometry.getLowestBankElevation();
+    if (cursor == null || cursor.getIndex() != index) {
+      cursor = index.cursor();
+    }
+
+    try {
+      switch (spec.getUnknown()) {
+        case DISCHARGE:
+          solveForDischarge(cursor, state);
+          break;
+        case BED_SLOPE:
+          solveForBedSlope(cursor, state);
+          break;
+        case WATER_ELEVATION:
+          solveForWaterElevation(cursor, maxWaterElevation, state, isSeed(seed, index) ? seed : null);
+          break;
+      }
+    } catch (ConvergenceException e) {
+      return state.fail(e.getMessage());
+    }
+
+    solveForFlowType(state);
+    if (criticalFlow) {
+      solveForCriticalFlow(index, maxWaterElevation, state);
+    } else {
+      state.skipCriticalFlow();
+    }
+
+    // A critical depth cut short by the token reads as NaN, the whole solve is failed instead
+    String interruption = this.finder.interruption();
+    if (interruption != null) {
+      return state.fail(interruption);
+    }
+    return state.succeed();
+  }
+
+  /**
+   * Solve for the unknown bed slope, in closed form as the wetted section does not change with the slope
+   */
+  private static void solveForBedSlope(StageIndex.Cursor cursor, ChannelState state) throws ConvergenceException {
+    cursor.moveTo(state.waterElevation);
+    double slope = Hydraulics.manningSlope(state.discharge, cursor.getArea(), cursor.getPerimeter(),
+        state.manningRoughness);
+    if (!(slope < Double.POSITIVE_INFINITY)) {
+      throw new ConvergenceException("Unable to bracket the solution.");
+    }
+    state.bedSlope = slope;
+    hydraulicElements(cursor, state);
+  }
+
+  /**
+   * Solve for the unknown water elevation (normal depth) at the given discharge.
+   * The discharge increases with the stage, so the root is bracketed between the
+   * lowest point and the lowest bank and searched on the stage index. A seed first
+   * brackets it around the local power law of the conveyance at its stage.
+   */
+  private void solveForWaterElevation(final StageIndex.Cursor cursor, double maxWaterElevation,
+                                      final ChannelState state, ChannelResult seed) throws ConvergenceException {
+    RootFinder.Equation f = new RootFinder.Equation() {
+      @Override
+      public double value(double z) {
+        cursor.moveTo(z);
+        return Hydraulics.manningDischarge(cursor.getArea(), cursor.getPerimeter(), state.bedSlope,
+            state.manningRoughness) - state.discharge;
+      }
+
+      @Override
+      public double derivative(double z) {
+        cursor.moveTo(z);
+        double area = cursor.getArea();
+        double perimeter = cursor.getPerimeter();
+        double q = Hydraulics.manningDischarge(area, perimeter, state.bedSlope, state.manningRoughness);
+        return q * (5 * cursor.getTopWidth() / (3 * area) - 2 * cursor.getPerimeterRate() / (3 * perimeter));
+      }
+    };
+
+    double lowest = cursor.getIndex().getLowestElevation();
+    if (f.value(maxWaterElevation) < 0) {
+      throw new ConvergenceException("Discharge exceeds the channel capacity at the lowest bank.");
+    }
+
+    if (seed == null) {
+      state.waterElevation = finder.newton(f, lowest, maxWaterElevation, 0.5 * (lowest + maxWaterElevation));
+    } else {
+      double stage = seed.getWaterElevation();
+      double h = stage - lowest;
+      cursor.moveTo(stage);
+      double guess = lowest + Hydraulics.scaledDepth(h, cursor.getArea(), cursor.getPerimeter(),
+          cursor.getTopWidth(), cursor.getPerimeterRate(), Hydraulics.conveyanceRatio(seed, state.discharge,
+          state.bedSlope, state.manningRoughness));
+      guess = Math.min(guess, maxWaterElevation);
+      double halfWidth = 2 * Math.abs(guess - stage) + 4 * (finder.getTolerance() + Math.ulp(1.0)) * h;
+      try {
+        state.waterElevation = finder.newton(f, Math.max(lowest, guess - halfWidth),
+            Math.min(maxWaterElevation, guess + halfWidth), guess);
+      } catch (ConvergenceException e) {
+        state.waterElevation = finder.newton(f, lowest, maxWaterElevation, guess);
+      }
+    }
+    hydraulicElements(cursor, state);
+  }
+
+  /**
+   * Solve for the unknown discharge
+   */
+  private static void solveForDischarge(StageIndex.Cursor cursor, ChannelState state) {
+    hydraulicElements(cursor, state);
+    state.discharge = state.averageVelocity * state.wettedArea;
+  }
+
+  /**
+   * Computes the water depth, wetted area, wetted perimeter, hydraulic radius, top width and average velocity
+   * from the stage index.
+   */
+  private static void hydraulicElements(StageIndex.Cursor cursor, ChannelState state) {
+    double stage = state.waterElevation;
+    cursor.moveTo(stage);
+    state.waterDepth = stage - cursor.getIndex().getLowestElevation();
+    state.wettedArea = cursor.getArea();
+    state.wettedPerimeter = cursor.getPerimeter();
+    state.hydraulicRadius = state.wettedArea / state.wettedPerimeter;
+    state.topWidth = cursor.getTopWidth();
+    state.averageVelocity = Hydraulics.manningVelocity(state.hydraulicRadius, state.bedSlope, state.manningRoughness);
+  }
+
+  /**
+   * Completes a result solved without its critical flow, measured under {@link SolverMetrics.CriticalFlow}.
+   * @param geometry Geometry of the solved section
+   * @param result Successful result of {@link #solve(IrregularSpec, boolean)}
+   * @return ChannelResult with the critical flow properties, unsuccessful if the token stopped it
+   */
+  ChannelResult criticalFlow(SectionGeometry geometry, ChannelResult result) {
+    Object event = SolverMetrics.beginSolve();
+    long start = SolverMetrics.start(event);
+    ChannelResult critical = computeCriticalFlow(geometry, result);
+    SolverMetrics.stop(start, event, SolverMetrics.Shape.IRREGULAR, SolverMetrics.CriticalFlow.CRITICAL_FLOW,
+            critical);
+    return critical;
+  }
+
+  /**
+   * Completes a result solved without its critical flow, without measuring it.
+   */
+  private ChannelResult computeCriticalFlow(SectionGeometry geometry, ChannelResult result) {
+    ChannelState state = new ChannelState(result);
+    solveForCriticalFlow(geometry.getStageIndex(), geometry.getLowestBankElevation(), state);
+
+    // A critical depth cut short by the token reads as NaN, the critical flow is failed instead
+    String interruption = this.finder.interruption();
+    if (interruption != null) {
+      return state.fail(interruption);
+    }
+    return state.succeed();
+  }
+
+  /**
+   * Solve for the hydraulic depth, froude number and flow type
+   */
+  private static void solveForFlowType(ChannelState state) {
+    state.hydraulicDepth = state.wettedArea / state.topWidth;
+    state.froudeNumber = state.averageVelocity / Math.sqrt(Hydraulics.GRAVITY_METRIC * state.hydraulicDepth);
+
+    // Select the flow type
+    state.flowType = Hydraulics.flowType(state.froudeNumber);
+  }
+
+  /**
+   * Solve for critical flow properties (critical depth, critical slope and critical water elevation)
+   */
+  private void solveForCriticalFlow(StageIndex index, double maxWaterElevation, ChannelState state) {
+    // Critical stage, NaN if it is above the lowest bank
+    double zc;
+    try {
+      zc = criticalStage(index, state.discharge, maxWaterElevation, this.finder);
+    } catch (ConvergenceException e) {
+      zc = Double.NaN;
+    }
+
+    // Critical area, perimeter, hydraulic radius
+    double Ac, Pc, Rc;
+
+    state.criticalWaterElevation = zc;
+    state.criticalDepth = zc - index.getLowestElevation();
+
+    Ac = index.area(zc);
+    Pc = index.perimeter(zc);
+    Rc = Ac / Pc;
+    state.criticalSlope = Math.pow(state.discharge / (Ac * Math.pow(Rc, (2.0/3.0))) * state.manningRoughness, 2);
+    state.criticalFlowSolved = true;
+  }
+
+  /**
+   * Solves the critical flow condition, A^3 / T = Q^2 / g, bracketed between two breakpoints of the index.
+   * @param index Stage index of the section
+   * @param discharge Discharge
+   * @param maxWaterElevation Highest stage searched, usually the lowest bank
+   * @param finder Root finder of the solve
+   * @return Double Critical stage
+   * @throws ConvergenceException If the critical stage is above the highest stage or the solution fails
+   */
+  static double criticalStage(final StageIndex index, double discharge, double maxWaterElevation,
+                              RootFinder finder) throws ConvergenceException {
+    // Q^2 / g
+    final double Q2g = Math.pow(discharge, 2) / Hydraulics.GRAVITY_METRIC;
+
+    final int k = index.criticalBreakpoint(Q2g);
+    double lower = (k > 0) ? index.breakpoint(k - 1) : index.getLowestElevation();
+    if (k < 0 || lower >= maxWaterElevation) {
+      throw new ConvergenceException("Critical depth is above the banks.");
+    }
+
+    // Elements of the interval below breakpoint k, so that the factor at its top excludes the flat segments
+    RootFinder.Equation f = new RootFinder.Equation() {
+      @Override
+      public double value(double z) {
+        return ((k > 0) ? index.criticalFactorAbove(k - 1, z) : index.criticalFactor(z)) - Q2g;
+      }
+    };
+    // A bank below the breakpoint cuts the bracket short, possibly before the factor reaches Q^2 / g
+    double upper = Math.min(index.breakpoint(k), maxWaterElevation);
+    if (f.value(upper) < 0) {
+      throw new ConvergenceException("Critical depth is above the banks.");
+    }
+    return finder.brent(f, lower, upper);
+  }
+
+  /**
+   * Checks whether a result can seed the water elevation of a section, its stage being inside the section.
+   */
+  private static boolean isSeed(ChannelResult seed, StageIndex index) {
+    return seed != null && seed.isCalculationSuccessful()
+        && seed.getWaterElevation() > index.getLowestElevation() && seed.getWaterDepth() > 0;
+  }
+
+  /**
+   * Check for invalid inputs
+   * @param spec Inputs of the channel
+   * @throws InvalidValueException If a flow property is invalid
+   * @throws DimensionException If the section or the water elevation is invalid
+   */
+  private static void validate(IrregularSpec spec) throws InvalidValueException, DimensionException {
+    SectionGeometry section = spec.getGeometry();
+    IrregularSectionChannel.Unknown unknown = spec.getUnknown();
+
+    if (section == null || section.getPointCount() < 3) {
+      throw new DimensionException("Invalid number of points. Minimum is three (3) points.");
+    }
+
+    if (unknown != IrregularSectionChannel.Unknown.WATER_ELEVATION) {
+      // The lower of the 2 banks
+      if (spec.getWaterElevation() > section.getLowestBankElevation()) {
+        throw new InvalidValueException("Water elevation is above the lowest bank. Overflow!");
+      }
+
+      if (spec.getWaterElevation() < section.getLowestElevation()) {
+        throw new DimensionException("Water surface was set below the lowest ground.");
+      }
+    }
+
+    if (spec.getManningRoughness() <= 0) {
+      throw new InvalidValueException("Manning's roughness must be greater than zero.");
+    }
+
+    if (unknown != IrregularSectionChannel.Unknown.DISCHARGE) {
+      if (spec.getDischarge() <= 0) {
+        throw new InvalidValueException("Discharge must be greater than zero.");
+      }
+    }
+
+    if (unknown != IrregularSectionChannel.Unknown.BED_SLOPE) {
+      if (spec.getBedSlope() <= 0) {
+        throw new InvalidValueException("Bed slope must not be flat or less than zero.");
+      }
+    }
+  }
+}
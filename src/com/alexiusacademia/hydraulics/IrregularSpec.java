@@ -0,0 +1,65 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * Immutable inputs of an irregular section channel, solved by an {@code IrregularSolver}.
+ * The input matching the unknown is ignored. Values are in metric units.
+ */
+public final class IrregularSpec {
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private final IrregularSectionChannel.Unknown unknown;
+  private final SectionGeometry geometry;
+  private final double discharge;
+  private final double bedSlope;
+  private final double waterElevation;
+  private final double manningRoughness;
+
+  /**
+   * Creates an {@code IrregularSpec} with the given inputs.
+   * @param unknown The unknown from the enum Unknown
+   * @param geometry The cross section, already immutable.
+   * @param discharge The flow rate.
+   * @param bedSlope The channel slope.
+   * @param waterElevation The water surface elevation.
+   * @param manningRoughness The Manning's roughness coefficient.
+   */
+  public IrregularSpec(IrregularSectionChannel.Unknown unknown, SectionGeometry geometry, double discharge,
+                       double bedSlope, double waterElevation, double manningRoughness) {
+    this.unknown = unknown;
+    this.geometry = geometry;
+    this.discharge = discharge;
+    this.bedSlope = bedSlope;
+    this.waterElevation = waterElevation;
+    this.manningRoughness = manningRoughness;
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  public IrregularSectionChannel.Unknown getUnknown() {
+    return unknown;
+  }
+
+  public SectionGeometry getGeometry() {
+    return geometry;
+  }
+
+  public double getDischarge() {
+    return discharge;
+  }
+
+  public double getBedSlope() {
+    return bedSlope;
+  }
+
+  public double getWaterElevation() {
+    return waterElevation;
+  }
+
+  public double getManningRoughness() {
+    return manningRoughness;
+  }
+}
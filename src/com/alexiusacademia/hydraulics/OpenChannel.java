@@ -1,5 +1,7 @@
 package com.alexiusacademia.hydraulics;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
 public class OpenChannel implements Serializable {
@@ -8,8 +10,6 @@ public class OpenChannel implements Serializable {
    * Constants
    ***************************************** */
   protected final double GRAVITY_METRIC = 9.81;
-  protected final double DEPTH_TRIAL_INCREMENT = 0.00001;
-  protected final double SLOPE_TRIAL_INCREMENT = 0.0000001;
   protected final double METER_TO_FOOT = 3.28;
 
   /** ****************************************
@@ -74,6 +74,30 @@ public class OpenChannel implements Serializable {
    */
   protected Unit unit = Unit.METRIC;
 
+  /** Relative tolerance of the iterative solutions */
+  protected double tolerance = RootFinder.DEFAULT_TOLERANCE;
+
+  /** Maximum number of iterations of a single iterative solution */
+  protected int maxIterations = RootFinder.DEFAULT_MAX_ITERATIONS;
+
+  /** Result cache shared by every channel without a cache of its own, null for none */
+  private static volatile ResultCache defaultResultCache;
+
+  /** Result cache of this channel, null to use the default cache */
+  protected transient ResultCache resultCache;
+
+  /** Cancellation and deadline of the analyses, null for none */
+  protected transient CancellationToken cancellationToken;
+
+  /** Result of the last analysis until its critical flow is solved on first access, null if solved */
+  private transient ChannelResult pendingCriticalFlow;
+
+  /** True to seed every analysis with the last successful one */
+  protected boolean warmStart;
+
+  /** Last successful result while warm starting, null for none */
+  private transient ChannelResult warmStartResult;
+
   /** Creates a parameterless instance of OpenChannel. */
   public OpenChannel() {
 
@@ -156,6 +180,7 @@ public class OpenChannel implements Serializable {
   }
 
   public double getCriticalDepth() {
+    solvePendingCriticalFlow();
     if (this.unit == Unit.ENGLISH) {
       return criticalDepth * METER_TO_FOOT;
     }
@@ -163,6 +188,7 @@ public class OpenChannel implements Serializable {
   }
 
   public double getCriticalSlope() {
+    solvePendingCriticalFlow();
     return criticalSlope;
   }
 
@@ -174,6 +200,30 @@ public class OpenChannel implements Serializable {
     return isCalculationSuccessful;
   }
 
+  public double getTolerance() {
+    return tolerance;
+  }
+
+  public int getMaxIterations() {
+    return maxIterations;
+  }
+
+  public static ResultCache getDefaultResultCache() {
+    return defaultResultCache;
+  }
+
+  public ResultCache getResultCache() {
+    return resultCache;
+  }
+
+  public CancellationToken getCancellationToken() {
+    return cancellationToken;
+  }
+
+  public boolean isWarmStart() {
+    return warmStart;
+  }
+
   /**
    * Gets the error message.
    * @return errMessage
@@ -213,18 +263,166 @@ public class OpenChannel implements Serializable {
     this.manningRoughness = manningRoughness;
   }
 
+  /**
+   * Sets the relative tolerance used when solving for an unknown iteratively.
+   * @param tolerance Relative tolerance, e.g. 1e-12
+   */
+  public void setTolerance(double tolerance) {
+    this.tolerance = tolerance;
+  }
+
+  /**
+   * Sets the maximum number of iterations used when solving for an unknown iteratively.
+   * @param maxIterations Iteration cap of a single solution
+   */
+  public void setMaxIterations(int maxIterations) {
+    this.maxIterations = maxIterations;
+  }
+
+  /**
+   * Sets the result cache used by every channel that has no cache of its own.
+   * @param cache Shared cache, or null to solve every analysis
+   */
+  public static void setDefaultResultCache(ResultCache cache) {
+    defaultResultCache = cache;
+  }
+
+  /**
+   * Sets the result cache of this channel, overriding the default cache.
+   * @param cache Cache of this channel, or null to use the default cache
+   */
+  public void setResultCache(ResultCache cache) {
+    this.resultCache = cache;
+  }
+
+  /**
+   * Sets the token that stops the analyses of this channel once it is cancelled or past its deadline.
+   * A stopped analysis fails with an error message.
+   * @param token Cancellation token, or null to run every analysis to completion
+   */
+  public void setCancellationToken(CancellationToken token) {
+    this.cancellationToken = token;
+  }
+
+  /**
+   * Sets the time series mode, where every analysis starts from the last successful one instead of from
+   * scratch. Along hourly discharges or any slowly varying input, solving a depth then takes a few
+   * evaluations whatever its magnitude. Analyses answered by a result cache are not seeded, and pipes
+   * start from their partial flow table, which is closer than the last analysis.
+   * @param warmStart True to seed the analyses with the last successful one
+   */
+  public void setWarmStart(boolean warmStart) {
+    this.warmStart = warmStart;
+    this.warmStartResult = null;
+  }
+
   /**
    * Methods
    */
+
+  /**
+   * Solves for the unknown of the channel. Every channel shape overrides this method.
+   * @return Boolean True if the calculation is successful
+   */
+  public boolean analyze() {
+    return false;
+  }
+
+  /**
+   * Returns the cache to be used by {@code analyze}.
+   * @return ResultCache of this channel, else the default cache, null if there is none
+   */
+  protected ResultCache resultCache() {
+    return (this.resultCache != null) ? this.resultCache : defaultResultCache;
+  }
+
+  /**
+   * Returns the result seeding the next analysis.
+   * @return Last successful result if warm starting, else null
+   */
+  protected ChannelResult warmStartResult() {
+    return this.warmStartResult;
+  }
+
+  /**
+   * Copies the result of a stateless solver into the channel. A failed result only sets the
+   * error, leaving the other properties unchanged. The critical flow of a result solved without
+   * it is solved on the first read of a critical property.
+   * @param result Result of the solver
+   */
+  protected void apply(ChannelResult result) {
+    this.isCalculationSuccessful = result.isCalculationSuccessful();
+    if (!this.isCalculationSuccessful) {
+      this.errMessage = result.getErrMessage();
+      return;
+    }
+    this.pendingCriticalFlow = result.isCriticalFlowSolved() ? null : result;
+    if (this.warmStart) {
+      this.warmStartResult = result;
+    }
+    this.discharge = result.getDischarge();
+    this.bedSlope = result.getBedSlope();
+    this.waterDepth = result.getWaterDepth();
+    this.wettedArea = result.getWettedArea();
+    this.wettedPerimeter = result.getWettedPerimeter();
+    this.hydraulicRadius = result.getHydraulicRadius();
+    this.averageVelocity = result.getAverageVelocity();
+    this.froudeNumber = result.getFroudeNumber();
+    this.flowType = result.getFlowType();
+    this.hydraulicDepth = result.getHydraulicDepth();
+    this.dischargeIntensity = result.getDischargeIntensity();
+    this.criticalDepth = result.getCriticalDepth();
+    this.criticalSlope = result.getCriticalSlope();
+  }
+
+  /**
+   * Solves the critical flow left pending by the last analysis, if any. A critical flow stopped by the
+   * cancellation token fails the analysis with its error message, its properties reading as {@code NaN}.
+   */
+  protected void solvePendingCriticalFlow() {
+    ChannelResult result = this.pendingCriticalFlow;
+    if (result != null) {
+      this.pendingCriticalFlow = null;
+      ChannelResult critical = solveCriticalFlow(result);
+      applyCriticalFlow(critical);
+      if (!critical.isCalculationSuccessful()) {
+        this.isCalculationSuccessful = false;
+        this.errMessage = critical.getErrMessage();
+      }
+    }
+  }
+
+  /**
+   * Solves the critical flow of a result of {@code analyze} solved without it. Every channel shape
+   * that defers its critical flow overrides this method.
+   * @param result Successful result of the last analysis
+   * @return ChannelResult with the critical flow properties
+   */
+  protected ChannelResult solveCriticalFlow(ChannelResult result) {
+    return result;
+  }
+
+  /**
+   * Copies the critical flow properties of a result into the channel.
+   * @param result Result with the critical flow properties
+   */
+  protected void applyCriticalFlow(ChannelResult result) {
+    this.criticalDepth = result.getCriticalDepth();
+    this.criticalSlope = result.getCriticalSlope();
+  }
+
+  /**
+   * Solves the pending critical flow before writing the channel, so that a copy reads the critical
+   * properties of its last analysis.
+   */
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    solvePendingCriticalFlow();
+    out.defaultWriteObject();
+  }
+
   protected void flowType() {
     // Flow type
-    if (this.froudeNumber == 1) {
-      this.flowType = FlowType.CRITICAL;
-    } else if (this.froudeNumber < 1) {
-      this.flowType = FlowType.SUBCRITICAL;
-    } else {
-      this.flowType = FlowType.SUPERCRITICAL;
-    }
+    this.flowType = Hydraulics.flowType(this.froudeNumber);
   }
 
 }
@@ -265,4 +463,4 @@ class InvalidValueException extends Exception {
   public InvalidValueException(String message){
     super(message);
   }
-}
\ No newline at end of file
+}
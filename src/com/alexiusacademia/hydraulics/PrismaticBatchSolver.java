@@ -0,0 +1,189 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * Batch solver shared by the rectangular and trapezoidal sections.
+ *
+ * The scenarios of a {@code ChannelBatch} are solved in a single loop over its columns with one
+ * reusable {@code TrapezoidalSection}, so the loop allocates nothing. A solver instance is meant
+ * for a single thread; use one instance per thread to solve disjoint ranges in parallel.
+ */
+abstract class PrismaticBatchSolver {
+
+  /* **********************************
+   * Properties
+   ***********************************/
+
+  // Unknown, in terms of the trapezoidal section
+  private final TrapezoidalOpenChannel.Unknown unknown;
+
+  // Rectangular sections ignore the side slope column
+  private final boolean rectangular;
+
+  private final TrapezoidalSection section;
+
+  // False to leave the critical depth column NaN
+  private boolean criticalFlow = true;
+
+  // True to seed the depth of every scenario with that of the previous one
+  private boolean warmStart;
+
+  /**
+   * Creates a {@code PrismaticBatchSolver}.
+   * @param unknown The unknown, in terms of the trapezoidal section
+   * @param rectangular True to ignore the side slope column
+   * @param tolerance Relative tolerance of the iterative solutions
+   * @param maxIterations Maximum number of iterations of a single solution
+   */
+  PrismaticBatchSolver(TrapezoidalOpenChannel.Unknown unknown, boolean rectangular, double tolerance,
+                       int maxIterations) {
+    this.unknown = unknown;
+    this.rectangular = rectangular;
+    this.section = new TrapezoidalSection(new RootFinder(tolerance, maxIterations));
+  }
+
+  /* **********************************
+   * Setters
+   ***********************************/
+
+  /**
+   * Sets whether the critical depth of every scenario is solved, which costs a root finder solve each.
+   * @param criticalFlow False to skip the critical depth, leaving its column {@code NaN}
+   */
+  public void setCriticalFlow(boolean criticalFlow) {
+    this.criticalFlow = criticalFlow;
+  }
+
+  /**
+   * Sets the time series mode, where the water depth of every scenario starts from the depth of the
+   * previous one with the same section. Rows of slowly varying discharges then take a few evaluations each.
+   * @param warmStart True to seed every scenario with the previous one
+   */
+  public void setWarmStart(boolean warmStart) {
+    this.warmStart = warmStart;
+  }
+
+  /* **********************************
+   * Methods
+   ***********************************/
+
+  /**
+   * Solves every scenario of the batch.
+   * @param batch The scenarios
+   */
+  public void solve(ChannelBatch batch) {
+    solve(batch, 0, batch.getSize());
+  }
+
+  /**
+   * Solves the scenarios of the batch from index {@code from} (inclusive) to {@code to} (exclusive).
+   * @param batch The scenarios
+   * @param from First scenario
+   * @param to End of the range
+   */
+  public void solve(ChannelBatch batch, int from, int to) {
+    double[] discharge = batch.getDischarge();
+    double[] bedSlope = batch.getBedSlope();
+    double[] manningRoughness = batch.getManningRoughness();
+    double[] baseWidth = batch.getBaseWidth();
+    double[] waterDepth = batch.getWaterDepth();
+    double[] sideSlope = batch.getSideSlope();
+    double[] wettedArea = batch.getWettedArea();
+    double[] wettedPerimeter = batch.getWettedPerimeter();
+    double[] hydraulicRadius = batch.getHydraulicRadius();
+    double[] averageVelocity = batch.getAverageVelocity();
+    double[] froudeNumber = batch.getFroudeNumber();
+    double[] criticalDepth = batch.getCriticalDepth();
+    boolean[] successful = batch.getSuccessful();
+
+    TrapezoidalSection s = this.section;
+
+    // Previous scenario seeding the water depth, -1 for none
+    int seed = -1;
+
+    for (int i = from; i < to; i++) {
+      s.discharge = discharge[i];
+      s.bedSlope = bedSlope[i];
+      s.manningRoughness = manningRoughness[i];
+      s.baseWidth = baseWidth[i];
+      s.waterDepth = waterDepth[i];
+      s.sideSlope = this.rectangular ? 0 : sideSlope[i];
+
+      boolean solved = isValidScenario(s);
+      if (solved) {
+        try {
+          switch (this.unknown) {
+            case DISCHARGE:
+              s.solveForDischarge();
+              discharge[i] = s.discharge;
+              break;
+            case WATER_DEPTH:
+              if (seed >= 0 && baseWidth[seed] == s.baseWidth
+                  && (this.rectangular || sideSlope[seed] == s.sideSlope)) {
+                s.solveForWaterDepth(waterDepth[seed], discharge[i] * manningRoughness[i] /
+                    (discharge[seed] * manningRoughness[seed]) * Math.sqrt(bedSlope[seed] / bedSlope[i]));
+              } else {
+                s.solveForWaterDepth();
+              }
+              waterDepth[i] = s.waterDepth;
+              break;
+            case BASE_WIDTH:
+              s.solveForBaseWidth();
+              baseWidth[i] = s.baseWidth;
+              break;
+            case BED_SLOPE:
+              s.solveForBedSlope();
+              bedSlope[i] = s.bedSlope;
+              break;
+          }
+          criticalDepth[i] = this.criticalFlow ? s.criticalDepth() : Double.NaN;
+        } catch (ConvergenceException e) {
+          solved = false;
+        }
+      }
+
+      if (solved) {
+        wettedArea[i] = s.wettedArea;
+        wettedPerimeter[i] = s.wettedPerimeter;
+        hydraulicRadius[i] = s.hydraulicRadius;
+        averageVelocity[i] = s.averageVelocity;
+        froudeNumber[i] = s.froudeNumber();
+      } else {
+        wettedArea[i] = Double.NaN;
+        wettedPerimeter[i] = Double.NaN;
+        hydraulicRadius[i] = Double.NaN;
+        averageVelocity[i] = Double.NaN;
+        froudeNumber[i] = Double.NaN;
+        criticalDepth[i] = Double.NaN;
+      }
+      successful[i] = solved;
+      if (this.warmStart && solved) {
+        seed = i;
+      }
+    }
+  }
+
+  /**
+   * Checks the inputs of a scenario with the same rules as the channel classes.
+   * @param s The loaded section
+   * @return Boolean True if all the inputs are valid
+   */
+  private boolean isValidScenario(TrapezoidalSection s) {
+    if (!(s.manningRoughness > 0)) {
+      return false;
+    }
+    if (this.unknown != TrapezoidalOpenChannel.Unknown.DISCHARGE && !(s.discharge > 0)) {
+      return false;
+    }
+    if (this.unknown != TrapezoidalOpenChannel.Unknown.BED_SLOPE && !(s.bedSlope > 0)) {
+      return false;
+    }
+    if (this.unknown != TrapezoidalOpenChannel.Unknown.BASE_WIDTH
+        && !(s.baseWidth > 0 || (s.baseWidth == 0 && s.sideSlope > 0))) {
+      return false;
+    }
+    if (this.unknown != TrapezoidalOpenChannel.Unknown.WATER_DEPTH && !(s.waterDepth > 0)) {
+      return false;
+    }
+    return s.sideSlope >= 0;
+  }
+}
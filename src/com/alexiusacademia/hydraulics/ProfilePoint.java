@@ -0,0 +1,132 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * One computed station of a water surface profile.
+ *
+ * A single instance is filled for every station of a run, so a profile of any length streams
+ * through a {@code ProfileSink} in constant memory. Values are in metric units.
+ */
+public final class ProfilePoint {
+
+  /**
+   * How the water surface of the station was found.
+   */
+  public enum Status {
+    // Boundary condition given by the caller
+    CONTROL,
+    // Energy equation balanced within the tolerance
+    CONVERGED,
+    // No solution in the flow regime of the march, critical depth assumed
+    CRITICAL
+  }
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  long index;
+  double chainage;
+  double invertElevation;
+  double waterElevation;
+  double waterDepth;
+  double criticalDepth;
+  double wettedArea;
+  double topWidth;
+  double averageVelocity;
+  double froudeNumber;
+  double energyElevation;
+  double frictionSlope;
+  Status status;
+  int iterations;
+  double residual;
+
+  ProfilePoint() {
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  /**
+   * Returns the position of the station in marching order, the control being zero.
+   * @return Long Index
+   */
+  public long getIndex() {
+    return index;
+  }
+
+  public double getChainage() {
+    return chainage;
+  }
+
+  public double getInvertElevation() {
+    return invertElevation;
+  }
+
+  public double getWaterElevation() {
+    return waterElevation;
+  }
+
+  public double getWaterDepth() {
+    return waterDepth;
+  }
+
+  /**
+   * Returns the critical depth of the station.
+   * @return Double Critical depth, {@code NaN} if it is above the maximum depth of the section
+   */
+  public double getCriticalDepth() {
+    return criticalDepth;
+  }
+
+  public double getWettedArea() {
+    return wettedArea;
+  }
+
+  public double getTopWidth() {
+    return topWidth;
+  }
+
+  public double getAverageVelocity() {
+    return averageVelocity;
+  }
+
+  public double getFroudeNumber() {
+    return froudeNumber;
+  }
+
+  /**
+   * Returns the elevation of the energy grade line, the water elevation plus the velocity head.
+   * @return Double Energy elevation
+   */
+  public double getEnergyElevation() {
+    return energyElevation;
+  }
+
+  /**
+   * Returns the friction slope of the station, (Q / K)^2.
+   * @return Double Friction slope
+   */
+  public double getFrictionSlope() {
+    return frictionSlope;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  /**
+   * Returns the number of evaluations of the energy equation spent on the station.
+   * @return Integer Evaluations, zero for the control
+   */
+  public int getIterations() {
+    return iterations;
+  }
+
+  /**
+   * Returns the energy balance error of the step at the accepted water surface.
+   * @return Double Absolute error in head, zero for the control
+   */
+  public double getResidual() {
+    return residual;
+  }
+}
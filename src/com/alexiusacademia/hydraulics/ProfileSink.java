@@ -0,0 +1,15 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * Receives the stations of a {@code WaterSurfaceProfile} as they are computed.
+ *
+ * The point passed in is reused for the next station once the call returns,
+ * so copy any value that has to be kept.
+ */
+public interface ProfileSink {
+  /**
+   * Accepts a computed station.
+   * @param point The station, in marching order
+   */
+  void accept(ProfilePoint point);
+}
@@ -0,0 +1,68 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * Cross section of a reach at a given chainage, the input of a water surface profile.
+ *
+ * Chainage increases downstream. Stations that share a prismatic shape can share one
+ * {@code CrossSection}, so a long reach costs one small object per station. Values are in metric units.
+ */
+public final class ProfileStation {
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private final double chainage;
+  private final double invertElevation;
+  private final CrossSection section;
+  private final double manningRoughness;
+
+  /**
+   * Creates a {@code ProfileStation}.
+   * @param chainage Distance along the reach, increasing downstream
+   * @param invertElevation Elevation of the lowest point of the section
+   * @param section Geometry of the section
+   * @param manningRoughness Manning's roughness coefficient
+   */
+  public ProfileStation(double chainage, double invertElevation, CrossSection section, double manningRoughness) {
+    if (section == null) {
+      throw new IllegalArgumentException("The station must have a section.");
+    }
+    if (manningRoughness <= 0) {
+      throw new IllegalArgumentException("Manning's roughness must be positive.");
+    }
+    this.chainage = chainage;
+    this.invertElevation = invertElevation;
+    this.section = section;
+    this.manningRoughness = manningRoughness;
+  }
+
+  /**
+   * Creates a {@code ProfileStation} of an irregular section, its invert at the lowest point of the geometry.
+   * @param chainage Distance along the reach, increasing downstream
+   * @param geometry Section geometry
+   * @param manningRoughness Manning's roughness coefficient
+   */
+  public ProfileStation(double chainage, SectionGeometry geometry, double manningRoughness) {
+    this(chainage, geometry.getLowestElevation(), CrossSection.irregular(geometry), manningRoughness);
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  public double getChainage() {
+    return chainage;
+  }
+
+  public double getInvertElevation() {
+    return invertElevation;
+  }
+
+  public CrossSection getSection() {
+    return section;
+  }
+
+  public double getManningRoughness() {
+    return manningRoughness;
+  }
+}
@@ -0,0 +1,528 @@
+package com.alexiusacademia.hydraulics;
+
+import java.util.Arrays;
+
+/**
+ * Precomputed depth-discharge relation of a prismatic channel, queried in both directions.
+ *
+ * The depth range is sampled adaptively with Manning's equation and its exact derivative, and the
+ * samples are joined by monotone cubic Hermite segments. An interval is split until both the
+ * interpolated discharge and the inverted depth are within the tolerance at the quarter points of the
+ * interval, so the tolerance holds between the samples and not only at them. Below a depth of
+ * {@code 1e-4} of the range, where the discharge vanishes, the errors are bounded relative to the
+ * depth and discharge at that depth instead.
+ *
+ * A query locates its segment through a bucket table and evaluates one cubic, so it costs a few
+ * nanoseconds. The curve is immutable and can be shared between threads. Values are in metric units.
+ */
+public final class RatingCurve {
+
+  /* **********************************
+   * Constants
+   ***********************************/
+  public static final double DEFAULT_TOLERANCE = 1e-6;
+
+  // Depth, as a fraction of the range, below which errors are bounded relative to the values at that depth
+  private static final double MIN_DEPTH_RATIO = 1e-4;
+
+  // Smallest interval, as a fraction of the range, that is still split
+  private static final double MIN_INTERVAL_RATIO = 1e-15;
+
+  // Interior points of an interval where the tolerance is checked
+  private static final double[] CHECK_POINTS = {0.25, 0.5, 0.75};
+
+  // Depth to diameter ratio of a pipe curve, just below the depth of maximum discharge (0.9381812)
+  // so that the discharge is still increasing at the top of the curve
+  private static final double PIPE_DEPTH_RATIO = 0.938181;
+
+  // Number of lookup buckets per segment
+  private static final int BUCKETS_PER_SEGMENT = 2;
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private final double[] depth;               // Depth of every sample, from zero to the maximum depth
+  private final double[] discharge;           // Discharge of every sample
+  private final double[] coefficients;        // Cubic of every segment in its local coordinate, four per segment
+  private final int[] depthBuckets;           // First segment of every depth bucket
+  private final int[] dischargeBuckets;       // First segment of every discharge bucket
+  private final double depthScale;            // Buckets per unit depth
+  private final double dischargeScale;        // Buckets per unit discharge
+  private final double tolerance;
+  private final double maxError;
+
+  /**
+   * Samples the discharge of a section from zero to the given depth.
+   * @param section Discharge of the section
+   * @param maxDepth Highest depth of the curve
+   * @param tolerance Relative tolerance of both directions
+   */
+  private RatingCurve(Section section, double maxDepth, double tolerance) {
+    if (!(tolerance > 0)) {
+      throw new IllegalArgumentException("Tolerance must be greater than zero.");
+    }
+    this.tolerance = tolerance;
+
+    Sampler sampler = new Sampler(section, maxDepth, tolerance);
+    sampler.add(0, 0, 0);
+    sampler.sample(0, 0, 0, maxDepth, section.discharge(maxDepth), section.dischargeRate(maxDepth));
+
+    int count = sampler.count;
+    this.depth = Arrays.copyOf(sampler.depth, count);
+    this.discharge = Arrays.copyOf(sampler.discharge, count);
+    double[] slope = Arrays.copyOf(sampler.slope, count);
+    limitSlopes(this.depth, this.discharge, slope);
+
+    int segments = count - 1;
+    this.coefficients = new double[4 * segments];
+    for (int k = 0; k < segments; k++) {
+      double h = this.depth[k + 1] - this.depth[k];
+      double q0 = this.discharge[k];
+      double q1 = this.discharge[k + 1];
+      double m0 = slope[k] * h;
+      double m1 = slope[k + 1] * h;
+      this.coefficients[4 * k] = q0;
+      this.coefficients[4 * k + 1] = m0;
+      this.coefficients[4 * k + 2] = 3 * (q1 - q0) - 2 * m0 - m1;
+      this.coefficients[4 * k + 3] = 2 * (q0 - q1) + m0 + m1;
+    }
+
+    int bucketCount = BUCKETS_PER_SEGMENT * segments;
+    this.depthScale = bucketCount / maxDepth;
+    this.dischargeScale = bucketCount / this.discharge[segments];
+    this.depthBuckets = buckets(this.depth, this.depthScale, bucketCount);
+    this.dischargeBuckets = buckets(this.discharge, this.dischargeScale, bucketCount);
+
+    this.maxError = measureError(section, sampler.minDepth, sampler.minDischarge);
+    if (this.maxError > tolerance) {
+      throw new IllegalArgumentException("The tolerance is too small to be met.");
+    }
+  }
+
+  /* **********************************
+   * Factories
+   ***********************************/
+
+  /**
+   * Creates the rating curve of a rectangular channel with the default tolerance.
+   * @param channel Channel with its bed slope, roughness and base width set
+   * @param maxDepth Highest depth of the curve
+   * @return RatingCurve
+   */
+  public static RatingCurve of(RectangularOpenChannel channel, double maxDepth) {
+    return of(channel, maxDepth, DEFAULT_TOLERANCE);
+  }
+
+  /**
+   * Creates the rating curve of a rectangular channel.
+   * @param channel Channel with its bed slope, roughness and base width set
+   * @param maxDepth Highest depth of the curve
+   * @param tolerance Relative tolerance of both directions
+   * @return RatingCurve
+   */
+  public static RatingCurve of(RectangularOpenChannel channel, double maxDepth, double tolerance) {
+    RectangularSpec spec = channel.spec();
+    if (!(spec.getBaseWidth() > 0)) {
+      throw new IllegalArgumentException("Base width must be greater than zero.");
+    }
+    return new RatingCurve(trapezoid(spec.getBaseWidth(), 0, spec.getBedSlope(), spec.getManningRoughness()),
+            checkDepth(maxDepth), tolerance);
+  }
+
+  /**
+   * Creates the rating curve of a trapezoidal channel with the default tolerance.
+   * @param channel Channel with its bed slope, roughness, base width and side slope set
+   * @param maxDepth Highest depth of the curve
+   * @return RatingCurve
+   */
+  public static RatingCurve of(TrapezoidalOpenChannel channel, double maxDepth) {
+    return of(channel, maxDepth, DEFAULT_TOLERANCE);
+  }
+
+  /**
+   * Creates the rating curve of a trapezoidal channel.
+   * @param channel Channel with its bed slope, roughness, base width and side slope set
+   * @param maxDepth Highest depth of the curve
+   * @param tolerance Relative tolerance of both directions
+   * @return RatingCurve
+   */
+  public static RatingCurve of(TrapezoidalOpenChannel channel, double maxDepth, double tolerance) {
+    TrapezoidalSpec spec = channel.spec();
+    if (spec.getBaseWidth() < 0) {
+      throw new IllegalArgumentException("Invalid base width dimension.");
+    }
+    if (spec.getSideSlope() < 0) {
+      throw new IllegalArgumentException("Side slope value should be positive.");
+    }
+    if (spec.getBaseWidth() == 0 && spec.getSideSlope() == 0) {
+      throw new IllegalArgumentException("Base width must be greater than zero.");
+    }
+    return new RatingCurve(trapezoid(spec.getBaseWidth(), spec.getSideSlope(), spec.getBedSlope(),
+            spec.getManningRoughness()), checkDepth(maxDepth), tolerance);
+  }
+
+  /**
+   * Creates the rating curve of a pipe with the default tolerance, up to the depth of maximum discharge.
+   * @param channel Pipe with its bed slope, roughness and diameter set
+   * @return RatingCurve
+   */
+  public static RatingCurve of(CircularOpenChannel channel) {
+    return of(channel, DEFAULT_TOLERANCE);
+  }
+
+  /**
+   * Creates the rating curve of a pipe, up to the depth of maximum discharge.
+   * Above that depth the discharge decreases, so the curve would not be invertible.
+   * @param channel Pipe with its bed slope, roughness and diameter set
+   * @param tolerance Relative tolerance of both directions
+   * @return RatingCurve
+   */
+  public static RatingCurve of(CircularOpenChannel channel, double tolerance) {
+    CircularSpec spec = channel.spec();
+    if (!(spec.getDiameter() > 0)) {
+      throw new IllegalArgumentException("Diameter must be greater than zero.");
+    }
+    return new RatingCurve(circle(spec.getDiameter(), spec.getBedSlope(), spec.getManningRoughness()),
+            PIPE_DEPTH_RATIO * spec.getDiameter(), tolerance);
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  public double getMaxDepth() {
+    return depth[depth.length - 1];
+  }
+
+  public double getMaxDischarge() {
+    return discharge[discharge.length - 1];
+  }
+
+  /**
+   * Returns the number of samples of the curve, including zero depth.
+   * @return Integer Number of samples
+   */
+  public int getSampleCount() {
+    return depth.length;
+  }
+
+  public double getTolerance() {
+    return tolerance;
+  }
+
+  /**
+   * Returns the largest relative error of either direction measured at the check points, at most the tolerance.
+   * @return Double Largest relative error
+   */
+  public double getMaxError() {
+    return maxError;
+  }
+
+  /* **********************************
+   * Methods
+   ***********************************/
+
+  /**
+   * Interpolates the discharge at a depth.
+   * @param depth Water depth
+   * @return Double Discharge, {@code NaN} outside the depth range of the curve
+   */
+  public double discharge(double depth) {
+    if (!(depth >= 0 && depth <= this.depth[this.depth.length - 1])) {
+      return Double.NaN;
+    }
+    int k = segment(this.depth, this.depthBuckets, this.depthScale, depth);
+    double t = (depth - this.depth[k]) / (this.depth[k + 1] - this.depth[k]);
+    int c = 4 * k;
+    return coefficients[c] + t * (coefficients[c + 1] + t * (coefficients[c + 2] + t * coefficients[c + 3]));
+  }
+
+  /**
+   * Interpolates the depth at a discharge.
+   * @param discharge Discharge
+   * @return Double Water depth, {@code NaN} outside the discharge range of the curve
+   */
+  public double depth(double discharge) {
+    if (!(discharge >= 0 && discharge <= this.discharge[this.discharge.length - 1])) {
+      return Double.NaN;
+    }
+    int k = segment(this.discharge, this.dischargeBuckets, this.dischargeScale, discharge);
+    return invert(k, discharge);
+  }
+
+  /**
+   * Solves the cubic of a segment for a discharge, by Newton's method safeguarded with bisection.
+   * The cubic is monotone, so the root is unique.
+   * @param k Index of the segment
+   * @param q Discharge within the segment
+   * @return Double Depth
+   */
+  private double invert(int k, double q) {
+    int c = 4 * k;
+    double rise = discharge[k + 1] - discharge[k];
+    double guess = (rise > 0) ? (q - discharge[k]) / rise : 0;
+    double t = root(coefficients[c] - q, coefficients[c + 1], coefficients[c + 2], coefficients[c + 3], guess);
+    return depth[k] + t * (depth[k + 1] - depth[k]);
+  }
+
+  /**
+   * Finds the root of an increasing cubic on [0, 1] by Newton's method safeguarded with bisection.
+   * @param c0 Constant coefficient, at most zero
+   * @param c1 Linear coefficient
+   * @param c2 Quadratic coefficient
+   * @param c3 Cubic coefficient
+   * @param guess Initial root
+   * @return Double Root
+   */
+  private static double root(double c0, double c1, double c2, double c3, double guess) {
+    double lower = 0;
+    double upper = 1;
+    double t = guess;
+    for (int i = 0; i < 60; i++) {
+      double f = c0 + t * (c1 + t * (c2 + t * c3));
+      if (f > 0) {
+        upper = t;
+      } else if (f < 0) {
+        lower = t;
+      } else {
+        return t;
+      }
+      double next = t - f / (c1 + t * (2 * c2 + 3 * t * c3));
+      if (!(next > lower && next < upper)) {
+        next = 0.5 * (lower + upper);
+      }
+      // The error left after a Newton step is of the order of the square of the step
+      if (Math.abs(next - t) <= 1e-10) {
+        return next;
+      }
+      t = next;
+    }
+    return t;
+  }
+
+  /**
+   * Measures the largest relative error of both directions at the check points of every segment.
+   */
+  private double measureError(Section section, double minDepth, double minDischarge) {
+    double error = 0;
+    for (int k = 0; k + 1 < depth.length; k++) {
+      double h = depth[k + 1] - depth[k];
+      for (double t : CHECK_POINTS) {
+        double y = depth[k] + t * h;
+        double q = section.discharge(y);
+        int c = 4 * k;
+        double interpolated = coefficients[c] + t * (coefficients[c + 1] + t * (coefficients[c + 2] + t * coefficients[c + 3]));
+        error = Math.max(error, Math.abs(interpolated - q) / Math.max(q, minDischarge));
+        error = Math.max(error, Math.abs(invert(k, Math.min(Math.max(q, discharge[k]), discharge[k + 1])) - y) /
+                Math.max(y, minDepth));
+      }
+    }
+    return error;
+  }
+
+  /**
+   * Limits the slopes so that every segment is monotone (Fritsch and Carlson).
+   */
+  private static void limitSlopes(double[] x, double[] y, double[] slope) {
+    for (int k = 0; k + 1 < x.length; k++) {
+      double secant = (y[k + 1] - y[k]) / (x[k + 1] - x[k]);
+      if (secant <= 0) {
+        slope[k] = 0;
+        slope[k + 1] = 0;
+        continue;
+      }
+      double alpha = Math.max(slope[k], 0) / secant;
+      double beta = Math.max(slope[k + 1], 0) / secant;
+      double norm = alpha * alpha + beta * beta;
+      if (norm > 9) {
+        double tau = 3 / Math.sqrt(norm);
+        alpha *= tau;
+        beta *= tau;
+      }
+      slope[k] = alpha * secant;
+      slope[k + 1] = beta * secant;
+    }
+  }
+
+  /**
+   * Builds the lookup table of the segment containing the start of every bucket.
+   */
+  private static int[] buckets(double[] knots, double scale, int bucketCount) {
+    int[] buckets = new int[bucketCount + 1];
+    int k = 0;
+    for (int i = 0; i <= bucketCount; i++) {
+      double x = i / scale;
+      while (k < knots.length - 2 && knots[k + 1] <= x) {
+        k++;
+      }
+      buckets[i] = k;
+    }
+    return buckets;
+  }
+
+  /**
+   * Finds the segment containing a value, searching only between the segments of its bucket.
+   */
+  private static int segment(double[] knots, int[] buckets, double scale, double x) {
+    int last = buckets.length - 1;
+    int i = Math.min((int) (x * scale), last);
+    int lower = buckets[i];
+    int upper = buckets[Math.min(i + 1, last)];
+    while (lower < upper) {
+      int mid = (lower + upper + 1) >>> 1;
+      if (knots[mid] <= x) {
+        lower = mid;
+      } else {
+        upper = mid - 1;
+      }
+    }
+    return lower;
+  }
+
+  private static double checkDepth(double maxDepth) {
+    if (!(maxDepth > 0)) {
+      throw new IllegalArgumentException("Water depth must be greater than zero.");
+    }
+    return maxDepth;
+  }
+
+  private static void checkFlow(double bedSlope, double manningRoughness) {
+    if (!(manningRoughness > 0)) {
+      throw new IllegalArgumentException("Manning's roughness must be greater than zero.");
+    }
+    if (!(bedSlope > 0)) {
+      throw new IllegalArgumentException("Bed slope must not be flat or less than zero.");
+    }
+  }
+
+  /* **********************************
+   * Sections
+   ***********************************/
+
+  /**
+   * Discharge of a section as a function of the depth.
+   */
+  private interface Section {
+    double discharge(double y);
+
+    double dischargeRate(double y);
+  }
+
+  private static Section trapezoid(final double b, final double z, final double s, final double n) {
+    checkFlow(s, n);
+    final double sideFactor = 2 * Math.sqrt(z * z + 1);
+    return new Section() {
+      @Override
+      public double discharge(double y) {
+        return Hydraulics.manningDischarge((b + z * y) * y, b + sideFactor * y, s, n);
+      }
+
+      @Override
+      public double dischargeRate(double y) {
+        if (y <= 0) {
+          return 0;
+        }
+        double area = (b + z * y) * y;
+        double perimeter = b + sideFactor * y;
+        double width = b + 2 * z * y;
+        return discharge(y) * (5 * width / (3 * area) - 2 * sideFactor / (3 * perimeter));
+      }
+    };
+  }
+
+  private static Section circle(final double d, final double s, final double n) {
+    checkFlow(s, n);
+    return new Section() {
+      @Override
+      public double discharge(double y) {
+        return Hydraulics.manningDischarge(CircularSolver.sectionArea(y, d), CircularSolver.sectionPerimeter(y, d), s, n);
+      }
+
+      @Override
+      public double dischargeRate(double y) {
+        if (y <= 0) {
+          return 0;
+        }
+        double area = CircularSolver.sectionArea(y, d);
+        double perimeter = CircularSolver.sectionPerimeter(y, d);
+        double width = CircularSolver.sectionTopWidth(y, d);
+        return discharge(y) * (5 * width / (3 * area) - 4 * d / (3 * perimeter * width));
+      }
+    };
+  }
+
+  /**
+   * Adaptive sampling of a section, appending the samples in order of depth.
+   */
+  private static final class Sampler {
+    final Section section;
+    final double tolerance;
+    final double minDepth;
+    final double minDischarge;
+    final double minInterval;
+
+    double[] depth = new double[64];
+    double[] discharge = new double[64];
+    double[] slope = new double[64];
+    int count;
+
+    Sampler(Section section, double maxDepth, double tolerance) {
+      this.section = section;
+      this.tolerance = tolerance;
+      this.minDepth = MIN_DEPTH_RATIO * maxDepth;
+      this.minDischarge = section.discharge(this.minDepth);
+      this.minInterval = MIN_INTERVAL_RATIO * maxDepth;
+    }
+
+    void add(double y, double q, double m) {
+      if (count == depth.length) {
+        depth = Arrays.copyOf(depth, 2 * count);
+        discharge = Arrays.copyOf(discharge, 2 * count);
+        slope = Arrays.copyOf(slope, 2 * count);
+      }
+      depth[count] = y;
+      discharge[count] = q;
+      slope[count] = m;
+      count++;
+    }
+
+    /**
+     * Samples the interval from a to b, the sample at a being already added.
+     */
+    void sample(double a, double qa, double ma, double b, double qb, double mb) {
+      if (!accurate(a, qa, ma, b, qb, mb) && b - a > minInterval) {
+        double mid = 0.5 * (a + b);
+        double qm = section.discharge(mid);
+        double mm = section.dischargeRate(mid);
+        sample(a, qa, ma, mid, qm, mm);
+        sample(mid, qm, mm, b, qb, mb);
+        return;
+      }
+      add(b, qb, mb);
+    }
+
+    /**
+     * Checks both directions of the Hermite segment at the check points of the interval.
+     */
+    private boolean accurate(double a, double qa, double ma, double b, double qb, double mb) {
+      double h = b - a;
+      double m0 = ma * h;
+      double m1 = mb * h;
+      double c2 = 3 * (qb - qa) - 2 * m0 - m1;
+      double c3 = 2 * (qa - qb) + m0 + m1;
+      for (double t : CHECK_POINTS) {
+        double y = a + t * h;
+        double q = section.discharge(y);
+        double interpolated = qa + t * (m0 + t * (c2 + t * c3));
+        if (Math.abs(interpolated - q) > tolerance * Math.max(q, minDischarge)) {
+          return false;
+        }
+        double inverted = a + h * root(qa - Math.min(Math.max(q, qa), qb), m0, c2, c3, t);
+        if (Math.abs(inverted - y) > tolerance * Math.max(y, minDepth)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
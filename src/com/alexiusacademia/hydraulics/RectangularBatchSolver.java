@@ -0,0 +1,29 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * Batch solver for rectangular channels.
+ *
+ * Solves the same unknown for every scenario of a {@code ChannelBatch}, reading the discharge,
+ * bed slope, Manning's roughness, base width and water depth columns. The side slope column is ignored.
+ * Instances are not thread safe.
+ */
+public class RectangularBatchSolver extends PrismaticBatchSolver {
+
+  /**
+   * Creates a {@code RectangularBatchSolver} with the default tolerance and iteration cap.
+   * @param unknown The unknown from the enum Unknown
+   */
+  public RectangularBatchSolver(RectangularOpenChannel.Unknown unknown) {
+    this(unknown, RootFinder.DEFAULT_TOLERANCE, RootFinder.DEFAULT_MAX_ITERATIONS);
+  }
+
+  /**
+   * Creates a {@code RectangularBatchSolver}.
+   * @param unknown The unknown from the enum Unknown
+   * @param tolerance Relative tolerance of the iterative solutions
+   * @param maxIterations Maximum number of iterations of a single solution
+   */
+  public RectangularBatchSolver(RectangularOpenChannel.Unknown unknown, double tolerance, int maxIterations) {
+    super(TrapezoidalOpenChannel.Unknown.valueOf(unknown.name()), true, tolerance, maxIterations);
+  }
+}
@@ -126,165 +126,37 @@ public class RectangularOpenChannel extends OpenChannel {
    * *********************************
    */
   public boolean analyze() {
-    if (isValidInputs()) {
-      // Get the unknown
-      switch (this.unknown) {
-        case DISCHARGE:
-          solveForDischarge();
-          break;
-        case WATER_DEPTH:
-          solveForWaterDepth();
-          break;
-        case BASE_WIDTH:
-          solveForBaseWidth();
-          break;
-        case BED_SLOPE:
-          solveForBedSlope();
-          break;
-      }
-      solveForCriticalFlow();
-      return this.isCalculationSuccessful;
-    }
-    return false;
+    RectangularSolver solver = new RectangularSolver(this.tolerance, this.maxIterations, this.cancellationToken);
+    ResultCache cache = resultCache();
+    // The critical flow is solved on first access, unless the cache holds it already
+    apply((cache == null) ? solver.solve(spec(), warmStartResult(), false) : cache.solve(solver, spec()));
+    return this.isCalculationSuccessful;
   }
 
   /**
-   * Solve for the unknown bed slope
+   * Captures the current inputs of the channel.
+   * @return RectangularSpec in metric units
    */
-  private void solveForBedSlope() {
-    double calculatedDischarge = 0.0;
-    double trialSlope = 0.0;
-
-    while (calculatedDischarge < this.discharge) {
-      trialSlope += 0.00000001;
-      this.wettedArea = this.baseWidth * this.waterDepth;
-      this.wettedPerimeter = this.baseWidth + 2 * this.waterDepth;
-      this.hydraulicRadius = this.wettedArea / this.wettedPerimeter;
-      this.averageVelocity = (1 / this.manningRoughness) * Math.sqrt(trialSlope) * Math.pow(this.hydraulicRadius, (2.0 / 3.0));
-      calculatedDischarge = this.averageVelocity * this.wettedArea;
-    }
-
-    this.bedSlope = trialSlope;
-    this.isCalculationSuccessful = true;
-
+  RectangularSpec spec() {
+    return new RectangularSpec(this.unknown, this.discharge, this.bedSlope, this.baseWidth, this.waterDepth,
+            this.manningRoughness);
   }
 
   /**
-   * Solve for the unknown base width
+   * Copies the result of the solver, including the solved base width.
+   * @param result Result of the solver
    */
-  private void solveForBaseWidth() {
-    double calculatedDischarge = 0.0;
-    double trialBaseWidth = 0.0;
-
-    while (calculatedDischarge < this.discharge) {
-      trialBaseWidth += 0.0001;
-      this.wettedArea = trialBaseWidth * this.waterDepth;
-      this.wettedPerimeter = trialBaseWidth + 2 * this.waterDepth;
-      this.hydraulicRadius = this.wettedArea / this.wettedPerimeter;
-      this.averageVelocity = (1 / this.manningRoughness) * Math.sqrt(this.bedSlope) * Math.pow(this.hydraulicRadius, (2.0 / 3.0));
-      calculatedDischarge = this.averageVelocity * this.wettedArea;
+  @Override
+  protected void apply(ChannelResult result) {
+    super.apply(result);
+    if (result.isCalculationSuccessful()) {
+      this.baseWidth = result.getBaseWidth();
     }
-
-    this.baseWidth = trialBaseWidth;
-    this.isCalculationSuccessful = true;
-  }
-
-  /**
-   * Solve for the unknown water depth
-   */
-  private void solveForWaterDepth() {
-    double calculatedDischarge = 0.0;
-    double trialWaterDepth = 0.0;
-
-    while (calculatedDischarge < this.discharge) {
-      trialWaterDepth += 0.0001;
-      this.wettedArea = this.baseWidth * trialWaterDepth;
-      this.wettedPerimeter = this.baseWidth + 2 * trialWaterDepth;
-      this.hydraulicRadius = this.wettedArea / this.wettedPerimeter;
-      this.averageVelocity = (1 / this.manningRoughness) * Math.sqrt(this.bedSlope) * Math.pow(this.hydraulicRadius, (2.0 / 3.0));
-      calculatedDischarge = this.averageVelocity * this.wettedArea;
-    }
-
-    this.waterDepth = trialWaterDepth;
-    this.isCalculationSuccessful = true;
-  }
-
-  /**
-   * Solve for the unknown discharge
-   */
-  private void solveForDischarge() {
-
-    this.wettedArea = this.baseWidth * this.waterDepth;
-    this.wettedPerimeter = this.baseWidth + 2 * this.waterDepth;
-    this.hydraulicRadius = this.wettedArea / this.wettedPerimeter;
-    this.averageVelocity = (1 / this.manningRoughness) * Math.sqrt(this.bedSlope) * Math.pow(this.hydraulicRadius, (2.0 / 3.0));
-    this.discharge = this.averageVelocity * this.wettedArea;
-
-    this.isCalculationSuccessful = true;
   }
 
-  /**
-   * Solve for critical flow properties (e.g. critical depth, froude number, flow type ...)
-   */
-  private void solveForCriticalFlow() {
-    // Hydraulic depth
-    this.hydraulicDepth = this.wettedArea / this.baseWidth;
-
-    // Froude number
-    this.froudeNumber = this.averageVelocity / Math.sqrt(this.GRAVITY_METRIC * this.hydraulicDepth);
-
-    // Select the flow type
-    this.flowType();
-
-    // Discharge intensity
-    this.dischargeIntensity = this.discharge / this.baseWidth;
-
-    // Critical depth
-    this.criticalDepth = Math.pow(Math.pow(this.dischargeIntensity, 2) / this.GRAVITY_METRIC, (1.0/3.0));
+  @Override
+  protected ChannelResult solveCriticalFlow(ChannelResult result) {
+    return new RectangularSolver(this.tolerance, this.maxIterations, this.cancellationToken)
+        .criticalFlow(result);
   }
-
-  /**
-   * Checks whether all inputs are valid.
-   * @return Boolean Returns true if all the inputs are valid, false otherwise
-   */
-  private boolean isValidInputs() {
-    try {
-      if (this.manningRoughness <= 0) {
-        throw new InvalidValueException("Manning's roughness must be greater than zero.");
-      }
-      if (this.unknown != Unknown.DISCHARGE) {
-        if (this.discharge <= 0) {
-          throw new InvalidValueException("Discharge must be greater than zero.");
-        }
-      }
-      if (this.unknown != Unknown.BED_SLOPE) {
-        if (this.bedSlope <= 0) {
-          throw new InvalidValueException("Bed slope must not be flat or less than zero.");
-        }
-      }
-      if (this.unknown != Unknown.BASE_WIDTH) {
-        if (this.baseWidth == 0) {
-          throw new DimensionException("Base width must be greater than zero.");
-        } else if (this.baseWidth < 0) {
-          throw new DimensionException("Invalid base width dimension.");
-        }
-      }
-      if (this.unknown != Unknown.WATER_DEPTH) {
-        if (this.waterDepth == 0) {
-          throw new DimensionException("Water depth must be greater than zero.");
-        } else if (this.waterDepth < 0) {
-          throw new DimensionException("Invalid depth of water.");
-        }
-      }
-
-    } catch (InvalidValueException | DimensionException e) {
-      this.isCalculationSuccessful = false;
-      this.errMessage = e.getMessage();
-      return false;
-    }
-
-    // Return true if all exceptions are passed
-    return true;
-  }
-
 }
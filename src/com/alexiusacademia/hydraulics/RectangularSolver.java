@@ -0,0 +1,113 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * Stateless solver of rectangular channels, a trapezoidal section with vertical sides.
+ *
+ * Every call works on its own copy of the inputs and returns an immutable result, so a single
+ * instance can be shared by any number of threads without locking.
+ */
+public final class RectangularSolver {
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private final TrapezoidalSolver solver;
+
+  /**
+   * Creates a {@code RectangularSolver} with the default tolerance and iteration cap.
+   */
+  public RectangularSolver() {
+    this(RootFinder.DEFAULT_TOLERANCE, RootFinder.DEFAULT_MAX_ITERATIONS);
+  }
+
+  /**
+   * Creates a {@code RectangularSolver} with the given tolerance and iteration cap.
+   * @param tolerance Relative tolerance of the iterative solutions
+   * @param maxIterations Iteration cap of a single iterative solution
+   */
+  public RectangularSolver(double tolerance, int maxIterations) {
+    this(tolerance, maxIterations, null);
+  }
+
+  /**
+   * Creates a {@code RectangularSolver} whose solves stop once the given token is cancelled or expired.
+   * @param tolerance Relative tolerance of the iterative solutions
+   * @param maxIterations Iteration cap of a single iterative solution
+   * @param token Cancellation token of the solves, null for none
+   */
+  public RectangularSolver(double tolerance, int maxIterations, CancellationToken token) {
+    this.solver = new TrapezoidalSolver(tolerance, maxIterations, token);
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  public double getTolerance() {
+    return this.solver.getTolerance();
+  }
+
+  public int getMaxIterations() {
+    return this.solver.getMaxIterations();
+  }
+
+  public CancellationToken getCancellationToken() {
+    return this.solver.getCancellationToken();
+  }
+
+  /* **********************************
+   * Methods
+   ***********************************/
+
+  /**
+   * Solves for the unknown of the channel and its critical flow properties.
+   * @param spec Inputs of the channel
+   * @return ChannelResult, unsuccessful with an error message if the inputs are invalid or the solution fails
+   */
+  public ChannelResult solve(RectangularSpec spec) {
+    return solve(spec, true);
+  }
+
+  /**
+   * Solves for the unknown of the channel, and for its critical flow properties only if asked to. The Froude
+   * number and flow type are always solved.
+   * @param spec Inputs of the channel
+   * @param criticalFlow False to skip the critical depth and critical slope, which are left {@code NaN}
+   * @return ChannelResult, unsuccessful with an error message if the inputs are invalid or the solution fails
+   */
+  public ChannelResult solve(RectangularSpec spec, boolean criticalFlow) {
+    return solve(spec, null, criticalFlow);
+  }
+
+  /**
+   * Solves for the unknown of the channel, seeding the water depth with the result of a previous solve of
+   * the same section. Along a series of slowly varying discharges each solve then takes a few evaluations.
+   * @param spec Inputs of the channel
+   * @param seed Previous result with the same base width, null or unsuccessful to solve cold
+   * @param criticalFlow False to skip the critical depth and critical slope, which are left {@code NaN}
+   * @return ChannelResult, unsuccessful with an error message if the inputs are invalid or the solution fails
+   */
+  public ChannelResult solve(RectangularSpec spec, ChannelResult seed, boolean criticalFlow) {
+    Object event = SolverMetrics.beginSolve();
+    long start = SolverMetrics.start(event);
+    ChannelResult result = this.solver.compute(new TrapezoidalSpec(TrapezoidalOpenChannel.Unknown.valueOf(spec.getUnknown().name()),
+            spec.getDischarge(), spec.getBedSlope(), spec.getBaseWidth(), spec.getWaterDepth(), 0,
+            spec.getManningRoughness()), seed, criticalFlow);
+    SolverMetrics.stop(start, event, SolverMetrics.Shape.RECTANGULAR, spec.getUnknown(), result);
+    return result;
+  }
+
+  /**
+   * Completes a result solved without its critical flow, measured under {@link SolverMetrics.CriticalFlow}.
+   * @param result Successful result of {@link #solve(RectangularSpec, boolean)}
+   * @return ChannelResult with the critical flow properties, unsuccessful if the token stopped it
+   */
+  ChannelResult criticalFlow(ChannelResult result) {
+    Object event = SolverMetrics.beginSolve();
+    long start = SolverMetrics.start(event);
+    ChannelResult critical = this.solver.computeCriticalFlow(result);
+    SolverMetrics.stop(start, event, SolverMetrics.Shape.RECTANGULAR, SolverMetrics.CriticalFlow.CRITICAL_FLOW,
+            critical);
+    return critical;
+  }
+}
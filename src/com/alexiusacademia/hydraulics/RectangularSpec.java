@@ -0,0 +1,65 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * Immutable inputs of a rectangular channel, solved by a {@code RectangularSolver}.
+ * The input matching the unknown is ignored. Values are in metric units.
+ */
+public final class RectangularSpec {
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private final RectangularOpenChannel.Unknown unknown;
+  private final double discharge;
+  private final double bedSlope;
+  private final double baseWidth;
+  private final double waterDepth;
+  private final double manningRoughness;
+
+  /**
+   * Creates a {@code RectangularSpec} with the given inputs.
+   * @param unknown The unknown from the enum Unknown
+   * @param discharge The flow rate.
+   * @param bedSlope The channel slope.
+   * @param baseWidth The channel width.
+   * @param waterDepth The depth of the water.
+   * @param manningRoughness The Manning's roughness coefficient.
+   */
+  public RectangularSpec(RectangularOpenChannel.Unknown unknown, double discharge, double bedSlope,
+                         double baseWidth, double waterDepth, double manningRoughness) {
+    this.unknown = unknown;
+    this.discharge = discharge;
+    this.bedSlope = bedSlope;
+    this.baseWidth = baseWidth;
+    this.waterDepth = waterDepth;
+    this.manningRoughness = manningRoughness;
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  public RectangularOpenChannel.Unknown getUnknown() {
+    return unknown;
+  }
+
+  public double getDischarge() {
+    return discharge;
+  }
+
+  public double getBedSlope() {
+    return bedSlope;
+  }
+
+  public double getBaseWidth() {
+    return baseWidth;
+  }
+
+  public double getWaterDepth() {
+    return waterDepth;
+  }
+
+  public double getManningRoughness() {
+    return manningRoughness;
+  }
+}
@@ -0,0 +1,400 @@
+package com.alexiusacademia.hydraulics;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe memo of solver results, bounded by a least-recently-used eviction.
+ *
+ * A result is keyed by the shape, the unknown, the tolerance and iteration cap of the solver and
+ * the inputs of the spec. The input of the unknown is ignored, since the solver overwrites it.
+ * Inputs are quantized to the relative tolerance of the solver, so scenarios that differ by less
+ * than the solver can resolve share one entry. Irregular sections are keyed by an identity number
+ * of their {@code SectionGeometry}, which is immutable, so an entry does not keep its geometry alive.
+ *
+ * The cache is split into up to 16 segments of at least 64 results, each an access ordered map under
+ * its own lock, so threads solving different scenarios rarely contend. A cache of fewer than 128
+ * results is a single segment. A result is computed outside the lock; two threads missing the same
+ * key at once both solve it and the later one is kept. Every entry holds one key of at most five
+ * inputs and one immutable {@code ChannelResult}, neither referring to a geometry or its stage index,
+ * so the maximum size also bounds the memory of the cache. Results of solvers whose
+ * {@code CancellationToken} has fired are returned but not stored.
+ *
+ * Channels use a cache transparently once it is set with {@code OpenChannel.setDefaultResultCache}
+ * or {@code OpenChannel.setResultCache}.
+ */
+public final class ResultCache {
+
+  /* **********************************
+   * Constants
+   ***********************************/
+  public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+  // Largest number of independently locked segments, a power of two
+  private static final int MAX_SEGMENTS = 16;
+
+  // Smallest capacity of a segment, so that a small cache is not split into segments too small to be useful
+  private static final int MIN_SEGMENT_CAPACITY = 64;
+
+  // Number of explicit mantissa bits of a double
+  private static final int MANTISSA_BITS = 52;
+
+  // Shapes of the keys
+  private static final int RECTANGULAR = 0;
+  private static final int TRAPEZOIDAL = 1;
+  private static final int CIRCULAR = 2;
+  private static final int IRREGULAR = 3;
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private final int maximumSize;
+
+  // Relative quantum of the inputs, or NaN to use the tolerance of each solver
+  private final double quantum;
+
+  private final Segment[] segments;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * Creates a {@code ResultCache} of the default size.
+   */
+  public ResultCache() {
+    this(DEFAULT_MAXIMUM_SIZE);
+  }
+
+  /**
+   * Creates a {@code ResultCache} quantizing the inputs to the tolerance of each solver.
+   * @param maximumSize Maximum number of results kept
+   */
+  public ResultCache(int maximumSize) {
+    this(maximumSize, Double.NaN);
+  }
+
+  /**
+   * Creates a {@code ResultCache} quantizing the inputs to a fixed relative quantum.
+   * A quantum of zero only shares results of bitwise equal inputs.
+   * @param maximumSize Maximum number of results kept
+   * @param quantum Relative difference below which inputs are considered equal, e.g. 1e-12
+   */
+  public ResultCache(int maximumSize, double quantum) {
+    if (maximumSize < 1) {
+      throw new IllegalArgumentException("The maximum size must be at least one.");
+    }
+    if (quantum < 0 || quantum >= 1) {
+      throw new IllegalArgumentException("The quantum must be from zero to less than one.");
+    }
+    this.maximumSize = maximumSize;
+    this.quantum = quantum;
+    int count = Integer.highestOneBit(Math.max(1, Math.min(MAX_SEGMENTS, maximumSize / MIN_SEGMENT_CAPACITY)));
+    this.segments = new Segment[count];
+    for (int i = 0; i < count; i++) {
+      // Spread the remainder so the capacities add up to the maximum size
+      int capacity = maximumSize / count + ((i < maximumSize % count) ? 1 : 0);
+      this.segments[i] = new Segment(capacity);
+    }
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  /**
+   * Returns the fraction of the lookups answered from the cache.
+   * @return Double Hit rate from 0 to 1, 0 if there was no lookup yet
+   */
+  public double getHitRate() {
+    long hitCount = hits.sum();
+    long lookups = hitCount + misses.sum();
+    return (lookups == 0) ? 0 : (double) hitCount / lookups;
+  }
+
+  /**
+   * Returns the number of results currently kept.
+   * @return Number of entries
+   */
+  public int size() {
+    int size = 0;
+    for (Segment segment : this.segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  /* **********************************
+   * Methods
+   ***********************************/
+
+  /**
+   * Removes every result and resets the statistics.
+   */
+  public void clear() {
+    for (Segment segment : this.segments) {
+      synchronized (segment) {
+        segment.clear();
+      }
+    }
+    this.hits.reset();
+    this.misses.reset();
+    this.evictions.reset();
+  }
+
+  /**
+   * Returns the cached result of a rectangular channel, solving and caching it on a miss.
+   * @param solver Solver used on a miss
+   * @param spec Inputs of the channel
+   * @return ChannelResult
+   */
+  public ChannelResult solve(RectangularSolver solver, RectangularSpec spec) {
+    RectangularOpenChannel.Unknown unknown = spec.getUnknown();
+    Key key = key(RECTANGULAR, unknown.ordinal(), 0, solver.getTolerance(), solver.getMaxIterations(),
+            input(unknown != RectangularOpenChannel.Unknown.DISCHARGE, spec.getDischarge()),
+            input(unknown != RectangularOpenChannel.Unknown.BED_SLOPE, spec.getBedSlope()),
+            input(unknown != RectangularOpenChannel.Unknown.BASE_WIDTH, spec.getBaseWidth()),
+            input(unknown != RectangularOpenChannel.Unknown.WATER_DEPTH, spec.getWaterDepth()),
+            spec.getManningRoughness());
+    ChannelResult result = lookup(key);
+    if (result == null) {
+      result = store(key, solver.solve(spec), solver.getCancellationToken());
+    }
+    return result;
+  }
+
+  /**
+   * Returns the cached result of a trapezoidal channel, solving and caching it on a miss.
+   * @param solver Solver used on a miss
+   * @param spec Inputs of the channel
+   * @return ChannelResult
+   */
+  public ChannelResult solve(TrapezoidalSolver solver, TrapezoidalSpec spec) {
+    TrapezoidalOpenChannel.Unknown unknown = spec.getUnknown();
+    Key key = key(TRAPEZOIDAL, unknown.ordinal(), 0, solver.getTolerance(), solver.getMaxIterations(),
+            input(unknown != TrapezoidalOpenChannel.Unknown.DISCHARGE, spec.getDischarge()),
+            input(unknown != TrapezoidalOpenChannel.Unknown.BED_SLOPE, spec.getBedSlope()),
+            input(unknown != TrapezoidalOpenChannel.Unknown.BASE_WIDTH, spec.getBaseWidth()),
+            input(unknown != TrapezoidalOpenChannel.Unknown.WATER_DEPTH, spec.getWaterDepth()),
+            spec.getSideSlope(), spec.getManningRoughness());
+    ChannelResult result = lookup(key);
+    if (result == null) {
+      result = store(key, solver.solve(spec), solver.getCancellationToken());
+    }
+    return result;
+  }
+
+  /**
+   * Returns the cached result of a circular channel, solving and caching it on a miss.
+   * @param solver Solver used on a miss
+   * @param spec Inputs of the pipe
+   * @return ChannelResult
+   */
+  public ChannelResult solve(CircularSolver solver, CircularSpec spec) {
+    CircularOpenChannel.Unknown unknown = spec.getUnknown();
+    Key key = key(CIRCULAR, unknown.ordinal(), 0, solver.getTolerance(), solver.getMaxIterations(),
+            input(unknown != CircularOpenChannel.Unknown.DISCHARGE, spec.getDischarge()),
+            input(unknown != CircularOpenChannel.Unknown.BED_SLOPE, spec.getBedSlope()),
+            input(unknown != CircularOpenChannel.Unknown.DIAMETER, spec.getDiameter()),
+            input(unknown != CircularOpenChannel.Unknown.WATER_DEPTH, spec.getWaterDepth()),
+            spec.getManningRoughness());
+    ChannelResult result = lookup(key);
+    if (result == null) {
+      result = store(key, solver.solve(spec), solver.getCancellationToken());
+    }
+    return result;
+  }
+
+  /**
+   * Returns the cached result of an irregular section, solving and caching it on a miss.
+   * Sections are matched by the identity of their geometry.
+   * @param solver Solver used on a miss
+   * @param spec Inputs of the section
+   * @return ChannelResult
+   */
+  public ChannelResult solve(IrregularSolver solver, IrregularSpec spec) {
+    IrregularSectionChannel.Unknown unknown = spec.getUnknown();
+    SectionGeometry geometry = spec.getGeometry();
+    Key key = key(IRREGULAR, unknown.ordinal(), (geometry == null) ? 0 : geometry.identity(),
+            solver.getTolerance(), solver.getMaxIterations(),
+            input(unknown != IrregularSectionChannel.Unknown.DISCHARGE, spec.getDischarge()),
+            input(unknown != IrregularSectionChannel.Unknown.BED_SLOPE, spec.getBedSlope()),
+            input(unknown != IrregularSectionChannel.Unknown.WATER_ELEVATION, spec.getWaterElevation()),
+            spec.getManningRoughness());
+    ChannelResult result = lookup(key);
+    if (result == null) {
+      result = store(key, solver.solve(spec), solver.getCancellationToken());
+    }
+    return result;
+  }
+
+  /**
+   * Canonical value of an input, zero if it is the unknown.
+   */
+  private static double input(boolean known, double value) {
+    return known ? value : 0;
+  }
+
+  /**
+   * Builds a key with its inputs rounded to the quantum.
+   */
+  private Key key(int shape, int unknown, long geometry, double tolerance, int maxIterations,
+                  double... inputs) {
+    int dropped = droppedBits(Double.isNaN(this.quantum) ? tolerance : this.quantum);
+    long[] bits = new long[inputs.length];
+    for (int i = 0; i < inputs.length; i++) {
+      bits[i] = quantize(inputs[i], dropped);
+    }
+    return new Key(shape, unknown, geometry, Double.doubleToLongBits(tolerance), maxIterations, bits);
+  }
+
+  /**
+   * Number of low mantissa bits below a relative quantum.
+   */
+  private static int droppedBits(double quantum) {
+    if (!(quantum > 0)) {
+      return 0;
+    }
+    // A relative step of 2^-k keeps k mantissa bits
+    int kept = (int) Math.floor(-Math.log(quantum) / Math.log(2));
+    return MANTISSA_BITS - Math.max(0, Math.min(MANTISSA_BITS, kept));
+  }
+
+  /**
+   * Rounds a value to the nearest multiple of its quantum, returning its bits.
+   * A carry out of the mantissa moves the value to the next binade, which is the correct rounding.
+   */
+  private static long quantize(double value, int dropped) {
+    if (value == 0) {
+      // Both signed zeros are the same input
+      return 0L;
+    }
+    long bits = Double.doubleToLongBits(value);
+    if (dropped == 0 || Double.isNaN(value) || Double.isInfinite(value)) {
+      return bits;
+    }
+    long half = 1L << (dropped - 1);
+    long mask = -1L << dropped;
+    return (bits + half) & mask;
+  }
+
+  private ChannelResult lookup(Key key) {
+    Segment segment = segment(key);
+    ChannelResult result;
+    synchronized (segment) {
+      result = segment.get(key);
+    }
+    if (result == null) {
+      this.misses.increment();
+    } else {
+      this.hits.increment();
+    }
+    return result;
+  }
+
+  private ChannelResult store(Key key, ChannelResult result, CancellationToken token) {
+    if (token != null && token.isCancelled()) {
+      // The solve may have been cut short, its result does not belong to the inputs
+      return result;
+    }
+    Segment segment = segment(key);
+    synchronized (segment) {
+      segment.put(key, result);
+    }
+    return result;
+  }
+
+  private Segment segment(Key key) {
+    // Mix the high bits in, since the low bits of the hash feed the segment maps as well
+    int hash = key.hash ^ (key.hash >>> 16);
+    return this.segments[hash & (this.segments.length - 1)];
+  }
+
+  /**
+   * Access ordered map evicting its least recently used entry beyond its capacity.
+   */
+  @SuppressWarnings("serial")
+  private final class Segment extends LinkedHashMap<Key, ChannelResult> {
+    private final int capacity;
+
+    Segment(int capacity) {
+      super(16, 0.75f, true);
+      this.capacity = capacity;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, ChannelResult> eldest) {
+      if (size() > this.capacity) {
+        evictions.increment();
+        return true;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Canonical scenario of a solver call.
+   */
+  private static final class Key {
+    private final int shape;
+    private final int unknown;
+    private final long geometry;
+    private final long tolerance;
+    private final int maxIterations;
+    private final long[] inputs;
+    private final int hash;
+
+    Key(int shape, int unknown, long geometry, long tolerance, int maxIterations, long[] inputs) {
+      this.shape = shape;
+      this.unknown = unknown;
+      this.geometry = geometry;
+      this.tolerance = tolerance;
+      this.maxIterations = maxIterations;
+      this.inputs = inputs;
+      int h = 31 * shape + unknown;
+      h = 31 * h + Long.hashCode(geometry);
+      h = 31 * h + Long.hashCode(tolerance);
+      h = 31 * h + maxIterations;
+      this.hash = 31 * h + Arrays.hashCode(inputs);
+    }
+
+    @Override
+    public int hashCode() {
+      return this.hash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) other;
+      return this.hash == key.hash && this.shape == key.shape && this.unknown == key.unknown
+              && this.geometry == key.geometry && this.tolerance == key.tolerance
+              && this.maxIterations == key.maxIterations && Arrays.equals(this.inputs, key.inputs);
+    }
+  }
+}
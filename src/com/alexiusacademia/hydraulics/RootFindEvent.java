@@ -0,0 +1,43 @@
+package com.alexiusacademia.hydraulics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a single root finder solve, the unit of work of every inverse and critical
+ * flow solution. The events of a channel solve are nested in its {@link ChannelSolveEvent} on the same
+ * thread. Like the solve event it is disabled by default and costs nothing until enabled by name.
+ */
+@Name("com.alexiusacademia.hydraulics.RootFind")
+@Label("Root Find")
+@Category({"IrrigFlo", "Solver"})
+@Description("Bracketed root finder solve")
+@Enabled(false)
+@StackTrace(false)
+final class RootFindEvent extends jdk.jfr.Event {
+
+  @Label("Method")
+  String method;
+
+  @Label("Lower Limit")
+  double lower;
+
+  @Label("Upper Limit")
+  double upper;
+
+  @Label("Root")
+  double root;
+
+  @Label("Iterations")
+  int iterations;
+
+  @Label("Converged")
+  boolean converged;
+
+  @Label("Error Message")
+  String errMessage;
+}
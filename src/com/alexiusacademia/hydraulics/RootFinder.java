@@ -0,0 +1,367 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * Root finder shared by the channel classes for every inverse solve.
+ *
+ * Two methods are available. {@code newton} is a safeguarded Newton-Raphson iteration that
+ * keeps the root bracketed and falls back to bisection whenever a Newton step leaves the
+ * bracket or the derivative is unusable. {@code brent} is Brent's method (inverse quadratic
+ * interpolation, secant and bisection) for equations without a derivative.
+ * Both converge in tens of evaluations where the old fixed increment loops needed millions.
+ * Every iteration also checks the optional {@link CancellationToken}, so a solve stops at the next
+ * iteration after a cancellation and within eight iterations after its deadline.
+ */
+final class RootFinder {
+
+  /* **********************************
+   * Constants
+   ***********************************/
+  static final double DEFAULT_TOLERANCE = 1.0e-12;
+  static final int DEFAULT_MAX_ITERATIONS = 100;
+
+  // Maximum number of times a bracket is doubled while searching for a sign change
+  private static final int MAX_BRACKET_EXPANSIONS = 200;
+
+  // The deadline of the token is read every 2^DEADLINE_CHECK_BITS iterations, the clock costing more than an iteration
+  private static final int DEADLINE_CHECK_BITS = 3;
+  private static final int DEADLINE_CHECK_MASK = (1 << DEADLINE_CHECK_BITS) - 1;
+
+  // Names of the methods in the flight recorder events
+  private static final String NEWTON = "Newton";
+  private static final String BRENT = "Brent";
+
+  // Machine epsilon for double precision
+  private static final double EPSILON = Math.ulp(1.0);
+
+  /**
+   * An equation f(x) = 0 to be solved.
+   */
+  interface Equation {
+    /**
+     * Value of the equation at x.
+     * @param x Trial value of the unknown
+     * @return f(x)
+     */
+    double value(double x);
+
+    /**
+     * First derivative of the equation at x.
+     * Equations without an analytical derivative return {@code Double.NaN},
+     * in which case Newton steps are replaced by bisection.
+     * @param x Trial value of the unknown
+     * @return f'(x)
+     */
+    default double derivative(double x) {
+      return Double.NaN;
+    }
+  }
+
+  /* **********************************
+   * Properties
+   ***********************************/
+
+  // Relative tolerance on the unknown
+  private final double tolerance;
+
+  // Iteration cap for a single solve
+  private final int maxIterations;
+
+  // Cancellation and deadline checked at every iteration, null for none
+  private final CancellationToken token;
+
+  /**
+   * Creates a {@code RootFinder} with the default tolerance and iteration cap.
+   */
+  RootFinder() {
+    this(DEFAULT_TOLERANCE, DEFAULT_MAX_ITERATIONS);
+  }
+
+  /**
+   * Creates a {@code RootFinder} with the given tolerance and iteration cap.
+   * @param tolerance Relative tolerance on the unknown
+   * @param maxIterations Maximum number of iterations for a single solve
+   */
+  RootFinder(double tolerance, int maxIterations) {
+    this(tolerance, maxIterations, null);
+  }
+
+  /**
+   * Creates a {@code RootFinder} with the given tolerance, iteration cap and cancellation token.
+   * @param tolerance Relative tolerance on the unknown
+   * @param maxIterations Maximum number of iterations for a single solve
+   * @param token Cancellation token checked at every iteration, null for none
+   */
+  RootFinder(double tolerance, int maxIterations, CancellationToken token) {
+    this.tolerance = tolerance;
+    this.maxIterations = maxIterations;
+    this.token = token;
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  double getTolerance() {
+    return tolerance;
+  }
+
+  int getMaxIterations() {
+    return maxIterations;
+  }
+
+  CancellationToken getCancellationToken() {
+    return token;
+  }
+
+  /**
+   * Reason for stopping the solves of this finder.
+   * @return Error message if the token is cancelled or past its deadline, else null
+   */
+  String interruption() {
+    return (this.token == null) ? null : this.token.reason();
+  }
+
+  /**
+   * Reason for stopping a solve at the given iteration, reading the clock only every few iterations.
+   */
+  private String interruption(int iteration) {
+    if (this.token == null) {
+      return null;
+    }
+    return this.token.reason((iteration & DEADLINE_CHECK_MASK) == DEADLINE_CHECK_MASK);
+  }
+
+  /* **********************************
+   * Methods
+   ***********************************/
+
+  /**
+   * Expands the upper limit of the bracket by doubling until the equation changes sign.
+   * Used for unknowns without a natural upper limit (base width, bed slope, depth in open sections).
+   * @param f The equation, assumed increasing in x
+   * @param lower Lower limit, where f is negative
+   * @param start Initial guess of the upper limit
+   * @return Upper limit where f is not negative
+   * @throws ConvergenceException If no sign change is found
+   */
+  double expandUpper(Equation f, double lower, double start) throws ConvergenceException {
+    double upper = Math.max(start, lower);
+    double step = upper - lower;
+    if (step <= 0) {
+      step = 1.0;
+      upper = lower + step;
+    }
+
+    for (int i = 0; i < MAX_BRACKET_EXPANSIONS; i++) {
+      String reason = interruption(i);
+      if (reason != null) {
+        throw new ConvergenceException(reason);
+      }
+      double fUpper = f.value(upper);
+      if (fUpper >= 0) {
+        return upper;
+      }
+      if (Double.isNaN(fUpper)) {
+        break;
+      }
+      step *= 2;
+      upper = lower + step;
+    }
+    throw new ConvergenceException("Unable to bracket the solution.");
+  }
+
+  /**
+   * Safeguarded Newton-Raphson iteration on a bracketed root.
+   * @param f The equation with its derivative
+   * @param lower Lower limit of the bracket
+   * @param upper Upper limit of the bracket
+   * @param guess Starting value, clamped inside the bracket
+   * @return The root
+   * @throws ConvergenceException If the bracket is invalid or the iteration cap is reached
+   */
+  double newton(Equation f, double lower, double upper, double guess) throws ConvergenceException {
+    Object event = SolverMetrics.beginRootFind();
+    double fLower = f.value(lower);
+    double fUpper = f.value(upper);
+
+    if (fLower == 0) {
+      return found(event, NEWTON, lower, upper, lower, 0);
+    }
+    if (fUpper == 0) {
+      return found(event, NEWTON, lower, upper, upper, 0);
+    }
+    if ((fLower > 0) == (fUpper > 0)) {
+      throw failed(event, NEWTON, lower, upper, 0, "Solution is not bracketed.");
+    }
+
+    // Orient the bracket so that f(lo) < 0 < f(hi)
+    double lo = lower, hi = upper;
+    if (fLower > 0) {
+      lo = upper;
+      hi = lower;
+    }
+
+    double x = (guess > Math.min(lower, upper) && guess < Math.max(lower, upper)) ? guess : 0.5 * (lower + upper);
+    double dxOld = Math.abs(upper - lower);
+    double dx = dxOld;
+    double fx = f.value(x);
+    double dfx = f.derivative(x);
+
+    for (int i = 0; i < this.maxIterations; i++) {
+      String reason = interruption(i);
+      if (reason != null) {
+        throw failed(event, NEWTON, lower, upper, i, reason);
+      }
+      boolean outside = ((x - hi) * dfx - fx) * ((x - lo) * dfx - fx) > 0;
+      boolean slow = Math.abs(2.0 * fx) > Math.abs(dxOld * dfx);
+
+      if (Double.isNaN(dfx) || dfx == 0 || outside || slow) {
+        // Bisection
+        dxOld = dx;
+        dx = 0.5 * (hi - lo);
+        x = lo + dx;
+      } else {
+        // Newton step
+        dxOld = dx;
+        dx = fx / dfx;
+        x -= dx;
+      }
+
+      if (Math.abs(dx) <= this.tolerance * Math.abs(x) + EPSILON * Math.abs(x) || fx == 0) {
+        return found(event, NEWTON, lower, upper, x, i + 1);
+      }
+
+      fx = f.value(x);
+      dfx = f.derivative(x);
+
+      if (fx < 0) {
+        lo = x;
+      } else {
+        hi = x;
+      }
+    }
+    throw failed(event, NEWTON, lower, upper, this.maxIterations, "Maximum number of iterations reached.");
+  }
+
+  /**
+   * Brent's method on a bracketed root.
+   * @param f The equation
+   * @param lower Lower limit of the bracket
+   * @param upper Upper limit of the bracket
+   * @return The root
+   * @throws ConvergenceException If the bracket is invalid or the iteration cap is reached
+   */
+  double brent(Equation f, double lower, double upper) throws ConvergenceException {
+    Object event = SolverMetrics.beginRootFind();
+    double a = lower, b = upper, c, d, e;
+    double fa = f.value(a);
+    double fb = f.value(b);
+    double fc;
+
+    if (fa == 0) {
+      return found(event, BRENT, lower, upper, a, 0);
+    }
+    if (fb == 0) {
+      return found(event, BRENT, lower, upper, b, 0);
+    }
+    if ((fa > 0) == (fb > 0)) {
+      throw failed(event, BRENT, lower, upper, 0, "Solution is not bracketed.");
+    }
+
+    c = a;
+    fc = fa;
+    d = b - a;
+    e = d;
+
+    for (int i = 0; i < this.maxIterations; i++) {
+      String reason = interruption(i);
+      if (reason != null) {
+        throw failed(event, BRENT, lower, upper, i, reason);
+      }
+      if ((fb > 0) == (fc > 0)) {
+        c = a;
+        fc = fa;
+        d = b - a;
+        e = d;
+      }
+      if (Math.abs(fc) < Math.abs(fb)) {
+        a = b;
+        b = c;
+        c = a;
+        fa = fb;
+        fb = fc;
+        fc = fa;
+      }
+
+      double tol = 2.0 * EPSILON * Math.abs(b) + 0.5 * this.tolerance * Math.abs(b);
+      double m = 0.5 * (c - b);
+
+      if (Math.abs(m) <= tol || fb == 0) {
+        return found(event, BRENT, lower, upper, b, i);
+      }
+
+      if (Math.abs(e) >= tol && Math.abs(fa) > Math.abs(fb)) {
+        // Attempt interpolation
+        double p, q, r;
+        double s = fb / fa;
+        if (a == c) {
+          // Secant
+          p = 2.0 * m * s;
+          q = 1.0 - s;
+        } else {
+          // Inverse quadratic interpolation
+          q = fa / fc;
+          r = fb / fc;
+          p = s * (2.0 * m * q * (q - r) - (b - a) * (r - 1.0));
+          q = (q - 1.0) * (r - 1.0) * (s - 1.0);
+        }
+        if (p > 0) {
+          q = -q;
+        } else {
+          p = -p;
+        }
+        if (2.0 * p < Math.min(3.0 * m * q - Math.abs(tol * q), Math.abs(e * q))) {
+          e = d;
+          d = p / q;
+        } else {
+          d = m;
+          e = d;
+        }
+      } else {
+        // Bisection
+        d = m;
+        e = d;
+      }
+
+      a = b;
+      fa = fb;
+      if (Math.abs(d) > tol) {
+        b += d;
+      } else {
+        b += (m > 0 ? tol : -tol);
+      }
+      fb = f.value(b);
+    }
+    throw failed(event, BRENT, lower, upper, this.maxIterations, "Maximum number of iterations reached.");
+  }
+
+  /**
+   * Records a converged solve and returns its root.
+   */
+  private static double found(Object event, String method, double lower, double upper, double root,
+                              int iterations) {
+    SolverMetrics.addIterations(iterations);
+    SolverMetrics.endRootFind(event, method, lower, upper, root, iterations, null);
+    return root;
+  }
+
+  /**
+   * Records a failed solve and returns the exception to be thrown.
+   */
+  private static ConvergenceException failed(Object event, String method, double lower, double upper,
+                                             int iterations, String message) {
+    SolverMetrics.addIterations(iterations);
+    SolverMetrics.endRootFind(event, method, lower, upper, Double.NaN, iterations, message);
+    return new ConvergenceException(message);
+  }
+}
@@ -0,0 +1,500 @@
+package com.alexiusacademia.hydraulics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Memory mapped CSV file of surveyed cross sections, read lazily per section.
+ *
+ * Every row holds a section ID, a station and an elevation, separated by commas; further fields are ignored.
+ * The rows of a section are contiguous and ordered from the left bank to the right bank. A header row, blank
+ * lines and lines starting with {@code #} are skipped, and an ID may be enclosed in double quotes.
+ * <pre>
+ * section,station,elevation
+ * XS-001,0.0,102.35
+ * XS-001,4.5,100.10
+ * </pre>
+ *
+ * Opening the file maps it in segments of 1 GiB and scans it once, recording the byte range, the ID and the row
+ * count of each section in primitive arrays, so the heap holds only the index whatever the size of the file.
+ * A geometry is parsed when it is requested, from a window of the mapped bytes copied into a small array,
+ * without creating strings or boxed numbers. The pages of the file are loaded by the operating system as they
+ * are read. Instances are immutable and can be shared between threads.
+ */
+public final class SectionCsvFile {
+
+  /* **********************************
+   * Constants
+   ***********************************/
+  // Size of a mapped segment, 1 GiB
+  private static final int SEGMENT_SHIFT = 30;
+  private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+
+  // Longest line, and size of the window of the mapped file read at once
+  private static final int MAX_LINE_LENGTH = 1 << 16;
+  private static final int WINDOW_SIZE = 1 << 20;
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private final ByteBuffer[] segments;
+  private final long size;
+
+  private int sectionCount;
+  private long[] idStart;          // Offset of the ID of each section
+  private int[] idLength;          // Length of the ID in bytes, without quotes
+  private long[] rowStart;         // Offset of the first row of each section
+  private long[] rowEnd;           // Offset past the last row of each section
+  private int[] pointCount;        // Number of rows of each section
+
+  // Open addressing table of section index + 1, keyed by the hash of the ID
+  private int[] table;
+
+  /**
+   * Indexes the mapped file.
+   * @param segments Mapped segments of the file
+   * @param size Size of the file in bytes
+   * @throws IOException If the file is not a valid section file
+   */
+  private SectionCsvFile(ByteBuffer[] segments, long size) throws IOException {
+    this.segments = segments;
+    this.size = size;
+    this.idStart = new long[INITIAL_CAPACITY];
+    this.idLength = new int[INITIAL_CAPACITY];
+    this.rowStart = new long[INITIAL_CAPACITY];
+    this.rowEnd = new long[INITIAL_CAPACITY];
+    this.pointCount = new int[INITIAL_CAPACITY];
+    this.table = new int[2 * INITIAL_CAPACITY];
+    try {
+      scan();
+    } catch (IllegalArgumentException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Opens and indexes a section file. The file must not be modified while it is in use.
+   * @param path Path of the CSV file
+   * @return SectionCsvFile
+   * @throws IOException If the file cannot be read or is not a valid section file
+   */
+  public static SectionCsvFile open(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      int count = (int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+      ByteBuffer[] segments = new ByteBuffer[count];
+      for (int k = 0; k < count; k++) {
+        long start = (long) k << SEGMENT_SHIFT;
+        segments[k] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+      }
+      // The mapping stays valid after the channel is closed
+      return new SectionCsvFile(segments, size);
+    }
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  public int getSectionCount() {
+    return sectionCount;
+  }
+
+  /**
+   * Returns the ID of a section.
+   * @param section Index of the section in the order of the file
+   * @return String Section ID
+   */
+  public String getSectionId(int section) {
+    checkIndex(section);
+    byte[] bytes = new byte[idLength[section]];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = byteAt(idStart[section] + i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns the number of points of a section.
+   * @param section Index of the section in the order of the file
+   * @return Integer Number of points
+   */
+  public int getPointCount(int section) {
+    checkIndex(section);
+    return pointCount[section];
+  }
+
+  /**
+   * Returns the index of the section with the given ID.
+   * @param id Section ID
+   * @return Integer Index of the section, -1 if the file has no such section
+   */
+  public int indexOf(String id) {
+    byte[] key = id.getBytes(StandardCharsets.UTF_8);
+    int h = 0;
+    for (byte b : key) {
+      h = 31 * h + b;
+    }
+    int mask = table.length - 1;
+    for (int slot = mix(h) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+      int section = table[slot] - 1;
+      if (idEquals(section, key, key.length)) {
+        return section;
+      }
+    }
+    return -1;
+  }
+
+  /* **********************************
+   * Methods
+   ***********************************/
+
+  /**
+   * Parses the geometry of a section.
+   * @param section Index of the section in the order of the file
+   * @return SectionGeometry
+   * @throws IllegalArgumentException If a row of the section is malformed
+   */
+  public SectionGeometry getGeometry(int section) {
+    checkIndex(section);
+    int n = pointCount[section];
+    double[] stations = new double[n];
+    double[] elevations = new double[n];
+    long offset = rowStart[section];
+    Cursor cursor = new Cursor((int) Math.min(WINDOW_SIZE, rowEnd[section] - offset), rowEnd[section]);
+    for (int i = 0; i < n; ) {
+      cursor.seek(offset);
+      cursor.skipSpaces();
+      if (!cursor.isIgnoredLine()) {
+        cursor.skipId();
+        cursor.delimiter();
+        stations[i] = cursor.number();
+        cursor.delimiter();
+        elevations[i] = cursor.number();
+        cursor.endOfRow();
+        i++;
+      }
+      offset = cursor.nextLine();
+    }
+    return SectionGeometry.wrap(stations, elevations);
+  }
+
+  /**
+   * Parses the geometry of the section with the given ID.
+   * @param id Section ID
+   * @return SectionGeometry, {@code null} if the file has no such section
+   * @throws IllegalArgumentException If a row of the section is malformed
+   */
+  public SectionGeometry getGeometry(String id) {
+    int section = indexOf(id);
+    return (section < 0) ? null : getGeometry(section);
+  }
+
+  /**
+   * Records the sections of the file. The ID of every row is compared with the ID of the previous row,
+   * kept in a small buffer, and the hash table is only probed when a new section starts.
+   */
+  private void scan() {
+    Cursor cursor = new Cursor((int) Math.min(WINDOW_SIZE, size), size);
+    byte[] lastId = new byte[16];
+    int lastLength = -1;
+    boolean first = true;
+    long offset = 0;
+    while (offset < size) {
+      cursor.seek(offset);
+      cursor.skipSpaces();
+      if (cursor.isIgnoredLine()) {
+        offset = cursor.nextLine();
+        continue;
+      }
+
+      // ID field
+      int start;
+      int end;
+      if (cursor.peek() == '"') {
+        cursor.pos++;
+        start = cursor.pos;
+        cursor.skipQuoted();
+        end = cursor.pos - 1;
+      } else {
+        start = cursor.pos;
+        cursor.skipField();
+        end = cursor.pos;
+        while (end > start && isSpace(cursor.window[end - 1])) {
+          end--;
+        }
+      }
+      cursor.delimiter();
+
+      // A first row whose station is not a number is the header
+      if (first) {
+        first = false;
+        cursor.skipSpaces();
+        if (cursor.atEnd() || !isNumberStart(cursor.peek())) {
+          offset = cursor.nextLine();
+          continue;
+        }
+      }
+
+      int length = end - start;
+      boolean same = (length == lastLength);
+      for (int i = 0; same && i < length; i++) {
+        same = cursor.window[start + i] == lastId[i];
+      }
+      if (!same) {
+        if (length > lastId.length) {
+          lastId = new byte[Math.max(length, 2 * lastId.length)];
+        }
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+          lastId[i] = cursor.window[start + i];
+          h = 31 * h + lastId[i];
+        }
+        lastLength = length;
+        addSection(cursor.base + start, lastId, length, h, offset);
+      } else {
+        pointCount[sectionCount - 1]++;
+      }
+      offset = cursor.nextLine();
+      rowEnd[sectionCount - 1] = Math.min(offset, size);
+    }
+  }
+
+  /**
+   * Appends a section whose first row starts at the given offset.
+   */
+  private void addSection(long start, byte[] id, int length, int hash, long offset) {
+    if (sectionCount == idStart.length) {
+      int capacity = 2 * sectionCount;
+      idStart = Arrays.copyOf(idStart, capacity);
+      idLength = Arrays.copyOf(idLength, capacity);
+      rowStart = Arrays.copyOf(rowStart, capacity);
+      rowEnd = Arrays.copyOf(rowEnd, capacity);
+      pointCount = Arrays.copyOf(pointCount, capacity);
+    }
+    if (2 * (sectionCount + 1) > table.length) {
+      rehash(2 * table.length);
+    }
+
+    int section = sectionCount;
+    int mask = table.length - 1;
+    int slot = mix(hash) & mask;
+    for (; table[slot] != 0; slot = (slot + 1) & mask) {
+      int other = table[slot] - 1;
+      if (idEquals(other, id, length)) {
+        throw new IllegalArgumentException("The rows of section " + getSectionId(other)
+            + " are not contiguous, at byte " + offset + ".");
+      }
+    }
+    table[slot] = section + 1;
+    idStart[section] = start;
+    idLength[section] = length;
+    rowStart[section] = offset;
+    pointCount[section] = 1;
+    sectionCount++;
+  }
+
+  private void rehash(int capacity) {
+    int[] rehashed = new int[capacity];
+    int mask = capacity - 1;
+    for (int section = 0; section < sectionCount; section++) {
+      int h = 0;
+      for (int i = 0; i < idLength[section]; i++) {
+        h = 31 * h + byteAt(idStart[section] + i);
+      }
+      int slot = mix(h) & mask;
+      while (rehashed[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      rehashed[slot] = section + 1;
+    }
+    table = rehashed;
+  }
+
+  private boolean idEquals(int section, byte[] id, int length) {
+    if (idLength[section] != length) {
+      return false;
+    }
+    long start = idStart[section];
+    for (int i = 0; i < length; i++) {
+      if (byteAt(start + i) != id[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Reads the byte at the given offset of the file.
+   */
+  private byte byteAt(long offset) {
+    return segments[(int) (offset >>> SEGMENT_SHIFT)].get((int) (offset & (SEGMENT_SIZE - 1)));
+  }
+
+  private void checkIndex(int section) {
+    if (section < 0 || section >= sectionCount) {
+      throw new IndexOutOfBoundsException("Section " + section + " of " + sectionCount + ".");
+    }
+  }
+
+  private static int mix(int h) {
+    h *= 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private static boolean isSpace(byte b) {
+    return b == ' ' || b == '\t';
+  }
+
+  private static boolean isEndOfLine(byte b) {
+    return b == '\n' || b == '\r';
+  }
+
+  private static boolean isNumberStart(byte b) {
+    return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.';
+  }
+
+  /**
+   * Window of the mapped file copied into an array, so that the bytes of a line are read from the heap.
+   * The window is moved forward when less than the longest line is left in it.
+   */
+  private final class Cursor {
+    private final byte[] window;
+    private final long end;        // Offset past the last byte read by the cursor
+    private long base;             // Offset of the first byte of the window
+    private int pos;
+    private int limit;
+
+    Cursor(int capacity, long end) {
+      this.window = new byte[capacity];
+      this.end = end;
+      this.base = -1;
+    }
+
+    /**
+     * Moves to the start of a line.
+     */
+    void seek(long offset) {
+      if (base < 0 || offset < base || (offset + MAX_LINE_LENGTH > base + limit && base + limit < end)) {
+        fill(offset);
+      }
+      pos = (int) (offset - base);
+    }
+
+    /**
+     * Copies the mapped bytes from the given offset, across segments if needed.
+     */
+    private void fill(long offset) {
+      limit = (int) Math.min(window.length, end - offset);
+      base = offset;
+      int copied = 0;
+      while (copied < limit) {
+        long from = offset + copied;
+        ByteBuffer segment = segments[(int) (from >>> SEGMENT_SHIFT)].duplicate();
+        segment.position((int) (from & (SEGMENT_SIZE - 1)));
+        int length = Math.min(limit - copied, segment.remaining());
+        segment.get(window, copied, length);
+        copied += length;
+      }
+    }
+
+    boolean atEnd() {
+      return pos >= limit;
+    }
+
+    byte peek() {
+      return window[pos];
+    }
+
+    void skipSpaces() {
+      while (pos < limit && isSpace(window[pos])) {
+        pos++;
+      }
+    }
+
+    boolean isIgnoredLine() {
+      return pos >= limit || isEndOfLine(window[pos]) || window[pos] == '#';
+    }
+
+    /**
+     * Moves past the end of the line and returns the offset of the next line.
+     */
+    long nextLine() {
+      while (pos < limit && window[pos] != '\n') {
+        pos++;
+      }
+      if (pos >= limit && base + limit < end) {
+        throw error("Line longer than " + MAX_LINE_LENGTH + " bytes");
+      }
+      return base + pos + 1;
+    }
+
+    void skipField() {
+      while (pos < limit && window[pos] != ',' && !isEndOfLine(window[pos])) {
+        pos++;
+      }
+    }
+
+    /**
+     * Moves past the closing quote of a quoted field.
+     */
+    void skipQuoted() {
+      while (pos < limit && window[pos] != '"' && !isEndOfLine(window[pos])) {
+        pos++;
+      }
+      if (pos >= limit || window[pos] != '"') {
+        throw error("Unterminated quote");
+      }
+      pos++;
+    }
+
+    void skipId() {
+      if (window[pos] == '"') {
+        pos++;
+        skipQuoted();
+      }
+      skipField();
+    }
+
+    void delimiter() {
+      skipSpaces();
+      if (pos >= limit || window[pos] != ',') {
+        throw error("Missing delimiter");
+      }
+      pos++;
+    }
+
+    void endOfRow() {
+      skipSpaces();
+      if (pos < limit && window[pos] != ',' && !isEndOfLine(window[pos])) {
+        throw error("Invalid number");
+      }
+    }
+
+    /**
+     * Parses the decimal number of the field at the cursor.
+     */
+    double number() {
+      skipSpaces();
+      int start = pos;
+      skipField();
+      double value = DecimalParser.parse(window, start, pos);
+      if (Double.isNaN(value)) {
+        pos = start;
+        throw error("Invalid number");
+      }
+      return value;
+    }
+
+    private IllegalArgumentException error(String message) {
+      return new IllegalArgumentException(message + " at byte " + (base + pos) + ".");
+    }
+  }
+}
@@ -0,0 +1,211 @@
+package com.alexiusacademia.hydraulics;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Immutable geometry of an irregular cross section.
+ *
+ * Stations and elevations are stored in two contiguous primitive arrays, ordered from the left bank
+ * to the right bank. The bounding elevations and the bank elevations are computed once, and the
+ * stage index of the section is built on first use and shared by every channel using the geometry.
+ */
+public final class SectionGeometry implements Serializable {
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private static final long serialVersionUID = 1L;
+
+  // Source of the identities of the geometries
+  private static final AtomicLong IDENTITIES = new AtomicLong();
+
+  private final double[] stations;
+  private final double[] elevations;
+
+  private final double lowestElevation;
+  private final double highestElevation;
+  private final double leftBankElevation;
+  private final double rightBankElevation;
+
+  // Stage index, built on first use
+  private transient volatile StageIndex stageIndex;
+
+  // Identity within the JVM, assigned on first use, and again to a deserialized copy
+  private transient volatile long identity;
+
+  /**
+   * Creates a {@code SectionGeometry} from the given coordinates. The arrays are copied.
+   * @param stations Horizontal distances of the vertices, from the left bank
+   * @param elevations Elevations of the vertices
+   */
+  public SectionGeometry(double[] stations, double[] elevations) {
+    this(Arrays.copyOf(stations, stations.length), Arrays.copyOf(elevations, elevations.length), false);
+  }
+
+  /**
+   * Creates a {@code SectionGeometry} taking ownership of the given arrays.
+   * @param stations Horizontal distances of the vertices, from the left bank
+   * @param elevations Elevations of the vertices
+   * @param shared Marker to distinguish this constructor, the arrays are never copied
+   */
+  private SectionGeometry(double[] stations, double[] elevations, boolean shared) {
+    if (stations.length != elevations.length) {
+      throw new IllegalArgumentException("Stations and elevations must have the same length.");
+    }
+    if (stations.length == 0) {
+      throw new IllegalArgumentException("A section must have at least one point.");
+    }
+    this.stations = stations;
+    this.elevations = elevations;
+
+    double lowest = elevations[0];
+    double highest = elevations[0];
+    for (double y : elevations) {
+      if (y < lowest) {
+        lowest = y;
+      }
+      if (y > highest) {
+        highest = y;
+      }
+    }
+    this.lowestElevation = lowest;
+    this.highestElevation = highest;
+    this.leftBankElevation = elevations[0];
+    this.rightBankElevation = elevations[elevations.length - 1];
+  }
+
+  /**
+   * Creates a {@code SectionGeometry} taking ownership of the given arrays, which must not be modified afterwards.
+   * @param stations Horizontal distances of the vertices, from the left bank
+   * @param elevations Elevations of the vertices
+   * @return SectionGeometry
+   */
+  static SectionGeometry wrap(double[] stations, double[] elevations) {
+    return new SectionGeometry(stations, elevations, true);
+  }
+
+  /**
+   * Creates a {@code SectionGeometry} from a list of points.
+   * @param points List of points from the left bank to the right bank
+   * @return SectionGeometry
+   */
+  public static SectionGeometry fromPoints(List<Point> points) {
+    int n = points.size();
+    double[] stations = new double[n];
+    double[] elevations = new double[n];
+    for (int i = 0; i < n; i++) {
+      Point p = points.get(i);
+      stations[i] = p.getX();
+      elevations[i] = p.getY();
+    }
+    return new SectionGeometry(stations, elevations, true);
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  public int getPointCount() {
+    return stations.length;
+  }
+
+  public double getStation(int i) {
+    return stations[i];
+  }
+
+  public double getElevation(int i) {
+    return elevations[i];
+  }
+
+  public double getLowestElevation() {
+    return lowestElevation;
+  }
+
+  public double getHighestElevation() {
+    return highestElevation;
+  }
+
+  public double getLeftBankElevation() {
+    return leftBankElevation;
+  }
+
+  public double getRightBankElevation() {
+    return rightBankElevation;
+  }
+
+  /**
+   * Returns the lower of the two banks, the highest water elevation without overflow.
+   * @return Double Lowest bank elevation
+   */
+  public double getLowestBankElevation() {
+    return Math.min(leftBankElevation, rightBankElevation);
+  }
+
+  /**
+   * Returns a number identifying this geometry within the JVM, so that a result cache can key on the
+   * geometry without keeping it alive.
+   * @return Long Identity, never zero
+   */
+  long identity() {
+    long id = this.identity;
+    if (id == 0) {
+      synchronized (this) {
+        id = this.identity;
+        if (id == 0) {
+          id = IDENTITIES.incrementAndGet();
+          this.identity = id;
+        }
+      }
+    }
+    return id;
+  }
+
+  /**
+   * Returns the stage index of the section, building it on first use.
+   * @return StageIndex
+   */
+  public StageIndex getStageIndex() {
+    StageIndex index = this.stageIndex;
+    if (index == null) {
+      index = new StageIndex(stations, elevations);
+      this.stageIndex = index;
+    }
+    return index;
+  }
+
+  /* **********************************
+   * Methods
+   ***********************************/
+
+  /**
+   * Copies the stations into a new array.
+   * @return Array of stations
+   */
+  public double[] copyStations() {
+    return Arrays.copyOf(stations, stations.length);
+  }
+
+  /**
+   * Copies the elevations into a new array.
+   * @return Array of elevations
+   */
+  public double[] copyElevations() {
+    return Arrays.copyOf(elevations, elevations.length);
+  }
+
+  /**
+   * Creates a list of points of the section.
+   * @return List of points from the left bank to the right bank
+   */
+  public List<Point> toPoints() {
+    List<Point> points = new ArrayList<>(stations.length);
+    for (int i = 0; i < stations.length; i++) {
+      points.add(new Point((float) stations[i], (float) elevations[i]));
+    }
+    return points;
+  }
+}
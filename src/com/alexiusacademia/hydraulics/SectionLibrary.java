@@ -0,0 +1,423 @@
+package com.alexiusacademia.hydraulics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Memory mapped binary library of cross sections, read in constant time per section.
+ *
+ * The file holds a fixed header, an index entry per section, a hash table of the section IDs, the IDs
+ * in UTF-8 and then a packed block of coordinates per section: the stations followed by the elevations,
+ * as little endian doubles. Opening a library reads the header only; the index and the hash table are
+ * read in place, so a section is found by ID and loaded without touching the rest of the file.
+ * <pre>
+ * Header, 32 bytes     magic "IFXS", version, section count, table size, data offset, reserved
+ * Index, 32 bytes each data offset, chainage, point count, ID length, ID offset, reserved
+ * Table, 4 bytes each  section index + 1 by the hash of the ID, 0 for an empty slot, linear probing
+ * IDs                  UTF-8 bytes of every ID, padded to 8 bytes
+ * Data                 n stations then n elevations of every section
+ * </pre>
+ * A block never crosses a 1 GiB boundary of the data, so that files of any size are mapped in segments.
+ * Libraries are written by a {@link Writer}. Instances are immutable and can be shared between threads.
+ */
+public final class SectionLibrary {
+
+  /* **********************************
+   * Constants
+   ***********************************/
+  public static final int VERSION = 1;
+
+  // "IFXS" in little endian
+  private static final int MAGIC = 0x53584649;
+
+  private static final int HEADER_SIZE = 32;
+  private static final int ENTRY_SIZE = 32;
+
+  // Size of a mapped segment of the data, 1 GiB
+  private static final int SEGMENT_SHIFT = 30;
+  private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private final ByteBuffer header;       // Header, index, hash table and IDs
+  private final ByteBuffer[] segments;   // Coordinate blocks
+  private final int sectionCount;
+  private final int tableSize;
+  private final int tableOffset;
+
+  private SectionLibrary(ByteBuffer header, ByteBuffer[] segments, int sectionCount, int tableSize) {
+    this.header = header;
+    this.segments = segments;
+    this.sectionCount = sectionCount;
+    this.tableSize = tableSize;
+    this.tableOffset = HEADER_SIZE + sectionCount * ENTRY_SIZE;
+  }
+
+  /**
+   * Opens a library. The file must not be modified while it is in use.
+   * @param path Path of the library
+   * @return SectionLibrary
+   * @throws IOException If the file cannot be read or is not a library of a supported version
+   */
+  public static SectionLibrary open(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < HEADER_SIZE) {
+        throw new IOException("Not a section library.");
+      }
+      ByteBuffer fixed = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      if (fixed.getInt(0) != MAGIC) {
+        throw new IOException("Not a section library.");
+      }
+      int version = fixed.getInt(4);
+      if (version != VERSION) {
+        throw new IOException("Unsupported section library version " + version + ".");
+      }
+      int sectionCount = fixed.getInt(8);
+      int tableSize = fixed.getInt(12);
+      long dataOffset = fixed.getLong(16);
+      if (sectionCount < 0 || Integer.bitCount(tableSize) != 1 || tableSize <= sectionCount
+          || dataOffset < HEADER_SIZE + (long) sectionCount * ENTRY_SIZE + 4L * tableSize
+          || dataOffset > Math.min(size, Integer.MAX_VALUE)) {
+        throw new IOException("Corrupted section library header.");
+      }
+
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, dataOffset).order(ByteOrder.LITTLE_ENDIAN);
+      long dataSize = size - dataOffset;
+      int count = (int) ((dataSize + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+      ByteBuffer[] segments = new ByteBuffer[count];
+      for (int k = 0; k < count; k++) {
+        long start = (long) k << SEGMENT_SHIFT;
+        segments[k] = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + start,
+            Math.min(SEGMENT_SIZE, dataSize - start)).order(ByteOrder.LITTLE_ENDIAN);
+      }
+      // The mapping stays valid after the channel is closed
+      return new SectionLibrary(header, segments, sectionCount, tableSize);
+    }
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  public int getSectionCount() {
+    return sectionCount;
+  }
+
+  /**
+   * Returns the ID of a section.
+   * @param section Index of the section in the order it was written
+   * @return String Section ID
+   */
+  public String getSectionId(int section) {
+    int entry = entry(section);
+    byte[] bytes = new byte[header.getInt(entry + 20)];
+    int start = header.getInt(entry + 24);
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = header.get(start + i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns the chainage of a section along its river or canal.
+   * @param section Index of the section in the order it was written
+   * @return Double Chainage, {@code NaN} if it was not given
+   */
+  public double getChainage(int section) {
+    return header.getDouble(entry(section) + 8);
+  }
+
+  /**
+   * Returns the number of points of a section.
+   * @param section Index of the section in the order it was written
+   * @return Integer Number of points
+   */
+  public int getPointCount(int section) {
+    return header.getInt(entry(section) + 16);
+  }
+
+  /**
+   * Returns the index of the section with the given ID.
+   * @param id Section ID
+   * @return Integer Index of the section, -1 if the library has no such section
+   */
+  public int indexOf(String id) {
+    byte[] key = id.getBytes(StandardCharsets.UTF_8);
+    int mask = tableSize - 1;
+    for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+      int section = header.getInt(tableOffset + 4 * slot) - 1;
+      if (section < 0) {
+        return -1;
+      }
+      if (idEquals(section, key)) {
+        return section;
+      }
+    }
+  }
+
+  /* **********************************
+   * Methods
+   ***********************************/
+
+  /**
+   * Loads the geometry of a section.
+   * @param section Index of the section in the order it was written
+   * @return SectionGeometry
+   */
+  public SectionGeometry getGeometry(int section) {
+    int entry = entry(section);
+    long offset = header.getLong(entry);
+    int n = header.getInt(entry + 16);
+    ByteBuffer block = segments[(int) (offset >>> SEGMENT_SHIFT)].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    block.position((int) (offset & (SEGMENT_SIZE - 1)));
+    double[] stations = new double[n];
+    double[] elevations = new double[n];
+    block.asDoubleBuffer().get(stations).get(elevations);
+    return SectionGeometry.wrap(stations, elevations);
+  }
+
+  /**
+   * Loads the geometry of the section with the given ID.
+   * @param id Section ID
+   * @return SectionGeometry, {@code null} if the library has no such section
+   */
+  public SectionGeometry getGeometry(String id) {
+    int section = indexOf(id);
+    return (section < 0) ? null : getGeometry(section);
+  }
+
+  private int entry(int section) {
+    if (section < 0 || section >= sectionCount) {
+      throw new IndexOutOfBoundsException("Section " + section + " of " + sectionCount + ".");
+    }
+    return HEADER_SIZE + section * ENTRY_SIZE;
+  }
+
+  private boolean idEquals(int section, byte[] key) {
+    int entry = HEADER_SIZE + section * ENTRY_SIZE;
+    if (header.getInt(entry + 20) != key.length) {
+      return false;
+    }
+    int start = header.getInt(entry + 24);
+    for (int i = 0; i < key.length; i++) {
+      if (header.get(start + i) != key[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Hash of an ID, part of the file format.
+   */
+  private static int hash(byte[] key) {
+    int h = 0;
+    for (byte b : key) {
+      h = 31 * h + b;
+    }
+    h *= 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Writer of a section library. The coordinate blocks are streamed to a temporary file beside the library
+   * as sections are added, and only the IDs, chainages and point counts are kept in memory. The library is
+   * assembled in a second temporary file when the writer is closed, and moved over the library in one step,
+   * so a reader never sees a partly written library.
+   */
+  public static final class Writer implements Closeable {
+    private final Path path;
+    private final Path dataPath;
+    private final FileChannel data;
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+    private long dataSize;
+
+    private final List<byte[]> ids = new ArrayList<>();
+    private final Set<String> written = new HashSet<>();
+    private long[] offset = new long[64];
+    private double[] chainage = new double[64];
+    private int[] pointCount = new int[64];
+    private int idBytes;
+    private boolean closed;
+
+    /**
+     * Creates a writer of a library, replacing any existing file when it is closed.
+     * @param path Path of the library
+     * @throws IOException If the temporary file cannot be created
+     */
+    public Writer(Path path) throws IOException {
+      this.path = path;
+      Path directory = path.toAbsolutePath().getParent();
+      this.dataPath = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+      this.data = FileChannel.open(dataPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Adds a section without chainage.
+     * @param id Section ID, unique in the library
+     * @param geometry Section geometry
+     * @throws IOException If the coordinates cannot be written
+     */
+    public void add(String id, SectionGeometry geometry) throws IOException {
+      add(id, Double.NaN, geometry);
+    }
+
+    /**
+     * Adds a section.
+     * @param id Section ID, unique in the library
+     * @param chainage Chainage of the section along its river or canal
+     * @param geometry Section geometry
+     * @throws IOException If the coordinates cannot be written
+     */
+    public void add(String id, double chainage, SectionGeometry geometry) throws IOException {
+      if (closed) {
+        throw new IllegalStateException("The writer is closed.");
+      }
+      if (!written.add(id)) {
+        throw new IllegalArgumentException("Duplicate section ID " + id + ".");
+      }
+      int n = geometry.getPointCount();
+      long length = 16L * n;
+      if (length > SEGMENT_SIZE) {
+        throw new IllegalArgumentException("Section " + id + " has too many points.");
+      }
+      byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+      if ((long) idBytes + bytes.length > Integer.MAX_VALUE / 2) {
+        throw new IllegalArgumentException("The section IDs are too long.");
+      }
+
+      // Start the block on the next segment if it would cross the end of the current one
+      long start = dataSize;
+      if ((start & (SEGMENT_SIZE - 1)) + length > SEGMENT_SIZE) {
+        start = (start + SEGMENT_SIZE - 1) & ~(SEGMENT_SIZE - 1);
+        pad(start - dataSize);
+      }
+      for (int i = 0; i < n; i++) {
+        putDouble(geometry.getStation(i));
+      }
+      for (int i = 0; i < n; i++) {
+        putDouble(geometry.getElevation(i));
+      }
+
+      int section = ids.size();
+      if (section == offset.length) {
+        offset = Arrays.copyOf(offset, 2 * section);
+        this.chainage = Arrays.copyOf(this.chainage, 2 * section);
+        pointCount = Arrays.copyOf(pointCount, 2 * section);
+      }
+      ids.add(bytes);
+      idBytes += bytes.length;
+      offset[section] = start;
+      this.chainage[section] = chainage;
+      pointCount[section] = n;
+    }
+
+    /**
+     * Writes the header, the index and the IDs, followed by the coordinate blocks, then replaces the library
+     * with the assembled file and deletes the temporary files.
+     * @throws IOException If the library cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      Path libraryPath = null;
+      try {
+        flush();
+        int n = ids.size();
+        int tableSize = Integer.highestOneBit(Math.max(1, 2 * n - 1)) << 1;
+        long idOffset = HEADER_SIZE + (long) n * ENTRY_SIZE + 4L * tableSize;
+        long dataOffset = (idOffset + idBytes + 7) & ~7L;
+        if (dataOffset > Integer.MAX_VALUE) {
+          throw new IllegalArgumentException("Too many sections.");
+        }
+
+        ByteBuffer head = ByteBuffer.allocate((int) dataOffset).order(ByteOrder.LITTLE_ENDIAN);
+        head.putInt(0, MAGIC);
+        head.putInt(4, VERSION);
+        head.putInt(8, n);
+        head.putInt(12, tableSize);
+        head.putLong(16, dataOffset);
+        int tableOffset = HEADER_SIZE + n * ENTRY_SIZE;
+        int idStart = (int) idOffset;
+        for (int section = 0; section < n; section++) {
+          byte[] id = ids.get(section);
+          int entry = HEADER_SIZE + section * ENTRY_SIZE;
+          head.putLong(entry, offset[section]);
+          head.putDouble(entry + 8, chainage[section]);
+          head.putInt(entry + 16, pointCount[section]);
+          head.putInt(entry + 20, id.length);
+          head.putInt(entry + 24, idStart);
+          for (int i = 0; i < id.length; i++) {
+            head.put(idStart + i, id[i]);
+          }
+          idStart += id.length;
+
+          int slot = hash(id) & (tableSize - 1);
+          while (head.getInt(tableOffset + 4 * slot) != 0) {
+            slot = (slot + 1) & (tableSize - 1);
+          }
+          head.putInt(tableOffset + 4 * slot, section + 1);
+        }
+
+        libraryPath = Files.createTempFile(dataPath.getParent(), path.getFileName().toString(), ".tmp");
+        try (FileChannel out = FileChannel.open(libraryPath, StandardOpenOption.WRITE)) {
+          while (head.hasRemaining()) {
+            out.write(head);
+          }
+          long position = 0;
+          while (position < dataSize) {
+            position += data.transferTo(position, dataSize - position, out);
+          }
+          out.force(true);
+        }
+        Files.move(libraryPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } finally {
+        data.close();
+        Files.deleteIfExists(dataPath);
+        if (libraryPath != null) {
+          Files.deleteIfExists(libraryPath);
+        }
+      }
+    }
+
+    private void putDouble(double value) throws IOException {
+      if (!buffer.hasRemaining()) {
+        flush();
+      }
+      buffer.putDouble(value);
+      dataSize += 8;
+    }
+
+    private void pad(long length) throws IOException {
+      for (long i = 0; i < length; i += 8) {
+        putDouble(0);
+      }
+    }
+
+    private void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        data.write(buffer);
+      }
+      buffer.clear();
+    }
+  }
+}
@@ -0,0 +1,467 @@
+package com.alexiusacademia.hydraulics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms of the stateless solvers, per shape and unknown.
+ *
+ * Every solve records its latency, the iterations of its root finder and its error message if it fails.
+ * Measuring is off by default and is switched at runtime, through {@link #setEnabled(boolean)} or the
+ * {@code Enabled} attribute of the MBean, so operators can watch the hot spots of a running model without
+ * a profiler. While disabled a solve pays a few volatile reads. The counters are lock free and shared by
+ * all threads. Solves answered by a {@code ResultCache} are not solves and are not counted. The critical
+ * flow that a channel solves on the first read of a critical property is counted apart, under
+ * {@link CriticalFlow#CRITICAL_FLOW}, so it adds neither calls nor short latencies to the analyses.
+ *
+ * The same measurement feeds the flight recorder through {@link ChannelSolveEvent}, so a recording can
+ * show the solves next to the garbage collections and CPU samples of the same run. The events are reached
+ * through {@link Recorder}, loaded by reflection once a recording has started, so the solvers do not load
+ * the flight recorder classes of the JVM, and still run on a JVM or a build without them.
+ */
+public final class SolverMetrics implements SolverMetricsMXBean {
+
+  /* **********************************
+   * Constants
+   ***********************************/
+  public static final String OBJECT_NAME = "com.alexiusacademia.hydraulics:type=SolverMetrics";
+
+  /**
+   * Shapes of the solvers.
+   */
+  public enum Shape {
+    RECTANGULAR,
+    TRAPEZOIDAL,
+    CIRCULAR,
+    IRREGULAR
+  }
+
+  /**
+   * Unknown under which the critical flow solved on first access after an analysis is recorded, apart from
+   * the solves of the unknowns of the shape.
+   */
+  public enum CriticalFlow {
+    CRITICAL_FLOW
+  }
+
+  // Solves between two checks for a recording, until one has started
+  private static final int RECORDING_CHECK_INTERVAL = 256;
+
+  private static final String FLIGHT_RECORDER = "jdk.jfr.FlightRecorder";
+  private static final String RECORDER = "com.alexiusacademia.hydraulics.FlightRecorderEvents";
+
+  // Log-linear histogram, 2^SUB_BITS buckets per power of two of nanoseconds
+  private static final int SUB_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+  private static final int BUCKETS = (64 - SUB_BITS + 1) << SUB_BITS;
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private static volatile boolean enabled;
+
+  // Root finder iterations of the solve running on each thread
+  private static final ThreadLocal<long[]> ITERATIONS = new ThreadLocal<long[]>() {
+    @Override
+    protected long[] initialValue() {
+      return new long[1];
+    }
+  };
+
+  // Number of solves traced by the flight recorder, which count iterations while the metrics are off
+  private static final AtomicInteger TRACED = new AtomicInteger();
+
+  // Flight recorder events, null until a recording has started
+  private static volatile Recorder recorder;
+
+  // FlightRecorder.isInitialized(), null until first checked
+  private static volatile Method recordingStarted;
+
+  // True if the JVM or the build has no flight recorder events
+  private static volatile boolean recorderMissing;
+
+  // Solves until the next check for a recording, racy as a missed or extra check is harmless
+  private static int recordingCheck;
+
+  private static final SolverMetrics INSTANCE = new SolverMetrics();
+
+  private final Cell[][] cells;
+
+  private SolverMetrics() {
+    Enum<?>[][] unknowns = {
+        RectangularOpenChannel.Unknown.values(),
+        TrapezoidalOpenChannel.Unknown.values(),
+        CircularOpenChannel.Unknown.values(),
+        IrregularSectionChannel.Unknown.values()
+    };
+    // The critical flow of each shape follows its unknowns
+    this.cells = new Cell[unknowns.length][];
+    for (Shape shape : Shape.values()) {
+      Enum<?>[] values = unknowns[shape.ordinal()];
+      cells[shape.ordinal()] = new Cell[values.length + 1];
+      for (int u = 0; u < values.length; u++) {
+        cells[shape.ordinal()][u] = new Cell(shape, values[u]);
+      }
+      cells[shape.ordinal()][values.length] = new Cell(shape, CriticalFlow.CRITICAL_FLOW);
+    }
+  }
+
+  /**
+   * Returns the metrics shared by all solvers.
+   * @return SolverMetrics
+   */
+  public static SolverMetrics getInstance() {
+    return INSTANCE;
+  }
+
+  /* **********************************
+   * Getters and setters
+   ***********************************/
+
+  @Override
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @Override
+  public void setEnabled(boolean enabled) {
+    SolverMetrics.enabled = enabled;
+  }
+
+  @Override
+  public List<SolverStatistics> getStatistics() {
+    List<SolverStatistics> statistics = new ArrayList<>();
+    for (Cell[] shape : cells) {
+      for (Cell cell : shape) {
+        if (cell.calls.sum() > 0) {
+          statistics.add(cell.snapshot());
+        }
+      }
+    }
+    return statistics;
+  }
+
+  /**
+   * Returns the statistics of one shape and unknown.
+   * @param shape Shape of the solver
+   * @param unknown Unknown from the enum Unknown of the channel class of the shape, or
+   *                {@link CriticalFlow#CRITICAL_FLOW}
+   * @return SolverStatistics
+   */
+  public SolverStatistics getStatistics(Shape shape, Enum<?> unknown) {
+    return cell(shape, unknown).snapshot();
+  }
+
+  /* **********************************
+   * Methods
+   ***********************************/
+
+  @Override
+  public void reset() {
+    for (Cell[] shape : cells) {
+      for (Cell cell : shape) {
+        cell.reset();
+      }
+    }
+  }
+
+  /**
+   * Publishes the metrics on the platform MBean server under {@link #OBJECT_NAME}, if not already published.
+   * @return ObjectName of the MBean
+   * @throws JMException If the MBean cannot be registered
+   */
+  public static ObjectName register() throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(OBJECT_NAME);
+    synchronized (SolverMetrics.class) {
+      if (!server.isRegistered(name)) {
+        server.registerMBean(INSTANCE, name);
+      }
+    }
+    return name;
+  }
+
+  /**
+   * Removes the metrics from the platform MBean server.
+   * @throws JMException If the MBean cannot be unregistered
+   */
+  public static void unregister() throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(OBJECT_NAME);
+    synchronized (SolverMetrics.class) {
+      if (server.isRegistered(name)) {
+        server.unregisterMBean(name);
+      }
+    }
+  }
+
+  /**
+   * Begins the flight recorder event of a solve on the current thread.
+   * @return Event to be passed to {@link #start}, null unless a recording has enabled it
+   */
+  static Object beginSolve() {
+    Recorder events = recorder();
+    return (events == null) ? null : events.beginSolve();
+  }
+
+  /**
+   * Starts measuring a solve on the current thread, for the metrics if enabled and for the flight
+   * recorder if its event is enabled.
+   * @param event Flight recorder event of the solve, from {@link #beginSolve}
+   * @return Start time in nanoseconds, 0 if neither is enabled
+   */
+  static long start(Object event) {
+    boolean traced = event != null;
+    if (!enabled && !traced) {
+      return 0;
+    }
+    ITERATIONS.get()[0] = 0;
+    if (traced) {
+      TRACED.incrementAndGet();
+    }
+    // Never 0, which marks an unmeasured solve, with the low bits marking a traced solve
+    return (System.nanoTime() & ~3L) | (traced ? 3 : 1);
+  }
+
+  /**
+   * Records a solve started by {@link #start}.
+   * @param start Value returned by {@link #start}
+   * @param event Event passed to {@link #start}
+   * @param shape Shape of the solver
+   * @param unknown Unknown of the solve
+   * @param result Result of the solve
+   */
+  static void stop(long start, Object event, Shape shape, Enum<?> unknown, ChannelResult result) {
+    if (start == 0) {
+      return;
+    }
+    long iterations = ITERATIONS.get()[0];
+    if (enabled) {
+      long elapsed = System.nanoTime() - (start & ~3L);
+      INSTANCE.cell(shape, unknown).record(Math.max(elapsed, 0), iterations, result);
+    }
+    if ((start & 2) != 0) {
+      TRACED.decrementAndGet();
+      recorder.endSolve(event, shape, unknown, iterations, result);
+    }
+  }
+
+  /**
+   * Returns the counters of a shape and unknown.
+   */
+  private Cell cell(Shape shape, Enum<?> unknown) {
+    Cell[] row = cells[shape.ordinal()];
+    return row[(unknown instanceof CriticalFlow) ? row.length - 1 : unknown.ordinal()];
+  }
+
+  /**
+   * Begins the flight recorder event of a root finder solve on the current thread.
+   * @return Event to be passed to {@link #endRootFind}, null unless a recording has enabled it
+   */
+  static Object beginRootFind() {
+    Recorder events = recorder();
+    return (events == null) ? null : events.beginRootFind();
+  }
+
+  /**
+   * Ends the flight recorder event of a root finder solve.
+   * @param event Value returned by {@link #beginRootFind}, nothing is recorded if null
+   * @param method Name of the method of the root finder
+   * @param lower Lower limit of the bracket
+   * @param upper Upper limit of the bracket
+   * @param root Root, {@code NaN} if the solve failed
+   * @param iterations Number of iterations
+   * @param errMessage Error message of a failed solve, null if converged
+   */
+  static void endRootFind(Object event, String method, double lower, double upper, double root, int iterations,
+                          String errMessage) {
+    if (event != null) {
+      recorder.endRootFind(event, method, lower, upper, root, iterations, errMessage);
+    }
+  }
+
+  /**
+   * Returns the flight recorder events, loading them on the first check after a recording has started.
+   * Until then the recorder is checked every {@link #RECORDING_CHECK_INTERVAL} calls, by reflection so that
+   * none of its classes is loaded here.
+   * @return Recorder, null if no recording has started or the flight recorder is missing
+   */
+  private static Recorder recorder() {
+    Recorder events = recorder;
+    if (events != null || recorderMissing || recordingCheck-- > 0) {
+      return events;
+    }
+    recordingCheck = RECORDING_CHECK_INTERVAL;
+    try {
+      Method started = recordingStarted;
+      if (started == null) {
+        started = Class.forName(FLIGHT_RECORDER).getMethod("isInitialized");
+        recordingStarted = started;
+      }
+      if (!(Boolean) started.invoke(null)) {
+        return null;
+      }
+      events = (Recorder) Class.forName(RECORDER).getDeclaredConstructor().newInstance();
+      recorder = events;
+      return events;
+    } catch (ReflectiveOperationException | LinkageError e) {
+      recorderMissing = true;
+      return null;
+    }
+  }
+
+  /**
+   * Adds the iterations of a root finder solve to the solve running on the current thread.
+   * @param iterations Number of iterations
+   */
+  static void addIterations(int iterations) {
+    if (enabled || TRACED.get() > 0) {
+      ITERATIONS.get()[0] += iterations;
+    }
+  }
+
+  /**
+   * Histogram bucket of a latency, exact below 8 ns and then 8 buckets per power of two.
+   */
+  static int bucket(long nanos) {
+    if (nanos < SUB_BUCKETS) {
+      return (int) nanos;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+    int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+    return ((exponent - SUB_BITS + 1) << SUB_BITS) + sub;
+  }
+
+  /**
+   * Middle of the latencies of a bucket, in nanoseconds.
+   */
+  static double bucketValue(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int exponent = (bucket >> SUB_BITS) + SUB_BITS - 1;
+    long width = 1L << (exponent - SUB_BITS);
+    long lower = (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) * width;
+    return lower + 0.5 * (width - 1);
+  }
+
+  /**
+   * Flight recorder events of the solves, implemented on {@code jdk.jfr} by {@code FlightRecorderEvents}.
+   * The events are passed as objects, so that no other class refers to their types.
+   */
+  interface Recorder {
+    /**
+     * Begins the event of a solve.
+     * @return Event, null if not enabled
+     */
+    Object beginSolve();
+
+    /**
+     * Ends and commits the event of a solve.
+     */
+    void endSolve(Object event, Shape shape, Enum<?> unknown, long iterations, ChannelResult result);
+
+    /**
+     * Begins the event of a root finder solve.
+     * @return Event, null if not enabled
+     */
+    Object beginRootFind();
+
+    /**
+     * Ends and commits the event of a root finder solve.
+     */
+    void endRootFind(Object event, String method, double lower, double upper, double root, int iterations,
+                     String errMessage);
+  }
+
+  /**
+   * Metrics of one shape and unknown.
+   */
+  private static final class Cell {
+    private final String shape;
+    private final String unknown;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder iterations = new LongAdder();
+    private final AtomicLongArray latency = new AtomicLongArray(BUCKETS);
+    private final AtomicLong maxLatency = new AtomicLong();
+    private final Map<String, LongAdder> failureMessages = new ConcurrentHashMap<>();
+
+    Cell(Shape shape, Enum<?> unknown) {
+      this.shape = shape.name();
+      this.unknown = unknown.name();
+    }
+
+    void record(long nanos, long iterations, ChannelResult result) {
+      calls.increment();
+      this.iterations.add(iterations);
+      latency.incrementAndGet(bucket(nanos));
+      long max = maxLatency.get();
+      while (nanos > max && !maxLatency.compareAndSet(max, nanos)) {
+        max = maxLatency.get();
+      }
+      if (!result.isCalculationSuccessful()) {
+        failures.increment();
+        String message = String.valueOf(result.getErrMessage());
+        LongAdder count = failureMessages.get(message);
+        if (count == null) {
+          count = failureMessages.computeIfAbsent(message, k -> new LongAdder());
+        }
+        count.increment();
+      }
+    }
+
+    void reset() {
+      calls.reset();
+      failures.reset();
+      iterations.reset();
+      for (int i = 0; i < BUCKETS; i++) {
+        latency.set(i, 0);
+      }
+      maxLatency.set(0);
+      failureMessages.clear();
+    }
+
+    SolverStatistics snapshot() {
+      long[] counts = new long[BUCKETS];
+      long total = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        counts[i] = latency.get(i);
+        total += counts[i];
+      }
+      Map<String, Long> messages = new TreeMap<>();
+      for (Map.Entry<String, LongAdder> entry : failureMessages.entrySet()) {
+        messages.put(entry.getKey(), entry.getValue().sum());
+      }
+      return new SolverStatistics(shape, unknown, calls.sum(), failures.sum(), iterations.sum(),
+          percentile(counts, total, 0.50), percentile(counts, total, 0.99), maxLatency.get() / 1e3, messages);
+    }
+
+    private static double percentile(long[] counts, long total, double fraction) {
+      if (total == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(fraction * total);
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return bucketValue(i) / 1e3;
+        }
+      }
+      return bucketValue(counts.length - 1) / 1e3;
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package com.alexiusacademia.hydraulics;
+
+import java.util.List;
+
+/**
+ * Management interface of the solver metrics, published on the platform MBean server by
+ * {@link SolverMetrics#register()}.
+ */
+public interface SolverMetricsMXBean {
+
+  /**
+   * Returns whether solves are being measured.
+   * @return Boolean
+   */
+  boolean isEnabled();
+
+  /**
+   * Starts or stops measuring solves. The counters are kept while disabled.
+   * @param enabled Whether to measure
+   */
+  void setEnabled(boolean enabled);
+
+  /**
+   * Returns the statistics of every shape and unknown solved since the last reset.
+   * @return List of statistics
+   */
+  List<SolverStatistics> getStatistics();
+
+  /**
+   * Clears every counter and histogram.
+   */
+  void reset();
+}
@@ -0,0 +1,97 @@
+package com.alexiusacademia.hydraulics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Snapshot of the metrics of one shape and unknown. Latencies are read from a log-linear histogram
+ * with eight buckets per power of two, so percentiles are within 6% of the measured values.
+ */
+public final class SolverStatistics {
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private final String shape;
+  private final String unknown;
+  private final long calls;
+  private final long failures;
+  private final long iterations;
+  private final double medianLatencyMicros;
+  private final double p99LatencyMicros;
+  private final double maxLatencyMicros;
+  private final Map<String, Long> failureMessages;
+
+  SolverStatistics(String shape, String unknown, long calls, long failures, long iterations,
+                   double medianLatencyMicros, double p99LatencyMicros, double maxLatencyMicros,
+                   Map<String, Long> failureMessages) {
+    this.shape = shape;
+    this.unknown = unknown;
+    this.calls = calls;
+    this.failures = failures;
+    this.iterations = iterations;
+    this.medianLatencyMicros = medianLatencyMicros;
+    this.p99LatencyMicros = p99LatencyMicros;
+    this.maxLatencyMicros = maxLatencyMicros;
+    this.failureMessages = Collections.unmodifiableMap(failureMessages);
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  public String getShape() {
+    return shape;
+  }
+
+  public String getUnknown() {
+    return unknown;
+  }
+
+  public long getCalls() {
+    return calls;
+  }
+
+  public long getFailures() {
+    return failures;
+  }
+
+  /**
+   * Returns the root finder iterations of all the solves, including those of the critical flow.
+   * @return Long Total iterations
+   */
+  public long getIterations() {
+    return iterations;
+  }
+
+  public double getMeanIterations() {
+    return (calls > 0) ? (double) iterations / calls : 0;
+  }
+
+  public double getMedianLatencyMicros() {
+    return medianLatencyMicros;
+  }
+
+  public double getP99LatencyMicros() {
+    return p99LatencyMicros;
+  }
+
+  public double getMaxLatencyMicros() {
+    return maxLatencyMicros;
+  }
+
+  /**
+   * Returns the number of failures of every error message.
+   * @return Map of the error message to its count
+   */
+  public Map<String, Long> getFailureMessages() {
+    return failureMessages;
+  }
+
+  @Override
+  public String toString() {
+    return shape + " " + unknown + ": " + calls + " calls, " + failures + " failures, "
+        + String.format("%.2f iterations, p50 %.2f us, p99 %.2f us", getMeanIterations(), medianLatencyMicros,
+        p99LatencyMicros);
+  }
+}
@@ -0,0 +1,429 @@
+package com.alexiusacademia.hydraulics;
+
+import java.util.Arrays;
+
+/**
+ * Stage index of an irregular cross section.
+ *
+ * The vertex elevations of the section are sorted once into breakpoints, and the wetted area,
+ * wetted perimeter and top width are accumulated at every breakpoint. Between two breakpoints the
+ * top width and the wetted perimeter vary linearly with the stage and the area quadratically,
+ * so the hydraulic elements at any stage are a binary search plus a closed form correction.
+ *
+ * Every segment of the profile below the stage is counted as wetted, including depressions
+ * separated from the main channel. The index is valid up to the lower of the two banks.
+ *
+ * A {@link Cursor} remembers the interval of its last stage and walks to the next one, so a series of
+ * close stages, as in a time series or the iterations of a solver, costs the breakpoints crossed.
+ */
+public final class StageIndex {
+
+  /* **********************************
+   * Constants
+   ***********************************/
+  // Breakpoints a cursor walks before falling back to a binary search
+  private static final int MAX_WALK = 8;
+
+  /* **********************************
+   * Properties
+   ***********************************/
+
+  // Sorted distinct vertex elevations
+  private final double[] elevation;
+
+  // Hydraulic elements at each breakpoint
+  private final double[] area;
+  private final double[] perimeter;
+  private final double[] topWidth;
+
+  // Rate of change of the top width and the perimeter with the stage above each breakpoint
+  private final double[] widthRate;
+  private final double[] perimeterRate;
+
+  // Running maximum of the critical flow factor A^3 / T at and just below the breakpoints
+  private final double[] criticalFactorMaximum;
+
+  /**
+   * Creates a {@code StageIndex} of the section with the given vertices, ordered from the left bank.
+   * @param stations Horizontal distances of the vertices
+   * @param elevations Elevations of the vertices
+   */
+  public StageIndex(double[] stations, double[] elevations) {
+    int count = elevations.length;
+
+    // Distinct elevations, sorted
+    double[] sorted = Arrays.copyOf(elevations, count);
+    Arrays.sort(sorted);
+    int m = 0;
+    for (int i = 0; i < count; i++) {
+      if (m == 0 || sorted[i] != sorted[m - 1]) {
+        sorted[m++] = sorted[i];
+      }
+    }
+    this.elevation = Arrays.copyOf(sorted, m);
+
+    this.area = new double[m];
+    this.perimeter = new double[m];
+    this.topWidth = new double[m];
+    this.widthRate = new double[m];
+    this.perimeterRate = new double[m];
+
+    // Changes of the rates and jumps of the elements at each breakpoint
+    double[] widthJump = new double[m];
+    double[] perimeterJump = new double[m];
+
+    for (int i = 0; i < count - 1; i++) {
+      double dx = Math.abs(stations[i + 1] - stations[i]);
+      double low = Math.min(elevations[i], elevations[i + 1]);
+      double high = Math.max(elevations[i], elevations[i + 1]);
+      double length = Math.sqrt(Math.pow(high - low, 2) + Math.pow(dx, 2));
+      int kLow = Arrays.binarySearch(this.elevation, low);
+
+      if (high > low) {
+        // Sloping segment, wetted gradually from its low end to its high end
+        int kHigh = Arrays.binarySearch(this.elevation, high);
+        double dz = high - low;
+        widthRate[kLow] += dx / dz;
+        widthRate[kHigh] -= dx / dz;
+        perimeterRate[kLow] += length / dz;
+        perimeterRate[kHigh] -= length / dz;
+      } else {
+        // Flat segment, wetted at once
+        widthJump[kLow] += dx;
+        perimeterJump[kLow] += length;
+      }
+    }
+
+    // Accumulate from the lowest breakpoint
+    topWidth[0] = widthJump[0];
+    perimeter[0] = perimeterJump[0];
+    for (int k = 1; k < m; k++) {
+      double h = elevation[k] - elevation[k - 1];
+      double previousWidthRate = widthRate[k - 1];
+      double previousPerimeterRate = perimeterRate[k - 1];
+
+      area[k] = area[k - 1] + topWidth[k - 1] * h + 0.5 * previousWidthRate * h * h;
+      topWidth[k] = topWidth[k - 1] + previousWidthRate * h + widthJump[k];
+      perimeter[k] = perimeter[k - 1] + previousPerimeterRate * h + perimeterJump[k];
+      widthRate[k] += previousWidthRate;
+      perimeterRate[k] += previousPerimeterRate;
+    }
+
+    // Non-decreasing, so the first breakpoint past any critical flow condition is a binary search. A flat
+    // segment widens the section at once, so the factor just below its breakpoint is larger than at it.
+    this.criticalFactorMaximum = new double[m];
+    double maximum = 0;
+    for (int k = 0; k < m; k++) {
+      double widthBelow = topWidth[k] - widthJump[k];
+      if (widthBelow > 0) {
+        maximum = Math.max(maximum, Math.pow(area[k], 3) / widthBelow);
+      }
+      if (topWidth[k] > 0) {
+        maximum = Math.max(maximum, Math.pow(area[k], 3) / topWidth[k]);
+      }
+      criticalFactorMaximum[k] = maximum;
+    }
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  /**
+   * Returns the elevation of the lowest point of the section.
+   * @return Double Lowest elevation
+   */
+  public double getLowestElevation() {
+    return elevation[0];
+  }
+
+  /**
+   * Returns the elevation of the highest point of the section.
+   * @return Double Highest elevation
+   */
+  public double getHighestElevation() {
+    return elevation[elevation.length - 1];
+  }
+
+  /**
+   * Returns the number of distinct breakpoint elevations.
+   * @return Integer Number of breakpoints
+   */
+  public int getBreakpointCount() {
+    return elevation.length;
+  }
+
+  /* **********************************
+   * Methods
+   ***********************************/
+
+  /**
+   * Creates a cursor on the index, positioned on the first stage it is moved to.
+   * @return Cursor
+   */
+  public Cursor cursor() {
+    return new Cursor();
+  }
+
+  /**
+   * Wetted area below the given stage.
+   * @param stage Water surface elevation
+   * @return Double Wetted area
+   */
+  public double area(double stage) {
+    int k = locate(stage);
+    if (k < 0) {
+      return 0;
+    }
+    double h = stage - elevation[k];
+    return area[k] + topWidth[k] * h + 0.5 * widthRate[k] * h * h;
+  }
+
+  /**
+   * Wetted perimeter below the given stage.
+   * @param stage Water surface elevation
+   * @return Double Wetted perimeter
+   */
+  public double perimeter(double stage) {
+    int k = locate(stage);
+    if (k < 0) {
+      return 0;
+    }
+    return perimeter[k] + perimeterRate[k] * (stage - elevation[k]);
+  }
+
+  /**
+   * Top width of the water surface at the given stage.
+   * @param stage Water surface elevation
+   * @return Double Top width
+   */
+  public double topWidth(double stage) {
+    int k = locate(stage);
+    if (k < 0) {
+      return 0;
+    }
+    return topWidth[k] + widthRate[k] * (stage - elevation[k]);
+  }
+
+  /**
+   * Rate of change of the wetted perimeter with the stage.
+   * @param stage Water surface elevation
+   * @return Double dP/dz
+   */
+  public double perimeterRate(double stage) {
+    int k = locate(stage);
+    if (k < 0) {
+      return 0;
+    }
+    return perimeterRate[k];
+  }
+
+  /**
+   * Hydraulic radius at the given stage.
+   * @param stage Water surface elevation
+   * @return Double Hydraulic radius, zero for a dry section
+   */
+  public double hydraulicRadius(double stage) {
+    int k = locate(stage);
+    if (k < 0) {
+      return 0;
+    }
+    double h = stage - elevation[k];
+    double a = area[k] + topWidth[k] * h + 0.5 * widthRate[k] * h * h;
+    double p = perimeter[k] + perimeterRate[k] * h;
+    return (a > 0) ? a / p : 0;
+  }
+
+  /**
+   * Conveyance K = A R^(2/3) / n at the given stage, so that Q = K sqrt(S).
+   * @param stage Water surface elevation
+   * @param manningRoughness Manning's roughness coefficient
+   * @return Double Conveyance
+   */
+  public double conveyance(double stage, double manningRoughness) {
+    int k = locate(stage);
+    if (k < 0) {
+      return 0;
+    }
+    double h = stage - elevation[k];
+    double a = area[k] + topWidth[k] * h + 0.5 * widthRate[k] * h * h;
+    double p = perimeter[k] + perimeterRate[k] * h;
+    if (a <= 0) {
+      return 0;
+    }
+    return a * Math.pow(a / p, (2.0 / 3.0)) / manningRoughness;
+  }
+
+  /**
+   * Critical flow factor A^3 / T at the given stage.
+   * @param stage Water surface elevation
+   * @return Double A^3 / T, zero for a dry section
+   */
+  public double criticalFactor(double stage) {
+    int k = locate(stage);
+    if (k < 0) {
+      return 0;
+    }
+    double h = stage - elevation[k];
+    double a = area[k] + topWidth[k] * h + 0.5 * widthRate[k] * h * h;
+    double t = topWidth[k] + widthRate[k] * h;
+    return (t > 0) ? Math.pow(a, 3) / t : 0;
+  }
+
+  /**
+   * Critical flow factor A^3 / T at a stage, from the elements of the interval above the given breakpoint.
+   * Up to the top of the interval it is the factor just below the flat segments of the next breakpoint.
+   * @param k Breakpoint index
+   * @param stage Water surface elevation, between the breakpoint and the next one
+   * @return Double A^3 / T, zero for a dry section
+   */
+  double criticalFactorAbove(int k, double stage) {
+    double h = stage - elevation[k];
+    double a = area[k] + topWidth[k] * h + 0.5 * widthRate[k] * h * h;
+    double t = topWidth[k] + widthRate[k] * h;
+    return (t > 0) ? Math.pow(a, 3) / t : 0;
+  }
+
+  /**
+   * Finds the lowest interval of breakpoints bracketing the stage where A^3 / T first reaches the factor.
+   * @param factor Critical flow factor Q^2 / g
+   * @return Integer Index of the breakpoint at the top of the interval, -1 if never reached
+   */
+  int criticalBreakpoint(double factor) {
+    int last = elevation.length - 1;
+    if (criticalFactorMaximum[last] < factor) {
+      return -1;
+    }
+    int lo = 0, hi = last;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (criticalFactorMaximum[mid] >= factor) {
+        hi = mid;
+      } else {
+        lo = mid + 1;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Elevation of a breakpoint.
+   * @param k Breakpoint index
+   * @return Double Elevation
+   */
+  double breakpoint(int k) {
+    return elevation[k];
+  }
+
+  /**
+   * Finds the highest breakpoint at or below the stage.
+   * @param stage Water surface elevation
+   * @return Integer Breakpoint index, -1 if the stage is below the section
+   */
+  int locate(double stage) {
+    if (stage < elevation[0]) {
+      return -1;
+    }
+    int lo = 0, hi = elevation.length - 1;
+    if (stage >= elevation[hi]) {
+      return hi;
+    }
+    while (hi - lo > 1) {
+      int mid = (lo + hi) >>> 1;
+      if (elevation[mid] <= stage) {
+        lo = mid;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Hydraulic elements at a moving stage. A move walks the breakpoints between the previous stage and the
+   * new one, and falls back to a binary search past a few breakpoints. A cursor is not thread safe.
+   */
+  public final class Cursor {
+    private int k = -1;
+    private boolean positioned;
+    private double stage = Double.NaN;
+    private double area;
+    private double perimeter;
+    private double topWidth;
+    private double perimeterRate;
+
+    private Cursor() {
+    }
+
+    /**
+     * Moves the cursor to the given stage and evaluates the hydraulic elements.
+     * @param stage Water surface elevation
+     */
+    public void moveTo(double stage) {
+      if (positioned && stage == this.stage) {
+        return;
+      }
+      int k = positioned ? walk(this.k, stage) : locate(stage);
+      this.k = k;
+      this.stage = stage;
+      this.positioned = true;
+      if (k < 0) {
+        area = 0;
+        perimeter = 0;
+        topWidth = 0;
+        perimeterRate = 0;
+        return;
+      }
+      double h = stage - elevation[k];
+      area = StageIndex.this.area[k] + StageIndex.this.topWidth[k] * h + 0.5 * widthRate[k] * h * h;
+      perimeter = StageIndex.this.perimeter[k] + StageIndex.this.perimeterRate[k] * h;
+      topWidth = StageIndex.this.topWidth[k] + widthRate[k] * h;
+      perimeterRate = StageIndex.this.perimeterRate[k];
+    }
+
+    /**
+     * Finds the highest breakpoint at or below the stage, starting from the given one.
+     */
+    private int walk(int k, double stage) {
+      int last = elevation.length - 1;
+      for (int steps = 0; steps < MAX_WALK; steps++) {
+        if (k < last && elevation[k + 1] <= stage) {
+          k++;
+        } else if (k >= 0 && elevation[k] > stage) {
+          k--;
+        } else {
+          return k;
+        }
+      }
+      return locate(stage);
+    }
+
+    public StageIndex getIndex() {
+      return StageIndex.this;
+    }
+
+    public double getStage() {
+      return stage;
+    }
+
+    public double getArea() {
+      return area;
+    }
+
+    public double getPerimeter() {
+      return perimeter;
+    }
+
+    public double getTopWidth() {
+      return topWidth;
+    }
+
+    /**
+     * Returns the rate of change of the wetted perimeter with the stage.
+     * @return Double dP/dz
+     */
+    public double getPerimeterRate() {
+      return perimeterRate;
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package com.alexiusacademia.hydraulics;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Declarative grid of channel inputs for a {@code ChannelSweep}.
+ *
+ * Each swept parameter has a list of values, and the grid is the cartesian product of all lists.
+ * Grid points are numbered with a mixed radix index, the first parameter of the enum varying slowest,
+ * so any point can be decoded from its index without materializing the grid.
+ */
+public final class SweepGrid {
+
+  /**
+   * Parameters that can be swept. Each shape accepts the ones it has a setter for.
+   */
+  public enum Parameter {
+    DISCHARGE,
+    BED_SLOPE,
+    MANNING_ROUGHNESS,
+    BASE_WIDTH,
+    WATER_DEPTH,
+    SIDE_SLOPE,
+    DIAMETER,
+    WATER_ELEVATION
+  }
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private final Map<Parameter, double[]> axes = new EnumMap<>(Parameter.class);
+
+  /* **********************************
+   * Setters
+   ***********************************/
+
+  /**
+   * Sweeps a parameter over evenly spaced values, both ends included.
+   * @param parameter The parameter
+   * @param start First value
+   * @param end Last value
+   * @param count Number of values, at least one
+   */
+  public void setRange(Parameter parameter, double start, double end, int count) {
+    if (count < 1) {
+      throw new IllegalArgumentException("A range must have at least one value.");
+    }
+    double[] values = new double[count];
+    for (int i = 0; i < count; i++) {
+      values[i] = (count == 1) ? start : start + (end - start) * i / (count - 1);
+    }
+    this.axes.put(parameter, values);
+  }
+
+  /**
+   * Sweeps a parameter over the given values.
+   * @param parameter The parameter
+   * @param values Values of the parameter, copied
+   */
+  public void setValues(Parameter parameter, double... values) {
+    if (values.length < 1) {
+      throw new IllegalArgumentException("A parameter must have at least one value.");
+    }
+    this.axes.put(parameter, Arrays.copyOf(values, values.length));
+  }
+
+  /**
+   * Sets a parameter to a single fixed value.
+   * @param parameter The parameter
+   * @param value Value of the parameter
+   */
+  public void setFixed(Parameter parameter, double value) {
+    this.axes.put(parameter, new double[] {value});
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  /**
+   * Returns the number of points of the grid.
+   * @return Long Product of the number of values of every parameter
+   */
+  public long size() {
+    long size = 1;
+    for (double[] values : this.axes.values()) {
+      size = Math.multiplyExact(size, values.length);
+    }
+    return size;
+  }
+
+  /**
+   * Returns the parameters of the grid, in index order.
+   * @return Array of parameters
+   */
+  public Parameter[] getParameters() {
+    return this.axes.keySet().toArray(new Parameter[0]);
+  }
+
+  /**
+   * Returns a copy of the values of a parameter, or null if it is not swept.
+   * @param parameter The parameter
+   * @return Array of values
+   */
+  public double[] getValues(Parameter parameter) {
+    double[] values = this.axes.get(parameter);
+    return (values == null) ? null : Arrays.copyOf(values, values.length);
+  }
+
+  /**
+   * Decodes the value of a parameter at a grid point.
+   * @param parameter The parameter
+   * @param index Index of the grid point
+   * @return Double Value of the parameter, NaN if it is not swept
+   */
+  public double valueAt(Parameter parameter, long index) {
+    long stride = 1;
+    Parameter[] parameters = getParameters();
+    for (int k = parameters.length - 1; k >= 0; k--) {
+      double[] values = this.axes.get(parameters[k]);
+      if (parameters[k] == parameter) {
+        return values[(int) ((index / stride) % values.length)];
+      }
+      stride *= values.length;
+    }
+    return Double.NaN;
+  }
+}
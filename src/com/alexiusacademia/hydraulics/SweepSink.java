@@ -0,0 +1,18 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * Receives the solved scenarios of a {@code ChannelSweep}.
+ *
+ * The sweep calls the sink from several threads at once, so implementations must be thread safe.
+ * The channel passed in is reused for the next scenario of the same thread once the call returns,
+ * so copy any value that has to be kept.
+ * @param <C> Channel type of the sweep
+ */
+public interface SweepSink<C extends OpenChannel> {
+  /**
+   * Accepts a solved scenario that passed the filter of the sweep.
+   * @param index Index of the grid point
+   * @param channel The analyzed channel
+   */
+  void accept(long index, C channel);
+}
@@ -0,0 +1,29 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * Batch solver for trapezoidal channels.
+ *
+ * Solves the same unknown for every scenario of a {@code ChannelBatch}, reading the discharge,
+ * bed slope, Manning's roughness, base width, water depth and side slope columns.
+ * Instances are not thread safe.
+ */
+public class TrapezoidalBatchSolver extends PrismaticBatchSolver {
+
+  /**
+   * Creates a {@code TrapezoidalBatchSolver} with the default tolerance and iteration cap.
+   * @param unknown The unknown from the enum Unknown
+   */
+  public TrapezoidalBatchSolver(TrapezoidalOpenChannel.Unknown unknown) {
+    this(unknown, RootFinder.DEFAULT_TOLERANCE, RootFinder.DEFAULT_MAX_ITERATIONS);
+  }
+
+  /**
+   * Creates a {@code TrapezoidalBatchSolver}.
+   * @param unknown The unknown from the enum Unknown
+   * @param tolerance Relative tolerance of the iterative solutions
+   * @param maxIterations Maximum number of iterations of a single solution
+   */
+  public TrapezoidalBatchSolver(TrapezoidalOpenChannel.Unknown unknown, double tolerance, int maxIterations) {
+    super(unknown, false, tolerance, maxIterations);
+  }
+}
@@ -27,9 +27,6 @@ public class TrapezoidalOpenChannel extends OpenChannel {
   // Sideslope, assumed equal on both sides
   private double sideSlope;
 
-  // Temporary discharge, calculated, must be reset always
-  private double calculatedDischarge;
-
   /**
    * Creates an empty {@code TrapezoidalOpenChannel}
    */
@@ -117,188 +114,37 @@ public class TrapezoidalOpenChannel extends OpenChannel {
    * Methods
    **********************************/
   public boolean analyze() {
-    if (isValidInputs()) {
-      switch (this.unknown) {
-        case DISCHARGE:
-          solveForDischarge();
-          break;
-        case BED_SLOPE:
-          solveForBedSlope();
-          break;
-        case WATER_DEPTH:
-          solveForWaterDepth();
-          break;
-        case BASE_WIDTH:
-          solveForBaseWidth();
-          break;
-      }
-      solveForCriticalFlow();
-      return this.isCalculationSuccessful;
-    }
-    return false;
-  }
-
-  /**
-   * Solve for the unknown base width
-   */
-  private void solveForBaseWidth() {
-    calculatedDischarge = 0.0;
-    double trialBaseWidth = 0.0;
-
-    while (calculatedDischarge < this.discharge) {
-      trialBaseWidth += 0.0001;
-      this.wettedArea = (trialBaseWidth + this.waterDepth * this.sideSlope) * this.waterDepth;
-      this.wettedPerimeter = 2 * this.waterDepth * Math.sqrt(Math.pow(this.sideSlope,2) + 1) + trialBaseWidth;
-      this.hydraulicRadius = this.wettedArea / this.wettedPerimeter;
-      this.averageVelocity = (1 / this.manningRoughness) * Math.sqrt(this.bedSlope) *
-              Math.pow(this.hydraulicRadius, (2.0/3.0));
-      calculatedDischarge = this.averageVelocity * this.wettedArea;
-    }
-
-    this.baseWidth = trialBaseWidth;
-    this.isCalculationSuccessful = true;
-  }
-
-  /**
-   * Solve for the unknown water depth
-   */
-  private void solveForWaterDepth() {
-    calculatedDischarge = 0.0;
-    double trialWaterDepth = 0.0;
-
-    while (calculatedDischarge < this.discharge) {
-      trialWaterDepth += 0.0001;
-      this.wettedArea = (this.baseWidth + trialWaterDepth * this.sideSlope) * trialWaterDepth;
-      this.wettedPerimeter = 2 * trialWaterDepth * Math.sqrt(Math.pow(this.sideSlope,2) + 1) + this.baseWidth;
-      this.hydraulicRadius = this.wettedArea / this.wettedPerimeter;
-      this.averageVelocity = (1 / this.manningRoughness) * Math.sqrt(this.bedSlope) *
-              Math.pow(this.hydraulicRadius, (2.0/3.0));
-      calculatedDischarge = this.averageVelocity * this.wettedArea;
-    }
-
-    this.waterDepth = trialWaterDepth;
-    this.isCalculationSuccessful = true;
-  }
-
-
-  /**
-   * Solve for the unknown bed slope
-   */
-  private void solveForBedSlope() {
-    calculatedDischarge = 0.0;
-    double trialSlope = 0.0;
-
-    while (calculatedDischarge < this.discharge) {
-      trialSlope += 0.00000001;
-      this.wettedArea = (this.baseWidth + this.waterDepth * this.sideSlope) * this.waterDepth;
-      this.wettedPerimeter = 2 * this.waterDepth * Math.sqrt(Math.pow(this.sideSlope,2) + 1) + this.baseWidth;
-      this.hydraulicRadius = this.wettedArea / this.wettedPerimeter;
-      this.averageVelocity = (1 / this.manningRoughness) * Math.sqrt(trialSlope) *
-              Math.pow(this.hydraulicRadius, (2.0/3.0));
-      calculatedDischarge = this.averageVelocity * this.wettedArea;
-    }
-
-    this.bedSlope = trialSlope;
-    this.isCalculationSuccessful = true;
+    TrapezoidalSolver solver = new TrapezoidalSolver(this.tolerance, this.maxIterations, this.cancellationToken);
+    ResultCache cache = resultCache();
+    // The critical flow is solved on first access, unless the cache holds it already
+    apply((cache == null) ? solver.solve(spec(), warmStartResult(), false) : cache.solve(solver, spec()));
+    return this.isCalculationSuccessful;
   }
 
   /**
-   * Solve for the unknown discharge
+   * Captures the current inputs of the channel.
+   * @return TrapezoidalSpec in metric units
    */
-  private void solveForDischarge() {
-    this.wettedArea = (this.baseWidth + this.waterDepth * this.sideSlope) * this.waterDepth;
-    this.wettedPerimeter = 2 * this.waterDepth * Math.sqrt(Math.pow(this.sideSlope,2) + 1) + this.baseWidth;
-    this.hydraulicRadius = this.wettedArea / this.wettedPerimeter;
-    this.averageVelocity = (1 / this.manningRoughness) * Math.sqrt(this.bedSlope) *
-            Math.pow(this.hydraulicRadius, (2.0/3.0));
-    this.discharge = this.averageVelocity * this.wettedArea;
-    this.isCalculationSuccessful = true;
+  TrapezoidalSpec spec() {
+    return new TrapezoidalSpec(this.unknown, this.discharge, this.bedSlope, this.baseWidth, this.waterDepth,
+            this.sideSlope, this.manningRoughness);
   }
 
   /**
-   * Solve for critical flow properties (e.g. critical depth, froude number, flow type ...)
+   * Copies the result of the solver, including the solved base width.
+   * @param result Result of the solver
    */
-  private void solveForCriticalFlow() {
-    double Q2g = Math.pow(this.discharge, 2) / this.GRAVITY_METRIC;
-
-    double tester = 0;
-
-    // Critical depth
-    double yc = 0;
-
-    // Critical area, perimeter, hydraulic radius, critical slope
-    double Ac = 0, Pc, Rc, Sc;
-
-    // Top width
-    double T = 0;
-
-    while (tester < Q2g) {
-      yc += 0.00001;
-      T = this.baseWidth + 2 * this.sideSlope * yc;
-      Ac = (T + this.baseWidth) / 2 * yc;
-      tester = Math.pow(Ac, 3) / T;
+  @Override
+  protected void apply(ChannelResult result) {
+    super.apply(result);
+    if (result.isCalculationSuccessful()) {
+      this.baseWidth = result.getBaseWidth();
     }
-
-    this.criticalDepth = yc;
-
-    Pc = 2 * yc * Math.sqrt(Math.pow(this.sideSlope,2) + 1) + this.baseWidth;
-    Rc = Ac / Pc;
-    Sc = Math.pow(this.discharge / (Ac * Math.pow(Rc, (2.0/3.0))) * this.manningRoughness, 2);
-    this.criticalSlope = Sc;
-
-    // Solve for froude number
-    double topWidth = this.baseWidth + 2 * this.sideSlope * this.waterDepth;
-    this.hydraulicDepth = this.wettedArea / topWidth;
-    this.froudeNumber = this.averageVelocity / Math.sqrt(this.GRAVITY_METRIC * this.hydraulicDepth);
-
-    // Select the flow type
-    this.flowType();
   }
 
-  /**
-   * Checks whether all inputs are valid.
-   * @return Boolean Returns true if all the inputs are valid, false otherwise
-   */
-  private boolean isValidInputs() {
-    try {
-      if (this.manningRoughness <= 0) {
-        throw new InvalidValueException("Manning's roughness must be greater than zero.");
-      }
-      if (this.unknown != Unknown.DISCHARGE) {
-        if (this.discharge <= 0) {
-          throw new InvalidValueException("Discharge must be greater than zero.");
-        }
-      }
-      if (this.unknown != Unknown.BED_SLOPE) {
-        if (this.bedSlope <= 0) {
-          throw new InvalidValueException("Bed slope must not be flat or less than zero.");
-        }
-      }
-      if (this.unknown != Unknown.BASE_WIDTH) {
-        if (this.baseWidth == 0) {
-          throw new DimensionException("Base width must be greater than zero.");
-        } else if (this.baseWidth < 0) {
-          throw new DimensionException("Invalid base width dimension.");
-        }
-      }
-      if (this.unknown != Unknown.WATER_DEPTH) {
-        if (this.waterDepth == 0) {
-          throw new DimensionException("Water depth must be greater than zero.");
-        } else if (this.waterDepth < 0) {
-          throw new DimensionException("Invalid depth of water.");
-        }
-      }
-      if (this.sideSlope < 0) {
-        throw new DimensionException("Side slope value should be positive.");
-      }
-
-    } catch (InvalidValueException | DimensionException e) {
-      this.isCalculationSuccessful = false;
-      this.errMessage = e.getMessage();
-      return false;
-    }
-
-    // Return true if all exceptions are passed
-    return true;
+  @Override
+  protected ChannelResult solveCriticalFlow(ChannelResult result) {
+    return new TrapezoidalSolver(this.tolerance, this.maxIterations, this.cancellationToken)
+        .criticalFlow(result);
   }
 }
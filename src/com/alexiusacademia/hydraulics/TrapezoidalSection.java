@@ -0,0 +1,246 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * Reusable hydraulics of a trapezoidal section (rectangular when the side slope is zero, triangular when
+ * the base width is zero).
+ *
+ * The inputs are plain fields that are overwritten for every scenario, and the equations handed to
+ * the root finder are created once, so solving a scenario allocates nothing. An instance is meant
+ * for a single thread.
+ */
+final class TrapezoidalSection {
+
+  /* **********************************
+   * Inputs
+   ***********************************/
+  double discharge;
+  double bedSlope;
+  double manningRoughness;
+  double baseWidth;
+  double waterDepth;
+  double sideSlope;
+
+  /* **********************************
+   * Results
+   ***********************************/
+  double wettedArea;
+  double wettedPerimeter;
+  double hydraulicRadius;
+  double averageVelocity;
+  double topWidth;
+
+  private final RootFinder finder;
+  private final DepthEquation depthEquation = new DepthEquation();
+  private final BaseWidthEquation baseWidthEquation = new BaseWidthEquation();
+  private final CriticalEquation criticalEquation = new CriticalEquation();
+
+  /**
+   * Creates a {@code TrapezoidalSection} solved with the given root finder.
+   * @param finder Root finder
+   */
+  TrapezoidalSection(RootFinder finder) {
+    this.finder = finder;
+  }
+
+  /* **********************************
+   * Methods
+   ***********************************/
+
+  /**
+   * Computes the hydraulic elements at the current inputs.
+   */
+  void hydraulicElements() {
+    double y = this.waterDepth;
+    this.wettedArea = (this.baseWidth + y * this.sideSlope) * y;
+    this.wettedPerimeter = 2 * y * Math.sqrt(this.sideSlope * this.sideSlope + 1) + this.baseWidth;
+    this.hydraulicRadius = this.wettedArea / this.wettedPerimeter;
+    this.topWidth = this.baseWidth + 2 * this.sideSlope * y;
+    this.averageVelocity = Hydraulics.manningVelocity(this.hydraulicRadius, this.bedSlope, this.manningRoughness);
+  }
+
+  /**
+   * Solves for the discharge.
+   */
+  void solveForDischarge() {
+    hydraulicElements();
+    this.discharge = this.averageVelocity * this.wettedArea;
+  }
+
+  /**
+   * Solves for the water depth, in closed form for a triangle, otherwise by Newton from the wide channel depth
+   * corrected for the sides.
+   * @throws ConvergenceException If the root finder fails
+   */
+  void solveForWaterDepth() throws ConvergenceException {
+    if (this.baseWidth == 0) {
+      this.waterDepth = Hydraulics.triangularNormalDepth(this.discharge, this.sideSlope, this.bedSlope,
+              this.manningRoughness);
+      hydraulicElements();
+      return;
+    }
+    // Wide channel approximation (R = y) never overestimates the depth
+    double guess = Math.pow(this.discharge * this.manningRoughness / (this.baseWidth * Math.sqrt(this.bedSlope)),
+            (3.0 / 5.0));
+    double upper = finder.expandUpper(depthEquation, 0, 2 * guess);
+    this.waterDepth = finder.newton(depthEquation, 0, upper,
+            Hydraulics.wideChannelDepth(guess, this.baseWidth, this.sideSlope));
+    hydraulicElements();
+  }
+
+  /**
+   * Solves for the water depth from the depth solved for another conveyance of the same section. The
+   * conveyance of a trapezoid grows as y^m with 1 <= m <= 8/3, from a deep rectangle to a triangle, so the
+   * new depth lies between the previous one scaled by r^(3/8) and by r, where r is the ratio of the
+   * conveyances. Newton starts inside that bracket from the local power law, and a bracket missed by the
+   * error of the previous depth falls back to the full solve.
+   * @param previousDepth Depth solved for the previous conveyance
+   * @param conveyanceRatio Ratio of the conveyance Q n / sqrt(S) to the previous one
+   * @throws ConvergenceException If the root finder fails
+   */
+  void solveForWaterDepth(double previousDepth, double conveyanceRatio) throws ConvergenceException {
+    if (this.baseWidth == 0 || !(previousDepth > 0) || !(conveyanceRatio > 0)
+        || Double.isInfinite(conveyanceRatio)) {
+      solveForWaterDepth();
+      return;
+    }
+    double sideFactor = 2 * Math.sqrt(this.sideSlope * this.sideSlope + 1);
+    double y = previousDepth;
+    double guess = Hydraulics.scaledDepth(y, (this.baseWidth + y * this.sideSlope) * y, sideFactor * y + this.baseWidth,
+            this.baseWidth + 2 * this.sideSlope * y, sideFactor, conveyanceRatio);
+
+    // Widened by a few times the tolerance of the previous depth
+    double margin = 4 * (finder.getTolerance() + Math.ulp(1.0));
+    double lower = y * Math.min(conveyanceRatio, Math.pow(conveyanceRatio, (3.0 / 8.0))) * (1 - margin);
+    double upper = y * Math.max(conveyanceRatio, Math.pow(conveyanceRatio, (3.0 / 8.0))) * (1 + margin);
+    try {
+      this.waterDepth = finder.newton(depthEquation, lower, upper, guess);
+    } catch (ConvergenceException e) {
+      solveForWaterDepth();
+      return;
+    }
+    hydraulicElements();
+  }
+
+  /**
+   * Solves for the base width, zero when a triangular section already carries the discharge.
+   * @throws ConvergenceException If the root finder fails
+   */
+  void solveForBaseWidth() throws ConvergenceException {
+    if (baseWidthEquation.value(0) >= 0) {
+      this.baseWidth = 0;
+    } else {
+      // Wide channel approximation (R = y) never overestimates the width
+      double guess = this.discharge * this.manningRoughness /
+              (Math.sqrt(this.bedSlope) * Math.pow(this.waterDepth, (5.0 / 3.0)));
+      double upper = finder.expandUpper(baseWidthEquation, 0, 2 * guess);
+      this.baseWidth = finder.newton(baseWidthEquation, 0, upper, guess);
+    }
+    hydraulicElements();
+  }
+
+  /**
+   * Solves for the bed slope.
+   */
+  void solveForBedSlope() {
+    double area = (this.baseWidth + this.waterDepth * this.sideSlope) * this.waterDepth;
+    double perimeter = 2 * this.waterDepth * Math.sqrt(this.sideSlope * this.sideSlope + 1) + this.baseWidth;
+    this.bedSlope = Hydraulics.manningSlope(this.discharge, area, perimeter, this.manningRoughness);
+    hydraulicElements();
+  }
+
+  /**
+   * Froude number at the current hydraulic elements.
+   * @return Double Froude number
+   */
+  double froudeNumber() {
+    return this.averageVelocity / Math.sqrt(Hydraulics.GRAVITY_METRIC * this.wettedArea / this.topWidth);
+  }
+
+  /**
+   * Solves for the critical depth of the current discharge, in closed form for a rectangle or a triangle.
+   * @return Double Critical depth
+   * @throws ConvergenceException If the root finder fails
+   */
+  double criticalDepth() throws ConvergenceException {
+    if (this.sideSlope == 0) {
+      return Hydraulics.rectangularCriticalDepth(this.discharge, this.baseWidth);
+    }
+    if (this.baseWidth == 0) {
+      return Hydraulics.triangularCriticalDepth(this.discharge, this.sideSlope);
+    }
+    double upper = finder.expandUpper(criticalEquation, 0, Math.max(this.waterDepth, Double.MIN_NORMAL));
+    return finder.newton(criticalEquation, 0, upper, upper / 2);
+  }
+
+  /**
+   * Manning's discharge for the given section, zero for a dry section.
+   */
+  private double manningDischarge(double area, double perimeter) {
+    return Hydraulics.manningDischarge(area, perimeter, this.bedSlope, this.manningRoughness);
+  }
+
+  /**
+   * Discharge equation in the water depth.
+   */
+  private final class DepthEquation implements RootFinder.Equation {
+    @Override
+    public double value(double y) {
+      double area = (baseWidth + y * sideSlope) * y;
+      double perimeter = 2 * y * Math.sqrt(sideSlope * sideSlope + 1) + baseWidth;
+      return manningDischarge(area, perimeter) - discharge;
+    }
+
+    @Override
+    public double derivative(double y) {
+      double sideFactor = 2 * Math.sqrt(sideSlope * sideSlope + 1);
+      double area = (baseWidth + y * sideSlope) * y;
+      double perimeter = sideFactor * y + baseWidth;
+      double width = baseWidth + 2 * sideSlope * y;
+      double q = manningDischarge(area, perimeter);
+      return q * (5 * width / (3 * area) - 2 * sideFactor / (3 * perimeter));
+    }
+  }
+
+  /**
+   * Discharge equation in the base width.
+   */
+  private final class BaseWidthEquation implements RootFinder.Equation {
+    @Override
+    public double value(double b) {
+      double area = (b + waterDepth * sideSlope) * waterDepth;
+      double perimeter = 2 * waterDepth * Math.sqrt(sideSlope * sideSlope + 1) + b;
+      return manningDischarge(area, perimeter) - discharge;
+    }
+
+    @Override
+    public double derivative(double b) {
+      double area = (b + waterDepth * sideSlope) * waterDepth;
+      double perimeter = 2 * waterDepth * Math.sqrt(sideSlope * sideSlope + 1) + b;
+      double q = manningDischarge(area, perimeter);
+      return q * (5 * waterDepth / (3 * area) - 2 / (3 * perimeter));
+    }
+  }
+
+  /**
+   * Critical flow condition, A^3 / T = Q^2 / g.
+   */
+  private final class CriticalEquation implements RootFinder.Equation {
+    @Override
+    public double value(double y) {
+      double width = baseWidth + 2 * sideSlope * y;
+      double area = (baseWidth + y * sideSlope) * y;
+      double q2g = discharge * discharge / Hydraulics.GRAVITY_METRIC;
+      if (area <= 0) {
+        return -q2g;
+      }
+      return area * area * area / width - q2g;
+    }
+
+    @Override
+    public double derivative(double y) {
+      double width = baseWidth + 2 * sideSlope * y;
+      double area = (baseWidth + y * sideSlope) * y;
+      return 3 * area * area - area * area * area * 2 * sideSlope / (width * width);
+    }
+  }
+}
@@ -0,0 +1,293 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * Stateless solver of trapezoidal channels.
+ *
+ * Every call works on its own copy of the inputs and returns an immutable result, so a single
+ * instance can be shared by any number of threads without locking.
+ */
+public final class TrapezoidalSolver {
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private final RootFinder finder;
+
+  /**
+   * Creates a {@code TrapezoidalSolver} with the default tolerance and iteration cap.
+   */
+  public TrapezoidalSolver() {
+    this(RootFinder.DEFAULT_TOLERANCE, RootFinder.DEFAULT_MAX_ITERATIONS);
+  }
+
+  /**
+   * Creates a {@code TrapezoidalSolver} with the given tolerance and iteration cap.
+   * @param tolerance Relative tolerance of the iterative solutions
+   * @param maxIterations Iteration cap of a single iterative solution
+   */
+  public TrapezoidalSolver(double tolerance, int maxIterations) {
+    this(tolerance, maxIterations, null);
+  }
+
+  /**
+   * Creates a {@code TrapezoidalSolver} whose solves stop once the given token is cancelled or expired.
+   * @param tolerance Relative tolerance of the iterative solutions
+   * @param maxIterations Iteration cap of a single iterative solution
+   * @param token Cancellation token of the solves, null for none
+   */
+  public TrapezoidalSolver(double tolerance, int maxIterations, CancellationToken token) {
+    this.finder = new RootFinder(tolerance, maxIterations, token);
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  public double getTolerance() {
+    return this.finder.getTolerance();
+  }
+
+  public int getMaxIterations() {
+    return this.finder.getMaxIterations();
+  }
+
+  public CancellationToken getCancellationToken() {
+    return this.finder.getCancellationToken();
+  }
+
+  /* **********************************
+   * Methods
+   ***********************************/
+
+  /**
+   * Solves for the unknown of the channel and its critical flow properties.
+   * @param spec Inputs of the channel
+   * @return ChannelResult, unsuccessful with an error message if the inputs are invalid or the solution fails
+   */
+  public ChannelResult solve(TrapezoidalSpec spec) {
+    return solve(spec, true);
+  }
+
+  /**
+   * Solves for the unknown of the channel, and for its critical flow properties only if asked to. The Froude
+   * number and flow type are always solved.
+   * @param spec Inputs of the channel
+   * @param criticalFlow False to skip the critical depth and critical slope, which are left {@code NaN}
+   * @return ChannelResult, unsuccessful with an error message if the inputs are invalid or the solution fails
+   */
+  public ChannelResult solve(TrapezoidalSpec spec, boolean criticalFlow) {
+    return solve(spec, null, criticalFlow);
+  }
+
+  /**
+   * Solves for the unknown of the channel, seeding the water depth with the result of a previous solve of
+   * the same section. Along a series of slowly varying discharges each solve then takes a few evaluations.
+   * @param spec Inputs of the channel
+   * @param seed Previous result with the same base width and side slope, null or unsuccessful to solve cold
+   * @param criticalFlow False to skip the critical depth and critical slope, which are left {@code NaN}
+   * @return ChannelResult, unsuccessful with an error message if the inputs are invalid or the solution fails
+   */
+  public ChannelResult solve(TrapezoidalSpec spec, ChannelResult seed, boolean criticalFlow) {
+    Object event = SolverMetrics.beginSolve();
+    long start = SolverMetrics.start(event);
+    ChannelResult result = compute(spec, seed, criticalFlow);
+    SolverMetrics.stop(start, event, SolverMetrics.Shape.TRAPEZOIDAL, spec.getUnknown(), result);
+    return result;
+  }
+
+  /**
+   * Solves the channel without measuring it.
+   */
+  ChannelResult compute(TrapezoidalSpec spec, ChannelResult seed, boolean criticalFlow) {
+    ChannelState state = new ChannelState();
+    state.discharge = spec.getDischarge();
+    state.bedSlope = spec.getBedSlope();
+    state.manningRoughness = spec.getManningRoughness();
+    state.baseWidth = spec.getBaseWidth();
+    state.waterDepth = spec.getWaterDepth();
+    state.sideSlope = spec.getSideSlope();
+
+    try {
+      validate(spec);
+    } catch (InvalidValueException | DimensionException e) {
+      return state.fail(e.getMessage());
+    }
+
+    TrapezoidalSection section = new TrapezoidalSection(this.finder);
+    section.discharge = state.discharge;
+    section.bedSlope = state.bedSlope;
+    section.manningRoughness = state.manningRoughness;
+    section.baseWidth = state.baseWidth;
+    section.waterDepth = state.waterDepth;
+    section.sideSlope = state.sideSlope;
+
+    try {
+      switch (spec.getUnknown()) {
+        case DISCHARGE:
+          section.solveForDischarge();
+          break;
+        case BED_SLOPE:
+          section.solveForBedSlope();
+          break;
+        case WATER_DEPTH:
+          if (isSeed(seed, spec)) {
+            section.solveForWaterDepth(seed.getWaterDepth(), Hydraulics.conveyanceRatio(seed, state.discharge,
+                    state.bedSlope, state.manningRoughness));
+          } else {
+            section.solveForWaterDepth();
+          }
+          break;
+        case BASE_WIDTH:
+          section.solveForBaseWidth();
+          break;
+      }
+    } catch (ConvergenceException e) {
+      return state.fail(e.getMessage());
+    }
+
+    state.discharge = section.discharge;
+    state.bedSlope = section.bedSlope;
+    state.baseWidth = section.baseWidth;
+    state.waterDepth = section.waterDepth;
+    state.wettedArea = section.wettedArea;
+    state.wettedPerimeter = section.wettedPerimeter;
+    state.hydraulicRadius = section.hydraulicRadius;
+    state.averageVelocity = section.averageVelocity;
+    state.topWidth = section.topWidth;
+
+    solveForFlowType(section, state);
+    if (criticalFlow) {
+      solveForCriticalFlow(section, state);
+    } else {
+      state.skipCriticalFlow();
+    }
+
+    // A critical depth cut short by the token reads as NaN, the whole solve is failed instead
+    String interruption = this.finder.interruption();
+    if (interruption != null) {
+      return state.fail(interruption);
+    }
+    return state.succeed();
+  }
+
+  /**
+   * Completes a result solved without its critical flow, measured under {@link SolverMetrics.CriticalFlow}.
+   * @param result Successful result of {@link #solve(TrapezoidalSpec, boolean)}
+   * @return ChannelResult with the critical flow properties, unsuccessful if the token stopped it
+   */
+  ChannelResult criticalFlow(ChannelResult result) {
+    Object event = SolverMetrics.beginSolve();
+    long start = SolverMetrics.start(event);
+    ChannelResult critical = computeCriticalFlow(result);
+    SolverMetrics.stop(start, event, SolverMetrics.Shape.TRAPEZOIDAL, SolverMetrics.CriticalFlow.CRITICAL_FLOW,
+            critical);
+    return critical;
+  }
+
+  /**
+   * Completes a result solved without its critical flow, without measuring it.
+   */
+  ChannelResult computeCriticalFlow(ChannelResult result) {
+    ChannelState state = new ChannelState(result);
+    TrapezoidalSection section = new TrapezoidalSection(this.finder);
+    section.discharge = state.discharge;
+    section.bedSlope = state.bedSlope;
+    section.manningRoughness = state.manningRoughness;
+    section.baseWidth = state.baseWidth;
+    section.waterDepth = state.waterDepth;
+    section.sideSlope = state.sideSlope;
+    solveForCriticalFlow(section, state);
+
+    // A critical depth cut short by the token reads as NaN, the critical flow is failed instead
+    String interruption = this.finder.interruption();
+    if (interruption != null) {
+      return state.fail(interruption);
+    }
+    return state.succeed();
+  }
+
+  /**
+   * Solve for the hydraulic depth, discharge intensity, froude number and flow type
+   */
+  private static void solveForFlowType(TrapezoidalSection section, ChannelState state) {
+    state.hydraulicDepth = state.wettedArea / state.topWidth;
+    state.dischargeIntensity = state.discharge / state.topWidth;
+    state.froudeNumber = section.froudeNumber();
+
+    // Select the flow type
+    state.flowType = Hydraulics.flowType(state.froudeNumber);
+  }
+
+  /**
+   * Solve for critical flow properties (critical depth and critical slope)
+   */
+  private static void solveForCriticalFlow(TrapezoidalSection section, ChannelState state) {
+    // Critical depth
+    double yc;
+
+    // Critical area, perimeter, hydraulic radius
+    double Ac, Pc, Rc;
+
+    try {
+      yc = section.criticalDepth();
+    } catch (ConvergenceException e) {
+      yc = Double.NaN;
+    }
+    state.criticalDepth = yc;
+
+    Ac = (state.baseWidth + yc * state.sideSlope) * yc;
+    Pc = 2 * yc * Math.sqrt(Math.pow(state.sideSlope, 2) + 1) + state.baseWidth;
+    Rc = Ac / Pc;
+    state.criticalSlope = Math.pow(state.discharge / (Ac * Math.pow(Rc, (2.0/3.0))) * state.manningRoughness, 2);
+    state.criticalFlowSolved = true;
+  }
+
+  /**
+   * Checks whether a result can seed the water depth of the given section.
+   */
+  private static boolean isSeed(ChannelResult seed, TrapezoidalSpec spec) {
+    return seed != null && seed.isCalculationSuccessful() && seed.getBaseWidth() == spec.getBaseWidth()
+        && seed.getSideSlope() == spec.getSideSlope();
+  }
+
+  /**
+   * Checks whether all inputs are valid.
+   * @param spec Inputs of the channel
+   * @throws InvalidValueException If a flow property is invalid
+   * @throws DimensionException If a dimension of the section is invalid
+   */
+  private static void validate(TrapezoidalSpec spec) throws InvalidValueException, DimensionException {
+    TrapezoidalOpenChannel.Unknown unknown = spec.getUnknown();
+    if (spec.getManningRoughness() <= 0) {
+      throw new InvalidValueException("Manning's roughness must be greater than zero.");
+    }
+    if (unknown != TrapezoidalOpenChannel.Unknown.DISCHARGE) {
+      if (spec.getDischarge() <= 0) {
+        throw new InvalidValueException("Discharge must be greater than zero.");
+      }
+    }
+    if (unknown != TrapezoidalOpenChannel.Unknown.BED_SLOPE) {
+      if (spec.getBedSlope() <= 0) {
+        throw new InvalidValueException("Bed slope must not be flat or less than zero.");
+      }
+    }
+    if (unknown != TrapezoidalOpenChannel.Unknown.BASE_WIDTH) {
+      // A triangle has no base width
+      if (spec.getBaseWidth() == 0 && spec.getSideSlope() == 0) {
+        throw new DimensionException("Base width must be greater than zero.");
+      } else if (spec.getBaseWidth() < 0) {
+        throw new DimensionException("Invalid base width dimension.");
+      }
+    }
+    if (unknown != TrapezoidalOpenChannel.Unknown.WATER_DEPTH) {
+      if (spec.getWaterDepth() == 0) {
+        throw new DimensionException("Water depth must be greater than zero.");
+      } else if (spec.getWaterDepth() < 0) {
+        throw new DimensionException("Invalid depth of water.");
+      }
+    }
+    if (spec.getSideSlope() < 0) {
+      throw new DimensionException("Side slope value should be positive.");
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package com.alexiusacademia.hydraulics;
+
+/**
+ * Immutable inputs of a trapezoidal channel, solved by a {@code TrapezoidalSolver}.
+ * The input matching the unknown is ignored. Values are in metric units.
+ */
+public final class TrapezoidalSpec {
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private final TrapezoidalOpenChannel.Unknown unknown;
+  private final double discharge;
+  private final double bedSlope;
+  private final double baseWidth;
+  private final double waterDepth;
+  private final double sideSlope;
+  private final double manningRoughness;
+
+  /**
+   * Creates a {@code TrapezoidalSpec} with the given inputs.
+   * @param unknown The unknown from the enum Unknown
+   * @param discharge The flow rate.
+   * @param bedSlope The channel slope.
+   * @param baseWidth The channel width at the bottom.
+   * @param waterDepth The depth of the water.
+   * @param sideSlope The side slope on both sides
+   * @param manningRoughness The Manning's roughness coefficient.
+   */
+  public TrapezoidalSpec(TrapezoidalOpenChannel.Unknown unknown, double discharge, double bedSlope,
+                         double baseWidth, double waterDepth, double sideSlope, double manningRoughness) {
+    this.unknown = unknown;
+    this.discharge = discharge;
+    this.bedSlope = bedSlope;
+    this.baseWidth = baseWidth;
+    this.waterDepth = waterDepth;
+    this.sideSlope = sideSlope;
+    this.manningRoughness = manningRoughness;
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  public TrapezoidalOpenChannel.Unknown getUnknown() {
+    return unknown;
+  }
+
+  public double getDischarge() {
+    return discharge;
+  }
+
+  public double getBedSlope() {
+    return bedSlope;
+  }
+
+  public double getBaseWidth() {
+    return baseWidth;
+  }
+
+  public double getWaterDepth() {
+    return waterDepth;
+  }
+
+  public double getSideSlope() {
+    return sideSlope;
+  }
+
+  public double getManningRoughness() {
+    return manningRoughness;
+  }
+}
@@ -0,0 +1,547 @@
+package com.alexiusacademia.hydraulics;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * One dimensional unsteady flow along a reach, the Saint-Venant equations by the Preissmann scheme.
+ *
+ * Continuity dA/dt + dQ/dx = 0 and momentum dQ/dt + d(Q^2/A)/dx + gA (dz/dx + Sf) = 0 are written on the
+ * box between each pair of stations, centred in space and weighted by theta in time. The nonlinear
+ * system of a time step is solved by Newton iterations with an analytic Jacobian. The Jacobian is block
+ * tridiagonal, two equations per box in the depth and discharge of its two stations, so every iteration
+ * is a double sweep of order N. Geometry comes from the
+ * {@code CrossSection} of each station, and every array is allocated by the constructor, so stepping
+ * allocates nothing.
+ *
+ * The upstream boundary is a discharge or a stage hydrograph, and the downstream boundary a stage or
+ * a discharge hydrograph or normal depth outflow. The sections must stay wet and below their maximum depth.
+ * An instance is not thread safe. Values are in metric units and seconds.
+ */
+public final class UnsteadyFlow {
+
+  /* **********************************
+   * Constants
+   ***********************************/
+  public static final double DEFAULT_THETA = 0.6;
+
+  // Depth tolerance of the Newton iterations, in meters, also relative on the discharges
+  public static final double DEFAULT_TOLERANCE = 1e-6;
+  public static final int DEFAULT_MAX_ITERATIONS = 20;
+
+  // Kinds of boundary conditions
+  private enum Boundary {
+    DISCHARGE,
+    STAGE,
+    NORMAL_DEPTH
+  }
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private final List<ProfileStation> stations;
+  private final int size;
+
+  // Stations
+  private final double[] chainage;
+  private final double[] invertElevation;
+  private final double[] inverseRoughness;
+  private final CrossSection[] section;
+
+  // State at the end of the last step, the Newton iterate while stepping
+  private final double[] depth;
+  private final double[] discharge;
+  private final double[] oldDepth;
+  private final double[] oldDischarge;
+
+  // Reciprocal of the length of each box
+  private final double[] inverseLength;
+
+  // Elements of the stations at the iterate, and the rates of change used by the Jacobian
+  private final double[] area;
+  private final double[] topWidth;
+  private final double[] conveyance;
+  private final double[] conveyanceRate;
+  private final double[] flux;
+  private final double[] fluxRate;
+  private final double[] fluxDischargeRate;
+  private final double[] friction;
+  private final double[] frictionRate;
+  private final double[] frictionDischargeRate;
+
+  // Terms of each box from the start of the step
+  private final double[] oldContinuity;
+  private final double[] oldMomentum;
+
+  // Newton corrections of the iterate
+  private final double[] depthChange;
+  private final double[] dischargeChange;
+  private final DoubleSweep sweep;
+
+  private double theta = DEFAULT_THETA;
+  private double tolerance = DEFAULT_TOLERANCE;
+  private int maxIterations = DEFAULT_MAX_ITERATIONS;
+
+  private Boundary upstreamBoundary;
+  private DoubleUnaryOperator upstreamSeries;
+  private Boundary downstreamBoundary;
+  private DoubleUnaryOperator downstreamSeries;
+  private double downstreamSlope;
+
+  private double time;
+  private int iterations;
+  private boolean isCalculationSuccessful;
+  private String errMessage;
+
+  /**
+   * Creates an {@code UnsteadyFlow} of the reach through the given stations.
+   * @param stations At least two stations, chainage increasing downstream
+   */
+  public UnsteadyFlow(List<ProfileStation> stations) {
+    this.size = stations.size();
+    if (size < 2) {
+      throw new IllegalArgumentException("The reach must have at least 2 stations.");
+    }
+    this.stations = stations;
+    this.chainage = new double[size];
+    this.invertElevation = new double[size];
+    this.inverseRoughness = new double[size];
+    this.section = new CrossSection[size];
+    for (int i = 0; i < size; i++) {
+      ProfileStation station = stations.get(i);
+      if (i > 0 && station.getChainage() <= chainage[i - 1]) {
+        throw new IllegalArgumentException("Stations must be ordered downstream.");
+      }
+      chainage[i] = station.getChainage();
+      invertElevation[i] = station.getInvertElevation();
+      inverseRoughness[i] = 1 / station.getManningRoughness();
+      section[i] = station.getSection();
+    }
+
+    this.inverseLength = new double[size - 1];
+    for (int j = 0; j < size - 1; j++) {
+      inverseLength[j] = 1 / (chainage[j + 1] - chainage[j]);
+    }
+
+    this.depth = new double[size];
+    this.discharge = new double[size];
+    this.oldDepth = new double[size];
+    this.oldDischarge = new double[size];
+    this.area = new double[size];
+    this.topWidth = new double[size];
+    this.conveyance = new double[size];
+    this.conveyanceRate = new double[size];
+    this.flux = new double[size];
+    this.fluxRate = new double[size];
+    this.fluxDischargeRate = new double[size];
+    this.friction = new double[size];
+    this.frictionRate = new double[size];
+    this.frictionDischargeRate = new double[size];
+    this.oldContinuity = new double[size - 1];
+    this.oldMomentum = new double[size - 1];
+    this.depthChange = new double[size];
+    this.dischargeChange = new double[size];
+    this.sweep = new DoubleSweep(size);
+  }
+
+  /* **********************************
+   * Setters
+   ***********************************/
+
+  /**
+   * Sets the time weighting of the scheme. 0.5 is second order accurate, and values up to 1
+   * damp the oscillations of rapid changes.
+   * @param theta Weight of the new time level, from 0.5 to 1
+   */
+  public void setTheta(double theta) {
+    if (theta < 0.5 || theta > 1) {
+      throw new IllegalArgumentException("Theta must be from 0.5 to 1.");
+    }
+    this.theta = theta;
+  }
+
+  /**
+   * Sets the tolerance of the Newton iterations of a step.
+   * @param tolerance Change of depth in meters, and relative change of discharge
+   */
+  public void setTolerance(double tolerance) {
+    this.tolerance = tolerance;
+  }
+
+  /**
+   * Sets the maximum number of Newton iterations of a step. One iteration gives the classic linearized scheme.
+   * @param maxIterations Iteration cap of a step
+   */
+  public void setMaxIterations(int maxIterations) {
+    this.maxIterations = maxIterations;
+  }
+
+  /**
+   * Sets the inflow hydrograph at the first station.
+   * @param hydrograph Discharge as a function of time
+   */
+  public void setUpstreamDischarge(DoubleUnaryOperator hydrograph) {
+    this.upstreamBoundary = Boundary.DISCHARGE;
+    this.upstreamSeries = hydrograph;
+  }
+
+  /**
+   * Sets the stage hydrograph at the first station.
+   * @param hydrograph Water elevation as a function of time
+   */
+  public void setUpstreamStage(DoubleUnaryOperator hydrograph) {
+    this.upstreamBoundary = Boundary.STAGE;
+    this.upstreamSeries = hydrograph;
+  }
+
+  /**
+   * Sets the stage hydrograph at the last station.
+   * @param hydrograph Water elevation as a function of time
+   */
+  public void setDownstreamStage(DoubleUnaryOperator hydrograph) {
+    this.downstreamBoundary = Boundary.STAGE;
+    this.downstreamSeries = hydrograph;
+  }
+
+  /**
+   * Sets the outflow hydrograph at the last station.
+   * @param hydrograph Discharge as a function of time
+   */
+  public void setDownstreamDischarge(DoubleUnaryOperator hydrograph) {
+    this.downstreamBoundary = Boundary.DISCHARGE;
+    this.downstreamSeries = hydrograph;
+  }
+
+  /**
+   * Sets a free outflow at the last station, at the normal depth of the given friction slope.
+   * @param frictionSlope Friction slope of the outflow, usually the bed slope downstream
+   */
+  public void setDownstreamNormalDepth(double frictionSlope) {
+    if (frictionSlope <= 0) {
+      throw new IllegalArgumentException("The friction slope must be greater than zero.");
+    }
+    this.downstreamBoundary = Boundary.NORMAL_DEPTH;
+    this.downstreamSeries = null;
+    this.downstreamSlope = frictionSlope;
+  }
+
+  /**
+   * Sets the state of every station and resets the time to zero.
+   * @param waterElevation Water elevation of every station
+   * @param discharge Discharge of every station
+   */
+  public void setInitialState(double[] waterElevation, double[] discharge) {
+    if (waterElevation.length != size || discharge.length != size) {
+      throw new IllegalArgumentException("The state must have a value for every station.");
+    }
+    for (int i = 0; i < size; i++) {
+      this.depth[i] = waterElevation[i] - invertElevation[i];
+      this.discharge[i] = discharge[i];
+    }
+    this.time = 0;
+  }
+
+  /**
+   * Starts from the steady gradually varied profile of a discharge, computed by the standard step
+   * method upstream from the downstream water elevation, and resets the time to zero.
+   * @param discharge Steady discharge
+   * @param downstreamElevation Water elevation at the last station
+   * @return Boolean True if the profile is computed, else see {@code getErrMessage}
+   */
+  public boolean initializeSteady(final double discharge, double downstreamElevation) {
+    WaterSurfaceProfile profile = new WaterSurfaceProfile(discharge);
+    Iterator<ProfileStation> upstream = new Iterator<ProfileStation>() {
+      private int next = size - 1;
+
+      @Override
+      public boolean hasNext() {
+        return next >= 0;
+      }
+
+      @Override
+      public ProfileStation next() {
+        return stations.get(next--);
+      }
+    };
+    boolean successful = profile.standardStep(upstream, downstreamElevation, WaterSurfaceProfile.Direction.UPSTREAM,
+        new ProfileSink() {
+          @Override
+          public void accept(ProfilePoint point) {
+            int i = size - 1 - (int) point.getIndex();
+            depth[i] = point.getWaterDepth();
+            UnsteadyFlow.this.discharge[i] = discharge;
+          }
+        });
+    this.time = 0;
+    this.isCalculationSuccessful = successful;
+    this.errMessage = profile.getErrMessage();
+    return successful;
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  public int getStationCount() {
+    return size;
+  }
+
+  /**
+   * Returns the time reached by the last successful step.
+   * @return Double Time in seconds
+   */
+  public double getTime() {
+    return time;
+  }
+
+  public double getWaterDepth(int station) {
+    return depth[station];
+  }
+
+  public double getWaterElevation(int station) {
+    return invertElevation[station] + depth[station];
+  }
+
+  public double getDischarge(int station) {
+    return discharge[station];
+  }
+
+  /**
+   * Returns the number of Newton iterations of the last step.
+   * @return Integer Iterations
+   */
+  public int getIterations() {
+    return iterations;
+  }
+
+  public boolean isCalculationSuccessful() {
+    return isCalculationSuccessful;
+  }
+
+  public String getErrMessage() {
+    return errMessage;
+  }
+
+  /* **********************************
+   * Methods
+   ***********************************/
+
+  /**
+   * Advances the flow by a number of equal time steps, stopping at the first failed step.
+   * @param timeStep Time step in seconds
+   * @param steps Number of steps
+   * @return Boolean True if every step is solved
+   */
+  public boolean run(double timeStep, long steps) {
+    for (long k = 0; k < steps; k++) {
+      if (!step(timeStep)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Advances the flow by one time step. A failed step leaves the state unchanged.
+   * @param timeStep Time step in seconds
+   * @return Boolean True if the step is solved, else see {@code getErrMessage}
+   */
+  public boolean step(double timeStep) {
+    if (this.upstreamBoundary == null || this.downstreamBoundary == null) {
+      return fail("Both boundary conditions must be set.");
+    }
+    if (!(timeStep > 0)) {
+      return fail("The time step must be greater than zero.");
+    }
+    System.arraycopy(depth, 0, oldDepth, 0, size);
+    System.arraycopy(discharge, 0, oldDischarge, 0, size);
+    this.errMessage = null;
+
+    double newTime = this.time + timeStep;
+    double upstreamValue = this.upstreamSeries.applyAsDouble(newTime);
+    double downstreamValue = (this.downstreamSeries == null) ? 0 : this.downstreamSeries.applyAsDouble(newTime);
+
+    // Terms of the old time level, from the state at the start of the step
+    if (!evaluate()) {
+      return restore();
+    }
+    double dischargeScale = Double.MIN_NORMAL;
+    for (int i = 0; i < size; i++) {
+      dischargeScale = Math.max(dischargeScale, Math.abs(discharge[i]));
+    }
+    double storage = 1 / (2 * timeStep);
+    for (int j = 0; j < size - 1; j++) {
+      double inverseLength = this.inverseLength[j];
+      oldContinuity[j] = -(area[j] + area[j + 1]) * storage
+          + (1 - theta) * (discharge[j + 1] - discharge[j]) * inverseLength;
+      oldMomentum[j] = -(discharge[j] + discharge[j + 1]) * storage + (1 - theta) * momentumFlux(j, inverseLength);
+    }
+
+    for (int iteration = 1; iteration <= this.maxIterations; iteration++) {
+      if (iteration > 1 && !evaluate()) {
+        return restore();
+      }
+      try {
+        assemble(timeStep, upstreamValue, downstreamValue);
+      } catch (ConvergenceException e) {
+        this.errMessage = e.getMessage();
+        return restore();
+      }
+
+      double maxDepthChange = 0;
+      double maxDischargeChange = 0;
+      for (int i = 0; i < size; i++) {
+        double dy = depthChange[i];
+        double dq = dischargeChange[i];
+        depth[i] += dy;
+        discharge[i] += dq;
+        maxDepthChange = Math.max(maxDepthChange, Math.abs(dy));
+        maxDischargeChange = Math.max(maxDischargeChange, Math.abs(dq));
+      }
+
+      if (maxDepthChange <= this.tolerance && maxDischargeChange <= this.tolerance * dischargeScale) {
+        for (int i = 0; i < size; i++) {
+          if (!(depth[i] > 0) || depth[i] >= section[i].getMaxDepth()) {
+            this.errMessage = "The water surface leaves the section at chainage " + chainage[i] + ".";
+            return restore();
+          }
+        }
+        this.time = newTime;
+        this.iterations = iteration;
+        this.isCalculationSuccessful = true;
+        this.errMessage = null;
+        return true;
+      }
+    }
+    this.errMessage = "Maximum number of iterations reached.";
+    return restore();
+  }
+
+  /**
+   * Evaluates the hydraulic elements, the convective flux and the friction slope of every station at the
+   * iterate, with their rates of change with the depth and the discharge.
+   * @return Boolean False if a station is dry or full, with the error set
+   */
+  private boolean evaluate() {
+    for (int i = 0; i < size; i++) {
+      double y = depth[i];
+      double q = discharge[i];
+      CrossSection s = section[i];
+      if (!(y > 0)) {
+        this.errMessage = "The channel runs dry at chainage " + chainage[i] + ".";
+        return false;
+      }
+      if (y >= s.getMaxDepth()) {
+        this.errMessage = "The water surface reaches the top of the section at chainage " + chainage[i] + ".";
+        return false;
+      }
+      double a = s.area(y);
+      double t = s.topWidth(y);
+      double p = s.perimeter(y);
+      double inverseArea = 1 / a;
+      double inversePerimeter = 1 / p;
+      double r = a * inversePerimeter;
+      double k = a * Math.cbrt(r * r) * inverseRoughness[i];
+      // K = A^(5/3) P^(-2/3) / n, so K' / K = 5T / 3A - 2P' / 3P
+      double kRatio = (5.0 / 3.0) * t * inverseArea - (2.0 / 3.0) * s.perimeterRate(y) * inversePerimeter;
+      double inverseK2 = 1 / (k * k);
+      double sf = q * Math.abs(q) * inverseK2;
+
+      area[i] = a;
+      topWidth[i] = t;
+      conveyance[i] = k;
+      conveyanceRate[i] = k * kRatio;
+      flux[i] = q * q * inverseArea;
+      fluxRate[i] = -flux[i] * t * inverseArea;
+      fluxDischargeRate[i] = 2 * q * inverseArea;
+      friction[i] = sf;
+      frictionRate[i] = -2 * sf * kRatio;
+      frictionDischargeRate[i] = 2 * Math.abs(q) * inverseK2;
+    }
+    return true;
+  }
+
+  /**
+   * Convective, pressure and friction terms of the momentum equation of a box at the iterate.
+   */
+  private double momentumFlux(int j, double inverseLength) {
+    int l = j, r = j + 1;
+    double averageArea = 0.5 * (area[l] + area[r]);
+    double slope = (invertElevation[r] + depth[r] - invertElevation[l] - depth[l]) * inverseLength
+        + 0.5 * (friction[l] + friction[r]);
+    return (flux[r] - flux[l]) * inverseLength + Hydraulics.GRAVITY_METRIC * averageArea * slope;
+  }
+
+  /**
+   * Assembles the linearized equations of the step and solves them for the Newton corrections.
+   * Each box has its continuity and momentum equations in the depth and discharge corrections of its two stations.
+   * @throws ConvergenceException If the linear system is singular
+   */
+  private void assemble(double timeStep, double upstreamValue, double downstreamValue) throws ConvergenceException {
+    final double g = Hydraulics.GRAVITY_METRIC;
+
+    // Upstream boundary
+    if (upstreamBoundary == Boundary.DISCHARGE) {
+      sweep.setUpstream(0, 1, upstreamValue - discharge[0]);
+    } else {
+      sweep.setUpstream(1, 0, upstreamValue - (invertElevation[0] + depth[0]));
+    }
+
+    double storage = 1 / (2 * timeStep);
+    for (int j = 0; j < size - 1; j++) {
+      int l = j, r = j + 1;
+      double inverseLength = this.inverseLength[j];
+      double weight = theta * inverseLength;
+
+      // Continuity
+      sweep.setFirst(j, topWidth[l] * storage, -weight, topWidth[r] * storage, weight,
+          -((area[l] + area[r]) * storage + weight * (discharge[r] - discharge[l]) + oldContinuity[j]));
+
+      // Momentum
+      double averageArea = 0.5 * (area[l] + area[r]);
+      double pressure = g * averageArea;
+      double slope = (invertElevation[r] + depth[r] - invertElevation[l] - depth[l]) * inverseLength
+          + 0.5 * (friction[l] + friction[r]);
+      double halfSlope = 0.5 * g * slope;
+      double halfFriction = 0.5 * theta * pressure;
+      sweep.setSecond(j,
+          -weight * fluxRate[l] + theta * (halfSlope * topWidth[l] - pressure * inverseLength)
+              + halfFriction * frictionRate[l],
+          storage - weight * fluxDischargeRate[l] + halfFriction * frictionDischargeRate[l],
+          weight * fluxRate[r] + theta * (halfSlope * topWidth[r] + pressure * inverseLength)
+              + halfFriction * frictionRate[r],
+          storage + weight * fluxDischargeRate[r] + halfFriction * frictionDischargeRate[r],
+          -((discharge[l] + discharge[r]) * storage
+              + theta * ((flux[r] - flux[l]) * inverseLength + pressure * slope) + oldMomentum[j]));
+    }
+
+    // Downstream boundary
+    int last = size - 1;
+    if (downstreamBoundary == Boundary.DISCHARGE) {
+      sweep.solve(0, 1, downstreamValue - discharge[last], depthChange, dischargeChange);
+    } else if (downstreamBoundary == Boundary.STAGE) {
+      sweep.solve(1, 0, downstreamValue - (invertElevation[last] + depth[last]), depthChange, dischargeChange);
+    } else {
+      double sqrtS = Math.sqrt(downstreamSlope);
+      sweep.solve(-conveyanceRate[last] * sqrtS, 1, conveyance[last] * sqrtS - discharge[last],
+          depthChange, dischargeChange);
+    }
+  }
+
+  private boolean fail(String message) {
+    this.isCalculationSuccessful = false;
+    this.errMessage = message;
+    return false;
+  }
+
+  /**
+   * Returns to the state at the start of the failed step. The error is already set.
+   */
+  private boolean restore() {
+    System.arraycopy(oldDepth, 0, depth, 0, size);
+    System.arraycopy(oldDischarge, 0, discharge, 0, size);
+    this.isCalculationSuccessful = false;
+    return false;
+  }
+}
@@ -0,0 +1,472 @@
+package com.alexiusacademia.hydraulics;
+
+import java.util.Iterator;
+
+/**
+ * Gradually varied flow profile along a reach, by the standard step or the direct step method.
+ *
+ * The standard step method balances the energy equation between consecutive stations,
+ * H(up) = H(down) + L Sf + C |hv(down) - hv(up)|, with the friction slope of the average conveyance
+ * Sf = (2Q / (K1 + K2))^2 and an eddy loss coefficient C for contractions and expansions.
+ * Subcritical profiles march upstream from a downstream control and supercritical profiles march
+ * downstream from an upstream control. Where the regime has no solution the station is set to its
+ * critical depth and flagged, as a hydraulic jump or a drop lies nearby.
+ *
+ * The direct step method steps the depth of a prismatic reach and computes the distance of each step.
+ *
+ * Stations are read one at a time and every computed station is streamed to a {@code ProfileSink}
+ * through one reused {@code ProfilePoint}, so a reach of any length runs in constant memory.
+ * An instance runs one profile at a time; use one instance per thread. Values are in metric units.
+ */
+public final class WaterSurfaceProfile {
+
+  /**
+   * Marching direction of the standard step method.
+   */
+  public enum Direction {
+    // Subcritical flow, from a downstream control
+    UPSTREAM,
+    // Supercritical flow, from an upstream control
+    DOWNSTREAM
+  }
+
+  /* **********************************
+   * Constants
+   ***********************************/
+  // Lowest depth searched for a supercritical solution, relative to the critical depth
+  private static final double MIN_DEPTH_RATIO = 1e-6;
+
+  /* **********************************
+   * Properties
+   ***********************************/
+  private final double discharge;
+  private double contractionCoefficient;
+  private double expansionCoefficient;
+  private double tolerance = RootFinder.DEFAULT_TOLERANCE;
+  private int maxIterations = RootFinder.DEFAULT_MAX_ITERATIONS;
+  private CancellationToken cancellationToken;
+
+  // Outcome of the last run
+  private boolean isCalculationSuccessful;
+  private String errMessage;
+  private long stationCount;
+  private long criticalCount;
+  private int maxStepIterations;
+
+  /**
+   * Creates a {@code WaterSurfaceProfile} of the given discharge, without eddy losses.
+   * @param discharge Discharge along the reach
+   */
+  public WaterSurfaceProfile(double discharge) {
+    this.discharge = discharge;
+  }
+
+  /* **********************************
+   * Setters
+   ***********************************/
+
+  /**
+   * Sets the eddy loss coefficients applied to the change of velocity head between stations.
+   * Typical values are 0.1 and 0.3 for gradual transitions.
+   * @param contraction Coefficient where the velocity increases downstream
+   * @param expansion Coefficient where the velocity decreases downstream
+   */
+  public void setEddyLossCoefficients(double contraction, double expansion) {
+    this.contractionCoefficient = contraction;
+    this.expansionCoefficient = expansion;
+  }
+
+  /**
+   * Sets the relative tolerance on the depth of every step.
+   * @param tolerance Relative tolerance, e.g. 1e-12
+   */
+  public void setTolerance(double tolerance) {
+    this.tolerance = tolerance;
+  }
+
+  /**
+   * Sets the maximum number of iterations of a single step.
+   * @param maxIterations Iteration cap of a step
+   */
+  public void setMaxIterations(int maxIterations) {
+    this.maxIterations = maxIterations;
+  }
+
+  /**
+   * Sets the token that stops a run once it is cancelled or past its deadline, failing it with the reason.
+   * @param token Cancellation token, or null to run every profile to completion
+   */
+  public void setCancellationToken(CancellationToken token) {
+    this.cancellationToken = token;
+  }
+
+  /* **********************************
+   * Getters
+   ***********************************/
+
+  public double getDischarge() {
+    return discharge;
+  }
+
+  public boolean isCalculationSuccessful() {
+    return isCalculationSuccessful;
+  }
+
+  public String getErrMessage() {
+    return errMessage;
+  }
+
+  /**
+   * Returns the number of stations of the last run passed to the sink, the control included.
+   * @return Long Number of stations
+   */
+  public long getStationCount() {
+    return stationCount;
+  }
+
+  /**
+   * Returns the number of stations of the last run set to their critical depth.
+   * @return Long Number of critical stations
+   */
+  public long getCriticalCount() {
+    return criticalCount;
+  }
+
+  /**
+   * Returns the largest number of evaluations of the energy equation spent on a station of the last run.
+   * @return Integer Evaluations
+   */
+  public int getMaxStepIterations() {
+    return maxStepIterations;
+  }
+
+  /* **********************************
+   * Methods
+   ***********************************/
+
+  /**
+   * Computes the profile by the standard step method.
+   * @param stations Stations in marching order, the control first
+   * @param controlElevation Water elevation at the control
+   * @param direction Marching direction
+   * @param sink Receives every station, the control included
+   * @return Boolean True if the whole reach is computed
+   */
+  public boolean standardStep(Iterable<ProfileStation> stations, double controlElevation, Direction direction,
+                              ProfileSink sink) {
+    return standardStep(stations.iterator(), controlElevation, direction, sink);
+  }
+
+  /**
+   * Computes the profile by the standard step method, reading the stations as it marches.
+   * @param stations Stations in marching order, the control first
+   * @param controlElevation Water elevation at the control
+   * @param direction Marching direction
+   * @param sink Receives every station, the control included
+   * @return Boolean True if the whole reach is computed
+   */
+  public boolean standardStep(Iterator<ProfileStation> stations, double controlElevation, Direction direction,
+                              ProfileSink sink) {
+    reset();
+    if (this.discharge <= 0) {
+      return fail("Discharge must be greater than zero.");
+    }
+    if (!stations.hasNext()) {
+      return fail("The reach must have at least one station.");
+    }
+
+    RootFinder finder = new RootFinder(this.tolerance, this.maxIterations, this.cancellationToken);
+    Step step = new Step(direction == Direction.UPSTREAM);
+    ProfilePoint point = new ProfilePoint();
+
+    // Control
+    ProfileStation station = stations.next();
+    CrossSection section = station.getSection();
+    double depth = controlElevation - station.getInvertElevation();
+    if (depth <= 0) {
+      return fail("The control water elevation must be above the invert.");
+    }
+    if (depth > section.getMaxDepth()) {
+      return fail("The control water elevation is above the section at chainage " + station.getChainage() + ".");
+    }
+    step.station(station, 0);
+    step.value(depth);
+    publish(point, step, station, depth, criticalDepth(section, finder), ProfilePoint.Status.CONTROL, 0, 0, sink);
+    step.advance();
+
+    double chainage = station.getChainage();
+    while (stations.hasNext()) {
+      String interruption = finder.interruption();
+      if (interruption != null) {
+        return fail(interruption);
+      }
+      station = stations.next();
+      section = station.getSection();
+      double length = station.getChainage() - chainage;
+      if ((direction == Direction.UPSTREAM) ? length >= 0 : length <= 0) {
+        return fail("Stations must be ordered " + direction.name().toLowerCase() + " from the control, at chainage "
+                + station.getChainage() + ".");
+      }
+      chainage = station.getChainage();
+      step.station(station, Math.abs(length));
+
+      double criticalDepth = criticalDepth(section, finder);
+      if (Double.isNaN(criticalDepth)) {
+        return fail("The discharge overtops the section at chainage " + chainage + ".");
+      }
+
+      ProfilePoint.Status status;
+      try {
+        double fc = step.value(criticalDepth);
+        if (fc >= 0) {
+          // No solution in the regime of the march
+          depth = criticalDepth;
+          status = ProfilePoint.Status.CRITICAL;
+        } else if (direction == Direction.UPSTREAM) {
+          double upper = section.getMaxDepth();
+          if (Double.isInfinite(upper)) {
+            upper = finder.expandUpper(step, criticalDepth, Math.max(point.waterDepth, 2 * criticalDepth));
+          } else if (step.value(upper) < 0) {
+            return fail("The water surface overtops the section at chainage " + chainage + ".");
+          }
+          depth = finder.brent(step, criticalDepth, upper);
+          status = ProfilePoint.Status.CONVERGED;
+        } else {
+          depth = finder.brent(step, MIN_DEPTH_RATIO * criticalDepth, criticalDepth);
+          status = ProfilePoint.Status.CONVERGED;
+        }
+      } catch (ConvergenceException e) {
+        return fail(e.getMessage() + " No water surface found at chainage " + chainage + ".");
+      }
+
+      int iterations = step.evaluations;
+      double residual = Math.abs(step.value(depth));
+      publish(point, step, station, depth, criticalDepth, status, iterations, residual, sink);
+      step.advance();
+    }
+
+    this.isCalculationSuccessful = true;
+    return true;
+  }
+
+  /**
+   * Computes the profile of a prismatic reach by the direct step method.
+   * The depth is stepped evenly from the control to the end depth, and the distance of each step is
+   * (E2 - E1) / (S0 - Sf), positive downstream. The depth range must not cross the normal or the critical depth.
+   * @param control Station of the control, its section shared by the whole reach
+   * @param bedSlope Bed slope of the reach
+   * @param controlDepth Depth of water at the control
+   * @param endDepth Depth of water at the far end of the profile
+   * @param steps Number of depth steps
+   * @param sink Receives every station, the control included
+   * @return Boolean True if the whole profile is computed
+   */
+  public boolean directStep(ProfileStation control, double bedSlope, double controlDepth, double endDepth, int steps,
+                            ProfileSink sink) {
+    reset();
+    if (this.discharge <= 0) {
+      return fail("Discharge must be greater than zero.");
+    }
+    if (steps < 1) {
+      return fail("The profile must have at least one step.");
+    }
+    CrossSection section = control.getSection();
+    if (controlDepth <= 0 || endDepth <= 0) {
+      return fail("Depths must be greater than zero.");
+    }
+    if (Math.max(controlDepth, endDepth) > section.getMaxDepth()) {
+      return fail("Depths must not be above the section.");
+    }
+
+    RootFinder finder = new RootFinder(this.tolerance, this.maxIterations, this.cancellationToken);
+    double criticalDepth = criticalDepth(section, finder);
+    if (crosses(controlDepth, endDepth, criticalDepth)) {
+      return fail("The depth range must not cross the critical depth.");
+    }
+    if (bedSlope > 0) {
+      double normalDepth;
+      try {
+        normalDepth = section.normalDepth(this.discharge, bedSlope, control.getManningRoughness(), finder);
+      } catch (ConvergenceException e) {
+        normalDepth = Double.NaN;
+      }
+      if (crosses(controlDepth, endDepth, normalDepth) || controlDepth == normalDepth) {
+        return fail("The depth range must not cross the normal depth.");
+      }
+    }
+
+    Step step = new Step(true);
+    ProfilePoint point = new ProfilePoint();
+    step.station(control, 0);
+    step.value(controlDepth);
+    publish(point, step, control, controlDepth, criticalDepth, ProfilePoint.Status.CONTROL, 0, 0, sink);
+
+    double chainage = control.getChainage();
+    double invert = control.getInvertElevation();
+    double energy = controlDepth + step.velocityHead;
+    double conveyance = step.conveyance;
+    for (int i = 1; i <= steps; i++) {
+      String interruption = finder.interruption();
+      if (interruption != null) {
+        return fail(interruption);
+      }
+      double depth = controlDepth + (endDepth - controlDepth) * i / steps;
+      step.value(depth);
+      double frictionSlope = Math.pow(2 * this.discharge / (conveyance + step.conveyance), 2);
+      double nextEnergy = depth + step.velocityHead;
+      double dx = (nextEnergy - energy) / (bedSlope - frictionSlope);
+      if (Double.isNaN(dx) || Double.isInfinite(dx)) {
+        return fail("The depth step " + i + " has no finite length.");
+      }
+      chainage += dx;
+      invert -= bedSlope * dx;
+      energy = nextEnergy;
+      conveyance = step.conveyance;
+
+      step.chainage = chainage;
+      step.invertElevation = invert;
+      publish(point, step, null, depth, criticalDepth, ProfilePoint.Status.CONVERGED, 0, 0, sink);
+    }
+
+    this.isCalculationSuccessful = true;
+    return true;
+  }
+
+  private void reset() {
+    this.isCalculationSuccessful = false;
+    this.errMessage = null;
+    this.stationCount = 0;
+    this.criticalCount = 0;
+    this.maxStepIterations = 0;
+  }
+
+  private boolean fail(String message) {
+    this.isCalculationSuccessful = false;
+    this.errMessage = message;
+    return false;
+  }
+
+  /**
+   * Critical depth of a section, {@code NaN} if it is above the section.
+   */
+  private double criticalDepth(CrossSection section, RootFinder finder) {
+    try {
+      return section.criticalDepth(this.discharge, finder);
+    } catch (ConvergenceException e) {
+      return Double.NaN;
+    }
+  }
+
+  /**
+   * Checks if a depth lies strictly between two others.
+   */
+  private static boolean crosses(double from, double to, double depth) {
+    return depth > Math.min(from, to) && depth < Math.max(from, to);
+  }
+
+  /**
+   * Fills the point from the last evaluation of the step and passes it to the sink.
+   * A null station keeps the chainage and invert already set on the step.
+   */
+  private void publish(ProfilePoint point, Step step, ProfileStation station, double depth, double criticalDepth,
+                       ProfilePoint.Status status, int iterations, double residual, ProfileSink sink) {
+    if (station != null) {
+      step.chainage = station.getChainage();
+      step.invertElevation = station.getInvertElevation();
+    }
+    point.index = this.stationCount;
+    point.chainage = step.chainage;
+    point.invertElevation = step.invertElevation;
+    point.waterDepth = depth;
+    point.waterElevation = step.invertElevation + depth;
+    point.criticalDepth = criticalDepth;
+    point.wettedArea = step.area;
+    point.topWidth = step.topWidth;
+    point.averageVelocity = this.discharge / step.area;
+    point.froudeNumber = point.averageVelocity / Math.sqrt(Hydraulics.GRAVITY_METRIC * step.area / step.topWidth);
+    point.energyElevation = point.waterElevation + step.velocityHead;
+    point.frictionSlope = Math.pow(this.discharge / step.conveyance, 2);
+    point.status = status;
+    point.iterations = iterations;
+    point.residual = residual;
+
+    this.stationCount++;
+    if (status == ProfilePoint.Status.CRITICAL) {
+      this.criticalCount++;
+    }
+    this.maxStepIterations = Math.max(this.maxStepIterations, iterations);
+    sink.accept(point);
+  }
+
+  /**
+   * Energy balance of one step as a function of the depth at the unknown station.
+   * Positive when the energy at the unknown station exceeds what the losses require.
+   */
+  private final class Step implements RootFinder.Equation {
+    // +1 when the unknown station is upstream of the known one
+    private final double sign;
+
+    // Known station
+    private double knownEnergy;
+    private double knownConveyance;
+    private double knownVelocityHead;
+
+    // Unknown station
+    private CrossSection section;
+    private double manningRoughness;
+    private double length;
+    double chainage;
+    double invertElevation;
+
+    // Elements at the last evaluated depth
+    double area;
+    double topWidth;
+    double conveyance;
+    double velocityHead;
+    double energy;
+    int evaluations;
+
+    Step(boolean upstream) {
+      this.sign = upstream ? 1 : -1;
+    }
+
+    /**
+     * Moves to a new unknown station.
+     */
+    void station(ProfileStation station, double length) {
+      this.section = station.getSection();
+      this.manningRoughness = station.getManningRoughness();
+      this.invertElevation = station.getInvertElevation();
+      this.chainage = station.getChainage();
+      this.length = length;
+      this.evaluations = 0;
+    }
+
+    /**
+     * Makes the last evaluated station the known station of the next step.
+     */
+    void advance() {
+      this.knownEnergy = this.energy;
+      this.knownConveyance = this.conveyance;
+      this.knownVelocityHead = this.velocityHead;
+    }
+
+    @Override
+    public double value(double depth) {
+      this.evaluations++;
+      this.area = section.area(depth);
+      this.topWidth = section.topWidth(depth);
+      this.conveyance = section.conveyance(depth, manningRoughness);
+      this.velocityHead = Math.pow(discharge / area, 2) / (2 * Hydraulics.GRAVITY_METRIC);
+      this.energy = invertElevation + depth + velocityHead;
+
+      double frictionLoss = length * Math.pow(2 * discharge / (knownConveyance + conveyance), 2);
+      double downstreamHead = (sign > 0) ? knownVelocityHead : velocityHead;
+      double upstreamHead = (sign > 0) ? velocityHead : knownVelocityHead;
+      double coefficient = (downstreamHead > upstreamHead) ? contractionCoefficient : expansionCoefficient;
+      double eddyLoss = coefficient * Math.abs(downstreamHead - upstreamHead);
+
+      return energy - knownEnergy - sign * (frictionLoss + eddyLoss);
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package com.alexiusacademia.tester;
+
+import com.alexiusacademia.hydraulics.CrossSection;
+import com.alexiusacademia.hydraulics.IrregularSectionChannel;
+import com.alexiusacademia.hydraulics.SectionGeometry;
+
+/**
+ * Checks the lowest critical stage of irregular sections against closed forms.
+ */
+public class CriticalStageCheck {
+  private static final double GRAVITY = 9.81;
+  private static final double TOLERANCE = 1e-6;
+
+  public static void main(String[] args) {
+    // V channel 4 m wide at 2 m, with flat berms at 2 m. Below the berms A = z^2 and T = 2 z,
+    // so A^3 / T = z^5 / 2 reaches Q^2 / g = 10 at z = 20^(1/5), before the berms widen the section.
+    SectionGeometry berms = new SectionGeometry(new double[] {0, 10, 30, 32, 34, 54, 64},
+        new double[] {5, 2, 2, 0, 2, 2, 5});
+    double discharge = Math.sqrt(10 * GRAVITY);
+    check("Berms", berms, discharge, Math.pow(20, 0.2));
+
+    // Same V channel without berms
+    SectionGeometry v = new SectionGeometry(new double[] {0, 5, 10}, new double[] {5, 0, 5});
+    check("V channel", v, discharge, Math.pow(20, 0.2));
+
+    // Rectangle 4 m wide, y = (q^2 / g)^(1/3)
+    SectionGeometry rectangle = new SectionGeometry(new double[] {0, 0, 4, 4}, new double[] {3, 0, 0, 3});
+    check("Rectangle", rectangle, 6, Math.cbrt(Math.pow(6 / 4.0, 2) / GRAVITY));
+
+    // Critical depth above the lowest bank
+    double depth = CrossSection.irregular(berms).criticalDepth(1000);
+    printLine("Above the banks: " + depth);
+    if (!Double.isNaN(depth)) {
+      throw new IllegalStateException("Critical depth above the banks should be NaN.");
+    }
+    printLine("All checks passed.");
+  }
+
+  private static void check(String name, SectionGeometry geometry, double discharge, double expected) {
+    double depth = CrossSection.irregular(geometry).criticalDepth(discharge);
+    printLine(name + ": critical depth " + depth + ", expected " + expected);
+    compare(name + " section", depth, expected);
+
+    IrregularSectionChannel channel = new IrregularSectionChannel(
+        IrregularSectionChannel.Unknown.WATER_ELEVATION, geometry);
+    channel.setDischarge(discharge);
+    channel.setBedSlope(0.001);
+    channel.setManningRoughness(0.03);
+    if (!channel.analyze()) {
+      throw new IllegalStateException(name + ": " + channel.getErrMessage());
+    }
+    compare(name + " channel", channel.getCriticalWaterElevation() - geometry.getLowestElevation(), expected);
+  }
+
+  private static void compare(String name, double value, double expected) {
+    if (!(Math.abs(value - expected) <= TOLERANCE * expected)) {
+      throw new IllegalStateException(name + ": critical depth " + value + ", expected " + expected + ".");
+    }
+  }
+
+  private static void printLine(String s) {
+    System.out.println(s);
+  }
+}
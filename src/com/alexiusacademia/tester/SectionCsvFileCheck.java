@@ -0,0 +1,185 @@
+package com.alexiusacademia.tester;
+
+import com.alexiusacademia.hydraulics.SectionCsvFile;
+import com.alexiusacademia.hydraulics.SectionGeometry;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Reads section CSV files and compares every section with the rows written, the numbers parsed by
+ * {@code Double.parseDouble}.
+ */
+public class SectionCsvFileCheck {
+
+  public static void main(String[] args) throws IOException {
+    Path path = Files.createTempFile("irrigflo", ".csv");
+    try {
+      checkLayout(path);
+      checkNumbers(path);
+      checkNotContiguous(path);
+    } finally {
+      Files.delete(path);
+    }
+    printLine("All checks passed.");
+  }
+
+  /**
+   * Header row, CRLF line ends, comments, blank lines, quoted IDs, spaces around the fields, further fields
+   * and a last line without a line end.
+   */
+  private static void checkLayout(Path path) throws IOException {
+    Expected expected = new Expected();
+    StringBuilder csv = new StringBuilder();
+    csv.append("section,station,elevation\r\n");
+    csv.append("# Surveyed 2019\r\n");
+    csv.append("\r\n");
+    csv.append("\"XS 1, left\",0.0,102.35\r\n");
+    expected.add("XS 1, left", "0.0", "102.35");
+    csv.append("\"XS 1, left\", 4.5 ,\t100.10,firm\r\n");
+    expected.add("XS 1, left", "4.5", "100.10");
+    csv.append("  # Thalweg\r\n");
+    csv.append("\"XS 1, left\",9,99.8\r\n");
+    expected.add("XS 1, left", "9", "99.8");
+    csv.append("XS-2 ,-1.5,+101\n");
+    expected.add("XS-2", "-1.5", "+101");
+    csv.append("\tXS-2,.5,100.\n");
+    expected.add("XS-2", ".5", "100.");
+    csv.append("XS-2,2.5e1,1.0005E2\n");
+    expected.add("XS-2", "2.5e1", "1.0005E2");
+    csv.append("\"XS-3\",0,100\r\n");
+    expected.add("XS-3", "0", "100");
+    csv.append("XS-3,3,98.123456789012345678");
+    expected.add("XS-3", "3", "98.123456789012345678");
+    write(path, csv);
+
+    SectionCsvFile file = SectionCsvFile.open(path);
+    printLine("Layout: " + file.getSectionCount() + " sections");
+    expected.compare(file);
+  }
+
+  /**
+   * Numbers of every form of the parser, from short decimals to more digits than a double holds.
+   */
+  private static void checkNumbers(Path path) throws IOException {
+    Random random = new Random(20190601L);
+    Expected expected = new Expected();
+    StringBuilder csv = new StringBuilder();
+    for (int section = 0; section < 50; section++) {
+      String id = "XS-" + section;
+      for (int row = 0; row < 200; row++) {
+        String station = number(random);
+        String elevation = number(random);
+        csv.append(id).append(',').append(station).append(',').append(elevation).append('\n');
+        expected.add(id, station, elevation);
+      }
+    }
+    write(path, csv);
+
+    SectionCsvFile file = SectionCsvFile.open(path);
+    printLine("Numbers: " + file.getSectionCount() + " sections of " + file.getPointCount(0) + " rows");
+    expected.compare(file);
+  }
+
+  private static void checkNotContiguous(Path path) throws IOException {
+    write(path, new StringBuilder("A,0,1\nA,1,0\nB,0,1\nA,2,1\n"));
+    try {
+      SectionCsvFile.open(path);
+    } catch (IOException e) {
+      printLine("Not contiguous: " + e.getMessage());
+      return;
+    }
+    throw new IllegalStateException("A section with rows that are not contiguous was accepted.");
+  }
+
+  /**
+   * Returns a random number in one of the forms of a CSV file.
+   */
+  private static String number(Random random) {
+    double value = (random.nextDouble() - 0.2) * Math.pow(10, random.nextInt(7) - 2);
+    switch (random.nextInt(6)) {
+      case 0:
+        return String.format(Locale.ROOT, "%.2f", value);
+      case 1:
+        return String.format(Locale.ROOT, "%.6f", value);
+      case 2:
+        // Shortest representation, usually more than 15 digits
+        return Double.toString(value);
+      case 3:
+        return String.format(Locale.ROOT, "%.3e", value);
+      case 4:
+        // More digits than a double holds, or a decimal exponent beyond the exact powers of ten
+        return String.format(Locale.ROOT, "%.20f", value) + "e" + (random.nextInt(61) - 30);
+      default:
+        return Integer.toString((int) value);
+    }
+  }
+
+  private static void write(Path path, StringBuilder csv) throws IOException {
+    Files.write(path, csv.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void printLine(String s) {
+    System.out.println(s);
+  }
+
+  /**
+   * Sections in the order of the file, with their coordinates parsed by {@code Double.parseDouble}.
+   */
+  private static final class Expected {
+    private final List<String> ids = new ArrayList<>();
+    private final List<List<Double>> stations = new ArrayList<>();
+    private final List<List<Double>> elevations = new ArrayList<>();
+
+    void add(String id, String station, String elevation) {
+      if (ids.isEmpty() || !ids.get(ids.size() - 1).equals(id)) {
+        ids.add(id);
+        stations.add(new ArrayList<Double>());
+        elevations.add(new ArrayList<Double>());
+      }
+      stations.get(ids.size() - 1).add(Double.parseDouble(station));
+      elevations.get(ids.size() - 1).add(Double.parseDouble(elevation));
+    }
+
+    void compare(SectionCsvFile file) {
+      if (file.getSectionCount() != ids.size()) {
+        throw new IllegalStateException(file.getSectionCount() + " sections, expected " + ids.size() + ".");
+      }
+      for (int k = 0; k < ids.size(); k++) {
+        String id = ids.get(k);
+        if (!file.getSectionId(k).equals(id)) {
+          throw new IllegalStateException("Section " + k + " has ID " + file.getSectionId(k) + ", expected " + id + ".");
+        }
+        if (file.indexOf(id) != k) {
+          throw new IllegalStateException("Index of " + id + " is " + file.indexOf(id) + ", expected " + k + ".");
+        }
+        compare(id, file.getGeometry(k), k);
+        compare(id, file.getGeometry(id), k);
+      }
+      if (file.indexOf("XS") != -1 || file.getGeometry("XS") != null) {
+        throw new IllegalStateException("Missing section XS was found.");
+      }
+    }
+
+    private void compare(String id, SectionGeometry geometry, int section) {
+      List<Double> x = stations.get(section);
+      List<Double> y = elevations.get(section);
+      if (geometry.getPointCount() != x.size()) {
+        throw new IllegalStateException(id + " has " + geometry.getPointCount() + " points, expected " + x.size() + ".");
+      }
+      for (int i = 0; i < x.size(); i++) {
+        if (Double.compare(geometry.getStation(i), x.get(i)) != 0
+            || Double.compare(geometry.getElevation(i), y.get(i)) != 0) {
+          throw new IllegalStateException(id + " point " + i + " is (" + geometry.getStation(i) + ", "
+              + geometry.getElevation(i) + "), expected (" + x.get(i) + ", " + y.get(i) + ").");
+        }
+      }
+    }
+  }
+}
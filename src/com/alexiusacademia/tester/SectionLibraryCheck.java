@@ -0,0 +1,179 @@
+package com.alexiusacademia.tester;
+
+import com.alexiusacademia.hydraulics.SectionGeometry;
+import com.alexiusacademia.hydraulics.SectionLibrary;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Writes section libraries, reopens them and compares every section with what was written.
+ * The library crossing a segment boundary takes a little over 1 GiB of the temporary directory.
+ */
+public class SectionLibraryCheck {
+  // Points of the large sections, a block of 16 MB
+  private static final int LARGE_POINTS = 1000000;
+
+  public static void main(String[] args) throws IOException {
+    Path directory = Files.createTempDirectory("irrigflo");
+    try {
+      checkEmpty(directory.resolve("empty.ifxs"));
+      checkSmall(directory.resolve("small.ifxs"));
+      checkSegments(directory.resolve("segments.ifxs"));
+    } finally {
+      try (Stream<Path> files = Files.list(directory)) {
+        for (Path file : (Iterable<Path>) files::iterator) {
+          Files.delete(file);
+        }
+      }
+      Files.delete(directory);
+    }
+    printLine("All checks passed.");
+  }
+
+  private static void checkEmpty(Path path) throws IOException {
+    new SectionLibrary.Writer(path).close();
+    SectionLibrary library = SectionLibrary.open(path);
+    printLine("Empty library: " + library.getSectionCount() + " sections");
+    if (library.getSectionCount() != 0) {
+      throw new IllegalStateException("Empty library has " + library.getSectionCount() + " sections.");
+    }
+    checkMissing(library, "XS-1");
+    checkMissing(library, "");
+  }
+
+  private static void checkSmall(Path path) throws IOException {
+    List<String> ids = new ArrayList<>();
+    ids.add("XS-1");
+    ids.add("XS-10");
+    ids.add("XS-100");
+    ids.add("R\u00edo Grande 1+200");
+    ids.add("");
+    for (int k = 0; k < 200; k++) {
+      ids.add("Canal " + k);
+    }
+    List<Double> chainages = new ArrayList<>();
+    List<Integer> pointCounts = new ArrayList<>();
+
+    try (SectionLibrary.Writer writer = new SectionLibrary.Writer(path)) {
+      for (int k = 0; k < ids.size(); k++) {
+        int n = 3 + k % 7;
+        if (k % 2 == 0) {
+          writer.add(ids.get(k), geometry(k, n));
+          chainages.add(Double.NaN);
+        } else {
+          writer.add(ids.get(k), 100.0 * k, geometry(k, n));
+          chainages.add(100.0 * k);
+        }
+        pointCounts.add(n);
+      }
+      // A duplicate ID is rejected and leaves the library unchanged
+      boolean rejected = false;
+      try {
+        writer.add("XS-10", geometry(999, 5));
+      } catch (IllegalArgumentException e) {
+        printLine("Duplicate ID: " + e.getMessage());
+        rejected = true;
+      }
+      if (!rejected) {
+        throw new IllegalStateException("Duplicate ID was accepted.");
+      }
+    }
+
+    SectionLibrary library = SectionLibrary.open(path);
+    printLine("Small library: " + library.getSectionCount() + " sections");
+    compare(library, ids, chainages, pointCounts);
+    checkMissing(library, "XS-1000");
+    checkMissing(library, "XS");
+    checkMissing(library, "Canal 200");
+  }
+
+  private static void checkSegments(Path path) throws IOException {
+    // Enough large blocks after the small ones that the last one would cross the first 1 GiB of data
+    int large = (int) ((1L << 30) / (16L * LARGE_POINTS)) + 1;
+    List<String> ids = new ArrayList<>();
+    List<Double> chainages = new ArrayList<>();
+    List<Integer> pointCounts = new ArrayList<>();
+    try (SectionLibrary.Writer writer = new SectionLibrary.Writer(path)) {
+      for (int k = 0; k < 10 + large + 10; k++) {
+        String id = "XS-" + k;
+        int n = (k < 10 || k >= 10 + large) ? 5 : LARGE_POINTS;
+        writer.add(id, 10.0 * k, geometry(k, n));
+        ids.add(id);
+        chainages.add(10.0 * k);
+        pointCounts.add(n);
+      }
+    }
+
+    SectionLibrary library = SectionLibrary.open(path);
+    printLine("Segmented library: " + library.getSectionCount() + " sections, " + Files.size(path) + " bytes");
+    compare(library, ids, chainages, pointCounts);
+  }
+
+  /**
+   * Compares every section of a library with what was written, its geometry read by index and by ID.
+   */
+  private static void compare(SectionLibrary library, List<String> ids, List<Double> chainages,
+      List<Integer> pointCounts) {
+    if (library.getSectionCount() != ids.size()) {
+      throw new IllegalStateException(library.getSectionCount() + " sections, expected " + ids.size() + ".");
+    }
+    for (int k = 0; k < ids.size(); k++) {
+      String id = ids.get(k);
+      if (!library.getSectionId(k).equals(id)) {
+        throw new IllegalStateException("Section " + k + " has ID " + library.getSectionId(k) + ", expected " + id + ".");
+      }
+      if (library.indexOf(id) != k) {
+        throw new IllegalStateException("Index of " + id + " is " + library.indexOf(id) + ", expected " + k + ".");
+      }
+      if (Double.compare(library.getChainage(k), chainages.get(k)) != 0
+          || library.getPointCount(k) != pointCounts.get(k)) {
+        throw new IllegalStateException(id + " has chainage " + library.getChainage(k) + " and "
+            + library.getPointCount(k) + " points, expected " + chainages.get(k) + " and " + pointCounts.get(k) + ".");
+      }
+      SectionGeometry expected = geometry(k, pointCounts.get(k));
+      compare(id, library.getGeometry(k), expected);
+      compare(id, library.getGeometry(id), expected);
+    }
+  }
+
+  private static void compare(String id, SectionGeometry geometry, SectionGeometry expected) {
+    if (geometry.getPointCount() != expected.getPointCount()) {
+      throw new IllegalStateException(id + " has " + geometry.getPointCount() + " points, expected "
+          + expected.getPointCount() + ".");
+    }
+    for (int i = 0; i < expected.getPointCount(); i++) {
+      if (Double.compare(geometry.getStation(i), expected.getStation(i)) != 0
+          || Double.compare(geometry.getElevation(i), expected.getElevation(i)) != 0) {
+        throw new IllegalStateException(id + " differs at point " + i + ".");
+      }
+    }
+  }
+
+  private static void checkMissing(SectionLibrary library, String id) {
+    if (library.indexOf(id) != -1 || library.getGeometry(id) != null) {
+      throw new IllegalStateException("Missing section " + id + " was found.");
+    }
+  }
+
+  /**
+   * Geometry of a section, the same for the same section index and number of points.
+   */
+  private static SectionGeometry geometry(int section, int n) {
+    double[] stations = new double[n];
+    double[] elevations = new double[n];
+    for (int i = 0; i < n; i++) {
+      stations[i] = 0.5 * i;
+      elevations[i] = 100 + section + Math.sin(0.1 * section + 0.01 * i);
+    }
+    return new SectionGeometry(stations, elevations);
+  }
+
+  private static void printLine(String s) {
+    System.out.println(s);
+  }
+}
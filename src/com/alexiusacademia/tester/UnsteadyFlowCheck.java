@@ -0,0 +1,140 @@
+package com.alexiusacademia.tester;
+
+import com.alexiusacademia.hydraulics.CrossSection;
+import com.alexiusacademia.hydraulics.ProfileStation;
+import com.alexiusacademia.hydraulics.UnsteadyFlow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Checks that uniform flow stays steady and that the volume of a reach balances its inflow and outflow
+ * over a flood wave.
+ */
+public class UnsteadyFlowCheck {
+  private static final int STATIONS = 200;
+  private static final double SPACING = 100;
+  private static final double BED_SLOPE = 0.0005;
+  private static final double MANNING_ROUGHNESS = 0.025;
+  private static final double BASE_FLOW = 20;
+  private static final double TIME_STEP = 60;
+
+  // Largest drift of uniform flow, in meters and in m3/s
+  private static final double STEADY_TOLERANCE = 1e-9;
+
+  // Largest volume error over the flood wave, in m3; the reach holds about 1e6 m3 and closes to about 1e-7 m3
+  private static final double VOLUME_TOLERANCE = 1e-6;
+
+  public static void main(String[] args) {
+    CrossSection section = CrossSection.trapezoidal(10, 1.5);
+    List<ProfileStation> stations = new ArrayList<>();
+    for (int i = 0; i < STATIONS; i++) {
+      stations.add(new ProfileStation(i * SPACING, -BED_SLOPE * i * SPACING, section, MANNING_ROUGHNESS));
+    }
+
+    checkSteady(stations, section);
+    checkMassBalance(stations, section, UnsteadyFlow.DEFAULT_THETA);
+    checkMassBalance(stations, section, 1);
+    printLine("All checks passed.");
+  }
+
+  /**
+   * Uniform flow at the normal depth, held by a constant inflow and a normal depth outflow, for a week.
+   */
+  private static void checkSteady(List<ProfileStation> stations, CrossSection section) {
+    double normalDepth = section.normalDepth(BASE_FLOW, BED_SLOPE, MANNING_ROUGHNESS);
+    UnsteadyFlow flow = new UnsteadyFlow(stations);
+    double[] elevation = new double[STATIONS];
+    double[] discharge = new double[STATIONS];
+    for (int i = 0; i < STATIONS; i++) {
+      elevation[i] = stations.get(i).getInvertElevation() + normalDepth;
+      discharge[i] = BASE_FLOW;
+    }
+    flow.setInitialState(elevation, discharge);
+    flow.setUpstreamDischarge(new DoubleUnaryOperator() {
+      @Override
+      public double applyAsDouble(double t) {
+        return BASE_FLOW;
+      }
+    });
+    flow.setDownstreamNormalDepth(BED_SLOPE);
+
+    int steps = (int) (7 * 86400 / TIME_STEP);
+    run(flow, steps);
+    double depthDrift = 0;
+    double dischargeDrift = 0;
+    for (int i = 0; i < STATIONS; i++) {
+      depthDrift = Math.max(depthDrift, Math.abs(flow.getWaterDepth(i) - normalDepth));
+      dischargeDrift = Math.max(dischargeDrift, Math.abs(flow.getDischarge(i) - BASE_FLOW));
+    }
+    printLine("Steady: " + steps + " steps, depth drift " + depthDrift + " m, discharge drift "
+        + dischargeDrift + " m3/s");
+    if (!(depthDrift <= STEADY_TOLERANCE && dischargeDrift <= STEADY_TOLERANCE)) {
+      throw new IllegalStateException("Uniform flow drifted by " + depthDrift + " m and " + dischargeDrift + " m3/s.");
+    }
+  }
+
+  /**
+   * Flood wave from the base flow to three times the base flow over six hours, routed for a day. The change of the
+   * volume of the reach must equal the inflow less the outflow, both weighted in time like the scheme.
+   */
+  private static void checkMassBalance(List<ProfileStation> stations, CrossSection section, double theta) {
+    UnsteadyFlow flow = new UnsteadyFlow(stations);
+    flow.setTheta(theta);
+    double normalDepth = section.normalDepth(BASE_FLOW, BED_SLOPE, MANNING_ROUGHNESS);
+    if (!flow.initializeSteady(BASE_FLOW, stations.get(STATIONS - 1).getInvertElevation() + normalDepth)) {
+      throw new IllegalStateException(flow.getErrMessage());
+    }
+    flow.setUpstreamDischarge(new DoubleUnaryOperator() {
+      @Override
+      public double applyAsDouble(double t) {
+        return (t < 21600) ? BASE_FLOW * (2 - Math.cos(2 * Math.PI * t / 21600)) : BASE_FLOW;
+      }
+    });
+    flow.setDownstreamNormalDepth(BED_SLOPE);
+
+    int last = STATIONS - 1;
+    double initialVolume = volume(flow, stations);
+    double netInflow = 0;
+    double peakOutflow = 0;
+    int steps = (int) (86400 / TIME_STEP);
+    for (int k = 0; k < steps; k++) {
+      double oldNet = flow.getDischarge(0) - flow.getDischarge(last);
+      run(flow, 1);
+      double newNet = flow.getDischarge(0) - flow.getDischarge(last);
+      netInflow += TIME_STEP * (theta * newNet + (1 - theta) * oldNet);
+      peakOutflow = Math.max(peakOutflow, flow.getDischarge(last));
+    }
+    double error = volume(flow, stations) - initialVolume - netInflow;
+    printLine("Mass balance, theta " + theta + ": wave volume " + BASE_FLOW * 21600 + " m3, peak outflow "
+        + peakOutflow + " m3/s, volume error " + error + " m3");
+    if (!(Math.abs(error) <= VOLUME_TOLERANCE)) {
+      throw new IllegalStateException("Volume error of " + error + " m3 over the flood wave.");
+    }
+  }
+
+  /**
+   * Volume of water in the reach, the area of each box averaged between its two stations as in the scheme.
+   */
+  private static double volume(UnsteadyFlow flow, List<ProfileStation> stations) {
+    double volume = 0;
+    for (int i = 0; i < STATIONS - 1; i++) {
+      ProfileStation left = stations.get(i);
+      ProfileStation right = stations.get(i + 1);
+      double area = left.getSection().area(flow.getWaterDepth(i)) + right.getSection().area(flow.getWaterDepth(i + 1));
+      volume += 0.5 * area * (right.getChainage() - left.getChainage());
+    }
+    return volume;
+  }
+
+  private static void run(UnsteadyFlow flow, int steps) {
+    if (!flow.run(TIME_STEP, steps)) {
+      throw new IllegalStateException("Step failed at " + flow.getTime() + " s: " + flow.getErrMessage());
+    }
+  }
+
+  private static void printLine(String s) {
+    System.out.println(s);
+  }
+}